@@ -0,0 +1,95 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.path.DataflowPath;
+import apoc.path.GmDataflowPath;
+import apoc.util.TestUtil;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+// Impermanent database holding one generated dataflow graph per parameter combination,
+// the graph is built once per trial and only read by the benchmarks
+@State(Scope.Benchmark)
+public class DataflowGraphState {
+
+    @Param({"ros", "plain"})
+    public String shape;
+
+    @Param({"4"})
+    public int components;
+
+    @Param({"8", "32"})
+    public int cfgDepth;
+
+    @Param({"1", "3"})
+    public int fanOut;
+
+    @Param({"false", "true"})
+    public boolean recursion;
+
+    @Param({"true", "false"})
+    public boolean cfgCheck;
+
+    private DatabaseManagementService managementService;
+    private GraphDatabaseService db;
+    private DataflowGraphGenerator graph;
+    private Map<String, Object>[] componentParams;
+    private final AtomicInteger nextComponent = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        managementService = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        db = managementService.database(DEFAULT_DATABASE_NAME);
+        TestUtil.registerProcedure(db, DataflowPath.class, GmDataflowPath.class, ROSPath.class, ROSFindPath.class);
+
+        graph = new DataflowGraphGenerator(shape.equals("ros"), components, cfgDepth, fanOut, recursion).generate(db);
+
+        componentParams = new Map[components];
+        for (int c = 0; c < components; c++) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("startEdge", graph.getStartEdgeIds()[c]);
+            params.put("endEdge", graph.getEndEdgeIds()[c]);
+            params.put("endNode", graph.getEndNodeIds()[c]);
+            params.put("cfgCheck", cfgCheck);
+            componentParams[c] = params;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        managementService.shutdown();
+    }
+
+    public GraphDatabaseService getDb() {
+        return db;
+    }
+
+    // parameters of a single component search: its entry edge, exit variable and exit edge
+    //      every call moves on to the next component, so the caches of a single one do not skew the results
+    public Map<String, Object> componentParams() {
+        return componentParams[Math.floorMod(nextComponent.getAndIncrement(), components)];
+    }
+
+    // parameters of a search over the entry and exit edges of every component
+    public Map<String, Object> allComponentParams() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("startEdges", graph.getStartEdgeIds());
+        params.put("endEdges", graph.getEndEdgeIds());
+        params.put("cfgCheck", cfgCheck);
+        return params;
+    }
+
+}
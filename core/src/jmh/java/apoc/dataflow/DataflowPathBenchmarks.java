@@ -0,0 +1,85 @@
+package apoc.dataflow;
+
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and latency distribution (SampleTime reports p0.99) of the CFG validated dataflow searches,
+// run with `-prof gc` (default of the gradle jmh task) to also get the allocation rate per operation
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataflowPathBenchmarks {
+
+    private static final String COMPONENT_MATCH =
+            "MATCH ()-[startEdge]->() WHERE id(startEdge) = $startEdge " +
+            "MATCH ()-[endEdge]->() WHERE id(endEdge) = $endEdge " +
+            "MATCH (endNode) WHERE id(endNode) = $endNode ";
+
+    private static final String DATAFLOW_PATH = COMPONENT_MATCH +
+            "RETURN apoc.path.dataflowPath(null, endNode, startEdge, null, $cfgCheck) AS result";
+
+    private static final String ALL_DATAFLOW_PATHS = COMPONENT_MATCH +
+            "RETURN apoc.path.allDataflowPaths(null, endNode, startEdge, null, $cfgCheck) AS result";
+
+    private static final String GM_DATAFLOW_PATH = COMPONENT_MATCH +
+            "RETURN apoc.path.gmDataflowPath(null, endNode, startEdge, null, $cfgCheck) AS result";
+
+    // relSeq of the dataflow relationships followed by the other searches (DataflowHelper.getNextRels)
+    private static final String ROS_FIND_PATHS = COMPONENT_MATCH +
+            "RETURN apoc.cfgPath.rosFindPaths(startEdge, {endE: endEdge, cfg: $cfgCheck, shortest: true, " +
+            "relSeq: 'varWrite|parWrite|retWrite+'}) AS result";
+
+    private static final String ROS_DATAFLOW =
+            "MATCH ()-[startEdge]->() WHERE id(startEdge) IN $startEdges " +
+            "WITH collect(startEdge) AS startEdges " +
+            "MATCH ()-[endEdge]->() WHERE id(endEdge) IN $endEdges " +
+            "RETURN apoc.dataflow.rosDataflow(startEdges, collect(endEdge), $cfgCheck, 4) AS result";
+
+    @Benchmark
+    public void dataflowPath(DataflowGraphState state, Blackhole blackhole) {
+        run(state, DATAFLOW_PATH, state.componentParams(), blackhole);
+    }
+
+    @Benchmark
+    public void allDataflowPaths(DataflowGraphState state, Blackhole blackhole) {
+        run(state, ALL_DATAFLOW_PATHS, state.componentParams(), blackhole);
+    }
+
+    @Benchmark
+    public void gmDataflowPath(DataflowGraphState state, Blackhole blackhole) {
+        run(state, GM_DATAFLOW_PATH, state.componentParams(), blackhole);
+    }
+
+    @Benchmark
+    public void rosFindPaths(DataflowGraphState state, Blackhole blackhole) {
+        run(state, ROS_FIND_PATHS, state.componentParams(), blackhole);
+    }
+
+    @Benchmark
+    public void rosDataflow(DataflowGraphState state, Blackhole blackhole) {
+        run(state, ROS_DATAFLOW, state.allComponentParams(), blackhole);
+    }
+
+    private static void run(DataflowGraphState state, String query, Map<String, Object> params, Blackhole blackhole) {
+        try (Transaction tx = state.getDb().beginTx();
+             Result result = tx.execute(query, params)) {
+            while (result.hasNext()) {
+                blackhole.consume(result.next().get("result"));
+            }
+        }
+    }
+
+}
@@ -69,7 +69,18 @@ public class ApocConfig extends LifecycleAdapter {
     public static final String APOC_CONFIG_JOBS_SCHEDULED_NUM_THREADS = "apoc.jobs.scheduled.num_threads";
     public static final String APOC_CONFIG_JOBS_POOL_NUM_THREADS = "apoc.jobs.pool.num_threads";
     public static final String APOC_CONFIG_JOBS_QUEUE_SIZE = "apoc.jobs.queue.size";
+    public static final String APOC_CONFIG_JOBS_CPU_NUM_THREADS = "apoc.jobs.cpu.num_threads";
+    public static final String APOC_CONFIG_JOBS_CPU_QUEUE_SIZE = "apoc.jobs.cpu.queue_size";
+    public static final String APOC_CONFIG_JOBS_CPU_REJECTION_POLICY = "apoc.jobs.cpu.rejection_policy";
+    public static final String APOC_CONFIG_JOBS_IO_NUM_THREADS = "apoc.jobs.io.num_threads";
+    public static final String APOC_CONFIG_JOBS_IO_QUEUE_SIZE = "apoc.jobs.io.queue_size";
+    public static final String APOC_CONFIG_JOBS_IO_REJECTION_POLICY = "apoc.jobs.io.rejection_policy";
     public static final String APOC_CONFIG_INITIALIZER = "apoc.initializer";
+    public static final String APOC_DATAFLOW_CONNECTION_CACHE_SIZE = "apoc.dataflow.connection_cache.size";
+    public static final String APOC_DATAFLOW_PATH_CACHE_SIZE = "apoc.dataflow.path_cache.size";
+    public static final String APOC_DATAFLOW_SUMMARY_CACHE_SIZE = "apoc.dataflow.summary_cache.size";
+    public static final String APOC_DATAFLOW_INDEX_MAINTENANCE_ENABLED = "apoc.dataflow.index_maintenance.enabled";
+    public static final String APOC_DATAFLOW_SEARCH_MAX_MEMORY = "apoc.dataflow.search.max_memory";
     public static final String LOAD_FROM_FILE_ERROR = "Import from files not enabled, please set apoc.import.file.enabled=true in your apoc.conf";
 
     /**
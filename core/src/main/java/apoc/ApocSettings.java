@@ -89,6 +89,35 @@ public class ApocSettings implements SettingsDeclaration {
 
     public static final Setting<Long> apoc_jobs_scheduled_num_threads = newBuilder(APOC_CONFIG_JOBS_SCHEDULED_NUM_THREADS, LONG, null).build();
 
+    public static final Setting<Long> apoc_jobs_cpu_num_threads = newBuilder(APOC_CONFIG_JOBS_CPU_NUM_THREADS, LONG, null).build();
+
+    public static final Setting<Long> apoc_jobs_cpu_queue_size = newBuilder(APOC_CONFIG_JOBS_CPU_QUEUE_SIZE, LONG, null).build();
+
+    @Description("what to do with tasks submitted to the full cpu executor: caller_blocks, caller_runs, abort or discard")
+    public static final Setting<String> apoc_jobs_cpu_rejection_policy = newBuilder(APOC_CONFIG_JOBS_CPU_REJECTION_POLICY, STRING, "caller_runs").build();
+
+    public static final Setting<Long> apoc_jobs_io_num_threads = newBuilder(APOC_CONFIG_JOBS_IO_NUM_THREADS, LONG, null).build();
+
+    public static final Setting<Long> apoc_jobs_io_queue_size = newBuilder(APOC_CONFIG_JOBS_IO_QUEUE_SIZE, LONG, null).build();
+
+    @Description("what to do with tasks submitted to the full io executor: caller_blocks, caller_runs, abort or discard")
+    public static final Setting<String> apoc_jobs_io_rejection_policy = newBuilder(APOC_CONFIG_JOBS_IO_REJECTION_POLICY, STRING, "caller_blocks").build();
+
+    @Description("maximum number of dataflow relationships whose CFG connections are cached across transactions, 0 disables the cache")
+    public static final Setting<Long> apoc_dataflow_connection__cache_size = newBuilder(APOC_DATAFLOW_CONNECTION_CACHE_SIZE, LONG, 0L).build();
+
+    @Description("maximum number of relationships held by cached results of the config driven path functions, 0 disables the cache")
+    public static final Setting<Long> apoc_dataflow_path__cache_size = newBuilder(APOC_DATAFLOW_PATH_CACHE_SIZE, LONG, 0L).build();
+
+    @Description("maximum number of relationships held by shared function summaries of apoc.path.summaryDataflowPath, 0 keeps them per call")
+    public static final Setting<Long> apoc_dataflow_summary__cache_size = newBuilder(APOC_DATAFLOW_SUMMARY_CACHE_SIZE, LONG, 0L).build();
+
+    @Description("update the reachability index and the dataflow caches on every commit instead of dropping them")
+    public static final Setting<Boolean> apoc_dataflow_index__maintenance_enabled = newBuilder(APOC_DATAFLOW_INDEX_MAINTENANCE_ENABLED, BOOL, false).build();
+
+    @Description("default estimated heap in bytes a single dataflow search may hold before it stops with the paths found so far, 0 disables the limit")
+    public static final Setting<Long> apoc_dataflow_search_max__memory = newBuilder(APOC_DATAFLOW_SEARCH_MAX_MEMORY, LONG, 0L).build();
+
 //    public static final Setting<String> apoc_json_zip_url = newBuilder(APOC_JSON_ZIP_URL, STRING, null ).build();
 
 //    public static final Setting<String> apoc_json_simpleJson_url = newBuilder(APOC_JSON_SIMPLE_JSON_URL, STRING, null ).build();
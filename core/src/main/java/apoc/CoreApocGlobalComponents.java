@@ -1,6 +1,10 @@
 package apoc;
 
 import apoc.cypher.CypherInitializer;
+import apoc.dataflow.ConnectionNodeCache;
+import apoc.dataflow.DataflowIndexMaintenance;
+import apoc.dataflow.FunctionSummaryCache;
+import apoc.dataflow.PathResultCache;
 import apoc.trigger.TriggerHandler;
 import org.neo4j.annotations.service.ServiceProvider;
 import org.neo4j.kernel.availability.AvailabilityListener;
@@ -9,6 +13,8 @@ import org.neo4j.kernel.lifecycle.Lifecycle;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @ServiceProvider
@@ -16,7 +22,8 @@ public class CoreApocGlobalComponents implements ApocGlobalComponents {
 
     @Override
     public Map<String,Lifecycle> getServices(GraphDatabaseAPI db, ApocExtensionFactory.Dependencies dependencies) {
-        return Collections.singletonMap("trigger", new TriggerHandler(db,
+        Map<String, Lifecycle> services = new HashMap<>();
+        services.put("trigger", new TriggerHandler(db,
                 dependencies.databaseManagementService(),
                 dependencies.apocConfig(),
                 dependencies.log().getUserLog(TriggerHandler.class),
@@ -24,11 +31,32 @@ public class CoreApocGlobalComponents implements ApocGlobalComponents {
                 dependencies.pools(),
                 dependencies.scheduler())
         );
+        services.put("dataflowConnectionCache", new ConnectionNodeCache(db,
+                dependencies.databaseManagementService(),
+                dependencies.apocConfig(),
+                dependencies.log().getUserLog(ConnectionNodeCache.class))
+        );
+        services.put("dataflowPathCache", new PathResultCache(db,
+                dependencies.apocConfig(),
+                dependencies.log().getUserLog(PathResultCache.class))
+        );
+        services.put("dataflowSummaryCache", new FunctionSummaryCache(db,
+                dependencies.apocConfig(),
+                dependencies.log().getUserLog(FunctionSummaryCache.class))
+        );
+        services.put("dataflowIndexMaintenance", new DataflowIndexMaintenance(db,
+                dependencies.databaseManagementService(),
+                dependencies.apocConfig(),
+                dependencies.log().getUserLog(DataflowIndexMaintenance.class),
+                dependencies.pools())
+        );
+        return services;
     }
 
     @Override
     public Collection<Class> getContextClasses() {
-        return Collections.singleton(TriggerHandler.class);
+        return List.of(TriggerHandler.class, ConnectionNodeCache.class, PathResultCache.class,
+                FunctionSummaryCache.class, DataflowIndexMaintenance.class);
     }
 
     @Override
@@ -9,7 +9,9 @@ import org.neo4j.logging.Log;
 import org.neo4j.logging.internal.LogService;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -21,10 +23,12 @@ import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -32,6 +36,8 @@ public class Pools extends LifecycleAdapter {
 
     public final static int DEFAULT_SCHEDULED_THREADS = Runtime.getRuntime().availableProcessors() / 4;
     public final static int DEFAULT_POOL_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    public final static int DEFAULT_CPU_THREADS = Runtime.getRuntime().availableProcessors();
+    public final static int DEFAULT_IO_THREADS = Runtime.getRuntime().availableProcessors() * 2;
     private final Log log;
     private final GlobalProcedures globalProceduresRegistry;
     private final ApocConfig apocConfig;
@@ -39,6 +45,12 @@ public class Pools extends LifecycleAdapter {
     private ExecutorService singleExecutorService;
     private ScheduledExecutorService scheduledExecutorService;
     private ExecutorService defaultExecutorService;
+    private ExecutorService cpuExecutorService;
+    private ExecutorService ioExecutorService;
+
+    // every executor by name, exposed by apoc.pools.info()
+    private final Map<String, ThreadPoolExecutor> executors = new LinkedHashMap<>();
+    private final Map<String, CountingRejectionPolicy> rejectionPolicies = new LinkedHashMap<>();
 
     public int threads;
     public int queueSize;
@@ -60,8 +72,6 @@ public class Pools extends LifecycleAdapter {
     public void init() {
 
         threads = Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_POOL_NUM_THREADS, DEFAULT_POOL_THREADS));
-        //threads = DEFAULT_POOL_THREADS;
-        threads = 4;
         queueSize = Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_QUEUE_SIZE, threads * 5));
 
         // ensure we use daemon threads everywhere
@@ -70,16 +80,33 @@ public class Pools extends LifecycleAdapter {
             t.setDaemon(true);
             return t;
         };
-        this.singleExecutorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
-                threadFactory, new CallerBlocksPolicy());
+        this.singleExecutorService = newExecutor("single", 1, 1, queueSize, threadFactory, "caller_blocks");
+
+        // a core size of threads / 2 would stay at 0 threads for threads = 1
+        this.defaultExecutorService = newExecutor("default", Math.max(1, threads / 2), threads, queueSize,
+                threadFactory, "caller_blocks");
 
-        this.defaultExecutorService = new ThreadPoolExecutor(threads / 2, threads, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
-                threadFactory, new CallerBlocksPolicy());
+        // CPU bound work (graph traversals, dataflow searches): one thread per core, callers help out when full
+        int cpuThreads = Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_CPU_NUM_THREADS, DEFAULT_CPU_THREADS));
+        this.cpuExecutorService = newExecutor("cpu", cpuThreads, cpuThreads,
+                Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_CPU_QUEUE_SIZE, cpuThreads * 5)),
+                threadFactory, apocConfig.getString(ApocConfig.APOC_CONFIG_JOBS_CPU_REJECTION_POLICY, "caller_runs"));
 
-        this.scheduledExecutorService = Executors.newScheduledThreadPool(
+        // I/O bound work (load / export): more threads than cores, callers wait for a free slot when full
+        int ioThreads = Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_IO_NUM_THREADS, DEFAULT_IO_THREADS));
+        this.ioExecutorService = newExecutor("io", Math.max(1, ioThreads / 2), ioThreads,
+                Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_IO_QUEUE_SIZE, ioThreads * 5)),
+                threadFactory, apocConfig.getString(ApocConfig.APOC_CONFIG_JOBS_IO_REJECTION_POLICY, "caller_blocks"));
+
+        // the delay queue of a scheduled executor is unbounded, it only rejects tasks once shut down
+        CountingRejectionPolicy scheduledPolicy = new CountingRejectionPolicy("abort", new ThreadPoolExecutor.AbortPolicy());
+        ScheduledThreadPoolExecutor scheduled = new ScheduledThreadPoolExecutor(
                 Math.max(1, apocConfig.getInt(ApocConfig.APOC_CONFIG_JOBS_SCHEDULED_NUM_THREADS, DEFAULT_SCHEDULED_THREADS)),
-                threadFactory
+                threadFactory, scheduledPolicy
         );
+        executors.put("scheduled", scheduled);
+        rejectionPolicies.put("scheduled", scheduledPolicy);
+        this.scheduledExecutorService = scheduled;
 
         scheduledExecutorService.scheduleAtFixedRate(() -> {
             for (Iterator<Map.Entry<Periodic.JobInfo, Future>> it = jobList.entrySet().iterator(); it.hasNext(); ) {
@@ -91,7 +118,7 @@ public class Pools extends LifecycleAdapter {
 
     @Override
     public void shutdown() throws Exception {
-        Stream.of(singleExecutorService, defaultExecutorService, scheduledExecutorService).forEach( service -> {
+        Stream.of(singleExecutorService, defaultExecutorService, cpuExecutorService, ioExecutorService, scheduledExecutorService).forEach( service -> {
             try {
                 service.shutdown();
                 service.awaitTermination(10, TimeUnit.SECONDS);
@@ -113,6 +140,75 @@ public class Pools extends LifecycleAdapter {
         return defaultExecutorService;
     }
 
+    // executor for CPU bound tasks such as traversals, sized by apoc.jobs.cpu.num_threads
+    public ExecutorService getCpuExecutorService() {
+        return cpuExecutorService;
+    }
+
+    // executor for I/O bound tasks such as loads and exports, sized by apoc.jobs.io.num_threads
+    public ExecutorService getIoExecutorService() {
+        return ioExecutorService;
+    }
+
+    public Map<String, ThreadPoolExecutor> getExecutors() {
+        return executors;
+    }
+
+    public long getRejectedCount(String name) {
+        CountingRejectionPolicy policy = rejectionPolicies.get(name);
+        return (policy == null) ? 0L : policy.rejected.get();
+    }
+
+    public String getRejectionPolicy(String name) {
+        CountingRejectionPolicy policy = rejectionPolicies.get(name);
+        return (policy == null) ? null : policy.name;
+    }
+
+    private ThreadPoolExecutor newExecutor(String name, int coreThreads, int maxThreads, int queueSize,
+                                           ThreadFactory threadFactory, String rejectionPolicy) {
+        CountingRejectionPolicy policy = rejectionPolicy(rejectionPolicy);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreThreads, maxThreads, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, policy);
+        executors.put(name, executor);
+        rejectionPolicies.put(name, policy);
+        return executor;
+    }
+
+    static CountingRejectionPolicy rejectionPolicy(String name) {
+        String policyName = (name == null) ? "caller_blocks" : name.trim().toLowerCase(Locale.ROOT);
+        switch (policyName) {
+            case "caller_blocks":
+                return new CountingRejectionPolicy(policyName, new CallerBlocksPolicy());
+            case "caller_runs":
+                return new CountingRejectionPolicy(policyName, new ThreadPoolExecutor.CallerRunsPolicy());
+            case "abort":
+                return new CountingRejectionPolicy(policyName, new ThreadPoolExecutor.AbortPolicy());
+            case "discard":
+                return new CountingRejectionPolicy(policyName, new ThreadPoolExecutor.DiscardPolicy());
+            default:
+                throw new IllegalArgumentException("Unknown rejection policy " + name +
+                        ", supported are caller_blocks, caller_runs, abort and discard");
+        }
+    }
+
+    // counts every task that did not fit into the queue before applying the actual policy
+    static class CountingRejectionPolicy implements RejectedExecutionHandler {
+        private final String name;
+        private final RejectedExecutionHandler delegate;
+        private final AtomicLong rejected = new AtomicLong();
+
+        CountingRejectionPolicy(String name, RejectedExecutionHandler delegate) {
+            this.name = name;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.incrementAndGet();
+            delegate.rejectedExecution(r, executor);
+        }
+    }
+
     public Map<Periodic.JobInfo, Future> getJobList() {
         return jobList;
     }
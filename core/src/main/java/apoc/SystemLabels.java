@@ -10,5 +10,6 @@ public enum SystemLabels implements Label {
     ApocUuid,
     ApocTriggerMeta,
     ApocTrigger,
-    DataVirtualizationCatalog
+    DataVirtualizationCatalog,
+    ApocPeriodicCheckpoint
 }
@@ -26,5 +26,11 @@ public enum SystemPropertyKeys  {
     // uuid handler
     label,
     addToSetLabel,
-    propertyName;
+    propertyName,
+
+    // periodic iterate checkpoints
+    action,
+    config,
+    offset,
+    runner;
 }
@@ -1,5 +1,9 @@
 package apoc.algo;
 
+import apoc.dataflow.CFGReachability;
+import apoc.dataflow.DataflowSnapshot;
+import apoc.dataflow.DataflowSnapshots;
+import apoc.dataflow.DataflowStats;
 import apoc.path.CandidatePath;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -110,6 +114,7 @@ public class CFGShortestPath {
     //@Override
     public Iterable<Path> findAllPaths( Node start, Node end, Relationship dataflowRel)
     {
+        DataflowStats.shortestPath();
         Node targetNode = dataflowRel.getEndNode();
         boolean filterVar = (targetNode.hasLabel(NodeLabel.cVariable) &&
                 (dataflowRel.isType(RelTypes.varWrite) ||
@@ -166,6 +171,12 @@ public class CFGShortestPath {
     // Function for returning CFG path based on start and end nodes
     public Path findSinglePath( Node start, Node end, Relationship dataflowRel)
     {
+        DataflowStats.shortestPath();
+        // the filtered search only walks a subset of nextCFGBlock>, so skip it if the index rules out reachability
+        if (!CFGReachability.mayReach(context.databaseService(), start, end)) {
+            return null;
+        }
+
         Node srcNode = dataflowRel.getStartNode();
 
         // filter conditions:
@@ -174,6 +185,12 @@ public class CFGShortestPath {
         boolean filterVar = (srcNode.hasLabel(NodeLabel.cVariable)) || (srcNode.hasLabel(NodeLabel.cReturn));
         filterVar = (!dataflowRel.isType(RelTypes.pubVar)) && filterVar;
 
+        // answer from the CSR snapshot if one is loaded for the current store (expander is always nextCFGBlock>)
+        DataflowSnapshot snapshot = snapshot();
+        if (snapshot != null) {
+            return snapshot.cfgPath(context.transaction(), start, end, srcNode, filterVar, maxDepth);
+        }
+
         // run path finding algorithm
         Iterator<Path> paths = internalPaths( start, end, true, srcNode,
                 filterVar).iterator();
@@ -184,6 +201,17 @@ public class CFGShortestPath {
 
     // currently not in use
     public Path findSinglePath(Node start, Node end, Node targetNode, boolean filterVar) {
+        DataflowStats.shortestPath();
+        // the filtered search only walks a subset of nextCFGBlock>, so skip it if the index rules out reachability
+        if (!CFGReachability.mayReach(context.databaseService(), start, end)) {
+            return null;
+        }
+
+        DataflowSnapshot snapshot = snapshot();
+        if (snapshot != null) {
+            return snapshot.cfgPath(context.transaction(), start, end, targetNode, filterVar, maxDepth);
+        }
+
         Iterator<Path> paths = internalPaths( start, end, true, targetNode,
                 filterVar).iterator();
         Path path = paths.hasNext() ? paths.next() : null;
@@ -191,6 +219,12 @@ public class CFGShortestPath {
         return path;
     }
 
+    // helper function: snapshot usable for this search, null if the graph has to be traversed
+    private DataflowSnapshot snapshot() {
+        return (predicate == null) ? DataflowSnapshots.current(context.databaseService(), context.transaction()) :
+                null;
+    }
+
     private void resolveMonitor()
     {
         if ( dataMonitor == null )
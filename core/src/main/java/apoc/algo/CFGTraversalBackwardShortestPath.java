@@ -1,5 +1,7 @@
 package apoc.algo;
 
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.FunctionIndex;
 import apoc.path.RelationshipTypeAndDirections;
 import org.neo4j.graphdb.*;
 
@@ -38,6 +40,8 @@ public class CFGTraversalBackwardShortestPath {
                                HashMap<List<Node>, Relationship> cfgEndNodes,
                                CandidatePath candidatePath) {
 
+        DataflowStats.shortestPath();
+
         HashSet<Node> startNodes = new HashSet<>();
         HashSet<Node> endNodes = new HashSet<>();
         HashSet<Relationship> cfgRetInv = new HashSet<>();
@@ -99,6 +103,7 @@ public class CFGTraversalBackwardShortestPath {
         public ArrayList<Stack<Relationship>> curCallStacks;
         public HashSet<Node> filterOut;
         public HashSet<Relationship> cfgInvRets;
+        private final boolean indexed;
 
         public CFGBackwardEvaluator(CandidatePath candidatePath, HashSet<Node> startNodes,
                                     HashSet<Relationship> cfgInvRets) {
@@ -108,6 +113,7 @@ public class CFGTraversalBackwardShortestPath {
             //this.curCallStacks = candidatePath.callStacks;
             this.filterOut = new HashSet<>();
             this.cfgInvRets = cfgInvRets;
+            this.indexed = FunctionIndex.isCurrent(db);
 
             for (Relationship cfgInvRet : cfgInvRets) {
                 if (updateBackwardCallStack(cfgInvRet)) {
@@ -156,9 +162,9 @@ public class CFGTraversalBackwardShortestPath {
             boolean isInvoke = false;
             boolean isReturn = false;
 
-            if (edge.hasProperty("cfgInvoke") && (edge.getProperty("cfgInvoke").equals("1"))) {
+            if (FunctionIndex.isInvoke(edge, indexed)) {
                 isInvoke = true;
-            } else if (edge.hasProperty("cfgReturn") && (edge.getProperty("cfgReturn").equals("1"))) {
+            } else if (FunctionIndex.isReturn(edge, indexed)) {
                 isReturn = true;
             } else {
                 return true;
@@ -204,11 +210,7 @@ public class CFGTraversalBackwardShortestPath {
         }
 
         private boolean compareFunction(Node node1, Node node2) {
-            String idNode1 = (String) node1.getProperty("id");
-            String[] functionNameNode1 = idNode1.split(";;:");
-            String idNode2 = (String) node2.getProperty("id");
-            String[] functionNameNode2 = idNode2.split(";;:");
-            return functionNameNode1[0].equals(functionNameNode2[0]);
+            return FunctionIndex.sameFunction(node1, node2, indexed);
         }
     }
 
@@ -1,5 +1,7 @@
 package apoc.algo;
 
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.FunctionIndex;
 import apoc.path.CFGValidationHelper;
 import apoc.path.RelationshipTypeAndDirections;
 import org.apache.commons.math3.geometry.spherical.twod.Edge;
@@ -42,6 +44,8 @@ public class CFGTraversalShortestPath {
                                HashMap<List<Node>, Relationship> cfgEndNodes,
                                CandidatePath candidatePath) {
 
+        DataflowStats.shortestPath();
+
         HashSet<Node> startNodes = new HashSet<>();
         HashSet<Node> endNodes = new HashSet<>();
         HashSet<Relationship> cfgRetInv = new HashSet<>();
@@ -103,6 +107,7 @@ public class CFGTraversalShortestPath {
         public ArrayList<Stack<Relationship>> curCallStacks;
         public HashSet<Node> filterOut;
         public HashSet<Relationship> cfgInvRets;
+        private final boolean indexed;
         public boolean isVW;
         public Node lastEdgeStart;
         public Relationship lastSecondEdge;
@@ -115,6 +120,7 @@ public class CFGTraversalShortestPath {
             //this.curCallStacks = candidatePath.callStacks;
             this.filterOut = new HashSet<>();
             this.cfgInvRets = cfgInvRets;
+            this.indexed = FunctionIndex.isCurrent(db);
             this.isVW = candidatePath.getLastRel().isType(CFGValidationHelper.RelTypes.varWrite);
             this.lastEdgeStart = candidatePath.getStartNode();
             this.lastSecondEdge = candidatePath.getSecondLastRel();
@@ -200,9 +206,9 @@ public class CFGTraversalShortestPath {
             ArrayList<Stack<Relationship>> addCallStack = new ArrayList<>();
             ArrayList<Stack<Relationship>> removeStack = new ArrayList<>();
 
-            if (edge.hasProperty("cfgInvoke") && (edge.getProperty("cfgInvoke").equals("1"))) {
+            if (FunctionIndex.isInvoke(edge, indexed)) {
                 isInvoke = true;
-            } else if (edge.hasProperty("cfgReturn") && (edge.getProperty("cfgReturn").equals("1"))) {
+            } else if (FunctionIndex.isReturn(edge, indexed)) {
                 isReturn = true;
             } else {
                 return true;
@@ -245,11 +251,7 @@ public class CFGTraversalShortestPath {
         }
 
         private boolean compareFunction(Node node1, Node node2) {
-            String idNode1 = (String) node1.getProperty("id");
-            String[] functionNameNode1 = idNode1.split(";;:");
-            String idNode2 = (String) node2.getProperty("id");
-            String[] functionNameNode2 = idNode2.split(";;:");
-            return functionNameNode1[0].equals(functionNameNode2[0]);
+            return FunctionIndex.sameFunction(node1, node2, indexed);
         }
     }
 
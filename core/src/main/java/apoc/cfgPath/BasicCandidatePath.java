@@ -1,10 +1,12 @@
 package apoc.cfgPath;
 
+import apoc.dataflow.DataflowStats;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.memory.HeapEstimator;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -12,7 +14,9 @@ import java.util.List;
 
 public class BasicCandidatePath {
 
-    public int pathIndex;   // index in terms of RelExtension
+    public static final long SHALLOW_SIZE = HeapEstimator.shallowSizeOfInstance(BasicCandidatePath.class);
+
+    public int pathIndex;   // state in terms of RelAutomaton
     public ArrayList<Relationship> path;    // list of all the relationships in the path
     public HashSet<Node> validCFGs;     // records the last validated end CFG nodes
     public int pathSize;    // length of path
@@ -22,6 +26,7 @@ public class BasicCandidatePath {
 
     // constructor for single edge
     public BasicCandidatePath(Relationship startEdge, int pathIndex) {
+        DataflowStats.candidate();
         this.path = new ArrayList<>(List.of(startEdge));
         this.validCFGs = new HashSet<>();
         this.pathIndex = pathIndex;
@@ -32,6 +37,7 @@ public class BasicCandidatePath {
 
     // constructor for appending to old path
     public BasicCandidatePath(BasicCandidatePath oldPath, Relationship curEdge, int pathIndex, boolean backward) {
+        DataflowStats.candidate();
         this.path = new ArrayList<>(oldPath.getPath());
         this.path.add(curEdge);
         this.validCFGs = new HashSet<>(oldPath.getValidCFGs());
@@ -1,24 +1,15 @@
 package apoc.cfgPath;
 
+import apoc.dataflow.CFGReachability;
 import apoc.path.CFGPath;
 import apoc.path.RelationshipTypeAndDirections;
-import org.neo4j.graphalgo.BasicEvaluationContext;
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.graphalgo.PathFinder;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
-import org.neo4j.procedure.Context;
 
 import java.util.*;
 
 public class CFGValidationHelper {
 
-    @Context
-    public static GraphDatabaseService db;
-
-    @Context
-    public static Transaction tx;
-
     public enum NodeLabel implements Label {
         cVariable, cReturn
     }
@@ -29,7 +20,8 @@ public class CFGValidationHelper {
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashSet<List<Node>> getConnectionNodesAll(Relationship edge,
+    public static HashSet<List<Node>> getConnectionNodesAll(GraphDatabaseService db, Transaction tx,
+                                                            Relationship edge,
                                                             HashMap<String,
                                                                     CFGSetting> cfgConfig) {
 
@@ -81,16 +73,10 @@ public class CFGValidationHelper {
 
         // check for shortest path
         if (length < 0) {
-            PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                    new BasicEvaluationContext(tx, db),
-                    buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
-            );
-
             HashSet<List<Node>> tempSets = new HashSet<>();
             for (List<Node> relatedNode : relatedNodes) {
                 for (Relationship dstEdge : dstEdges) {
-                    Path path = algo.findSinglePath(relatedNode.get(1), dstEdge.getEndNode());
-                    if (path != null) {
+                    if (CFGReachability.isReachable(db, tx, relatedNode.get(1), dstEdge.getEndNode())) {
                         tempSets.add(List.of(relatedNode.get(0), dstEdge.getEndNode()));
                     }
                 }
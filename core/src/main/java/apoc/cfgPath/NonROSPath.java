@@ -1,7 +1,10 @@
 package apoc.cfgPath;
 
 import apoc.algo.CFGShortestPath;
+import apoc.dataflow.DataflowStats;
 import apoc.util.Util;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.Context;
@@ -22,6 +25,11 @@ public class NonROSPath {
     @UserFunction
     @Description("apoc.cfgPath.nonRosFindPaths(start, [settings])")
     public List<Path> nonRosFindPaths(@Name("start") Object start, @Name("config") Map<String,Object> config) {
+        return DataflowStats.profiled("apoc.cfgPath.nonRosFindPaths", config, () -> findNonROSPaths(start, config));
+    }
+
+    // helper function: parse the settings and run the search
+    private List<Path> findNonROSPaths(Object start, Map<String,Object> config) {
         // configuration graph variables
         Node startNode = null;
         Relationship startEdge = null;
@@ -58,15 +66,15 @@ public class NonROSPath {
         List<Map<String, Object>> cfgConfigurationList =
                 (List<Map<String,Object>>) config.getOrDefault("config", null);
         HashMap<String, CFGSetting> cfgConfig = parseCFGConfiguration(cfgConfigurationList);
-        RelExtension extension = new RelExtension(relSequence, repeat, backward);
+        RelAutomaton automaton = RelAutomaton.compile(relSequence, repeat, backward);
         HashSet<Label> acceptedNodes = filterNodes((String) config.getOrDefault("filter", null));
         boolean isStartEdgeValid = Util.toBoolean(config.getOrDefault("isStartEdgeValid", false));
 
         if (backward) {
-            return findPath(endNode, startNode, endEdge, startEdge, cfgConfig, extension, allShortestPath, cfgCheck,
+            return findPath(endNode, startNode, endEdge, startEdge, cfgConfig, automaton, allShortestPath, cfgCheck,
                     acceptedNodes, backward, isStartEdgeValid);
         } else {
-            return findPath(startNode, endNode, startEdge, endEdge, cfgConfig, extension, allShortestPath, cfgCheck,
+            return findPath(startNode, endNode, startEdge, endEdge, cfgConfig, automaton, allShortestPath, cfgCheck,
                     acceptedNodes, backward, isStartEdgeValid);
         }
 
@@ -76,27 +84,26 @@ public class NonROSPath {
 
     // helper function: find path
     public List<Path> findPath(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
-                               HashMap<String, CFGSetting> cfgConfig, RelExtension extension,
+                               HashMap<String, CFGSetting> cfgConfig, RelAutomaton automaton,
                                boolean allShortestPath, boolean cfgCheck, HashSet<Label> acceptedNodes,
                                boolean backward, boolean isStartEdgeValid) {
 
         // variables
         List<BasicCandidatePath> returnPaths = new ArrayList<>();
-        HashSet<Relationship> visitedEdges = new HashSet<>();
+        MutableLongSet visitedEdges = new LongHashSet();   // (edge, automaton state) pairs
         Queue<BasicCandidatePath> queuePath = new LinkedList<>();
         Node start = startNode;
         Node end = endNode;
-        ArrayList<ArrayList<RelationshipType>> curType;
         Iterable<Relationship> nextRels;
         BasicCandidatePath curPath = null;
 
         // Start edge not null, reassign start node with its ending node
         if (startEdge != null) {
             start = (backward) ? startEdge.getStartNode() : startEdge.getEndNode();
-            curPath = new BasicCandidatePath(startEdge, -1);
+            curPath = new BasicCandidatePath(startEdge, automaton.start());
             if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig, backward);} // update CFG related nodes
             queuePath.add(curPath);
-            if (allShortestPath) {visitedEdges.add(startEdge);} // update visited nodes
+            if (allShortestPath) {visitedEdges.add(automaton.key(startEdge, automaton.start()));} // update visited nodes
         }
 
         // End edge not null, reassign end node with its starting node
@@ -117,30 +124,25 @@ public class NonROSPath {
         // If we don't have start edge, then attempt to get first edge in candidate path
         if (startEdge == null) {
 
-            // use relationship sequence 0
-            curType = extension.constructTypes(0);
-            int y = 0;
-
-            // For each possible sequences, find next possible candidates
-            for (ArrayList<RelationshipType> curT : curType) {
-                nextRels = start.getRelationships(Direction.OUTGOING,
-                        curT.toArray(RelationshipType[]::new));
-                for (Relationship nextRel : nextRels) {
-                    Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
-                    if ((acceptedNodes != null) &&
-                            (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
-                        continue;
-                    }
-
-                    // only create path if we are looking for all path or it is not in visited edges
-                    if ((!allShortestPath) || (!visitedEdges.contains(nextRel))) {
-                        curPath = new BasicCandidatePath(nextRel, y);
-                        if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig, backward);}
-                        queuePath.add(curPath);
-                    }
+            // use the types leaving the start state of the pattern
+            RelationshipType[] firstTypes = automaton.nextTypes(automaton.start());
+            nextRels = (firstTypes.length == 0) ? List.of() :
+                    DataflowStats.expanded(start.getRelationships(Direction.OUTGOING, firstTypes));
+            for (Relationship nextRel : nextRels) {
+                Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
+                if ((acceptedNodes != null) &&
+                        (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
+                    continue;
+                }
 
+                // only create path if we are looking for all path or it is not in visited edges
+                int state = automaton.step(automaton.start(), nextRel.getType());
+                if ((!allShortestPath) || (!visitedEdges.contains(automaton.key(nextRel, state)))) {
+                    curPath = new BasicCandidatePath(nextRel, state);
+                    if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig, backward);}
+                    queuePath.add(curPath);
                 }
-                y += 1;
+
             }
 
 
@@ -148,13 +150,14 @@ public class NonROSPath {
 
         BasicCandidatePath foundCandidatePath = null;
         ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-        HashSet<Relationship> visitedEdge = new HashSet<>();
+        MutableLongSet visitedEdge = new LongHashSet();
 
         int pathLen = -1;
         boolean foundPath = false;
 
         // process each candidate path and verify that it is valid before proceeding the search
         while (!queuePath.isEmpty()) {
+            DataflowStats.queued(queuePath.size());
             curPath = queuePath.remove();
 
             // If we already found something, check if we want to proceed by checking return edge
@@ -179,7 +182,7 @@ public class NonROSPath {
             if (allShortestPath && curLen > pathLen) {
                 // add all relationships found at previous path length to visitedRels
                 visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
+                visitedEdge = new LongHashSet();
             }
             pathLen = curLen;
 
@@ -187,13 +190,13 @@ public class NonROSPath {
             if ((!cfgCheck) || getCFGPath(curPath, cfgConfig, backward)) {
 
                 // Only add to visitedEdges if we are looking for shortest path
-                if (allShortestPath) {visitedEdge.add(curPath.getLastEdge()); }
+                if (allShortestPath) {visitedEdge.add(automaton.key(curPath.getLastEdge(), curPath.getPathIndex())); }
 
                 // Add to return path only if the following conditions are met:
                 //      - Matches last edge type of relationship
                 //      - If has end node/end edge, also needs to match that
                 Node compNode = backward ? curPath.getLastEdge().getStartNode() : curPath.getLastEdge().getEndNode();
-                if ((extension.isEndIndex(curPath.getPathIndex())) &&
+                if ((automaton.isAccepting(curPath.getPathIndex())) &&
                         ((end == null) || (compNode.equals(end)))) {
                     // need to also pass CFG test if there is an end edge
                     if (endEdge != null) {
@@ -220,37 +223,32 @@ public class NonROSPath {
                     }
                 }
 
-                // Attempt to get next possible edge
-                int index = extension.nextIndex(curPath.getLastEdge().getType(), curPath.getPathIndex());
-                if (index <= extension.lastIndex) {
-                    curType = extension.constructTypes(index);
-                    int i = 0;
-                    for (ArrayList<RelationshipType> curT : curType) {
-                        Node curNode = backward ? curPath.getLastEdge().getStartNode() :
-                                curPath.getLastEdge().getEndNode();
-                        Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
-                        nextRels = curNode.getRelationships(dir,
-                                curT.toArray(RelationshipType[]::new));
-                        for (Relationship nextRel : nextRels) {
-                            Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
-                            if ((acceptedNodes != null) &&
-                                    (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
-                                continue;
-                            }
-
-                            // add to candidate path if only the following conditions are met
-                            //      - if all shortestPath: visited edge does not contain nextRel
-                            //      - if look for all path, then current path does not contain nextRel
-                            boolean addPath = ((allShortestPath) && (!visitedEdges.contains(nextRel))) ||
-                                    ((!allShortestPath) && (!curPath.getPath().contains(nextRel)));
+                // Attempt to get next possible edge, the automaton state decides which types may follow
+                RelationshipType[] nextTypes = automaton.nextTypes(curPath.getPathIndex());
+                if (nextTypes.length > 0) {
+                    Node curNode = backward ? curPath.getLastEdge().getStartNode() :
+                            curPath.getLastEdge().getEndNode();
+                    Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
+                    nextRels = DataflowStats.expanded(curNode.getRelationships(dir, nextTypes));
+                    for (Relationship nextRel : nextRels) {
+                        Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
+                        if ((acceptedNodes != null) &&
+                                (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
+                            continue;
+                        }
 
-                            if (addPath) {
-                                BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
-                                        index+i, backward);
-                                queuePath.add(newCandidatePath);
-                            }
+                        // add to candidate path if only the following conditions are met
+                        //      - if all shortestPath: edge was not visited in the same automaton state
+                        //      - if look for all path, then current path does not contain nextRel
+                        int state = automaton.step(curPath.getPathIndex(), nextRel.getType());
+                        boolean addPath = ((allShortestPath) && (!visitedEdges.contains(automaton.key(nextRel, state)))) ||
+                                ((!allShortestPath) && (!curPath.getPath().contains(nextRel)));
+
+                        if (addPath) {
+                            BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
+                                    state, backward);
+                            queuePath.add(newCandidatePath);
                         }
-                        i += 1;
                     }
 
                 }
@@ -274,7 +272,7 @@ public class NonROSPath {
 
     // helper function: adding destination CFG nodes to first edge in path
     private void updateFirstCFGNodes(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(path.getLastEdge(), config);
+        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(db, tx, path.getLastEdge(), config);
         HashSet<Node> endNodes = new HashSet<>();
         for (List<Node> endCFG : endCFGs) {
             endNodes.add(backward ? endCFG.get(0) : endCFG.get(1));
@@ -315,9 +313,13 @@ public class NonROSPath {
 
     }
 
+    public boolean getCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
+        return DataflowStats.cfgCheck(() -> computeCFGPath(path, config, backward));
+    }
+
     // helper function: get CFG nodes for last edge in path, and check if it is connected to CFG node up
     //      to second last edge in path
-    public boolean getCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
+    private boolean computeCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
         // in case there is only one edge in path, then the cfg path always passes
         if (path.getPathSize() < 2) {
             return true;
@@ -335,7 +337,7 @@ public class NonROSPath {
                 CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
 
         // get the corresponding CFG node for last edge in path
-        HashSet<List<Node>> curCFGs = CFGValidationHelper.getConnectionNodesAll(lastEdge, config); // nodes of new edge
+        HashSet<List<Node>> curCFGs = CFGValidationHelper.getConnectionNodesAll(db, tx, lastEdge, config); // nodes of new edge
         HashSet<Node> acceptedNewCFG = new HashSet<>();
 
         // attempt to find a directed path between CFG nodes from path up to second last edge to last edge
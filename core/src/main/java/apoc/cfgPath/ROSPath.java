@@ -1,7 +1,14 @@
 package apoc.cfgPath;
 
+import apoc.Pools;
 import apoc.algo.CFGShortestPath;
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.PathResultCache;
+import apoc.dataflow.SearchBudget;
+import apoc.path.FrontierExecutor;
 import apoc.util.Util;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.*;
@@ -22,9 +29,25 @@ public class ROSPath {
     @Context
     public Transaction tx;
 
+    @Context
+    public Pools pools;
+
+    // CFG checks of the current level computed by the worker threads, if any (see FrontierExecutor)
+    private FrontierExecutor<BasicCandidatePath> frontier;
+    private IdentityHashMap<BasicCandidatePath, long[]> checkedLevel;
+    // heap held by the queue and visited sets of the running search, {maxMemory, onMaxMemory} (see SearchBudget)
+    private SearchBudget budget = SearchBudget.none();
+
     @UserFunction
     @Description("apoc.cfgPath.rosFindPaths(start, [settings])")
     public List<Path> rosFindPaths(@Name("start") Object start, @Name("config") Map<String,Object> config) {
+        return DataflowStats.profiled("apoc.cfgPath.rosFindPaths", config,
+                () -> PathResultCache.getPaths(db, tx, "apoc.cfgPath.rosFindPaths", start, config,
+                        () -> findROSPaths(start, config)));
+    }
+
+    // helper function: parse the settings and run the search (uncached)
+    private List<Path> findROSPaths(Object start, Map<String,Object> config) {
         // configuration graph variables
         Node startNode = null;
         Relationship startEdge = null;
@@ -53,6 +76,10 @@ public class ROSPath {
         //    - config: describes how the source and destination CFG blocks relate to each other
         //          for a particular type of relation
         //    - isStartEdgeValid: is first edge consider a valid path (default: false)
+        //    - parallelism: number of threads running the CFG checks of each level (default: 1)
+        //    - maxMemory: bytes the search may hold before returning the paths found so far
+        //          (default: apoc.dataflow.search.max_memory)
+        //    - onMaxMemory: 'partial' returns the paths found so far, 'fail' fails the call (default: 'partial')
         boolean cfgCheck = Util.toBoolean(config.getOrDefault("cfg", true));
         String relSequence = (String) config.getOrDefault("relSeq", null);
         boolean repeat = Util.toBoolean(config.getOrDefault("repeat", false));
@@ -61,16 +88,23 @@ public class ROSPath {
         List<Map<String, Object>> cfgConfigurationList =
                 (List<Map<String,Object>>) config.getOrDefault("config", null);
         HashMap<String, CFGSetting> cfgConfig = parseCFGConfiguration(cfgConfigurationList);
-        RelExtension extension = new RelExtension(relSequence, repeat, backward);
+        RelAutomaton automaton = RelAutomaton.compile(relSequence, repeat, backward);
         HashSet<Label> acceptedNodes = filterNodes((String) config.getOrDefault("filter", null));
         boolean isStartEdgeValid = Util.toBoolean(config.getOrDefault("isStartEdgeValid", false));
+        frontier = new FrontierExecutor<>(pools, db, config, BasicCandidatePath::getPathSize);
 
-        if (backward) {
-            return findPath(endNode, startNode, endEdge, startEdge, cfgConfig, extension, allShortestPath, cfgCheck,
-                    acceptedNodes, backward, isStartEdgeValid);
-        } else {
-            return findPath(startNode, endNode, startEdge, endEdge, cfgConfig, extension, allShortestPath, cfgCheck,
-                    acceptedNodes, backward, isStartEdgeValid);
+        budget = SearchBudget.of(tx, config);
+        try {
+            if (backward) {
+                return findPath(endNode, startNode, endEdge, startEdge, cfgConfig, automaton, allShortestPath,
+                        cfgCheck, acceptedNodes, backward, isStartEdgeValid);
+            } else {
+                return findPath(startNode, endNode, startEdge, endEdge, cfgConfig, automaton, allShortestPath,
+                        cfgCheck, acceptedNodes, backward, isStartEdgeValid);
+            }
+        } finally {
+            budget.close();
+            budget = SearchBudget.none();
         }
 
 
@@ -79,27 +113,27 @@ public class ROSPath {
 
     // helper function: find path
     public List<Path> findPath(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
-                               HashMap<String, CFGSetting> cfgConfig, RelExtension extension,
+                               HashMap<String, CFGSetting> cfgConfig, RelAutomaton automaton,
                                boolean allShortestPath, boolean cfgCheck, HashSet<Label> acceptedNodes,
                                boolean backward, boolean isStartEdgeValid) {
 
         // variables
         List<BasicCandidatePath> returnPaths = new ArrayList<>();
-        HashSet<Relationship> visitedEdges = new HashSet<>();
-        Queue<BasicCandidatePath> queuePath = new LinkedList<>();
+        MutableLongSet visitedEdges = new LongHashSet();   // (edge, automaton state) pairs
+        Queue<BasicCandidatePath> queuePath =
+                budget.queue(path -> SearchBudget.sizeOf(BasicCandidatePath.SHALLOW_SIZE, path.getPathSize()));
         Node start = startNode;
         Node end = endNode;
-        ArrayList<ArrayList<RelationshipType>> curType;
         Iterable<Relationship> nextRels;
         BasicCandidatePath curPath = null;
 
         // Start edge not null, reassign start node with its ending node
         if (startEdge != null) {
             start = (backward) ? startEdge.getStartNode() : startEdge.getEndNode();
-            curPath = new BasicCandidatePath(startEdge, -1);
+            curPath = new BasicCandidatePath(startEdge, automaton.start());
             if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig, backward);} // update CFG related nodes
             queuePath.add(curPath);
-            if (allShortestPath) {visitedEdges.add(startEdge);} // update visited nodes
+            if (allShortestPath) {visitedEdges.add(automaton.key(startEdge, automaton.start()));} // update visited nodes
         }
 
         // End edge not null, reassign end node with its starting node
@@ -124,30 +158,25 @@ public class ROSPath {
         // If we don't have start edge, then attempt to get first edge in candidate path
         if (startEdge == null) {
 
-            // use relationship sequence 0
-            curType = extension.constructTypes(0);
-            int y = 0;
-
-            // For each possible sequences, find next possible candidates
-            for (ArrayList<RelationshipType> curT : curType) {
-                nextRels = start.getRelationships(Direction.OUTGOING,
-                        curT.toArray(RelationshipType[]::new));
-                for (Relationship nextRel : nextRels) {
-                    Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
-                    if ((acceptedNodes != null) &&
-                            (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
-                        continue;
-                    }
-
-                    // only create path if we are looking for all path or it is not in visited edges
-                    if ((!allShortestPath) || (!visitedEdges.contains(nextRel))) {
-                        curPath = new BasicCandidatePath(nextRel, y);
-                        if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig, backward);}
-                        queuePath.add(curPath);
-                    }
+            // use the types leaving the start state of the pattern
+            RelationshipType[] firstTypes = automaton.nextTypes(automaton.start());
+            nextRels = (firstTypes.length == 0) ? List.of() :
+                    DataflowStats.expanded(start.getRelationships(Direction.OUTGOING, firstTypes));
+            for (Relationship nextRel : nextRels) {
+                Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
+                if ((acceptedNodes != null) &&
+                        (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
+                    continue;
+                }
 
+                // only create path if we are looking for all path or it is not in visited edges
+                int state = automaton.step(automaton.start(), nextRel.getType());
+                if ((!allShortestPath) || (!visitedEdges.contains(automaton.key(nextRel, state)))) {
+                    curPath = new BasicCandidatePath(nextRel, state);
+                    if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig, backward);}
+                    queuePath.add(curPath);
                 }
-                y += 1;
+
             }
 
 
@@ -155,19 +184,27 @@ public class ROSPath {
 
         BasicCandidatePath foundCandidatePath = null;
         ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-        HashSet<Relationship> visitedEdge = new HashSet<>();
+        MutableLongSet visitedEdge = new LongHashSet();
 
         int pathLen = -1;
         boolean foundPath = false;
 
         // process each candidate path and verify that it is valid before proceeding the search
         while (!queuePath.isEmpty()) {
+            if (budget.isExceeded()) {
+                // over the memory budget, return the paths found so far
+                break;
+            }
+
+            DataflowStats.queued(queuePath.size());
             curPath = queuePath.remove();
 
             // If we already found something, check if we want to proceed by checking return edge
             // combinations
             if ((allShortestPath) && (foundCandidatePath != null)) {
+                int visitedBefore = visitedEdges.size();
                 visitedEdges.addAll(visitedEdge);
+                budget.allocate((visitedEdges.size() - visitedBefore) * SearchBudget.VISITED_KEY_SIZE);
                 if ((!curPath.compareRetNodes(foundCandidatePath))) {
                     continue;
                 } else {
@@ -185,8 +222,13 @@ public class ROSPath {
 
             if (allShortestPath && curLen > pathLen) {
                 // add all relationships found at previous path length to visitedRels
+                int visitedBefore = visitedEdges.size();
                 visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
+                budget.allocate((visitedEdges.size() - visitedBefore) * SearchBudget.VISITED_KEY_SIZE);
+                visitedEdge = new LongHashSet();
+            }
+            if (cfgCheck && curLen > pathLen && (frontier != null) && frontier.isParallel()) {
+                checkedLevel = checkLevel(curPath, queuePath, cfgConfig, backward);
             }
             pathLen = curLen;
 
@@ -194,13 +236,13 @@ public class ROSPath {
             if ((!cfgCheck) || getCFGPath(curPath, cfgConfig, backward)) {
 
                 // Only add to visitedEdges if we are looking for shortest path
-                if (allShortestPath) {visitedEdge.add(curPath.getLastEdge()); }
+                if (allShortestPath) {visitedEdge.add(automaton.key(curPath.getLastEdge(), curPath.getPathIndex())); }
 
                 // Add to return path only if the following conditions are met:
                 //      - Matches last edge type of relationship
                 //      - If has end node/end edge, also needs to match that
                 Node compNode = backward ? curPath.getLastEdge().getStartNode() : curPath.getLastEdge().getEndNode();
-                if ((extension.isEndIndex(curPath.getPathIndex())) &&
+                if ((automaton.isAccepting(curPath.getPathIndex())) &&
                         ((end == null) || (compNode.equals(end)))) {
                     // need to also pass CFG test if there is an end edge
                     if (endEdge != null) {
@@ -227,37 +269,32 @@ public class ROSPath {
                     }
                 }
 
-                // Attempt to get next possible edge
-                int index = extension.nextIndex(curPath.getLastEdge().getType(), curPath.getPathIndex());
-                if (index <= extension.lastIndex) {
-                    curType = extension.constructTypes(index);
-                    int i = 0;
-                    for (ArrayList<RelationshipType> curT : curType) {
-                        Node curNode = backward ? curPath.getLastEdge().getStartNode() :
-                                curPath.getLastEdge().getEndNode();
-                        Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
-                        nextRels = curNode.getRelationships(dir,
-                                curT.toArray(RelationshipType[]::new));
-                        for (Relationship nextRel : nextRels) {
-                            Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
-                            if ((acceptedNodes != null) &&
-                                    (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
-                                continue;
-                            }
-
-                            // add to candidate path if only the following conditions are met
-                            //      - if all shortestPath: visited edge does not contain nextRel
-                            //      - if look for all path, then current path does not contain nextRel
-                            boolean addPath = ((allShortestPath) && (!visitedEdges.contains(nextRel))) ||
-                                    ((!allShortestPath) && (!curPath.getPath().contains(nextRel)));
+                // Attempt to get next possible edge, the automaton state decides which types may follow
+                RelationshipType[] nextTypes = automaton.nextTypes(curPath.getPathIndex());
+                if (nextTypes.length > 0) {
+                    Node curNode = backward ? curPath.getLastEdge().getStartNode() :
+                            curPath.getLastEdge().getEndNode();
+                    Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
+                    nextRels = DataflowStats.expanded(curNode.getRelationships(dir, nextTypes));
+                    for (Relationship nextRel : nextRels) {
+                        Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
+                        if ((acceptedNodes != null) &&
+                                (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
+                            continue;
+                        }
 
-                            if (addPath) {
-                                BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
-                                        index+i, backward);
-                                queuePath.add(newCandidatePath);
-                            }
+                        // add to candidate path if only the following conditions are met
+                        //      - if all shortestPath: edge was not visited in the same automaton state
+                        //      - if look for all path, then current path does not contain nextRel
+                        int state = automaton.step(curPath.getPathIndex(), nextRel.getType());
+                        boolean addPath = ((allShortestPath) && (!visitedEdges.contains(automaton.key(nextRel, state)))) ||
+                                ((!allShortestPath) && (!curPath.getPath().contains(nextRel)));
+
+                        if (addPath) {
+                            BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
+                                    state, backward);
+                            queuePath.add(newCandidatePath);
                         }
-                        i += 1;
                     }
 
                 }
@@ -281,7 +318,7 @@ public class ROSPath {
 
     // helper function: adding destination CFG nodes to first edge in path
     private void updateFirstCFGNodes(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(path.getLastEdge(), config);
+        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(db, tx, path.getLastEdge(), config);
         HashSet<Node> endNodes = new HashSet<>();
         for (List<Node> endCFG : endCFGs) {
             endNodes.add(backward ? endCFG.get(0) : endCFG.get(1));
@@ -322,18 +359,53 @@ public class ROSPath {
 
     }
 
+    public boolean getCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
+        return DataflowStats.cfgCheck(() -> computeCFGPath(path, config, backward));
+    }
+
     // helper function: get CFG nodes for last edge in path, and check if it is connected to CFG node up
     //      to second last edge in path
-    public boolean getCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
+    private boolean computeCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
         // in case there is only one edge in path, then the cfg path always passes
         if (path.getPathSize() < 2) {
             return true;
         }
 
+        // take the result of the workers if they already checked the path
+        long[] acceptedIds = (checkedLevel == null) ? null : checkedLevel.get(path);
+        if (acceptedIds != null) {
+            path.setValidCFGs(FrontierExecutor.toNodes(tx, acceptedIds, 0));
+            return acceptedIds.length > 0;
+        }
+
         // get last edge and the CFG node related to the second last edge
         Relationship condEdge = (backward) ? path.getSecondLastEdge() : path.getLastEdge();
-        Relationship lastEdge = path.getLastEdge();
-        HashSet<Node> prevCFGs = path.getValidCFGs(); // nodes of subpath
+        HashSet<Node> acceptedNewCFG = acceptedCFGs(db, tx, path.getValidCFGs(), condEdge, path.getLastEdge(),
+                config, backward);
+
+        // update the accepted CFG nodes in path and return whether or not CFG test passes
+        path.setValidCFGs(acceptedNewCFG);
+        return !acceptedNewCFG.isEmpty();
+
+    }
+
+    // helper function: run the CFG checks of the level starting with curPath on the worker threads
+    private IdentityHashMap<BasicCandidatePath, long[]> checkLevel(BasicCandidatePath curPath,
+                                                                   Queue<BasicCandidatePath> queuePath,
+                                                                   HashMap<String, CFGSetting> config,
+                                                                   boolean backward) {
+        return frontier.checkLevel(curPath, queuePath,
+                path -> (path.getPathSize() < 2) ? null : FrontierExecutor.toIds(path.getValidCFGs(),
+                        (backward) ? path.getSecondLastEdge() : path.getLastEdge(), path.getLastEdge()),
+                (workerTx, ids) -> FrontierExecutor.toIds(acceptedCFGs(db, workerTx,
+                        FrontierExecutor.toNodes(workerTx, ids, 2), workerTx.getRelationshipById(ids[0]),
+                        workerTx.getRelationshipById(ids[1]), config, backward)));
+    }
+
+    // helper function: CFG nodes of lastEdge that are connected to one of prevCFGs (nodes of the subpath)
+    private static HashSet<Node> acceptedCFGs(GraphDatabaseService db, Transaction tx, Set<Node> prevCFGs,
+                                              Relationship condEdge, Relationship lastEdge,
+                                              HashMap<String, CFGSetting> config, boolean backward) {
 
         // create CFG shortest path object
         CFGShortestPath shortestPath = new CFGShortestPath(
@@ -342,7 +414,7 @@ public class ROSPath {
                 CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
 
         // get the corresponding CFG node for last edge in path
-        HashSet<List<Node>> curCFGs = CFGValidationHelper.getConnectionNodesAll(lastEdge, config); // nodes of new edge
+        HashSet<List<Node>> curCFGs = CFGValidationHelper.getConnectionNodesAll(db, tx, lastEdge, config); // nodes of new edge
         HashSet<Node> acceptedNewCFG = new HashSet<>();
 
         // attempt to find a directed path between CFG nodes from path up to second last edge to last edge
@@ -358,9 +430,7 @@ public class ROSPath {
             }
         }
 
-        // update the accepted CFG nodes in path and return whether or not CFG test passes
-        path.setValidCFGs(acceptedNewCFG);
-        return !acceptedNewCFG.isEmpty();
+        return acceptedNewCFG;
 
     }
 
@@ -0,0 +1,189 @@
+package apoc.cfgPath;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+// Deterministic automaton of a relSeq pattern, compiled once per (pattern, repeat, backward) and shared by all calls
+//      - a state is the set of RelExtension indexes the next edge may match, built by subset construction over the
+//        constructTypes / nextIndex rules (|, * and + groups, repeat loops back to the first group)
+//      - relationship types are numbered per pattern, the transition table and the types to expand from every state
+//        are precomputed, so stepping an edge is one map lookup and one array read
+//      - a state is accepting if the last edge matched a valid terminating index (RelExtension.isEndIndex), the
+//        start state is accepting if the pattern matches the empty sequence
+public class RelAutomaton {
+
+    public static final int DEAD = -1;
+
+    // more states than this means the pattern is not a sensible relSeq
+    private static final int MAX_STATES = 4096;
+
+    private static final Cache<String, RelAutomaton> automata = CacheBuilder.newBuilder()
+            .maximumSize(256)
+            .build();
+
+    private final HashMap<String, Integer> symbols = new HashMap<>();       // type name -> symbol
+    private final int[][] transitions;                                      // [state][symbol] -> state or DEAD
+    private final boolean[] accepting;
+    private final RelationshipType[][] nextTypes;                           // [state] -> types with a transition
+
+    private RelAutomaton(RelExtension extension) {
+        int groups = extension.relSequence.size();
+
+        // number the relationship types of the pattern
+        List<RelationshipType> types = new ArrayList<>();
+        for (RelExtension.RelationSequence relSeq : extension.relSequence) {
+            for (RelationshipType type : relSeq.relationType) {
+                if (!symbols.containsKey(type.name())) {
+                    symbols.put(type.name(), types.size());
+                    types.add(type);
+                }
+            }
+        }
+
+        // a state is encoded as the bit set of its indexes, bit `groups` marks it accepting
+        List<BitSet> states = new ArrayList<>();
+        HashMap<BitSet, Integer> stateIds = new HashMap<>();
+        List<int[]> table = new ArrayList<>();
+
+        BitSet start = new BitSet(groups + 1);
+        if (groups > 0) {
+            start.set(0);
+        }
+        if (extension.termIndexStart == -1) {
+            start.set(groups);
+        }
+        states.add(start);
+        stateIds.put(start, 0);
+
+        for (int s = 0; s < states.size(); s++) {
+            BitSet state = states.get(s);
+            int[] row = new int[types.size()];
+
+            for (int symbol = 0; symbol < types.size(); symbol++) {
+                BitSet next = step(extension, state, types.get(symbol));
+                if (next == null) {
+                    row[symbol] = DEAD;
+                    continue;
+                }
+
+                Integer id = stateIds.get(next);
+                if (id == null) {
+                    if (states.size() >= MAX_STATES) {
+                        throw new IllegalArgumentException("relSeq pattern has too many states: " +
+                                extension.relSequence.size() + " groups");
+                    }
+                    id = states.size();
+                    states.add(next);
+                    stateIds.put(next, id);
+                }
+                row[symbol] = id;
+            }
+            table.add(row);
+        }
+
+        this.transitions = table.toArray(new int[0][]);
+        this.accepting = new boolean[states.size()];
+        this.nextTypes = new RelationshipType[states.size()][];
+        for (int s = 0; s < states.size(); s++) {
+            accepting[s] = states.get(s).get(groups);
+            List<RelationshipType> out = new ArrayList<>();
+            for (int symbol = 0; symbol < types.size(); symbol++) {
+                if (transitions[s][symbol] != DEAD) {
+                    out.add(types.get(symbol));
+                }
+            }
+            nextTypes[s] = out.toArray(RelationshipType[]::new);
+        }
+    }
+
+    // return the shared automaton of the pattern, compiling it on first use
+    public static RelAutomaton compile(String pattern, boolean loopBack, boolean backward) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("relSeq pattern is required");
+        }
+
+        String key = pattern + '\u0000' + loopBack + '\u0000' + backward;
+        try {
+            return automata.get(key, () -> new RelAutomaton(new RelExtension(pattern, loopBack, backward)));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error compiling relSeq pattern " + pattern, e.getCause());
+        }
+    }
+
+    public int start() {
+        return 0;
+    }
+
+    public int stateCount() {
+        return transitions.length;
+    }
+
+    // state after an edge of type, DEAD if the pattern does not accept it
+    public int step(int state, RelationshipType type) {
+        Integer symbol = symbols.get(type.name());
+        return (symbol == null) ? DEAD : transitions[state][symbol];
+    }
+
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    // relationship types that lead out of state, empty if the path cannot be extended
+    public RelationshipType[] nextTypes(int state) {
+        return nextTypes[state];
+    }
+
+    // key of an edge reached in a state, for visited sets over the (edge, state) product graph
+    public long key(Relationship rel, int state) {
+        return rel.getId() * transitions.length + state;
+    }
+
+    // helper function: indexes reachable after an edge of type from the indexes of state, null if none matches
+    private static BitSet step(RelExtension extension, BitSet state, RelationshipType type) {
+        int groups = extension.relSequence.size();
+        BitSet next = new BitSet(groups + 1);
+        boolean matched = false;
+
+        for (int index = state.nextSetBit(0); (index >= 0) && (index < groups); index = state.nextSetBit(index + 1)) {
+
+            // same groups as constructTypes(index): the repeated groups from index on and the first single one
+            int cur = index;
+            for (int seen = 0; seen < groups; seen++) {
+                RelExtension.RelationSequence relSeq = extension.relSequence.get(cur);
+
+                if (relSeq.relationType.contains(type)) {
+                    matched = true;
+                    if (extension.isEndIndex(cur)) {
+                        next.set(groups);
+                    }
+
+                    // same index as nextIndex(type, cur)
+                    int after = (relSeq.repeat) ? cur : ((extension.loopBack) && (cur == extension.lastIndex)) ?
+                            0 : cur + 1;
+                    if (after <= extension.lastIndex) {
+                        next.set(after);
+                    }
+                }
+
+                if (!relSeq.repeat) {
+                    break;
+                }
+                cur += 1;
+                if (cur > extension.lastIndex) {
+                    if (!extension.loopBack) {
+                        break;
+                    }
+                    cur = 0;
+                }
+            }
+        }
+
+        return (matched) ? next : null;
+    }
+
+}
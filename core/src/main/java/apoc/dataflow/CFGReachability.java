@@ -0,0 +1,151 @@
+package apoc.dataflow;
+
+import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.UserFunction;
+import org.neo4j.storageengine.api.TransactionIdStore;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Procedures and helpers answering "can CFG block a reach CFG block b" through a prebuilt
+// CFGReachabilityIndex (one per database), falling back to a nextCFGBlock> traversal whenever
+// the index is missing, stale (graph committed since build) or does not cover the nodes
+public class CFGReachability {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    private static final Map<String, CFGReachabilityIndex> indexes = new ConcurrentHashMap<>();
+    private static final Map<GraphDatabaseService, TransactionIdStore> txIdStores = new WeakHashMap<>();
+
+    public static class IndexInfo {
+        public String database;
+        public boolean exists;
+        public boolean stale;
+        public long nodes;
+        public long relationships;
+        public long components;
+        public long intervals;
+        public long lastTxId;
+        public long buildMillis;
+
+        public IndexInfo(String database, CFGReachabilityIndex index, long currentTxId) {
+            this.database = database;
+            this.exists = (index != null);
+            if (index != null) {
+                this.stale = (index.getLastTxId() != currentTxId);
+                this.nodes = index.getNodeCount();
+                this.relationships = index.getRelationshipCount();
+                this.components = index.getComponentCount();
+                this.intervals = index.getIntervalCount();
+                this.lastTxId = index.getLastTxId();
+                this.buildMillis = index.getBuildMillis();
+            }
+        }
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.buildReachabilityIndex() - build (or rebuild) the nextCFGBlock reachability index used by CFG checks")
+    public Stream<IndexInfo> buildReachabilityIndex() {
+        long txId = lastCommittedTxId(db);
+        CFGReachabilityIndex index = CFGReachabilityIndex.build(tx, txId);
+        indexes.put(db.databaseName(), index);
+        return Stream.of(new IndexInfo(db.databaseName(), index, txId));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.dropReachabilityIndex() - drop the nextCFGBlock reachability index of the current database")
+    public Stream<IndexInfo> dropReachabilityIndex() {
+        CFGReachabilityIndex index = indexes.remove(db.databaseName());
+        return Stream.of(new IndexInfo(db.databaseName(), index, lastCommittedTxId(db)));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.reachabilityIndexInfo() - statistics of the nextCFGBlock reachability index of the current database")
+    public Stream<IndexInfo> reachabilityIndexInfo() {
+        return Stream.of(new IndexInfo(db.databaseName(), indexes.get(db.databaseName()), lastCommittedTxId(db)));
+    }
+
+    @UserFunction
+    @Description("apoc.dataflow.cfgReachable(startCFG, endCFG) - true if endCFG can be reached from startCFG over nextCFGBlock")
+    public boolean cfgReachable(@Name("startCFG") Node startCFG, @Name("endCFG") Node endCFG) {
+        return isReachable(db, tx, startCFG, endCFG);
+    }
+
+    // check whether or not endCFG can be reached from startCFG over nextCFGBlock> relationships
+    // return: answer of the index if usable, otherwise the result of a shortest path traversal
+    public static boolean isReachable(GraphDatabaseService db, Transaction tx, Node startCFG, Node endCFG) {
+        Boolean indexed = lookup(db, startCFG, endCFG);
+        if (indexed != null) {
+            return indexed;
+        }
+
+        PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
+                new BasicEvaluationContext(tx, db),
+                DataflowHelper.buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
+        );
+        return (algo.findSinglePath(startCFG, endCFG) != null);
+    }
+
+    // check whether or not endCFG may be reached from startCFG, used to skip filtered CFG searches early
+    // return: false only if the index proves that no nextCFGBlock> path exists
+    public static boolean mayReach(GraphDatabaseService db, Node startCFG, Node endCFG) {
+        Boolean indexed = lookup(db, startCFG, endCFG);
+        return (indexed == null) || indexed;
+    }
+
+    // helper function: query the index of the database
+    // return: TRUE / FALSE, or null if the index cannot answer
+    private static Boolean lookup(GraphDatabaseService db, Node startCFG, Node endCFG) {
+        if (db == null || indexes.isEmpty()) {
+            return null;
+        }
+
+        CFGReachabilityIndex index = indexes.get(db.databaseName());
+        if (index == null || index.getLastTxId() != lastCommittedTxId(db)) {
+            return null;
+        }
+
+        return index.reachable(startCFG.getId(), endCFG.getId());
+    }
+
+    public static CFGReachabilityIndex getIndex(String databaseName) {
+        return indexes.get(databaseName);
+    }
+
+    // swap in an updated index, unless it was dropped or rebuilt meanwhile
+    static boolean replaceIndex(String databaseName, CFGReachabilityIndex current, CFGReachabilityIndex updated) {
+        return indexes.replace(databaseName, current, updated);
+    }
+
+    // the store is resolved once per database instance, every lookup checks the index against it
+    public static long lastCommittedTxId(GraphDatabaseService db) {
+        return txIdStore(db).getLastCommittedTransactionId();
+    }
+
+    // helper function: transaction id store of the database, also identifies the running database instance
+    static TransactionIdStore txIdStore(GraphDatabaseService db) {
+        synchronized (txIdStores) {
+            return txIdStores.computeIfAbsent(db, key -> ((GraphDatabaseAPI) key).getDependencyResolver()
+                    .resolveDependency(TransactionIdStore.class));
+        }
+    }
+
+}
@@ -0,0 +1,503 @@
+package apoc.dataflow;
+
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// Reachability index over the nextCFGBlock subgraph
+//      - strongly connected components are collapsed into a single DAG vertex (Tarjan)
+//      - every DAG vertex gets a post-order number from a spanning forest, and a sorted list of
+//        post-order intervals covering every vertex it can reach (tree cover labeling)
+//      - "can a reach b" becomes a binary search of post(b) in the intervals of a
+//      - inserted edges are applied without a rebuild (withEdges): new nodes get a fresh post-order number, and the
+//        intervals of the new target are merged into every component reaching the new source; deleted edges
+//        cannot be applied this way and need a rebuild
+public class CFGReachabilityIndex {
+
+    public static final String CFG_EDGES_QUERY =
+            "MATCH (a)-[:nextCFGBlock]->(b) RETURN id(a) AS src, id(b) AS dst";
+
+    private final LongIntHashMap nodeIndex;     // node id -> dense index
+    private final long[] nodeIds;               // dense index -> node id
+    private final int[] component;              // dense index -> SCC id
+    private final int[] post;                   // SCC id -> post-order number
+    private final int[][] intervals;            // SCC id -> flattened [start, end] pairs
+    private final int[][] predecessors;         // CSR [offsets, sources] of the DAG at build time
+    private final IntObjectHashMap<IntArrayList> addedPredecessors;     // SCC id -> sources of inserted edges
+    private final long relationshipCount;
+    private final long lastTxId;
+    private final long buildMillis;
+
+    private CFGReachabilityIndex(LongIntHashMap nodeIndex, long[] nodeIds, int[] component, int[] post,
+                                 int[][] intervals, int[][] predecessors,
+                                 IntObjectHashMap<IntArrayList> addedPredecessors, long relationshipCount,
+                                 long lastTxId, long buildMillis) {
+        this.nodeIndex = nodeIndex;
+        this.nodeIds = nodeIds;
+        this.component = component;
+        this.post = post;
+        this.intervals = intervals;
+        this.predecessors = predecessors;
+        this.addedPredecessors = addedPredecessors;
+        this.relationshipCount = relationshipCount;
+        this.lastTxId = lastTxId;
+        this.buildMillis = buildMillis;
+    }
+
+    // build index from all nextCFGBlock relationships visible in the given transaction
+    public static CFGReachabilityIndex build(Transaction tx, long lastTxId) {
+        long start = System.currentTimeMillis();
+
+        LongIntHashMap nodeIndex = new LongIntHashMap();
+        LongArrayList nodeIds = new LongArrayList();
+        IntArrayList srcs = new IntArrayList();
+        IntArrayList dsts = new IntArrayList();
+
+        try (Result result = tx.execute(CFG_EDGES_QUERY)) {
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                srcs.add(denseIndex(nodeIndex, nodeIds, (Long) row.get("src")));
+                dsts.add(denseIndex(nodeIndex, nodeIds, (Long) row.get("dst")));
+            }
+        }
+
+        int n = nodeIds.size();
+        int[][] csr = toCSR(n, srcs.toArray(), dsts.toArray());
+        int[] component = new int[n];
+        int componentCount = tarjan(n, csr[0], csr[1], component);
+        int[][] dag = condense(n, csr[0], csr[1], component, componentCount);
+        int[] low = new int[componentCount];
+        int[] post = postOrder(componentCount, dag[0], dag[1], low);
+        int[][] intervals = label(componentCount, dag[0], dag[1], low, post);
+        int[][] predecessors = reverse(componentCount, dag[0], dag[1]);
+
+        return new CFGReachabilityIndex(nodeIndex, nodeIds.toArray(), component, post, intervals, predecessors,
+                new IntObjectHashMap<>(), srcs.size(), lastTxId, System.currentTimeMillis() - start);
+    }
+
+    // index of the store after inserting the nextCFGBlock edges srcIds[i] -> dstIds[i], as of transaction lastTxId
+    //      - this index stays usable by concurrent readers, only the changed arrays are copied
+    //      - the inserted predecessors are shared with the returned index, updates must be applied by one thread
+    public CFGReachabilityIndex withEdges(long[] srcIds, long[] dstIds, long lastTxId) {
+        if (srcIds.length == 0) {
+            return new CFGReachabilityIndex(nodeIndex, nodeIds, component, post, intervals, predecessors,
+                    addedPredecessors, relationshipCount, lastTxId, buildMillis);
+        }
+
+        // new nodes become singleton components with the next post-order numbers
+        LongIntHashMap newNodeIndex = nodeIndex;
+        LongArrayList newNodeIds = null;
+        IntArrayList newPost = null;
+        for (long nodeId : concat(srcIds, dstIds)) {
+            if (!newNodeIndex.containsKey(nodeId)) {
+                if (newNodeIds == null) {
+                    newNodeIndex = new LongIntHashMap(nodeIndex);
+                    newNodeIds = new LongArrayList(nodeIds.length + 1);
+                    newNodeIds.addAll(nodeIds);
+                    newPost = new IntArrayList(post.length + 1);
+                    newPost.addAll(post);
+                }
+                newNodeIndex.put(nodeId, newNodeIds.size());
+                newNodeIds.add(nodeId);
+                newPost.add(newPost.size());
+            }
+        }
+
+        long[] updatedNodeIds = (newNodeIds == null) ? nodeIds : newNodeIds.toArray();
+        int[] updatedComponent = component;
+        int[] updatedPost = (newPost == null) ? post : newPost.toArray();
+        int[][] updatedIntervals = Arrays.copyOf(intervals, updatedPost.length);
+        if (newNodeIds != null) {
+            updatedComponent = Arrays.copyOf(component, updatedNodeIds.length);
+            for (int v = nodeIds.length; v < updatedNodeIds.length; v++) {
+                int c = post.length + (v - nodeIds.length);
+                updatedComponent[v] = c;
+                updatedIntervals[c] = new int[] {updatedPost[c], updatedPost[c]};
+            }
+        }
+
+        for (int i = 0; i < srcIds.length; i++) {
+            int src = updatedComponent[newNodeIndex.get(srcIds[i])];
+            int dst = updatedComponent[newNodeIndex.get(dstIds[i])];
+            if ((src == dst) || contains(updatedIntervals[src], updatedPost[dst])) {
+                continue;
+            }
+
+            addedPredecessors.getIfAbsentPut(dst, IntArrayList::new).add(src);
+            propagate(src, updatedIntervals[dst], updatedIntervals);
+        }
+
+        return new CFGReachabilityIndex(newNodeIndex, updatedNodeIds, updatedComponent, updatedPost,
+                updatedIntervals, predecessors, addedPredecessors, relationshipCount + srcIds.length, lastTxId,
+                buildMillis);
+    }
+
+    // helper function: merge reached into the intervals of src and every component reaching it
+    //      labels are exact, so a component already covering reached covers it for all of its predecessors too
+    private void propagate(int src, int[] reached, int[][] intervals) {
+        IntHashSet visited = new IntHashSet();
+        IntArrayList stack = new IntArrayList();
+        stack.add(src);
+        visited.add(src);
+
+        while (!stack.isEmpty()) {
+            int c = stack.removeAtIndex(stack.size() - 1);
+            if (covers(intervals[c], reached)) {
+                continue;
+            }
+
+            long[] packed = new long[(intervals[c].length + reached.length) / 2];
+            int k = 0;
+            for (int[] pairs : new int[][] {intervals[c], reached}) {
+                for (int i = 0; i < pairs.length; i += 2) {
+                    packed[k++] = ((long) pairs[i] << 32) | pairs[i + 1];
+                }
+            }
+            intervals[c] = merge(packed);
+
+            if (c < predecessors[0].length - 1) {
+                for (int e = predecessors[0][c]; e < predecessors[0][c + 1]; e++) {
+                    if (visited.add(predecessors[1][e])) {
+                        stack.add(predecessors[1][e]);
+                    }
+                }
+            }
+            IntArrayList added = addedPredecessors.get(c);
+            if (added != null) {
+                for (int p : added.toArray()) {
+                    if (visited.add(p)) {
+                        stack.add(p);
+                    }
+                }
+            }
+        }
+    }
+
+    // helper function: whether every [start, end] pair of reached lies inside the intervals
+    private static boolean covers(int[] intervals, int[] reached) {
+        for (int i = 0; i < reached.length; i += 2) {
+            int lo = 0;
+            int hi = (intervals.length / 2) - 1;
+            boolean covered = false;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (reached[i] < intervals[2 * mid]) {
+                    hi = mid - 1;
+                } else if (reached[i] > intervals[2 * mid + 1]) {
+                    lo = mid + 1;
+                } else {
+                    covered = (reached[i + 1] <= intervals[2 * mid + 1]);
+                    break;
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] ids = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, ids, first.length, second.length);
+        return ids;
+    }
+
+    // helper function: reversed CSR adjacency, returns [offsets, sources]
+    private static int[][] reverse(int n, int[] offsets, int[] targets) {
+        int[] srcs = new int[targets.length];
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                srcs[e] = v;
+            }
+        }
+        return toCSR(n, targets, srcs);
+    }
+
+    private static int denseIndex(LongIntHashMap nodeIndex, LongArrayList nodeIds, long nodeId) {
+        int index = nodeIndex.getIfAbsent(nodeId, -1);
+        if (index == -1) {
+            index = nodeIds.size();
+            nodeIndex.put(nodeId, index);
+            nodeIds.add(nodeId);
+        }
+        return index;
+    }
+
+    // helper function: compressed sparse row adjacency, returns [offsets, targets]
+    private static int[][] toCSR(int n, int[] srcs, int[] dsts) {
+        int[] offsets = new int[n + 1];
+        for (int src : srcs) {
+            offsets[src + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] targets = new int[srcs.length];
+        for (int i = 0; i < srcs.length; i++) {
+            targets[fill[srcs[i]]++] = dsts[i];
+        }
+        return new int[][] {offsets, targets};
+    }
+
+    // helper function: iterative Tarjan, components are numbered in reverse topological order
+    //      (a component is completed only after every component reachable from it)
+    private static int tarjan(int n, int[] offsets, int[] targets, int[] component) {
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        int[] edgePos = new int[n];
+        Arrays.fill(index, -1);
+
+        int nextIndex = 0;
+        int stackSize = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+
+            int depth = 0;
+            callStack[depth] = root;
+            edgePos[root] = offsets[root];
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callStack[depth];
+                if (edgePos[v] < offsets[v + 1]) {
+                    int w = targets[edgePos[v]++];
+                    if (index[w] == -1) {
+                        index[w] = lowLink[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        edgePos[w] = offsets[w];
+                        callStack[++depth] = w;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                } else {
+                    if (lowLink[v] == index[v]) {
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component[w] = componentCount;
+                        } while (w != v);
+                        componentCount++;
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = callStack[depth];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                }
+            }
+        }
+
+        return componentCount;
+    }
+
+    // helper function: deduplicated edges between components, returns CSR [offsets, targets]
+    private static int[][] condense(int n, int[] offsets, int[] targets, int[] component, int componentCount) {
+        MutableLongSet seen = new LongHashSet();
+        IntArrayList srcs = new IntArrayList();
+        IntArrayList dsts = new IntArrayList();
+
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int cv = component[v];
+                int cw = component[targets[e]];
+                if ((cv != cw) && seen.add(((long) cv << 32) | cw)) {
+                    srcs.add(cv);
+                    dsts.add(cw);
+                }
+            }
+        }
+
+        return toCSR(componentCount, srcs.toArray(), dsts.toArray());
+    }
+
+    // helper function: post-order numbering of a spanning forest of the DAG
+    //      low[c] is the smallest post-order number inside the spanning subtree of c
+    private static int[] postOrder(int componentCount, int[] offsets, int[] targets, int[] low) {
+        int[] post = new int[componentCount];
+        int[] inDegree = new int[componentCount];
+        boolean[] visited = new boolean[componentCount];
+        int[] callStack = new int[componentCount];
+        int[] edgePos = new int[componentCount];
+
+        for (int target : targets) {
+            inDegree[target]++;
+        }
+
+        int counter = 0;
+        for (int root = 0; root < componentCount; root++) {
+            if (inDegree[root] != 0 || visited[root]) {
+                continue;
+            }
+
+            int depth = 0;
+            callStack[0] = root;
+            visited[root] = true;
+            edgePos[root] = offsets[root];
+            low[root] = counter;
+
+            while (depth >= 0) {
+                int c = callStack[depth];
+                if (edgePos[c] < offsets[c + 1]) {
+                    int next = targets[edgePos[c]++];
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        edgePos[next] = offsets[next];
+                        low[next] = counter;
+                        callStack[++depth] = next;
+                    }
+                } else {
+                    post[c] = counter++;
+                    depth--;
+                }
+            }
+        }
+
+        return post;
+    }
+
+    // helper function: merge the tree interval of each component with the intervals of its successors
+    //      components are processed in Tarjan order, so successors are always labeled first
+    private static int[][] label(int componentCount, int[] offsets, int[] targets, int[] low, int[] post) {
+        int[][] intervals = new int[componentCount][];
+
+        for (int c = 0; c < componentCount; c++) {
+            int size = 2;
+            for (int e = offsets[c]; e < offsets[c + 1]; e++) {
+                size += intervals[targets[e]].length;
+            }
+
+            long[] packed = new long[size / 2];
+            int k = 0;
+            packed[k++] = ((long) low[c] << 32) | post[c];
+            for (int e = offsets[c]; e < offsets[c + 1]; e++) {
+                int[] childIntervals = intervals[targets[e]];
+                for (int i = 0; i < childIntervals.length; i += 2) {
+                    packed[k++] = ((long) childIntervals[i] << 32) | childIntervals[i + 1];
+                }
+            }
+
+            intervals[c] = merge(packed);
+        }
+
+        return intervals;
+    }
+
+    // helper function: sort and merge overlapping or adjacent intervals (post-order numbers are non-negative)
+    private static int[] merge(long[] packed) {
+        Arrays.sort(packed);
+        IntArrayList merged = new IntArrayList(packed.length * 2);
+        int curStart = (int) (packed[0] >>> 32);
+        int curEnd = (int) packed[0];
+
+        for (int i = 1; i < packed.length; i++) {
+            int start = (int) (packed[i] >>> 32);
+            int end = (int) packed[i];
+            if (start <= curEnd + 1) {
+                curEnd = Math.max(curEnd, end);
+            } else {
+                merged.add(curStart);
+                merged.add(curEnd);
+                curStart = start;
+                curEnd = end;
+            }
+        }
+        merged.add(curStart);
+        merged.add(curEnd);
+
+        return merged.toArray();
+    }
+
+    // check whether or not there is a nextCFGBlock path from src to dst
+    // return: TRUE / FALSE, or null if one of the nodes is not covered by the index
+    public Boolean reachable(long srcId, long dstId) {
+        if (srcId == dstId) {
+            return Boolean.TRUE;
+        }
+
+        int src = nodeIndex.getIfAbsent(srcId, -1);
+        int dst = nodeIndex.getIfAbsent(dstId, -1);
+        if ((src == -1) || (dst == -1)) {
+            return null;
+        }
+
+        int srcComponent = component[src];
+        int dstComponent = component[dst];
+        if (srcComponent == dstComponent) {
+            return Boolean.TRUE;
+        }
+
+        return contains(intervals[srcComponent], post[dstComponent]);
+    }
+
+    // helper function: binary search over sorted, disjoint [start, end] pairs
+    private static boolean contains(int[] intervals, int value) {
+        int lo = 0;
+        int hi = (intervals.length / 2) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (value < intervals[2 * mid]) {
+                hi = mid - 1;
+            } else if (value > intervals[2 * mid + 1]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(long nodeId) {
+        return nodeIndex.containsKey(nodeId);
+    }
+
+    public long getNodeCount() {
+        return nodeIds.length;
+    }
+
+    public long getRelationshipCount() {
+        return relationshipCount;
+    }
+
+    public long getComponentCount() {
+        return post.length;
+    }
+
+    public long getIntervalCount() {
+        long count = 0;
+        for (int[] componentIntervals : intervals) {
+            count += componentIntervals.length / 2;
+        }
+        return count;
+    }
+
+    public long getLastTxId() {
+        return lastTxId;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+}
@@ -0,0 +1,160 @@
+package apoc.dataflow;
+
+import apoc.util.Util;
+import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.UserFunction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact encoding of the path lists returned by the dataflow functions
+//      - the distinct nodes and relationships of all paths are returned once, the paths only refer to their ids
+//      - {encoding: 'tree'} (default) merges the paths into a prefix tree of parallel node / rel / parent lists,
+//        the root entries are the start nodes (rel -1, parent -1), a path is the entry it ends at followed up
+//        to its root, so shared prefixes are sent once
+//      - {encoding: 'ids'} returns every path as its start node id and the list of its relationship ids
+//      - {entities: false} leaves out the nodes and relationships, for clients that only need the ids
+public class CompactPaths {
+
+    public static final int ROOT = -1;
+
+    @UserFunction
+    @Description("apoc.dataflow.compactPaths(paths, {encoding:'tree', entities:true}) - the distinct nodes and relationships of paths once, and the paths as a prefix tree ('tree') or lists of relationship ids ('ids')")
+    public Map<String, Object> compactPaths(@Name("paths") List<Path> paths,
+                                            @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        String encoding = config.getOrDefault("encoding", "tree").toString();
+        boolean entities = Util.toBoolean(config.getOrDefault("entities", true));
+        if (paths == null) {
+            paths = List.of();
+        }
+
+        Map<String, Object> compact = new LinkedHashMap<>();
+        if (encoding.equalsIgnoreCase("tree")) {
+            IntArrayList ends = new IntArrayList(paths.size());
+            compact.put("tree", tree(paths, ends));
+            compact.put("paths", toList(ends));
+        } else if (encoding.equalsIgnoreCase("ids")) {
+            compact.putAll(ids(paths));
+        } else {
+            throw new IllegalArgumentException("Unknown encoding '" + encoding + "', expected 'tree' or 'ids'");
+        }
+
+        if (entities) {
+            compact.put("nodes", distinctNodes(paths));
+            compact.put("relationships", distinctRelationships(paths));
+        }
+        compact.put("pathCount", paths.size());
+        return compact;
+    }
+
+    // helper function: merge paths into a prefix tree, adds the entry each path ends at to ends
+    private static Map<String, Object> tree(List<Path> paths, IntArrayList ends) {
+        LongArrayList nodeIds = new LongArrayList();
+        LongArrayList relIds = new LongArrayList();
+        IntArrayList parents = new IntArrayList();
+        MutableLongIntMap roots = new LongIntHashMap();
+        List<MutableLongIntMap> children = new ArrayList<>();
+
+        for (Path path : paths) {
+            long startId = path.startNode().getId();
+            int entry = roots.getIfAbsent(startId, ROOT);
+            if (entry == ROOT) {
+                entry = addEntry(nodeIds, relIds, parents, children, startId, ROOT, ROOT);
+                roots.put(startId, entry);
+            }
+
+            // walk the relationships in path order next to the nodes they reach
+            Iterator<Node> nodes = path.nodes().iterator();
+            nodes.next();
+            for (Relationship rel : path.relationships()) {
+                long nodeId = nodes.next().getId();
+                MutableLongIntMap entryChildren = children.get(entry);
+                int child = entryChildren.getIfAbsent(rel.getId(), ROOT);
+                if (child == ROOT) {
+                    child = addEntry(nodeIds, relIds, parents, children, nodeId, rel.getId(), entry);
+                    entryChildren.put(rel.getId(), child);
+                }
+                entry = child;
+            }
+            ends.add(entry);
+        }
+
+        Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("node", toList(nodeIds));
+        tree.put("rel", toList(relIds));
+        tree.put("parent", toList(parents));
+        return tree;
+    }
+
+    private static int addEntry(LongArrayList nodeIds, LongArrayList relIds, IntArrayList parents,
+                                List<MutableLongIntMap> children, long nodeId, long relId, int parent) {
+        nodeIds.add(nodeId);
+        relIds.add(relId);
+        parents.add(parent);
+        children.add(new LongIntHashMap(2));
+        return nodeIds.size() - 1;
+    }
+
+    // helper function: start node ids and relationship id lists of paths
+    private static Map<String, Object> ids(List<Path> paths) {
+        List<Long> starts = new ArrayList<>(paths.size());
+        List<List<Long>> relIds = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            starts.add(path.startNode().getId());
+            List<Long> rels = new ArrayList<>(path.length());
+            for (Relationship rel : path.relationships()) {
+                rels.add(rel.getId());
+            }
+            relIds.add(rels);
+        }
+
+        Map<String, Object> ids = new LinkedHashMap<>();
+        ids.put("starts", starts);
+        ids.put("paths", relIds);
+        return ids;
+    }
+
+    private static List<Node> distinctNodes(List<Path> paths) {
+        Map<Long, Node> nodes = new LinkedHashMap<>();
+        for (Path path : paths) {
+            for (Node node : path.nodes()) {
+                nodes.putIfAbsent(node.getId(), node);
+            }
+        }
+        return new ArrayList<>(nodes.values());
+    }
+
+    private static List<Relationship> distinctRelationships(List<Path> paths) {
+        Map<Long, Relationship> rels = new LinkedHashMap<>();
+        for (Path path : paths) {
+            for (Relationship rel : path.relationships()) {
+                rels.putIfAbsent(rel.getId(), rel);
+            }
+        }
+        return new ArrayList<>(rels.values());
+    }
+
+    private static List<Long> toList(LongArrayList values) {
+        List<Long> list = new ArrayList<>(values.size());
+        values.forEach(list::add);
+        return list;
+    }
+
+    private static List<Long> toList(IntArrayList values) {
+        List<Long> list = new ArrayList<>(values.size());
+        values.forEach(value -> list.add((long) value));
+        return list;
+    }
+
+}
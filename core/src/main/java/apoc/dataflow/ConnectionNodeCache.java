@@ -0,0 +1,266 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Memoizes the (srcCFG, dstCFG, nextCFGBlock) connections of dataflow relationships
+//      - always per transaction (the same edge is revisited by many candidate paths of one query)
+//      - optionally across transactions in a size bounded LRU cache (apoc.dataflow.connection_cache.size > 0),
+//        invalidated by a transaction event listener on every committed change to the CFG
+//      - with apoc.dataflow.index_maintenance.enabled the listener is replaced by DataflowIndexMaintenance, which
+//        only drops the relationships a commit affected; the shared entries are used once it caught up with the
+//        last committed transaction
+// Entries are stored as flat long arrays [srcId, dstId, nextCFGBlockId or -1, ...] and rebound to the
+// calling transaction on every read.
+public class ConnectionNodeCache extends LifecycleAdapter implements TransactionEventListener<Void> {
+
+    // separate key spaces for helpers computing connections with different rules
+    public enum Namespace {
+        DATAFLOW, PATH
+    }
+
+    private static final Map<String, ConnectionNodeCache> caches = new ConcurrentHashMap<>();
+
+    // per transaction caches, weakly keyed by identity of the transaction object
+    private static final Cache<Transaction, MutableLongObjectMap<long[]>> txCaches = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private final GraphDatabaseService db;
+    private final DatabaseManagementService databaseManagementService;
+    private final ApocConfig apocConfig;
+    private final Log log;
+    private final AtomicLong generation = new AtomicLong();
+    private Cache<Long, long[]> globalCache;
+    private boolean maintained;
+    private volatile long maintainedTxId = -1;
+
+    public ConnectionNodeCache(GraphDatabaseService db, DatabaseManagementService databaseManagementService,
+                               ApocConfig apocConfig, Log log) {
+        this.db = db;
+        this.databaseManagementService = databaseManagementService;
+        this.apocConfig = apocConfig;
+        this.log = log;
+    }
+
+    @Override
+    public void start() {
+        int size = apocConfig.getInt(ApocConfig.APOC_DATAFLOW_CONNECTION_CACHE_SIZE, 0);
+        if (size > 0) {
+            globalCache = CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+            maintained = apocConfig.getBoolean(ApocConfig.APOC_DATAFLOW_INDEX_MAINTENANCE_ENABLED);
+            // only pay for kernel transaction events if the global cache is enabled
+            if (!maintained) {
+                databaseManagementService.registerTransactionEventListener(db.databaseName(), this);
+            }
+        }
+        caches.put(db.databaseName(), this);
+    }
+
+    @Override
+    public void stop() {
+        caches.remove(db.databaseName());
+        if (globalCache != null) {
+            if (!maintained) {
+                databaseManagementService.unregisterTransactionEventListener(db.databaseName(), this);
+            }
+            globalCache.invalidateAll();
+            globalCache = null;
+        }
+    }
+
+    // return the connections of r, computing and caching them on a miss
+    public static HashMap<List<Node>, Relationship> getConnectionNodes(
+            GraphDatabaseService db, Transaction tx, Namespace namespace, Relationship r,
+            Function<Relationship, HashMap<List<Node>, Relationship>> compute) {
+
+        if (tx == null) {
+            return compute.apply(r);
+        }
+
+        long key = (r.getId() << 1) | namespace.ordinal();
+        MutableLongObjectMap<long[]> txCache = txCaches.asMap().computeIfAbsent(tx, t -> new LongObjectHashMap<>());
+        long[] ids = txCache.get(key);
+
+        if (ids == null) {
+            ConnectionNodeCache shared = (db == null) ? null : caches.get(db.databaseName());
+            Cache<Long, long[]> globalCache = (shared == null) ? null : shared.globalCache;
+            if ((globalCache != null) && shared.maintained && !shared.isCurrent()) {
+                globalCache = null;
+            }
+            ids = (globalCache == null) ? null : globalCache.getIfPresent(key);
+
+            if (ids == null) {
+                long generation = (shared == null) ? 0 : shared.generation.get();
+                HashMap<List<Node>, Relationship> cfgNodes = compute.apply(r);
+                ids = toIds(cfgNodes);
+
+                // do not publish results computed while a concurrent commit invalidated the cache
+                if ((globalCache != null) && (generation == shared.generation.get())) {
+                    globalCache.put(key, ids);
+                }
+                txCache.put(key, ids);
+                return cfgNodes;
+            }
+            txCache.put(key, ids);
+        }
+
+        return fromIds(tx, ids);
+    }
+
+    public static ConnectionNodeCache forDatabase(String databaseName) {
+        return caches.get(databaseName);
+    }
+
+    public Map<String, Object> info() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("database", db.databaseName());
+        info.put("enabled", globalCache != null);
+        info.put("size", (globalCache == null) ? 0L : globalCache.size());
+        info.put("hits", (globalCache == null) ? 0L : globalCache.stats().hitCount());
+        info.put("misses", (globalCache == null) ? 0L : globalCache.stats().missCount());
+        info.put("evictions", (globalCache == null) ? 0L : globalCache.stats().evictionCount());
+        info.put("generation", generation.get());
+        info.put("maintained", maintained);
+        info.put("lastTxId", maintainedTxId);
+        return info;
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        if (globalCache != null) {
+            globalCache.invalidateAll();
+        }
+    }
+
+    // drop the entries of the relationships changed by transaction txId, every entry if relIds is null or the
+    // cache missed a transaction before txId
+    public synchronized void advance(long txId, LongSet relIds) {
+        Cache<Long, long[]> cache = globalCache;
+        if ((cache == null) || (maintainedTxId >= txId)) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        if ((relIds != null) && (maintainedTxId == txId - 1)) {
+            for (long relId : relIds.toArray()) {
+                cache.invalidate(relId << 1);
+                cache.invalidate((relId << 1) | 1);
+            }
+        } else {
+            cache.invalidateAll();
+        }
+        maintainedTxId = txId;
+    }
+
+    // helper function: whether the shared entries reflect the last committed transaction, catching up by dropping
+    // all of them when no change is waiting to be applied
+    private boolean isCurrent() {
+        long txId = CFGReachability.lastCommittedTxId(db);
+        if (maintainedTxId == txId) {
+            return true;
+        }
+        if (DataflowIndexMaintenance.isPending(db.databaseName())) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (maintainedTxId < txId) {
+                clear();
+                maintainedTxId = txId;
+            }
+        }
+        return false;
+    }
+
+    // helper function: flatten connection nodes into [srcId, dstId, nextCFGBlockId or -1, ...]
+    private static long[] toIds(HashMap<List<Node>, Relationship> cfgNodes) {
+        long[] ids = new long[cfgNodes.size() * 3];
+        int i = 0;
+        for (Map.Entry<List<Node>, Relationship> entry : cfgNodes.entrySet()) {
+            ids[i++] = entry.getKey().get(0).getId();
+            ids[i++] = entry.getKey().get(1).getId();
+            ids[i++] = (entry.getValue() == null) ? -1 : entry.getValue().getId();
+        }
+        return ids;
+    }
+
+    // helper function: rebind flattened connection nodes within the given transaction
+    private static HashMap<List<Node>, Relationship> fromIds(Transaction tx, long[] ids) {
+        HashMap<List<Node>, Relationship> cfgNodes = new HashMap<>();
+        for (int i = 0; i < ids.length; i += 3) {
+            cfgNodes.put(List.of(tx.getNodeById(ids[i]), tx.getNodeById(ids[i + 1])),
+                    (ids[i + 2] == -1) ? null : tx.getRelationshipById(ids[i + 2]));
+        }
+        return cfgNodes;
+    }
+
+    @Override
+    public Void beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) {
+        return null;
+    }
+
+    // connections only depend on *Source / *Destination edges and on nextCFGBlock edges and their properties,
+    // anything else that changes them also deletes or creates one of those relationships
+    @Override
+    public void afterCommit(TransactionData data, Void state, GraphDatabaseService databaseService) {
+        Cache<Long, long[]> cache = globalCache;
+        if (cache == null) {
+            return;
+        }
+
+        boolean invalidateAll = false;
+        for (Relationship rel : data.createdRelationships()) {
+            invalidateAll |= affectsConnections(rel.getType().name());
+        }
+        for (Relationship rel : data.deletedRelationships()) {
+            invalidateAll |= affectsConnections(rel.getType().name());
+            cache.invalidate(rel.getId() << 1);
+            cache.invalidate((rel.getId() << 1) | 1);
+        }
+        for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+            invalidateAll |= entry.entity().isType(DataflowHelper.RelTypes.nextCFGBlock);
+        }
+        for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+            invalidateAll |= entry.entity().isType(DataflowHelper.RelTypes.nextCFGBlock);
+        }
+        // the path helper checks node labels (cReturn) of dataflow nodes
+        invalidateAll |= data.assignedLabels().iterator().hasNext() || data.removedLabels().iterator().hasNext();
+
+        if (invalidateAll) {
+            log.debug("Invalidating CFG connection cache of " + db.databaseName());
+            clear();
+        }
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Void state, GraphDatabaseService databaseService) {
+    }
+
+    private static boolean affectsConnections(String type) {
+        return type.equals(DataflowHelper.RelTypes.nextCFGBlock.name()) ||
+                type.endsWith("Source") || type.endsWith("Destination");
+    }
+
+}
@@ -0,0 +1,70 @@
+package apoc.dataflow;
+
+import apoc.result.MapResult;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Procedure;
+
+import java.util.stream.Stream;
+
+public class DataflowCaches {
+
+    @Context
+    public ConnectionNodeCache connectionNodeCache;
+
+    @Context
+    public PathResultCache pathResultCache;
+
+    @Context
+    public FunctionSummaryCache functionSummaryCache;
+
+    @Context
+    public DataflowIndexMaintenance dataflowIndexMaintenance;
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.connectionCacheInfo() - size and hit statistics of the CFG connection cache of the current database")
+    public Stream<MapResult> connectionCacheInfo() {
+        return Stream.of(new MapResult(connectionNodeCache.info()));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.clearConnectionCache() - drop every cached CFG connection of the current database")
+    public Stream<MapResult> clearConnectionCache() {
+        connectionNodeCache.clear();
+        return Stream.of(new MapResult(connectionNodeCache.info()));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.pathCacheInfo() - size and hit statistics of the path result cache of the current database")
+    public Stream<MapResult> pathCacheInfo() {
+        return Stream.of(new MapResult(pathResultCache.info()));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.clearPathCache() - drop every cached path result of the current database")
+    public Stream<MapResult> clearPathCache() {
+        pathResultCache.clear();
+        return Stream.of(new MapResult(pathResultCache.info()));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.summaryCacheInfo() - size and hit statistics of the shared function summaries of the current database")
+    public Stream<MapResult> summaryCacheInfo() {
+        return Stream.of(new MapResult(functionSummaryCache.info()));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.clearSummaryCache() - drop every shared function summary of the current database")
+    public Stream<MapResult> clearSummaryCache() {
+        functionSummaryCache.clear();
+        return Stream.of(new MapResult(functionSummaryCache.info()));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.indexMaintenanceInfo() - state and update statistics of the incremental maintenance of the dataflow indexes of the current database")
+    public Stream<MapResult> indexMaintenanceInfo() {
+        return Stream.of(new MapResult(dataflowIndexMaintenance.info()));
+    }
+
+}
@@ -3,24 +3,14 @@ package apoc.dataflow;
 import apoc.path.CFGValidationHelper;
 import apoc.path.CandidatePath;
 import apoc.path.RelationshipTypeAndDirections;
-import org.neo4j.graphalgo.BasicEvaluationContext;
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.graphalgo.PathFinder;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
-import org.neo4j.procedure.Context;
 
 import java.util.HashMap;
 import java.util.List;
 
 public class DataflowHelper {
 
-    @Context
-    public static GraphDatabaseService db;
-
-    @Context
-    public static Transaction tx;
-
     public enum RelTypes implements RelationshipType
     {
         varWrite, vwSource, vwDestination,
@@ -38,18 +28,35 @@ public class DataflowHelper {
     // helper function: finds outgoing dataflow edge connected to current node
     // return: a list of these outgoing dataflow edge
     public static Iterable<Relationship> getNextRels(Node current) {
-        return current.getRelationships(Direction.OUTGOING, CFGValidationHelper.RelTypes.varWrite,
-                CFGValidationHelper.RelTypes.parWrite, CFGValidationHelper.RelTypes.retWrite);
+        return DataflowStats.expanded(current.getRelationships(Direction.OUTGOING,
+                CFGValidationHelper.RelTypes.varWrite, CFGValidationHelper.RelTypes.parWrite,
+                CFGValidationHelper.RelTypes.retWrite));
+    }
+
+    // helper function: finds incoming dataflow edge connected to current node
+    // return: a list of these incoming dataflow edge
+    public static Iterable<Relationship> getPrevRels(Node current) {
+        return DataflowStats.expanded(current.getRelationships(Direction.INCOMING,
+                CFGValidationHelper.RelTypes.varWrite, CFGValidationHelper.RelTypes.parWrite,
+                CFGValidationHelper.RelTypes.retWrite));
     }
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashMap<List<Node>, Relationship> getConnectionNodes(Relationship r) {
+    public static HashMap<List<Node>, Relationship> getConnectionNodes(GraphDatabaseService db, Transaction tx,
+                                                                       Relationship r) {
 
         if (r == null) {
             return null;
         }
 
+        return ConnectionNodeCache.getConnectionNodes(db, tx, ConnectionNodeCache.Namespace.DATAFLOW, r,
+                rel -> computeConnectionNodes(db, tx, rel));
+    }
+
+    private static HashMap<List<Node>, Relationship> computeConnectionNodes(GraphDatabaseService db, Transaction tx,
+                                                                            Relationship r) {
+
 
         HashMap<List<Node>, Relationship> cfgNodes = new HashMap<>();   // HashSet<[srcNode, dstNode]> (need dstNode to update CFG)
         Iterable<Relationship> srcCFGs = null;
@@ -83,6 +90,7 @@ public class DataflowHelper {
                     CFGValidationHelper.RelTypes.varInfluenceDestination);
         }
 
+        boolean indexed = FunctionIndex.isCurrent(db);
         for (Relationship srcCFG : srcCFGs) {
             for (Relationship dstCFG : dstCFGs) {
 
@@ -99,12 +107,10 @@ public class DataflowHelper {
                     for (Relationship nextCFGRel : nextCFGRels) {
                         if (dstCFG.getEndNode().equals(nextCFGRel.getEndNode())) {
                             if (r.isType(CFGValidationHelper.RelTypes.parWrite)) {
-                                addNode = (nextCFGRel.hasProperty("cfgInvoke") &&
-                                        nextCFGRel.getProperty("cfgInvoke").equals("1"));
+                                addNode = FunctionIndex.isInvoke(nextCFGRel, indexed);
                                 nextCFGBlockEdge = nextCFGRel;
                             } else {
-                                addNode = (nextCFGRel.hasProperty("cfgReturn") &&
-                                        nextCFGRel.getProperty("cfgReturn").equals("1"));
+                                addNode = FunctionIndex.isReturn(nextCFGRel, indexed);
                                 nextCFGBlockEdge = nextCFGRel;
                             }
 
@@ -114,12 +120,7 @@ public class DataflowHelper {
                     }
 
                 }  else if (r.isType(CFGValidationHelper.RelTypes.varInfFunc) || r.isType(CFGValidationHelper.RelTypes.varInfluence)) {
-                    PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                            new BasicEvaluationContext(tx, db),
-                            buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
-                    );
-                    Path vifCFG = algo.findSinglePath(srcCFG.getEndNode(), dstCFG.getEndNode());
-                    addNode = (vifCFG != null);
+                    addNode = CFGReachability.isReachable(db, tx, srcCFG.getEndNode(), dstCFG.getEndNode());
                 }
 
                 if (addNode) {
@@ -0,0 +1,354 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import apoc.Pools;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the derived CFG / dataflow structures current across commits (apoc.dataflow.index_maintenance.enabled)
+//      - the listener only records what a commit changed, the changes are applied in commit order by a single
+//        task on the default executor
+//      - reachability index: inserted nextCFGBlock edges are applied in place, deleted ones rebuild the index
+//      - CFG connection cache: only the entries of relationships whose variables changed are dropped, a changed
+//        nextCFGBlock edge drops every entry (varInfluence / varInfFunc connections depend on reachability across
+//        the whole CFG, cReturn parWrite checks read nextCFGBlock edges two hops away)
+//      - path result and function summary caches, CSR snapshot: kept across commits that only change node properties
+//      - a structure that missed a transaction (listener registered later, failed update) is dropped or rebuilt,
+//        until a change is applied the readers see a stale transaction id and fall back to computing results
+//      - function index: a commit changing the cfgInvoke / cfgReturn flags of an indexed nextCFGBlock edge rewrites
+//        its cfgCallKind, one changing the id of an indexed block removes its cfgFunctionId (the block falls back to
+//        its id string until apoc.dataflow.indexFunctions() runs again), both within the committing transaction
+//      - materialized summary edges are not maintained here, see materializeSummaryEdges({incremental: true})
+public class DataflowIndexMaintenance extends LifecycleAdapter implements TransactionEventListener<Void> {
+
+    private static final Map<String, DataflowIndexMaintenance> maintainers = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseService db;
+    private final DatabaseManagementService databaseManagementService;
+    private final ApocConfig apocConfig;
+    private final Log log;
+    private final Pools pools;
+
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicLong incrementalUpdates = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong invalidatedRelationships = new AtomicLong();
+    private final AtomicLong connectionCacheClears = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastTxId = -1;
+    private boolean enabled;
+
+    // what one committed transaction changed, captured in afterCommit
+    private static class Change {
+        private final long txId;
+        private boolean structural;                                     // anything but node properties changed
+        private boolean cfgDeleted;                                     // a nextCFGBlock edge was deleted
+        private final LongArrayList cfgSrcs = new LongArrayList();      // created nextCFGBlock edges
+        private final LongArrayList cfgDsts = new LongArrayList();
+        private final MutableLongSet relIds = new LongHashSet();        // deleted relationships
+        private final MutableLongSet variableIds = new LongHashSet();   // variables with changed CFG edges or labels
+        private final MutableLongSet cfgIds = new LongHashSet();        // CFG blocks with changed nextCFGBlock edges
+
+        private Change(long txId) {
+            this.txId = txId;
+        }
+    }
+
+    public DataflowIndexMaintenance(GraphDatabaseService db, DatabaseManagementService databaseManagementService,
+                                    ApocConfig apocConfig, Log log, Pools pools) {
+        this.db = db;
+        this.databaseManagementService = databaseManagementService;
+        this.apocConfig = apocConfig;
+        this.log = log;
+        this.pools = pools;
+    }
+
+    @Override
+    public void start() {
+        enabled = apocConfig.getBoolean(ApocConfig.APOC_DATAFLOW_INDEX_MAINTENANCE_ENABLED);
+        if (enabled) {
+            databaseManagementService.registerTransactionEventListener(db.databaseName(), this);
+            maintainers.put(db.databaseName(), this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (enabled) {
+            maintainers.remove(db.databaseName());
+            databaseManagementService.unregisterTransactionEventListener(db.databaseName(), this);
+            changes.clear();
+        }
+    }
+
+    // whether a committed change of the database still has to be applied
+    public static boolean isPending(String databaseName) {
+        DataflowIndexMaintenance maintainer = maintainers.get(databaseName);
+        return (maintainer != null) && (!maintainer.changes.isEmpty() || maintainer.draining.get());
+    }
+
+    public static DataflowIndexMaintenance forDatabase(String databaseName) {
+        return maintainers.get(databaseName);
+    }
+
+    // whether this maintainer listens to the commits of the database instance db
+    boolean maintains(GraphDatabaseService db) {
+        return CFGReachability.txIdStore(this.db) == CFGReachability.txIdStore(db);
+    }
+
+    public Map<String, Object> info() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("database", db.databaseName());
+        info.put("enabled", enabled);
+        info.put("lastTxId", lastTxId);
+        info.put("pending", (long) changes.size());
+        info.put("incrementalUpdates", incrementalUpdates.get());
+        info.put("rebuilds", rebuilds.get());
+        info.put("invalidatedRelationships", invalidatedRelationships.get());
+        info.put("connectionCacheClears", connectionCacheClears.get());
+        info.put("failures", failures.get());
+        return info;
+    }
+
+    @Override
+    public Void beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) {
+        for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+            updateCallKind(data, entry);
+        }
+        for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+            updateCallKind(data, entry);
+        }
+        for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+            removeFunctionId(data, entry);
+        }
+        for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+            removeFunctionId(data, entry);
+        }
+        return null;
+    }
+
+    // helper function: keep the cfgCallKind of an indexed nextCFGBlock edge in line with its call flags
+    private static void updateCallKind(TransactionData data, PropertyEntry<Relationship> entry) {
+        Relationship rel = entry.entity();
+        String key = entry.key();
+        if (!(key.equals("cfgInvoke") || key.equals("cfgReturn")) || data.isDeleted(rel) ||
+                !rel.isType(DataflowHelper.RelTypes.nextCFGBlock) || !rel.hasProperty(FunctionIndex.CALL_KIND_PROPERTY)) {
+            return;
+        }
+        rel.setProperty(FunctionIndex.CALL_KIND_PROPERTY, FunctionIndex.callKind(rel, false));
+    }
+
+    // helper function: drop the cfgFunctionId of an indexed block whose id changed
+    private static void removeFunctionId(TransactionData data, PropertyEntry<Node> entry) {
+        Node block = entry.entity();
+        if (entry.key().equals("id") && !data.isDeleted(block) && block.hasProperty(FunctionIndex.FUNCTION_ID_PROPERTY)) {
+            block.removeProperty(FunctionIndex.FUNCTION_ID_PROPERTY);
+        }
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, Void state, GraphDatabaseService databaseService) {
+        Change change = new Change(data.getTransactionId());
+
+        for (Relationship rel : data.createdRelationships()) {
+            record(change, rel, true);
+        }
+        for (Relationship rel : data.deletedRelationships()) {
+            record(change, rel, false);
+            change.relIds.add(rel.getId());
+        }
+        for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+            recordProperty(change, entry.entity());
+        }
+        for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+            recordProperty(change, entry.entity());
+        }
+        for (LabelEntry entry : data.assignedLabels()) {
+            change.structural = true;
+            change.variableIds.add(entry.node().getId());
+        }
+        for (LabelEntry entry : data.removedLabels()) {
+            change.structural = true;
+            change.variableIds.add(entry.node().getId());
+        }
+        change.structural |= data.createdNodes().iterator().hasNext() || data.deletedNodes().iterator().hasNext();
+
+        changes.add(change);
+        schedule();
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Void state, GraphDatabaseService databaseService) {
+    }
+
+    // helper function: record a created or deleted relationship
+    private static void record(Change change, Relationship rel, boolean created) {
+        change.structural = true;
+        String type = rel.getType().name();
+        if (type.equals(DataflowHelper.RelTypes.nextCFGBlock.name())) {
+            if (created) {
+                change.cfgSrcs.add(rel.getStartNode().getId());
+                change.cfgDsts.add(rel.getEndNode().getId());
+            } else {
+                change.cfgDeleted = true;
+            }
+            change.cfgIds.add(rel.getStartNode().getId());
+            change.cfgIds.add(rel.getEndNode().getId());
+        } else if (type.endsWith("Source") || type.endsWith("Destination")) {
+            change.variableIds.add(rel.getStartNode().getId());
+        }
+    }
+
+    // helper function: record a changed relationship property, connections read those of nextCFGBlock
+    private static void recordProperty(Change change, Relationship rel) {
+        change.structural = true;
+        if (rel.isType(DataflowHelper.RelTypes.nextCFGBlock)) {
+            change.cfgIds.add(rel.getStartNode().getId());
+            change.cfgIds.add(rel.getEndNode().getId());
+        }
+    }
+
+    // helper function: start the drain task unless it is running
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            pools.getDefaultExecutorService().submit(this::drain);
+        }
+    }
+
+    // helper function: apply the recorded changes in commit order
+    private void drain() {
+        try {
+            Change change;
+            while ((change = changes.poll()) != null) {
+                try {
+                    apply(change);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    log.warn("Error applying transaction " + change.txId + " to the dataflow indexes of " +
+                            db.databaseName() + ", dropping them", e);
+                    drop(change.txId);
+                }
+                lastTxId = change.txId;
+            }
+        } finally {
+            draining.set(false);
+        }
+        // a change queued after the last poll but before the flag was cleared
+        if (!changes.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void apply(Change change) {
+        String databaseName = db.databaseName();
+
+        CFGReachabilityIndex index = CFGReachability.getIndex(databaseName);
+        if ((index != null) && (index.getLastTxId() < change.txId)) {
+            CFGReachabilityIndex updated;
+            if (change.cfgDeleted || (index.getLastTxId() != change.txId - 1)) {
+                long txId = CFGReachability.lastCommittedTxId(db);
+                try (Transaction tx = db.beginTx()) {
+                    updated = CFGReachabilityIndex.build(tx, txId);
+                    tx.commit();
+                }
+                rebuilds.incrementAndGet();
+            } else {
+                updated = index.withEdges(change.cfgSrcs.toArray(), change.cfgDsts.toArray(), change.txId);
+                incrementalUpdates.incrementAndGet();
+            }
+            CFGReachability.replaceIndex(databaseName, index, updated);
+        }
+
+        // the snapshot holds no node properties, so it survives commits changing nothing else
+        DataflowSnapshot snapshot = DataflowSnapshots.getSnapshot(databaseName);
+        if ((snapshot != null) && !change.structural && (snapshot.getLastTxId() == change.txId - 1)) {
+            DataflowSnapshots.replaceSnapshot(databaseName, snapshot, snapshot.withTxId(change.txId));
+        }
+
+        ConnectionNodeCache connectionCache = ConnectionNodeCache.forDatabase(databaseName);
+        if (connectionCache != null) {
+            MutableLongSet relIds = (change.cfgIds.isEmpty()) ? affectedRelationships(change) : null;
+            connectionCache.advance(change.txId, relIds);
+            if (relIds != null) {
+                invalidatedRelationships.addAndGet(relIds.size());
+            } else {
+                connectionCacheClears.incrementAndGet();
+            }
+        }
+
+        PathResultCache pathCache = PathResultCache.forDatabase(databaseName);
+        if (pathCache != null) {
+            pathCache.advance(change.txId, change.structural);
+        }
+
+        FunctionSummaryCache summaryCache = FunctionSummaryCache.forDatabase(databaseName);
+        if (summaryCache != null) {
+            summaryCache.advance(change.txId, change.structural);
+        }
+    }
+
+    // helper function: relationships whose CFG connections may have changed, for a change without nextCFGBlock edges
+    //      - the deleted ones and those of variables with changed *Source / *Destination edges or labels
+    //      - deleted nodes are skipped, their relationships were deleted as well
+    private MutableLongSet affectedRelationships(Change change) {
+        MutableLongSet relIds = new LongHashSet(change.relIds);
+
+        try (Transaction tx = db.beginTx()) {
+            for (long variableId : change.variableIds.toArray()) {
+                try {
+                    Node variable = tx.getNodeById(variableId);
+                    for (Relationship rel : variable.getRelationships()) {
+                        relIds.add(rel.getId());
+                    }
+                } catch (NotFoundException e) {
+                    // deleted variable
+                }
+            }
+            tx.commit();
+        }
+
+        return relIds;
+    }
+
+    // helper function: drop everything that may have missed the change of transaction txId
+    private void drop(long txId) {
+        String databaseName = db.databaseName();
+
+        ConnectionNodeCache connectionCache = ConnectionNodeCache.forDatabase(databaseName);
+        if (connectionCache != null) {
+            connectionCache.advance(txId, null);
+        }
+        PathResultCache pathCache = PathResultCache.forDatabase(databaseName);
+        if (pathCache != null) {
+            pathCache.advance(txId, true);
+        }
+        FunctionSummaryCache summaryCache = FunctionSummaryCache.forDatabase(databaseName);
+        if (summaryCache != null) {
+            summaryCache.advance(txId, true);
+        }
+        // the index keeps its older transaction id, so lookups fall back to traversals until the next rebuild
+    }
+
+}
@@ -0,0 +1,432 @@
+package apoc.dataflow;
+
+import apoc.path.CFGValidationHelper.NodeLabel;
+import apoc.path.CFGValidationHelper.RelTypes;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compressed sparse row copy of the CFG part of the graph, answering the CFG checks without the kernel
+//      - nodes get dense int indexes, the labels the checks read (cVariable, cReturn) are kept as one byte per node
+//      - one CSR adjacency per relationship type: nextCFGBlock (with the relationship ids and the cfgInvoke /
+//        cfgReturn flags as bit sets), the *Source / *Destination edges of varWrite, parWrite and retWrite, and the
+//        variables writing every CFG block (every *Destination edge but vif / vi, sorted for binary search)
+//      - connectionNodes and cfgPath give the same answers as CFGValidationHelper.getConnectionNodes and
+//        CFGShortestPath.findSinglePath over nextCFGBlock>, as of transaction lastTxId
+public class DataflowSnapshot {
+
+    private static final byte C_VARIABLE = 1;
+    private static final byte C_RETURN = 2;
+
+    private static final RelTypes[] DATAFLOW_TYPES = {RelTypes.varWrite, RelTypes.parWrite, RelTypes.retWrite};
+
+    private static final String WRITERS_QUERY =
+            "MATCH (v)-[r]->(c) WHERE type(r) ENDS WITH 'Destination' AND NOT type(r) IN ['vifDestination', 'viDestination'] " +
+            "RETURN id(c) AS src, id(v) AS dst";
+    private static final String NEXT_CFG_QUERY =
+            "MATCH (a)-[r:nextCFGBlock]->(b) RETURN id(a) AS src, id(b) AS dst, id(r) AS id, " +
+            "coalesce(r.cfgInvoke = '1', false) AS invoke, coalesce(r.cfgReturn = '1', false) AS return";
+
+    private final LongIntHashMap nodeIndex;     // node id -> dense index
+    private final long[] nodeIds;               // dense index -> node id
+    private final byte[] labels;                // dense index -> C_VARIABLE | C_RETURN
+    private final Adjacency nextCFG;
+    private final long[] nextCFGIds;            // CSR position -> nextCFGBlock relationship id
+    private final BitSet cfgInvoke;             // CSR position -> cfgInvoke = "1"
+    private final BitSet cfgReturn;             // CSR position -> cfgReturn = "1"
+    private final Adjacency[] sources;          // DATAFLOW_TYPES index -> variable -> CFG blocks
+    private final Adjacency[] destinations;
+    private final Adjacency writers;            // CFG block -> variables with a *Destination edge to it
+    private final long relationshipCount;
+    private final long lastTxId;
+    private final long buildMillis;
+
+    // adjacency of one relationship type, targets of a node at [offsets[v], offsets[v + 1])
+    private static class Adjacency {
+        private final int[] offsets;
+        private final int[] targets;
+
+        private Adjacency(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        private int start(int v) {
+            return (v + 1 < offsets.length) ? offsets[v] : 0;
+        }
+
+        private int end(int v) {
+            return (v + 1 < offsets.length) ? offsets[v + 1] : 0;
+        }
+
+        private long bytes() {
+            return 4L * (offsets.length + targets.length);
+        }
+    }
+
+    // edges of one relationship type while loading, positions are kept to attach relationship data
+    private static class EdgeList {
+        private final IntArrayList srcs = new IntArrayList();
+        private final IntArrayList dsts = new IntArrayList();
+    }
+
+    private DataflowSnapshot(LongIntHashMap nodeIndex, long[] nodeIds, byte[] labels, Adjacency nextCFG,
+                             long[] nextCFGIds, BitSet cfgInvoke, BitSet cfgReturn, Adjacency[] sources,
+                             Adjacency[] destinations, Adjacency writers, long relationshipCount, long lastTxId,
+                             long buildMillis) {
+        this.nodeIndex = nodeIndex;
+        this.nodeIds = nodeIds;
+        this.labels = labels;
+        this.nextCFG = nextCFG;
+        this.nextCFGIds = nextCFGIds;
+        this.cfgInvoke = cfgInvoke;
+        this.cfgReturn = cfgReturn;
+        this.sources = sources;
+        this.destinations = destinations;
+        this.writers = writers;
+        this.relationshipCount = relationshipCount;
+        this.lastTxId = lastTxId;
+        this.buildMillis = buildMillis;
+    }
+
+    // build the snapshot from the relationships visible in the given transaction
+    public static DataflowSnapshot build(Transaction tx, long lastTxId) {
+        long start = System.currentTimeMillis();
+
+        LongIntHashMap nodeIndex = new LongIntHashMap();
+        LongArrayList nodeIds = new LongArrayList();
+        long relationshipCount = 0;
+
+        // nextCFGBlock with its relationship ids and flags, in load order
+        EdgeList nextCFGEdges = new EdgeList();
+        LongArrayList nextCFGRelIds = new LongArrayList();
+        BitSet invoke = new BitSet();
+        BitSet ret = new BitSet();
+        try (Result result = tx.execute(NEXT_CFG_QUERY)) {
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                int position = nextCFGEdges.srcs.size();
+                add(nodeIndex, nodeIds, nextCFGEdges, (Long) row.get("src"), (Long) row.get("dst"));
+                nextCFGRelIds.add((Long) row.get("id"));
+                invoke.set(position, (Boolean) row.get("invoke"));
+                ret.set(position, (Boolean) row.get("return"));
+            }
+        }
+        relationshipCount += nextCFGEdges.srcs.size();
+
+        EdgeList[] sourceEdges = new EdgeList[DATAFLOW_TYPES.length];
+        EdgeList[] destinationEdges = new EdgeList[DATAFLOW_TYPES.length];
+        for (int t = 0; t < DATAFLOW_TYPES.length; t++) {
+            sourceEdges[t] = load(tx, nodeIndex, nodeIds, DATAFLOW_TYPES[t].name() + "Source");
+            destinationEdges[t] = load(tx, nodeIndex, nodeIds, DATAFLOW_TYPES[t].name() + "Destination");
+            relationshipCount += sourceEdges[t].srcs.size() + destinationEdges[t].srcs.size();
+        }
+
+        EdgeList writerEdges = new EdgeList();
+        try (Result result = tx.execute(WRITERS_QUERY)) {
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                add(nodeIndex, nodeIds, writerEdges, (Long) row.get("src"), (Long) row.get("dst"));
+            }
+        }
+
+        // labels of the nodes the checks look at, other nodes are not needed
+        int n = nodeIds.size();
+        byte[] labels = new byte[n];
+        for (NodeLabel label : NodeLabel.values()) {
+            byte flag = (label == NodeLabel.cVariable) ? C_VARIABLE : C_RETURN;
+            try (Result result = tx.execute("MATCH (n:" + label.name() + ") RETURN id(n) AS id")) {
+                while (result.hasNext()) {
+                    int index = nodeIndex.getIfAbsent((Long) result.next().get("id"), -1);
+                    if (index != -1) {
+                        labels[index] |= flag;
+                    }
+                }
+            }
+        }
+
+        // the nextCFGBlock data follows its edges into CSR order
+        int[] nextCFGPositions = new int[nextCFGEdges.srcs.size()];
+        Adjacency nextCFG = toCSR(n, nextCFGEdges, nextCFGPositions, false);
+        long[] nextCFGIds = new long[nextCFGPositions.length];
+        BitSet cfgInvoke = new BitSet(nextCFGPositions.length);
+        BitSet cfgReturn = new BitSet(nextCFGPositions.length);
+        for (int i = 0; i < nextCFGPositions.length; i++) {
+            int position = nextCFGPositions[i];
+            nextCFGIds[position] = nextCFGRelIds.get(i);
+            cfgInvoke.set(position, invoke.get(i));
+            cfgReturn.set(position, ret.get(i));
+        }
+
+        Adjacency[] sources = new Adjacency[DATAFLOW_TYPES.length];
+        Adjacency[] destinations = new Adjacency[DATAFLOW_TYPES.length];
+        for (int t = 0; t < DATAFLOW_TYPES.length; t++) {
+            sources[t] = toCSR(n, sourceEdges[t], null, false);
+            destinations[t] = toCSR(n, destinationEdges[t], null, false);
+        }
+        Adjacency writers = toCSR(n, writerEdges, null, true);
+
+        return new DataflowSnapshot(nodeIndex, nodeIds.toArray(), labels, nextCFG, nextCFGIds, cfgInvoke, cfgReturn,
+                sources, destinations, writers, relationshipCount, lastTxId, System.currentTimeMillis() - start);
+    }
+
+    // same snapshot as of a later transaction that did not change anything it holds
+    public DataflowSnapshot withTxId(long lastTxId) {
+        return new DataflowSnapshot(nodeIndex, nodeIds, labels, nextCFG, nextCFGIds, cfgInvoke, cfgReturn, sources,
+                destinations, writers, relationshipCount, lastTxId, buildMillis);
+    }
+
+    private static EdgeList load(Transaction tx, LongIntHashMap nodeIndex, LongArrayList nodeIds, String type) {
+        EdgeList edges = new EdgeList();
+        try (Result result = tx.execute("MATCH (a)-[:" + type + "]->(b) RETURN id(a) AS src, id(b) AS dst")) {
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                add(nodeIndex, nodeIds, edges, (Long) row.get("src"), (Long) row.get("dst"));
+            }
+        }
+        return edges;
+    }
+
+    private static void add(LongIntHashMap nodeIndex, LongArrayList nodeIds, EdgeList edges, long src, long dst) {
+        edges.srcs.add(denseIndex(nodeIndex, nodeIds, src));
+        edges.dsts.add(denseIndex(nodeIndex, nodeIds, dst));
+    }
+
+    private static int denseIndex(LongIntHashMap nodeIndex, LongArrayList nodeIds, long nodeId) {
+        int index = nodeIndex.getIfAbsent(nodeId, -1);
+        if (index == -1) {
+            index = nodeIds.size();
+            nodeIndex.put(nodeId, index);
+            nodeIds.add(nodeId);
+        }
+        return index;
+    }
+
+    // helper function: CSR of edges, positions[i] receives the CSR position of edge i if given
+    private static Adjacency toCSR(int n, EdgeList edges, int[] positions, boolean sorted) {
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < edges.srcs.size(); i++) {
+            offsets[edges.srcs.get(i) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] targets = new int[edges.srcs.size()];
+        for (int i = 0; i < edges.srcs.size(); i++) {
+            int position = fill[edges.srcs.get(i)]++;
+            targets[position] = edges.dsts.get(i);
+            if (positions != null) {
+                positions[i] = position;
+            }
+        }
+        if (sorted) {
+            for (int v = 0; v < n; v++) {
+                Arrays.sort(targets, offsets[v], offsets[v + 1]);
+            }
+        }
+        return new Adjacency(offsets, targets);
+    }
+
+    // CFG connections of a varWrite, parWrite or retWrite as computed by CFGValidationHelper.getConnectionNodes
+    // return: [srcCFG, dstCFG] -> nextCFGBlock relationship (null for varWrite), null for other relationship types
+    public HashMap<List<Node>, Relationship> connectionNodes(Transaction tx, Relationship r) {
+        int t = dataflowType(r);
+        if (t == -1) {
+            return null;
+        }
+
+        HashMap<List<Node>, Relationship> cfgNodes = new HashMap<>();
+        int u = nodeIndex.getIfAbsent(r.getStartNode().getId(), -1);
+        int v = nodeIndex.getIfAbsent(r.getEndNode().getId(), -1);
+        if ((u == -1) || (v == -1)) {
+            return cfgNodes;
+        }
+
+        Adjacency srcCFGs = sources[t];
+        Adjacency dstCFGs = destinations[t];
+        boolean returnParWrite = (t == 1) && ((labels[u] & C_RETURN) != 0);
+
+        for (int s = srcCFGs.start(u); s < srcCFGs.end(u); s++) {
+            int srcCFG = srcCFGs.targets[s];
+            for (int d = dstCFGs.start(v); d < dstCFGs.end(v); d++) {
+                int dstCFG = dstCFGs.targets[d];
+
+                if (t == 0) {
+                    if (srcCFG == dstCFG) {
+                        cfgNodes.put(List.of(node(tx, srcCFG), node(tx, dstCFG)), null);
+                    }
+                    continue;
+                }
+
+                // a parWrite leaving a cReturn variable starts after the returning block
+                int edge = -1;
+                if (returnParWrite) {
+                    for (int e = nextCFG.start(srcCFG); (e < nextCFG.end(srcCFG)) && (edge == -1); e++) {
+                        if (cfgReturn.get(e)) {
+                            edge = findEdge(nextCFG.targets[e], dstCFG, cfgInvoke);
+                        }
+                    }
+                } else {
+                    edge = findEdge(srcCFG, dstCFG, (t == 1) ? cfgInvoke : cfgReturn);
+                }
+
+                if (edge != -1) {
+                    cfgNodes.put(List.of(node(tx, srcCFG), node(tx, dstCFG)), tx.getRelationshipById(nextCFGIds[edge]));
+                }
+            }
+        }
+
+        return cfgNodes;
+    }
+
+    // helper function: CSR position of a nextCFGBlock edge from -> to with the flag set, -1 if none
+    private int findEdge(int from, int to, BitSet flag) {
+        for (int e = nextCFG.start(from); e < nextCFG.end(from); e++) {
+            if ((nextCFG.targets[e] == to) && flag.get(e)) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    // shortest nextCFGBlock> path from start to end whose inner blocks are not written by variable (if filterVar),
+    // the same check as CFGShortestPath.findSinglePath
+    // return: the path, null if there is none
+    public Path cfgPath(Transaction tx, Node start, Node end, Node variable, boolean filterVar, int maxDepth) {
+        if (start.equals(end)) {
+            return PathImpl.singular(start);
+        }
+
+        int s = nodeIndex.getIfAbsent(start.getId(), -1);
+        int target = nodeIndex.getIfAbsent(end.getId(), -1);
+        if ((s == -1) || (target == -1)) {
+            return null;
+        }
+        int writer = (filterVar) ? nodeIndex.getIfAbsent(variable.getId(), -1) : -1;
+
+        // breadth first, parent maps a reached block to the CSR position of the edge reaching it
+        IntIntHashMap parent = new IntIntHashMap();
+        parent.put(s, -1);
+        IntArrayList level = new IntArrayList();
+        level.add(s);
+
+        for (int depth = 0; (depth < maxDepth) && !level.isEmpty(); depth++) {
+            IntArrayList nextLevel = new IntArrayList();
+            for (int i = 0; i < level.size(); i++) {
+                int cur = level.get(i);
+                for (int e = nextCFG.start(cur); e < nextCFG.end(cur); e++) {
+                    int next = nextCFG.targets[e];
+                    if (parent.containsKey(next)) {
+                        continue;
+                    }
+                    if (next == target) {
+                        parent.put(next, e);
+                        return buildPath(tx, start, s, target, parent);
+                    }
+                    if ((writer != -1) && isWriter(next, writer)) {
+                        continue;
+                    }
+                    parent.put(next, e);
+                    nextLevel.add(next);
+                }
+            }
+            level = nextLevel;
+        }
+
+        return null;
+    }
+
+    private boolean isWriter(int cfg, int variable) {
+        return Arrays.binarySearch(writers.targets, writers.start(cfg), writers.end(cfg), variable) >= 0;
+    }
+
+    private Path buildPath(Transaction tx, Node start, int s, int target, IntIntHashMap parent) {
+        LongArrayList relIds = new LongArrayList();
+        for (int cur = target; cur != s; ) {
+            int e = parent.get(cur);
+            relIds.add(nextCFGIds[e]);
+            cur = source(e);
+        }
+
+        PathImpl.Builder builder = new PathImpl.Builder(start);
+        for (int i = relIds.size() - 1; i >= 0; i--) {
+            builder = builder.push(tx.getRelationshipById(relIds.get(i)));
+        }
+        return builder.build();
+    }
+
+    // helper function: source block of the nextCFGBlock edge at CSR position e
+    private int source(int e) {
+        int lo = 0;
+        int hi = nextCFG.offsets.length - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (nextCFG.offsets[mid] <= e) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private Node node(Transaction tx, int index) {
+        return tx.getNodeById(nodeIds[index]);
+    }
+
+    private static int dataflowType(Relationship r) {
+        for (int t = 0; t < DATAFLOW_TYPES.length; t++) {
+            if (r.isType(DATAFLOW_TYPES[t])) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasLabel(Node node, NodeLabel label) {
+        int index = nodeIndex.getIfAbsent(node.getId(), -1);
+        byte flag = (label == NodeLabel.cVariable) ? C_VARIABLE : C_RETURN;
+        return (index != -1) && ((labels[index] & flag) != 0);
+    }
+
+    public long getNodeCount() {
+        return nodeIds.length;
+    }
+
+    public long getRelationshipCount() {
+        return relationshipCount;
+    }
+
+    // rough heap size of the arrays held, the node id map is estimated at 16 bytes per entry
+    public long getBytes() {
+        long bytes = 16L * nodeIds.length + 8L * nodeIds.length + labels.length;
+        bytes += nextCFG.bytes() + 8L * nextCFGIds.length + (cfgInvoke.size() + cfgReturn.size()) / 8;
+        for (int t = 0; t < DATAFLOW_TYPES.length; t++) {
+            bytes += sources[t].bytes() + destinations[t].bytes();
+        }
+        return bytes + writers.bytes();
+    }
+
+    public long getLastTxId() {
+        return lastTxId;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+}
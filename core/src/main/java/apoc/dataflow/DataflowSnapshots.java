@@ -0,0 +1,103 @@
+package apoc.dataflow;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Procedures and lookup of the per database DataflowSnapshot
+//      - once loaded, the CFG checks of every dataflow / CFG engine (CFGShortestPath) and the CFG connections of
+//        varWrite, parWrite and retWrite (apoc.path CFGValidationHelper) are answered from the snapshot
+//      - like the reachability index, it is only used while no transaction committed since it was loaded and the
+//        calling transaction has no uncommitted changes; otherwise the engines read the graph as before
+public class DataflowSnapshots {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    private static final Map<String, DataflowSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public static class SnapshotInfo {
+        public String database;
+        public boolean exists;
+        public boolean stale;
+        public long nodes;
+        public long relationships;
+        public long bytes;
+        public long lastTxId;
+        public long buildMillis;
+
+        public SnapshotInfo(String database, DataflowSnapshot snapshot, long currentTxId) {
+            this.database = database;
+            this.exists = (snapshot != null);
+            if (snapshot != null) {
+                this.stale = (snapshot.getLastTxId() != currentTxId);
+                this.nodes = snapshot.getNodeCount();
+                this.relationships = snapshot.getRelationshipCount();
+                this.bytes = snapshot.getBytes();
+                this.lastTxId = snapshot.getLastTxId();
+                this.buildMillis = snapshot.getBuildMillis();
+            }
+        }
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.loadSnapshot() - load (or reload) the CSR snapshot of the CFG subgraph used by the dataflow and CFG path engines")
+    public Stream<SnapshotInfo> loadSnapshot() {
+        long txId = CFGReachability.lastCommittedTxId(db);
+        DataflowSnapshot snapshot = DataflowSnapshot.build(tx, txId);
+        snapshots.put(db.databaseName(), snapshot);
+        return Stream.of(new SnapshotInfo(db.databaseName(), snapshot, txId));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.dropSnapshot() - drop the CSR snapshot of the current database")
+    public Stream<SnapshotInfo> dropSnapshot() {
+        DataflowSnapshot snapshot = snapshots.remove(db.databaseName());
+        return Stream.of(new SnapshotInfo(db.databaseName(), snapshot, CFGReachability.lastCommittedTxId(db)));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.snapshotInfo() - size and state of the CSR snapshot of the current database")
+    public Stream<SnapshotInfo> snapshotInfo() {
+        return Stream.of(new SnapshotInfo(db.databaseName(), snapshots.get(db.databaseName()),
+                CFGReachability.lastCommittedTxId(db)));
+    }
+
+    // snapshot to answer a check of tx with, null if there is none or it does not reflect what tx sees
+    public static DataflowSnapshot current(GraphDatabaseService db, Transaction tx) {
+        if (db == null || snapshots.isEmpty()) {
+            return null;
+        }
+
+        DataflowSnapshot snapshot = snapshots.get(db.databaseName());
+        if ((snapshot == null) || (snapshot.getLastTxId() != CFGReachability.lastCommittedTxId(db))) {
+            return null;
+        }
+        if ((tx instanceof InternalTransaction) &&
+                ((InternalTransaction) tx).kernelTransaction().dataRead().transactionStateHasChanges()) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    public static DataflowSnapshot getSnapshot(String databaseName) {
+        return snapshots.get(databaseName);
+    }
+
+    // swap in an updated snapshot, unless it was dropped or reloaded meanwhile
+    static boolean replaceSnapshot(String databaseName, DataflowSnapshot current, DataflowSnapshot updated) {
+        return snapshots.replace(databaseName, current, updated);
+    }
+
+}
@@ -0,0 +1,288 @@
+package apoc.dataflow;
+
+import apoc.util.Util;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Procedure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Per call instrumentation of the dataflow / CFG path engines
+//      - a call opts in with {profile: true}, its Profile is bound to the calling thread and handed to the worker
+//        threads it starts (FrontierExecutor, the ROS search driver), unprofiled calls only pay a thread local read
+//      - the engines report edges expanded, candidate paths created, CFG checks and the time spent in them,
+//        CFGShortestPath invocations and the largest queue they held
+//      - procedures return the profile next to every row, a finished profile is added to per procedure
+//        histograms reported by apoc.dataflow.stats()
+public class DataflowStats {
+
+    private static final ThreadLocal<Profile> current = new ThreadLocal<>();
+    private static final Map<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+    private static final String[] METRICS = {"elapsedMillis", "edgesExpanded", "candidates", "cfgChecks",
+            "cfgCheckMillis", "shortestPathCalls", "peakQueueSize"};
+
+    public static class Profile {
+        private final String name;
+        private final long started = System.nanoTime();
+        private final LongAdder edgesExpanded = new LongAdder();
+        private final LongAdder candidates = new LongAdder();
+        private final LongAdder cfgChecks = new LongAdder();
+        private final LongAdder cfgCheckNanos = new LongAdder();
+        private final LongAdder shortestPathCalls = new LongAdder();
+        private final AtomicLong peakQueueSize = new AtomicLong();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long elapsedNanos = -1;
+
+        private Profile(String name) {
+            this.name = name;
+        }
+
+        private long elapsedNanos() {
+            return (elapsedNanos >= 0) ? elapsedNanos : System.nanoTime() - started;
+        }
+
+        private long[] values() {
+            return new long[] {elapsedNanos() / 1_000_000, edgesExpanded.sum(), candidates.sum(), cfgChecks.sum(),
+                    cfgCheckNanos.sum() / 1_000_000, shortestPathCalls.sum(), peakQueueSize.get()};
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            long[] values = values();
+            for (int i = 0; i < METRICS.length; i++) {
+                map.put(METRICS[i], values[i]);
+            }
+            return map;
+        }
+    }
+
+    private static class Aggregate {
+        private final LongAdder calls = new LongAdder();
+        private final Histogram[] histograms = new Histogram[METRICS.length];
+
+        private Aggregate() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new ConcurrentHistogram(3);
+            }
+        }
+
+        private void add(long[] values) {
+            calls.increment();
+            for (int i = 0; i < values.length; i++) {
+                histograms[i].recordValue(Math.max(0, values[i]));
+            }
+        }
+    }
+
+    public static class StatsResult {
+        public String name;
+        public String metric;
+        public long calls;
+        public long total;
+        public long min;
+        public long max;
+        public double mean;
+        public long p50;
+        public long p90;
+        public long p99;
+
+        public StatsResult(String name, String metric, long calls, Histogram histogram) {
+            this.name = name;
+            this.metric = metric;
+            this.calls = calls;
+            this.total = Math.round(histogram.getMean() * histogram.getTotalCount());
+            this.min = histogram.getMinValue();
+            this.max = histogram.getMaxValue();
+            this.mean = histogram.getMean();
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p90 = histogram.getValueAtPercentile(90);
+            this.p99 = histogram.getValueAtPercentile(99);
+        }
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.stats() - histograms of the metrics of every dataflow / CFG path call made with {profile: true}, per procedure and metric")
+    public Stream<StatsResult> stats() {
+        List<StatsResult> results = new ArrayList<>();
+        for (Map.Entry<String, Aggregate> entry : new TreeMap<>(aggregates).entrySet()) {
+            Aggregate aggregate = entry.getValue();
+            for (int i = 0; i < METRICS.length; i++) {
+                results.add(new StatsResult(entry.getKey(), METRICS[i], aggregate.calls.sum(),
+                        aggregate.histograms[i]));
+            }
+        }
+        return results.stream();
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.dataflow.resetStats() - drop the histograms reported by apoc.dataflow.stats(), returns them one last time")
+    public Stream<StatsResult> resetStats() {
+        Stream<StatsResult> dropped = stats();
+        aggregates.clear();
+        return dropped;
+    }
+
+    // profile of a call, null unless config asks for {profile: true}
+    public static Profile start(String name, Map<String, Object> config) {
+        if ((config == null) || !Util.toBoolean(config.getOrDefault("profile", false))) {
+            return null;
+        }
+        return new Profile(name);
+    }
+
+    // add a profile to the histograms, only its first call counts
+    public static void finish(Profile profile) {
+        if ((profile == null) || !profile.finished.compareAndSet(false, true)) {
+            return;
+        }
+        profile.elapsedNanos = System.nanoTime() - profile.started;
+        aggregates.computeIfAbsent(profile.name, name -> new Aggregate()).add(profile.values());
+    }
+
+    // run a whole call with its profile, config {profile: true}
+    public static <T> T profiled(String name, Map<String, Object> config, Supplier<T> call) {
+        Profile profile = start(name, config);
+        if (profile == null) {
+            return call.get();
+        }
+        try {
+            return call(profile, call);
+        } finally {
+            finish(profile);
+        }
+    }
+
+    // run part of a call on the current thread with profile bound
+    public static <T> T call(Profile profile, Supplier<T> call) {
+        if (profile == null) {
+            return call.get();
+        }
+        Profile previous = current.get();
+        current.set(profile);
+        try {
+            return call.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    // task running with profile bound, for worker threads
+    public static <T> Callable<T> bind(Profile profile, Callable<T> task) {
+        if (profile == null) {
+            return task;
+        }
+        return () -> {
+            Profile previous = current.get();
+            current.set(profile);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public static Profile current() {
+        return current.get();
+    }
+
+    public static Map<String, Object> snapshot(Profile profile) {
+        return (profile == null) ? null : profile.toMap();
+    }
+
+    private static void restore(Profile previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    // -- engine hooks, no-ops unless the calling thread is profiled
+
+    public static void candidate() {
+        Profile profile = current.get();
+        if (profile != null) {
+            profile.candidates.increment();
+        }
+    }
+
+    public static void shortestPath() {
+        Profile profile = current.get();
+        if (profile != null) {
+            profile.shortestPathCalls.increment();
+        }
+    }
+
+    public static void queued(int size) {
+        Profile profile = current.get();
+        if (profile != null) {
+            profile.peakQueueSize.accumulateAndGet(size, Math::max);
+        }
+    }
+
+    public static boolean cfgCheck(BooleanSupplier check) {
+        Profile profile = current.get();
+        if (profile == null) {
+            return check.getAsBoolean();
+        }
+        long started = System.nanoTime();
+        try {
+            return check.getAsBoolean();
+        } finally {
+            cfgChecked(System.nanoTime() - started);
+        }
+    }
+
+    // a CFG check run outside cfgCheck, e.g. by the workers of FrontierExecutor
+    public static void cfgChecked(long nanos) {
+        Profile profile = current.get();
+        if (profile != null) {
+            profile.cfgChecks.increment();
+            profile.cfgCheckNanos.add(nanos);
+        }
+    }
+
+    // relationships of an expansion, counted as they are iterated
+    public static Iterable<Relationship> expanded(Iterable<Relationship> rels) {
+        Profile profile = current.get();
+        if (profile == null) {
+            return rels;
+        }
+        return () -> {
+            Iterator<Relationship> iterator = rels.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Relationship next() {
+                    Relationship rel = iterator.next();
+                    profile.edgesExpanded.increment();
+                    return rel;
+                }
+            };
+        };
+    }
+
+}
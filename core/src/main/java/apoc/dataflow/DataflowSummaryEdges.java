@@ -0,0 +1,335 @@
+package apoc.dataflow;
+
+import apoc.Pools;
+import apoc.path.CFGValidationHelper;
+import apoc.path.CFGValidationHelper.RelTypes;
+import apoc.path.GmDataflowPath;
+import apoc.util.Util;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Writes the component level summary edges read by apoc.path.phase2
+//      - entries are the variables a compCall / compReturn leads to, exits are the variables one starts from
+//      - entry -[:dataflowNCFG]-> exit if the exit is reachable over dataflow edges, entry -[:dataflowOTF]-> exit
+//        if a CFG validated gm dataflow path exists (apoc.path.gmDataflowPath)
+//      - entries are processed in batches, the searches of a batch run on the cpu executor (one read transaction
+//        per entry), then the batch is written in one transaction and reported as one row
+//      - every entry keeps a fingerprint of the dataflow edges and CFG connections its search saw, the reached
+//        exits, the cfg / ncfg flags and the whole nextCFGBlock graph, {incremental: true} skips entries whose
+//        fingerprint did not change since the last run
+//      - the CFG checks of dataflowOTF follow nextCFGBlock edges any number of hops away from the connection
+//        blocks, so any change of a nextCFGBlock edge, its call flags or a block id recomputes every entry
+public class DataflowSummaryEdges {
+
+    public static final String FINGERPRINT_PROPERTY = "dataflowSummaryFingerprint";
+
+    private static final String ENTRIES_QUERY =
+            "MATCH ()-[:compCall|compReturn]->(entry) RETURN DISTINCT id(entry) AS id ORDER BY id";
+    private static final String EXITS_QUERY =
+            "MATCH (exit)-[:compCall|compReturn]->() RETURN DISTINCT id(exit) AS id";
+    private static final String CFG_QUERY =
+            "MATCH (block)-[r:nextCFGBlock]->(next) RETURN id(r) AS id, id(block) AS start, id(next) AS end, " +
+            "r.cfgInvoke AS invoke, r.cfgReturn AS return, block.id AS startName, next.id AS endName";
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    @Context
+    public Pools pools;
+
+    @Context
+    public Log log;
+
+    @Context
+    public TerminationGuard terminationGuard;
+
+    public static class ProgressResult {
+        public long batch;
+        public long entries;
+        public long totalEntries;
+        public long skipped;
+        public long created;
+        public long removed;
+        public long elapsedMillis;
+
+        public ProgressResult(long batch, long entries, long totalEntries, long skipped, long created, long removed,
+                              long elapsedMillis) {
+            this.batch = batch;
+            this.entries = entries;
+            this.totalEntries = totalEntries;
+            this.skipped = skipped;
+            this.created = created;
+            this.removed = removed;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    // summary edges of one entry, computed by a worker
+    private static class EntrySummary {
+        private final long entryId;
+        private final long fingerprint;
+        private final boolean skipped;
+        private final long[] ncfgExits;
+        private final long[] otfExits;
+
+        private EntrySummary(long entryId, long fingerprint, boolean skipped, long[] ncfgExits, long[] otfExits) {
+            this.entryId = entryId;
+            this.fingerprint = fingerprint;
+            this.skipped = skipped;
+            this.ncfgExits = ncfgExits;
+            this.otfExits = otfExits;
+        }
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.dataflow.materializeSummaryEdges({batchSize:100, cfg:true, ncfg:true, incremental:false}) - writes dataflowOTF / dataflowNCFG edges between component entries and exits, one row per written batch")
+    public Stream<ProgressResult> materializeSummaryEdges(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        int batchSize = Math.max(1, Util.toLong(config.getOrDefault("batchSize", 100)).intValue());
+        boolean otf = Util.toBoolean(config.getOrDefault("cfg", true));
+        boolean ncfg = Util.toBoolean(config.getOrDefault("ncfg", true));
+        boolean incremental = Util.toBoolean(config.getOrDefault("incremental", false));
+
+        LongArrayList entries = ids(ENTRIES_QUERY);
+        MutableLongSet exits = LongHashSet.newSet(ids(EXITS_QUERY));
+        long cfgFingerprint = cfgFingerprint();
+
+        Iterator<ProgressResult> batches = new Iterator<>() {
+            private final long start = System.currentTimeMillis();
+            private int next = 0;
+            private long batch = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < entries.size();
+            }
+
+            @Override
+            public ProgressResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                terminationGuard.check();
+
+                int end = Math.min(next + batchSize, entries.size());
+                List<EntrySummary> summaries = summarize(entries.subList(next, end).toArray(), exits, otf, ncfg,
+                        cfgFingerprint, incremental);
+                long[] counts = write(summaries, otf, ncfg);
+                next = end;
+                batch += 1;
+
+                ProgressResult progress = new ProgressResult(batch, next, entries.size(), counts[0], counts[1],
+                        counts[2], System.currentTimeMillis() - start);
+                log.info("apoc.dataflow.materializeSummaryEdges: %d of %d entries, %d created, %d removed",
+                        progress.entries, progress.totalEntries, progress.created, progress.removed);
+                return progress;
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false);
+    }
+
+    // helper function: run the searches of one batch on the cpu executor, results in entry order
+    private List<EntrySummary> summarize(long[] entryIds, MutableLongSet exits, boolean otf, boolean ncfg,
+                                         long cfgFingerprint, boolean incremental) {
+        List<Future<EntrySummary>> futures = new ArrayList<>(entryIds.length);
+        for (long entryId : entryIds) {
+            futures.add(Util.inTxFuture(pools.getCpuExecutorService(), db,
+                    workerTx -> summarize(workerTx, entryId, exits, otf, ncfg, cfgFingerprint, incremental)));
+        }
+
+        List<EntrySummary> summaries = new ArrayList<>(entryIds.length);
+        try {
+            for (Future<EntrySummary> future : futures) {
+                summaries.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interruption error executing in parallel: ", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Execution error executing in parallel: ", e);
+        }
+        return summaries;
+    }
+
+    // helper function: exits reachable from entry over dataflow edges, and those with a CFG validated path
+    private EntrySummary summarize(Transaction workerTx, long entryId, MutableLongSet exits, boolean otf,
+                                   boolean ncfg, long cfgFingerprint, boolean incremental) {
+        Node entry = workerTx.getNodeById(entryId);
+
+        LongArrayList reachedExits = new LongArrayList();
+        long fingerprint = mix(reach(workerTx, entry, exits, reachedExits, otf, ncfg) ^ cfgFingerprint);
+        if (incremental && (((Number) entry.getProperty(FINGERPRINT_PROPERTY, -1L)).longValue() == fingerprint)) {
+            return new EntrySummary(entryId, fingerprint, true, null, null);
+        }
+
+        LongArrayList otfExits = new LongArrayList();
+        if (otf) {
+            GmDataflowPath gm = new GmDataflowPath();
+            gm.db = db;
+            gm.tx = workerTx;
+            for (long exitId : reachedExits.toArray()) {
+                if (gm.gmDataflowPath(entry, workerTx.getNodeById(exitId), null, null, true) != null) {
+                    otfExits.add(exitId);
+                }
+            }
+        }
+
+        return new EntrySummary(entryId, fingerprint, false, (ncfg) ? reachedExits.toArray() : new long[0],
+                otfExits.toArray());
+    }
+
+    // helper function: breadth first walk over the dataflow edges of entry, adds the reached exits and returns a
+    //      fingerprint of the walked dataflow edges, their CFG connections, the sorted reached exits and the
+    //      cfg / ncfg flags
+    private long reach(Transaction workerTx, Node entry, MutableLongSet exits, LongArrayList reachedExits,
+                       boolean otf, boolean ncfg) {
+        MutableLongSet visited = new LongHashSet();
+        Queue<Node> queue = new ArrayDeque<>();
+        long fingerprint = mix(entry.getId());
+
+        visited.add(entry.getId());
+        queue.add(entry);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            if (exits.contains(node.getId())) {
+                reachedExits.add(node.getId());
+            }
+
+            for (Relationship rel : CFGValidationHelper.getNextRels(node, false)) {
+                fingerprint += mix(rel.getId());
+                for (List<Node> cfg : CFGValidationHelper.getConnectionNodes(db, workerTx, rel, null, false,
+                        false).keySet()) {
+                    for (Node cfgNode : cfg) {
+                        fingerprint += mix(rel.getId() ^ mix(cfgNode.getId()));
+                    }
+                }
+
+                Node next = rel.getEndNode();
+                if (visited.add(next.getId())) {
+                    queue.add(next);
+                }
+            }
+        }
+
+        // the sums above do not depend on the walk order, the exits and flags are mixed in a fixed order
+        for (long exitId : reachedExits.toSortedArray()) {
+            fingerprint = mix(fingerprint ^ mix(exitId));
+        }
+        return mix(fingerprint ^ ((otf) ? 1L : 0L) ^ ((ncfg) ? 2L : 0L));
+    }
+
+    // helper function: order independent hash of every nextCFGBlock edge with its endpoints, call flags and block
+    //      ids, a redirected edge changes it even when the degree of every block stays the same
+    private long cfgFingerprint() {
+        long hash = 0;
+        try (Result result = tx.execute(CFG_QUERY)) {
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                long edge = mix(((Number) row.get("id")).longValue());
+                edge = mix(edge ^ ((Number) row.get("start")).longValue());
+                edge = mix(edge ^ ((Number) row.get("end")).longValue());
+                edge = mix(edge ^ hash(row.get("invoke"), row.get("return")));
+                edge = mix(edge ^ hash(row.get("startName"), row.get("endName")));
+                hash += edge;
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(Object low, Object high) {
+        return (Objects.hashCode(low) & 0xffffffffL) ^ ((long) Objects.hashCode(high) << 32);
+    }
+
+    // helper function: replace the summary edges of the computed entries, returns skipped, created, removed
+    private long[] write(List<EntrySummary> summaries, boolean otf, boolean ncfg) {
+        long[] counts = new long[3];
+        try (Transaction writeTx = db.beginTx()) {
+            for (EntrySummary summary : summaries) {
+                if (summary.skipped) {
+                    counts[0] += 1;
+                    continue;
+                }
+
+                Node entry = writeTx.getNodeById(summary.entryId);
+                if (ncfg) {
+                    replace(writeTx, entry, RelTypes.dataflowNCFG, summary.ncfgExits, counts);
+                }
+                if (otf) {
+                    replace(writeTx, entry, RelTypes.dataflowOTF, summary.otfExits, counts);
+                }
+                entry.setProperty(FINGERPRINT_PROPERTY, summary.fingerprint);
+            }
+            writeTx.commit();
+        }
+        return counts;
+    }
+
+    // helper function: make the type edges of entry lead exactly to exitIds
+    private static void replace(Transaction writeTx, Node entry, RelationshipType type, long[] exitIds,
+                                long[] counts) {
+        MutableLongSet missing = new LongHashSet(exitIds);
+        for (Relationship rel : entry.getRelationships(Direction.OUTGOING, type)) {
+            if (!missing.remove(rel.getEndNode().getId())) {
+                rel.delete();
+                counts[2] += 1;
+            }
+        }
+        for (long exitId : missing.toSortedArray()) {
+            entry.createRelationshipTo(writeTx.getNodeById(exitId), type);
+            counts[1] += 1;
+        }
+    }
+
+    private LongArrayList ids(String query) {
+        LongArrayList ids = new LongArrayList();
+        try (Result result = tx.execute(query)) {
+            result.forEachRemaining(row -> ids.add(((Number) row.get("id")).longValue()));
+        }
+        return ids;
+    }
+
+    private static long mix(long value) {
+        value ^= (value >>> 33);
+        value *= 0xff51afd7ed558ccdL;
+        value ^= (value >>> 33);
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= (value >>> 33);
+        return value;
+    }
+
+}
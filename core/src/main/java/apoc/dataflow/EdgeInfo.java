@@ -3,12 +3,15 @@ package apoc.dataflow;
 import apoc.path.CandidatePath;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.memory.HeapEstimator;
 
 import javax.management.relation.Relation;
 import java.util.ArrayList;
 
 public class EdgeInfo {
 
+    public static final long SHALLOW_SIZE = HeapEstimator.shallowSizeOfInstance(EdgeInfo.class);
+
     private EdgeInfo prevEdge;
     private Relationship curRel;
     private ArrayList<Node> cfgNodes;
@@ -16,6 +19,7 @@ public class EdgeInfo {
     private ArrayList<Long> retWrites;
 
     public EdgeInfo(Relationship current, EdgeInfo previous) {
+        DataflowStats.candidate();
         this.curRel = current;
         this.prevEdge = previous;
         this.pathLength = (previous == null) ? 1 : previous.getPathLength() + 1;
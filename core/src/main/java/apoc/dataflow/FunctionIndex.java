@@ -0,0 +1,220 @@
+package apoc.dataflow;
+
+import apoc.util.Util;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.storageengine.api.TransactionIdStore;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.Stream;
+
+// Interned function identities of the CFG blocks, read by the call stack matching of the CFG searches
+//      - a block belongs to the function named by the part of its id before ";;:", every function name gets an
+//        int, stored on the block as cfgFunctionId
+//      - the cfgInvoke / cfgReturn = "1" strings of a nextCFGBlock edge are stored as the INVOKE / RETURN bits of
+//        one int cfgCallKind, an edge may carry both
+//      - the helpers compare the ints only while the index is current and fall back to the string properties
+//        otherwise, as well as for blocks and edges without them, e.g. created after the last indexFunctions()
+//      - the index is current while no transaction committed since it was built (tagged with the last committed
+//        transaction id, like the reachability index), or while the DataflowIndexMaintenance that was running
+//        when it was built still is (apoc.dataflow.index_maintenance.enabled), as it rewrites cfgCallKind and
+//        removes cfgFunctionId in every transaction changing the flags or ids
+//      - the tag is not persisted, after a restart the procedure has to be run again for the ints to be used
+public class FunctionIndex {
+
+    public static final String FUNCTION_ID_PROPERTY = "cfgFunctionId";
+    public static final String CALL_KIND_PROPERTY = "cfgCallKind";
+
+    public static final int NO_CALL = 0;
+    public static final int INVOKE = 1;
+    public static final int RETURN = 2;
+
+    // keyed by the transaction id store, a database restarted under the same name starts without an index state
+    private static final Map<TransactionIdStore, IndexState> indexStates =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final String FUNCTION_SEPARATOR = ";;:";
+
+    private static final String BLOCKS_QUERY =
+            "MATCH (block) WHERE (block)-[:nextCFGBlock]-() AND block.id IS NOT NULL " +
+            "RETURN id(block) AS id, block.id AS name ORDER BY id";
+    private static final String EDGES_QUERY =
+            "MATCH ()-[r:nextCFGBlock]->() " +
+            "RETURN id(r) AS id, coalesce(r.cfgInvoke = '1', false) AS invoke, " +
+            "coalesce(r.cfgReturn = '1', false) AS return ORDER BY id";
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    @Context
+    public Log log;
+
+    @Context
+    public TerminationGuard terminationGuard;
+
+    public static class IndexResult {
+        public long blocks;
+        public long functions;
+        public long edges;
+        public long calls;
+        public long elapsedMillis;
+
+        public IndexResult(long blocks, long functions, long edges, long calls, long elapsedMillis) {
+            this.blocks = blocks;
+            this.functions = functions;
+            this.edges = edges;
+            this.calls = calls;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    // when and under which maintenance the index of a database was built
+    private static final class IndexState {
+        private final long lastTxId;
+        private final DataflowIndexMaintenance maintainer;
+
+        private IndexState(long lastTxId, DataflowIndexMaintenance maintainer) {
+            this.lastTxId = lastTxId;
+            this.maintainer = maintainer;
+        }
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.dataflow.indexFunctions({batchSize:10000}) - stores an interned cfgFunctionId on every CFG block and the cfgInvoke / cfgReturn flags of nextCFGBlock edges as cfgCallKind, compared by the CFG searches instead of the id strings")
+    public Stream<IndexResult> indexFunctions(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        int batchSize = Math.max(1, Util.toLong(config.getOrDefault("batchSize", 10000)).intValue());
+        long start = System.currentTimeMillis();
+
+        // intern the function names, ids in order of the first block of each function
+        MutableObjectIntMap<String> functions = new ObjectIntHashMap<>();
+        LongArrayList blockIds = new LongArrayList();
+        IntArrayList functionIds = new IntArrayList();
+        try (Result result = tx.execute(BLOCKS_QUERY)) {
+            result.forEachRemaining(row -> {
+                String name = functionName(row.get("name").toString());
+                blockIds.add(((Number) row.get("id")).longValue());
+                functionIds.add(functions.getIfAbsentPut(name, functions.size()));
+            });
+        }
+
+        LongArrayList edgeIds = new LongArrayList();
+        IntArrayList callKinds = new IntArrayList();
+        try (Result result = tx.execute(EDGES_QUERY)) {
+            result.forEachRemaining(row -> {
+                edgeIds.add(((Number) row.get("id")).longValue());
+                callKinds.add((((Boolean) row.get("invoke")) ? INVOKE : NO_CALL) |
+                        (((Boolean) row.get("return")) ? RETURN : NO_CALL));
+            });
+        }
+
+        for (int next = 0; next < blockIds.size(); next += batchSize) {
+            terminationGuard.check();
+            int end = Math.min(next + batchSize, blockIds.size());
+            try (Transaction writeTx = db.beginTx()) {
+                for (int i = next; i < end; i++) {
+                    writeTx.getNodeById(blockIds.get(i)).setProperty(FUNCTION_ID_PROPERTY, functionIds.get(i));
+                }
+                writeTx.commit();
+            }
+        }
+
+        long calls = 0;
+        for (int next = 0; next < edgeIds.size(); next += batchSize) {
+            terminationGuard.check();
+            int end = Math.min(next + batchSize, edgeIds.size());
+            try (Transaction writeTx = db.beginTx()) {
+                for (int i = next; i < end; i++) {
+                    writeTx.getRelationshipById(edgeIds.get(i)).setProperty(CALL_KIND_PROPERTY, callKinds.get(i));
+                    calls += (callKinds.get(i) != NO_CALL) ? 1 : 0;
+                }
+                writeTx.commit();
+            }
+        }
+
+        DataflowIndexMaintenance maintainer = DataflowIndexMaintenance.forDatabase(db.databaseName());
+        indexStates.put(CFGReachability.txIdStore(db), new IndexState(CFGReachability.lastCommittedTxId(db),
+                (maintainer != null && maintainer.maintains(db)) ? maintainer : null));
+
+        IndexResult indexed = new IndexResult(blockIds.size(), functions.size(), edgeIds.size(), calls,
+                System.currentTimeMillis() - start);
+        log.info("apoc.dataflow.indexFunctions: %d blocks of %d functions, %d edges of which %d calls",
+                indexed.blocks, indexed.functions, indexed.edges, indexed.calls);
+        return Stream.of(indexed);
+    }
+
+    // whether the stored cfgFunctionId / cfgCallKind values of the database can be trusted, resolved once per search
+    public static boolean isCurrent(GraphDatabaseService db) {
+        if (db == null || indexStates.isEmpty()) {
+            return false;
+        }
+        TransactionIdStore txIdStore = CFGReachability.txIdStore(db);
+        IndexState state = indexStates.get(txIdStore);
+        if (state == null) {
+            return false;
+        }
+        if (state.maintainer != null && state.maintainer == DataflowIndexMaintenance.forDatabase(db.databaseName())) {
+            return true;
+        }
+        return state.lastTxId == txIdStore.getLastCommittedTransactionId();
+    }
+
+    // helper function: whether two CFG blocks belong to the same function, indexed as returned by isCurrent
+    public static boolean sameFunction(Node block1, Node block2, boolean indexed) {
+        if (indexed) {
+            Object functionId1 = block1.getProperty(FUNCTION_ID_PROPERTY, null);
+            Object functionId2 = (functionId1 == null) ? null : block2.getProperty(FUNCTION_ID_PROPERTY, null);
+            if (functionId2 != null) {
+                return ((Number) functionId1).intValue() == ((Number) functionId2).intValue();
+            }
+        }
+        return functionName((String) block1.getProperty("id")).equals(functionName((String) block2.getProperty("id")));
+    }
+
+    // helper function: whether a nextCFGBlock edge is a cfgInvoke edge
+    public static boolean isInvoke(Relationship cfgEdge, boolean indexed) {
+        return (callKind(cfgEdge, indexed) & INVOKE) != 0;
+    }
+
+    // helper function: whether a nextCFGBlock edge is a cfgReturn edge
+    public static boolean isReturn(Relationship cfgEdge, boolean indexed) {
+        return (callKind(cfgEdge, indexed) & RETURN) != 0;
+    }
+
+    // helper function: INVOKE and / or RETURN bits of a nextCFGBlock edge, NO_CALL for neither
+    public static int callKind(Relationship cfgEdge, boolean indexed) {
+        if (indexed) {
+            Object kind = cfgEdge.getProperty(CALL_KIND_PROPERTY, null);
+            if (kind != null) {
+                return ((Number) kind).intValue();
+            }
+        }
+        int kind = "1".equals(cfgEdge.getProperty("cfgInvoke", null)) ? INVOKE : NO_CALL;
+        return kind | ("1".equals(cfgEdge.getProperty("cfgReturn", null)) ? RETURN : NO_CALL);
+    }
+
+    // helper function: function part of a block id, "function;;:block"
+    public static String functionName(String blockId) {
+        int separator = blockId.indexOf(FUNCTION_SEPARATOR);
+        return (separator < 0) ? blockId : blockId.substring(0, separator);
+    }
+
+}
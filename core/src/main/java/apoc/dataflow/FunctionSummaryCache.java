@@ -0,0 +1,225 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Shared interprocedural summaries of the summary based dataflow engine (apoc.path.summaryDataflowPath)
+//      - a summary describes a function entered through a parameter variable at given entry CFG blocks: the
+//        shortest CFG feasible flow from the parameter to every retWrite leaving the function, and to every
+//        variable reached inside the function or its callees
+//      - enabled by apoc.dataflow.summary_cache.size > 0, the size bounds the number of relationship ids held
+//      - keyed by the last committed transaction id like PathResultCache, summaries computed in a transaction
+//        with uncommitted changes are only kept for that call
+//      - with apoc.dataflow.index_maintenance.enabled, commits that only change node properties keep the summaries
+//        (DataflowIndexMaintenance), calls made before such a commit was applied only use summaries of their own
+public class FunctionSummaryCache extends LifecycleAdapter {
+
+    private static final Map<String, FunctionSummaryCache> caches = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseService db;
+    private final ApocConfig apocConfig;
+    private final Log log;
+    private volatile long cachedTxId = -1;
+    private volatile long epoch = 0;
+    private Cache<Key, Summary> cache;
+
+    // function entered at parameter with the accepted entry CFG nodes (empty without CFG check)
+    public static class Key {
+        private final long parameterId;
+        private final long[] entryCFGIds;
+        private final boolean cfgCheck;
+
+        public Key(long parameterId, long[] entryCFGIds, boolean cfgCheck) {
+            this.parameterId = parameterId;
+            this.entryCFGIds = entryCFGIds.clone();
+            Arrays.sort(this.entryCFGIds);
+            this.cfgCheck = cfgCheck;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return parameterId == key.parameterId && cfgCheck == key.cfgCheck &&
+                    Arrays.equals(entryCFGIds, key.entryCFGIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(parameterId) + Arrays.hashCode(entryCFGIds)) + Boolean.hashCode(cfgCheck);
+        }
+    }
+
+    // flow from the parameter to a variable: relationship ids (the entering parWrite excluded) and the
+    // accepted CFG nodes after the last relationship
+    public static class Flow {
+        public final long[] relIds;
+        public final long[] cfgIds;
+
+        public Flow(long[] relIds, long[] cfgIds) {
+            this.relIds = relIds;
+            this.cfgIds = cfgIds;
+        }
+    }
+
+    public static class Summary {
+        public final List<Flow> exits = new ArrayList<>();                             // ending with a retWrite
+        public final MutableLongObjectMap<Flow> reached = new LongObjectHashMap<>();   // variable id -> flow
+        public boolean complete = true;     // false if a recursive call was skipped while computing it
+
+        public int weight() {
+            int weight = 1;
+            for (Flow exit : exits) {
+                weight += exit.relIds.length;
+            }
+            for (Flow flow : reached) {
+                weight += flow.relIds.length;
+            }
+            return weight;
+        }
+    }
+
+    public FunctionSummaryCache(GraphDatabaseService db, ApocConfig apocConfig, Log log) {
+        this.db = db;
+        this.apocConfig = apocConfig;
+        this.log = log;
+    }
+
+    @Override
+    public void start() {
+        long size = apocConfig.getInt(ApocConfig.APOC_DATAFLOW_SUMMARY_CACHE_SIZE, 0);
+        if (size > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(size)
+                    .weigher((Key key, Summary summary) -> summary.weight())
+                    .recordStats()
+                    .build();
+        }
+        caches.put(db.databaseName(), this);
+    }
+
+    @Override
+    public void stop() {
+        caches.remove(db.databaseName());
+        if (cache != null) {
+            cache.invalidateAll();
+            cache = null;
+        }
+    }
+
+    // summaries visible to one call: the shared ones and those only valid for the call
+    public static class Summaries {
+        private final FunctionSummaryCache owner;
+        private final Cache<Key, Summary> shared;
+        private final long epoch;
+        private final Map<Key, Summary> local = new HashMap<>();
+
+        private Summaries(FunctionSummaryCache owner, Cache<Key, Summary> shared) {
+            this.owner = owner;
+            this.shared = shared;
+            this.epoch = (owner == null) ? 0 : owner.epoch;
+        }
+
+        public Summary get(Key key) {
+            Summary summary = local.get(key);
+            return ((summary == null) && (shared != null)) ? shared.getIfPresent(key) : summary;
+        }
+
+        // incomplete summaries, and those computed while a change was applied, are kept for this call only
+        public void put(Key key, Summary summary) {
+            if (summary.complete && (shared != null) && (owner.epoch == epoch)) {
+                shared.put(key, summary);
+            } else {
+                local.put(key, summary);
+            }
+        }
+    }
+
+    // summaries for one call, shared ones are only used when the transaction has no uncommitted changes
+    public static Summaries forCall(GraphDatabaseService db, Transaction tx) {
+        FunctionSummaryCache shared = (db == null) ? null : caches.get(db.databaseName());
+        Cache<Key, Summary> cache = (shared == null) ? null : shared.cache;
+        if ((cache == null) || hasChanges(tx)) {
+            return new Summaries(null, null);
+        }
+
+        long txId = CFGReachability.lastCommittedTxId(db);
+        if (txId != shared.cachedTxId) {
+            if (DataflowIndexMaintenance.isPending(db.databaseName())) {
+                // the commit may keep the summaries, wait for it to be applied
+                return new Summaries(null, null);
+            }
+            // every summary was computed against an older store
+            shared.log.debug("Invalidating function summaries of " + db.databaseName() + " at transaction " + txId);
+            shared.reset(txId);
+        }
+        return new Summaries(shared, cache);
+    }
+
+    public static FunctionSummaryCache forDatabase(String databaseName) {
+        return caches.get(databaseName);
+    }
+
+    public Map<String, Object> info() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("database", db.databaseName());
+        info.put("enabled", cache != null);
+        info.put("size", (cache == null) ? 0L : cache.size());
+        info.put("hits", (cache == null) ? 0L : cache.stats().hitCount());
+        info.put("misses", (cache == null) ? 0L : cache.stats().missCount());
+        info.put("evictions", (cache == null) ? 0L : cache.stats().evictionCount());
+        info.put("lastTxId", cachedTxId);
+        return info;
+    }
+
+    public void clear() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    // apply transaction txId, the summaries stay valid if it made no structural change and the cache reflects
+    // the transaction before it
+    public synchronized void advance(long txId, boolean structural) {
+        if ((cache == null) || (cachedTxId >= txId)) {
+            return;
+        }
+        if (structural || (cachedTxId != txId - 1)) {
+            reset(txId);
+        } else {
+            cachedTxId = txId;
+        }
+    }
+
+    // helper function: drop every summary, summaries computed before are not published anymore
+    private synchronized void reset(long txId) {
+        if (cachedTxId < txId) {
+            epoch += 1;
+            cache.invalidateAll();
+            cachedTxId = txId;
+        }
+    }
+
+    // helper function: whether the transaction has uncommitted changes that shared summaries would not reflect
+    private static boolean hasChanges(Transaction tx) {
+        return (tx instanceof InternalTransaction) &&
+                ((InternalTransaction) tx).kernelTransaction().dataRead().transactionStateHasChanges();
+    }
+
+}
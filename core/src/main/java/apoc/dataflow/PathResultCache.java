@@ -0,0 +1,264 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import apoc.util.Util;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Memoizes the results of the config driven path functions (apoc.path.cfgValidatedPath, apoc.cfgPath.rosFindPaths)
+//      - enabled by apoc.dataflow.path_cache.size > 0, the size bounds the number of relationships held by all
+//        cached results; a single call can opt out with {cache: false}
+//      - keyed by function, start, normalized config and the cache epoch, the whole cache is dropped (and the epoch
+//        advanced) as soon as a newer transaction id is seen, so results never outlive a store change
+//      - with apoc.dataflow.index_maintenance.enabled, commits that only change node properties keep the cache
+//        (DataflowIndexMaintenance), calls made before such a commit was applied bypass the cache
+//      - calls from transactions with uncommitted changes are never cached
+// Paths are stored as flat id arrays and rebound to the calling transaction on every hit.
+public class PathResultCache extends LifecycleAdapter {
+
+    private static final Map<String, PathResultCache> caches = new ConcurrentHashMap<>();
+
+    // null marks a function result of null, which is different from an empty list
+    private static final List<long[]> NULL_RESULT = List.of();
+
+    private final GraphDatabaseService db;
+    private final ApocConfig apocConfig;
+    private final Log log;
+    private volatile long cachedTxId = -1;
+    private volatile long epoch = 0;
+    private Cache<Key, List<long[]>> cache;
+
+    private static class Key {
+        private final String function;
+        private final String start;
+        private final String config;
+        private final long epoch;
+
+        private Key(String function, String start, String config, long epoch) {
+            this.function = function;
+            this.start = start;
+            this.config = config;
+            this.epoch = epoch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return epoch == key.epoch && function.equals(key.function) && start.equals(key.start) &&
+                    config.equals(key.config);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(function, start, config, epoch);
+        }
+    }
+
+    public PathResultCache(GraphDatabaseService db, ApocConfig apocConfig, Log log) {
+        this.db = db;
+        this.apocConfig = apocConfig;
+        this.log = log;
+    }
+
+    @Override
+    public void start() {
+        long size = apocConfig.getInt(ApocConfig.APOC_DATAFLOW_PATH_CACHE_SIZE, 0);
+        if (size > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(size)
+                    .weigher((Key key, List<long[]> paths) -> weight(paths))
+                    .recordStats()
+                    .build();
+        }
+        caches.put(db.databaseName(), this);
+    }
+
+    @Override
+    public void stop() {
+        caches.remove(db.databaseName());
+        if (cache != null) {
+            cache.invalidateAll();
+            cache = null;
+        }
+    }
+
+    // return the cached result of function(start, config), computing and caching it on a miss
+    public static List<Path> getPaths(GraphDatabaseService db, Transaction tx, String function, Object start,
+                                      Map<String, Object> config, Supplier<List<Path>> compute) {
+
+        PathResultCache shared = (db == null) ? null : caches.get(db.databaseName());
+        Cache<Key, List<long[]>> cache = (shared == null) ? null : shared.cache;
+        if ((cache == null) || (config != null && !Util.toBoolean(config.getOrDefault("cache", true)))
+                || hasChanges(tx)) {
+            return compute.get();
+        }
+
+        long txId = CFGReachability.lastCommittedTxId(db);
+        if (txId != shared.cachedTxId) {
+            if (DataflowIndexMaintenance.isPending(db.databaseName())) {
+                // the commit may keep the cache, wait for it to be applied
+                return compute.get();
+            }
+            // every entry was computed against an older store
+            shared.log.debug("Invalidating dataflow path cache of " + db.databaseName() + " at transaction " + txId);
+            shared.reset(txId);
+        }
+
+        Key key = new Key(function, normalize(start), normalize(withoutCacheFlag(config)), shared.epoch);
+        List<long[]> ids = cache.getIfPresent(key);
+        if (ids == null) {
+            List<Path> paths = compute.get();
+            cache.put(key, toIds(paths));
+            return paths;
+        }
+
+        return fromIds(tx, ids);
+    }
+
+    public static PathResultCache forDatabase(String databaseName) {
+        return caches.get(databaseName);
+    }
+
+    public Map<String, Object> info() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("database", db.databaseName());
+        info.put("enabled", cache != null);
+        info.put("size", (cache == null) ? 0L : cache.size());
+        info.put("hits", (cache == null) ? 0L : cache.stats().hitCount());
+        info.put("misses", (cache == null) ? 0L : cache.stats().missCount());
+        info.put("evictions", (cache == null) ? 0L : cache.stats().evictionCount());
+        info.put("lastTxId", cachedTxId);
+        return info;
+    }
+
+    public void clear() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    // apply transaction txId, the cached results stay valid if it made no structural change and the cache
+    // reflects the transaction before it
+    public synchronized void advance(long txId, boolean structural) {
+        if ((cache == null) || (cachedTxId >= txId)) {
+            return;
+        }
+        if (structural || (cachedTxId != txId - 1)) {
+            reset(txId);
+        } else {
+            cachedTxId = txId;
+        }
+    }
+
+    // helper function: drop every entry, results computed before are not published anymore
+    private synchronized void reset(long txId) {
+        if (cachedTxId < txId) {
+            epoch += 1;
+            cache.invalidateAll();
+            cachedTxId = txId;
+        }
+    }
+
+    // helper function: whether the transaction has uncommitted changes that cached results would not reflect
+    private static boolean hasChanges(Transaction tx) {
+        return (tx instanceof InternalTransaction) &&
+                ((InternalTransaction) tx).kernelTransaction().dataRead().transactionStateHasChanges();
+    }
+
+    private static Map<String, Object> withoutCacheFlag(Map<String, Object> config) {
+        if (config == null || !config.containsKey("cache")) {
+            return config;
+        }
+        Map<String, Object> copy = new HashMap<>(config);
+        copy.remove("cache");
+        return copy;
+    }
+
+    // helper function: canonical string of a config value, maps sorted by key and entities replaced by their id
+    static String normalize(Object value) {
+        StringBuilder builder = new StringBuilder();
+        normalize(value, builder);
+        return builder.toString();
+    }
+
+    private static void normalize(Object value, StringBuilder builder) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof Node) {
+            builder.append("n").append(((Entity) value).getId());
+        } else if (value instanceof Relationship) {
+            builder.append("r").append(((Entity) value).getId());
+        } else if (value instanceof Map) {
+            builder.append('{');
+            for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+                builder.append(entry.getKey()).append(':');
+                normalize(entry.getValue(), builder);
+                builder.append(',');
+            }
+            builder.append('}');
+        } else if (value instanceof Collection) {
+            builder.append('[');
+            for (Object item : (Collection<?>) value) {
+                normalize(item, builder);
+                builder.append(',');
+            }
+            builder.append(']');
+        } else if (value instanceof String) {
+            builder.append('"').append(((String) value).replace("\"", "\\\"")).append('"');
+        } else {
+            builder.append(value);
+        }
+    }
+
+    private static List<long[]> toIds(List<Path> paths) {
+        if (paths == null) {
+            return NULL_RESULT;
+        }
+        List<long[]> ids = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            ids.add(ROSFindPath.toIds(path));
+        }
+        return ids;
+    }
+
+    private static List<Path> fromIds(Transaction tx, List<long[]> ids) {
+        if (ids == NULL_RESULT) {
+            return null;
+        }
+        List<Path> paths = new ArrayList<>(ids.size());
+        for (long[] pathIds : ids) {
+            paths.add(ROSFindPath.fromIds(tx, pathIds));
+        }
+        return paths;
+    }
+
+    private static int weight(List<long[]> paths) {
+        int weight = 1;
+        for (long[] pathIds : paths) {
+            weight += pathIds.length;
+        }
+        return weight;
+    }
+
+}
@@ -0,0 +1,144 @@
+package apoc.dataflow;
+
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+
+// Candidate dataflow paths of a BFS stored as a parent-pointer tree over primitive ids
+//      - an entry is one relationship appended to the path of its parent entry (-1 for a root)
+//      - entries are appended in BFS order, so the tree doubles as the BFS queue
+//      - paths are only materialized as Path objects when they are emitted
+public final class PathTree {
+
+    public static final int ROOT = -1;
+    private static final long[] NO_CFG = new long[0];
+
+    private long[] relIds;
+    private long[] endNodeIds;
+    private int[] parents;
+    private int[] lengths;
+    private RetWriteStack[] retWrites;
+    private long[][] cfgNodes;
+    private int size = 0;
+
+    public PathTree() {
+        this(64);
+    }
+
+    public PathTree(int capacity) {
+        capacity = Math.max(capacity, 1);
+        relIds = new long[capacity];
+        endNodeIds = new long[capacity];
+        parents = new int[capacity];
+        lengths = new int[capacity];
+        retWrites = new RetWriteStack[capacity];
+        cfgNodes = new long[capacity][];
+    }
+
+    // copy of the tree, later entries added to either one are not seen by the other
+    public PathTree copy() {
+        PathTree copy = new PathTree(size);
+        System.arraycopy(relIds, 0, copy.relIds, 0, size);
+        System.arraycopy(endNodeIds, 0, copy.endNodeIds, 0, size);
+        System.arraycopy(parents, 0, copy.parents, 0, size);
+        System.arraycopy(lengths, 0, copy.lengths, 0, size);
+        System.arraycopy(retWrites, 0, copy.retWrites, 0, size);
+        System.arraycopy(cfgNodes, 0, copy.cfgNodes, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    // append rel to the path ending at parent
+    // return: index of the new entry
+    public int add(Relationship rel, int parent) {
+        DataflowStats.candidate();
+        if (size == relIds.length) {
+            grow();
+        }
+
+        int entry = size++;
+        relIds[entry] = rel.getId();
+        endNodeIds[entry] = rel.getEndNode().getId();
+        parents[entry] = parent;
+        lengths[entry] = (parent == ROOT) ? 1 : lengths[parent] + 1;
+        RetWriteStack parentRetWrites = (parent == ROOT) ? null : retWrites[parent];
+        retWrites[entry] = (rel.isType(DataflowHelper.RelTypes.retWrite)) ?
+                RetWriteStack.push(parentRetWrites, rel.getId()) : parentRetWrites;
+        cfgNodes[entry] = NO_CFG;
+        return entry;
+    }
+
+    private void grow() {
+        int capacity = relIds.length * 2;
+        relIds = Arrays.copyOf(relIds, capacity);
+        endNodeIds = Arrays.copyOf(endNodeIds, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        retWrites = Arrays.copyOf(retWrites, capacity);
+        cfgNodes = Arrays.copyOf(cfgNodes, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long relId(int entry) {
+        return relIds[entry];
+    }
+
+    public long endNodeId(int entry) {
+        return endNodeIds[entry];
+    }
+
+    public int parent(int entry) {
+        return parents[entry];
+    }
+
+    public int pathLength(int entry) {
+        return lengths[entry];
+    }
+
+    public RetWriteStack retWrites(int entry) {
+        return retWrites[entry];
+    }
+
+    public long[] cfgNodes(int entry) {
+        return cfgNodes[entry];
+    }
+
+    public void setCfgNodes(int entry, long[] nodes) {
+        cfgNodes[entry] = nodes;
+    }
+
+    // relationship ids of the path ending at entry, in dataflow order
+    public long[] relIds(int entry) {
+        long[] path = new long[lengths[entry]];
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = relIds[entry];
+            entry = parents[entry];
+        }
+        return path;
+    }
+
+    // build the path ending at entry, optionally prefixed by pubTarget and followed by suffix
+    public PathImpl.Builder materialize(Transaction tx, int entry, Relationship pubTarget) {
+        long[] path = relIds(entry);
+        PathImpl.Builder builder;
+        if (pubTarget != null) {
+            builder = new PathImpl.Builder(pubTarget.getStartNode()).push(pubTarget);
+        } else {
+            builder = new PathImpl.Builder(tx.getRelationshipById(path[0]).getStartNode());
+        }
+        for (long relId : path) {
+            builder = builder.push(tx.getRelationshipById(relId));
+        }
+        return builder;
+    }
+
+    public Path build(Transaction tx, int entry, Relationship pubTarget) {
+        return materialize(tx, entry, pubTarget).build();
+    }
+}
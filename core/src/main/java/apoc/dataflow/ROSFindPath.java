@@ -1,18 +1,25 @@
 package apoc.dataflow;
 
 import apoc.Pools;
-import apoc.path.CFGValidationHelper;
-import org.neo4j.graphalgo.BasicEvaluationContext;
-import org.neo4j.graphalgo.impl.path.ShortestPath;
+import apoc.path.LazyPathSearch;
+import apoc.result.PathResultWithProfile;
+import apoc.util.Util;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ROSFindPath {
 
+    private static final long[] NO_CFG_NODES = new long[0];
+
     @Context
     public GraphDatabaseService db;
 
@@ -22,6 +29,9 @@ public class ROSFindPath {
     @Context
     public Pools pool;
 
+    @Context
+    public TerminationGuard terminationGuard;
+
 
     private DataflowHelper.DataflowType getCategory(Node startNode, Node endNode, Relationship startEdge,
                                                     Relationship endEdge) {
@@ -38,56 +48,216 @@ public class ROSFindPath {
         }
     }
 
-    class DataflowCallable implements Callable<List<Path>> {
-
-        private Relationship startEdge = null;
-        private Relationship endEdge = null;
-        private Node endNode = null;
-        private Node startNode = null;
-        private boolean cfgCheck = false;
-        private Relationship pubVar = null;
-        private Relationship pubTarget = null;
-        private DataflowHelper.DataflowType category = null;
-
-        public DataflowCallable(final Relationship startEdge, final Relationship endEdge,
-                              final boolean cfgCheck) {
-
-            if (startEdge.isType(DataflowHelper.RelTypes.pubTarget) &&
-                    endEdge.isType(DataflowHelper.RelTypes.pubVar)) {
-                // MIDDLE
-                this.category = DataflowHelper.DataflowType.MIDDLE;
-                this.startNode = startEdge.getEndNode();
-                this.endNode = endEdge.getStartNode();
-                this.pubVar = endEdge;
-                this.pubTarget = startEdge;
-            } else if (startEdge.isType(DataflowHelper.RelTypes.varWrite) &&
-                    endEdge.isType(DataflowHelper.RelTypes.pubVar)) {
-                // PREFIX
-                this.category = DataflowHelper.DataflowType.PREFIX;
-                this.startEdge = startEdge;
-                this.endNode = endEdge.getStartNode();
-                this.pubVar = endEdge;
-            } else if (startEdge.isType(DataflowHelper.RelTypes.pubTarget) &&
-                    (endEdge.isType(DataflowHelper.RelTypes.varInfFunc) ||
-                            endEdge.isType(DataflowHelper.RelTypes.varInfluence) )) {
-                // SUFFIX
-                this.category = DataflowHelper.DataflowType.SUFFIX;
-                this.startNode = startEdge.getEndNode();
-                this.pubTarget = startEdge;
-                this.endEdge = endEdge;
+    public static class DataflowPathResult {
+        public Relationship startEdge;
+        public Relationship endEdge;
+        public Path path;
+        public Map<String, Object> profile;
+
+        public DataflowPathResult(Relationship startEdge, Relationship endEdge, Path path) {
+            this(startEdge, endEdge, path, null);
+        }
+
+        public DataflowPathResult(Relationship startEdge, Relationship endEdge, Path path,
+                                  Map<String, Object> profile) {
+            this.startEdge = startEdge;
+            this.endEdge = endEdge;
+            this.path = path;
+            this.profile = profile;
+        }
+    }
+
+    // paths found for one startEdge x endEdge pair, stored as ids so they can leave the worker transaction
+    //      each path is [startNodeId, relId1, relId2, ...]
+    static class PairPaths {
+
+        final long startEdgeId;
+        final long endEdgeId;
+        final List<long[]> paths;
+
+        PairPaths(long startEdgeId, long endEdgeId, List<long[]> paths) {
+            this.startEdgeId = startEdgeId;
+            this.endEdgeId = endEdgeId;
+            this.paths = paths;
+        }
+    }
+
+    class DataflowCallable implements Callable<List<PairPaths>> {
+
+        private final long startEdgeId;
+        private final long endEdgeId;
+        private final boolean cfgCheck;
+
+        public DataflowCallable(final long startEdgeId, final long endEdgeId, final boolean cfgCheck) {
+            this.startEdgeId = startEdgeId;
+            this.endEdgeId = endEdgeId;
+            this.cfgCheck = cfgCheck;
+        }
+
+        @Override
+        public List<PairPaths> call() throws Exception {
+
+            // entities are bound to the transaction that loaded them, so every worker rebinds by id
+            try (Transaction workerTx = db.beginTx()) {
+                Relationship startEdge = workerTx.getRelationshipById(startEdgeId);
+                Relationship endEdge = workerTx.getRelationshipById(endEdgeId);
+
+                List<Path> paths = pairPaths(workerTx, startEdge, endEdge, this.cfgCheck);
+
+                List<long[]> pathIds = new ArrayList<>(paths.size());
+                for (Path path : paths) {
+                    pathIds.add(toIds(path));
+                }
+                return List.of(new PairPaths(startEdgeId, endEdgeId, pathIds));
             }
+        }
+    }
+
+    class MultiTargetCallable implements Callable<List<PairPaths>> {
 
+        private final long searchEdgeId;
+        private final long[] otherEdgeIds;
+        private final boolean cfgCheck;
+        private final boolean backward;
+
+        // forward: searchEdgeId is a start edge and otherEdgeIds are the end edges, backward the other way around
+        public MultiTargetCallable(final long searchEdgeId, final long[] otherEdgeIds, final boolean cfgCheck,
+                                   final boolean backward) {
+            this.searchEdgeId = searchEdgeId;
+            this.otherEdgeIds = otherEdgeIds;
             this.cfgCheck = cfgCheck;
+            this.backward = backward;
         }
 
         @Override
-        public List<Path> call() throws Exception {
-            //terminationGuard.check();
-            return rosAllShortestMulti(this.startNode, this.endNode, this.startEdge, this.endEdge,
-                    this.pubVar, this.pubTarget, this.category, this.cfgCheck);
+        public List<PairPaths> call() throws Exception {
+            try (Transaction workerTx = db.beginTx()) {
+                Relationship searchEdge = workerTx.getRelationshipById(searchEdgeId);
+                List<Relationship> otherEdges = new ArrayList<>(otherEdgeIds.length);
+                for (long otherEdgeId : otherEdgeIds) {
+                    otherEdges.add(workerTx.getRelationshipById(otherEdgeId));
+                }
+
+                return (backward) ?
+                        rosBackwardMulti(workerTx, otherEdges, searchEdge, cfgCheck) :
+                        rosForwardMulti(workerTx, searchEdge, otherEdges, cfgCheck);
+            }
         }
     }
 
+    // Runs search tasks on the cpu executor with at most maxInFlight tasks queued or running, and hands
+    // back the result of each task as soon as it completes, or in submission order if ordered
+    class SearchDriver implements Iterator<List<PairPaths>>, AutoCloseable {
+
+        private final long numTasks;
+        private final LongFunction<Callable<List<PairPaths>>> taskFactory;
+        private final int maxInFlight;
+        private final boolean ordered;
+        private final CompletionService<List<PairPaths>> completionService;
+        private final Set<Future<List<PairPaths>>> inFlight = new LinkedHashSet<>();
+        private long nextTask = 0;
+        private final DataflowStats.Profile profile = DataflowStats.current();
+
+        SearchDriver(long numTasks, LongFunction<Callable<List<PairPaths>>> taskFactory, int maxInFlight,
+                     boolean ordered) {
+            this.numTasks = numTasks;
+            this.taskFactory = taskFactory;
+            this.maxInFlight = Math.max(1, maxInFlight);
+            this.ordered = ordered;
+            this.completionService = new ExecutorCompletionService<>(pool.getCpuExecutorService());
+        }
+
+        private void submitPending() {
+            while ((inFlight.size() < maxInFlight) && (nextTask < numTasks)) {
+                Callable<List<PairPaths>> task = DataflowStats.bind(profile, taskFactory.apply(nextTask));
+                // ordered results are taken from the oldest future, not from the completion queue
+                inFlight.add((ordered) ? pool.getCpuExecutorService().submit(task) : completionService.submit(task));
+                nextTask++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            submitPending();
+            return !inFlight.isEmpty();
+        }
+
+        @Override
+        public List<PairPaths> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                Future<List<PairPaths>> ftr = (ordered) ? inFlight.iterator().next() : completionService.take();
+                inFlight.remove(ftr);
+                if (terminationGuard != null) {
+                    terminationGuard.check();
+                }
+                return ftr.get();
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interruption error executing in parallel: ", e);
+            } catch (ExecutionException e) {
+                close();
+                throw new RuntimeException("Execution error executing in parallel: ", e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Future<List<PairPaths>> ftr : inFlight) {
+                ftr.cancel(true);
+            }
+            inFlight.clear();
+            nextTask = numTasks;
+        }
+    }
+
+    // one task per startEdge x endEdge pair, start edge major
+    private SearchDriver pairSearch(List<Relationship> startEdges, List<Relationship> endEdges, boolean cfgCheck,
+                                    int maxInFlight, boolean ordered) {
+        long[] startEdgeIds = startEdges.stream().mapToLong(Relationship::getId).toArray();
+        long[] endEdgeIds = endEdges.stream().mapToLong(Relationship::getId).toArray();
+        return new SearchDriver((long) startEdgeIds.length * endEdgeIds.length,
+                task -> new DataflowCallable(startEdgeIds[(int) (task / endEdgeIds.length)],
+                        endEdgeIds[(int) (task % endEdgeIds.length)], cfgCheck),
+                maxInFlight, ordered);
+    }
+
+    // one task per start edge (forward) or per end edge (backward)
+    private SearchDriver multiTargetSearch(List<Relationship> startEdges, List<Relationship> endEdges,
+                                           boolean cfgCheck, boolean backward, int maxInFlight) {
+        long[] startEdgeIds = startEdges.stream().mapToLong(Relationship::getId).toArray();
+        long[] endEdgeIds = endEdges.stream().mapToLong(Relationship::getId).toArray();
+        long[] searchEdgeIds = (backward) ? endEdgeIds : startEdgeIds;
+        long[] otherEdgeIds = (backward) ? startEdgeIds : endEdgeIds;
+        return new SearchDriver(searchEdgeIds.length,
+                task -> new MultiTargetCallable(searchEdgeIds[(int) task], otherEdgeIds, cfgCheck, backward),
+                maxInFlight, false);
+    }
+
+    // helper function: rebind the paths of finished tasks within the procedure transaction
+    private Stream<DataflowPathResult> toResults(SearchDriver search) {
+        // paths are rebuilt on the consuming thread, inside the procedure transaction
+        DataflowStats.Profile profile = search.profile;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(search, Spliterator.ORDERED), false)
+                .onClose(search::close)
+                .onClose(() -> DataflowStats.finish(profile))
+                .flatMap(List::stream)
+                .flatMap(pair -> {
+                    Relationship startEdge = tx.getRelationshipById(pair.startEdgeId);
+                    Relationship endEdge = tx.getRelationshipById(pair.endEdgeId);
+                    return pair.paths.stream()
+                            .map(pathIds -> new DataflowPathResult(startEdge, endEdge, fromIds(tx, pathIds),
+                                    DataflowStats.snapshot(profile)));
+                });
+    }
+
     @UserFunction
     @Description("apoc.dataflow.rosDataflow")
     public List<Path> rosDataflow(@Name("startEdges") List<Relationship> startEdges,
@@ -95,88 +265,228 @@ public class ROSFindPath {
                                           @Name("cfgCheck") boolean cfgCheck,
                                             @Name("numThreads") long numThreads) {
 
-
         ArrayList<Path> returnedPath = new ArrayList<>();
-        List<Callable<List<Path>>> findPaths = new ArrayList<>();
-        Queue<Future<List<Path>>> list = new LinkedList<>();
 
-        int threads = (int) numThreads;
-        //ExecutorService es = pool.getDefaultExecutorService();
-        //CompletionService<List<Path>> executorCompletionService= new ExecutorCompletionService<>(es);
-        ExecutorService es = Executors.newFixedThreadPool(threads);
-        int numTask = 0;
+        // paths in pair order, whichever pair finishes first
+        try (SearchDriver search = pairSearch(startEdges, endEdges, cfgCheck, (int) numThreads, true)) {
+            while (search.hasNext()) {
+                for (PairPaths pair : search.next()) {
+                    for (long[] pathIds : pair.paths) {
+                        returnedPath.add(fromIds(tx, pathIds));
+                    }
+                }
+            }
+        }
 
-        //int threads =  Runtime.getRuntime().availableProcessors();
-        for (Relationship startEdge : startEdges) {
-            for (Relationship endEdge : endEdges) {
-                numTask += 1;
+        return returnedPath;
 
-                /**final FutureTask<List<Path>> futureTask = new FutureTask<>(
-                        new DataflowCallable(startEdge, endEdge, cfgCheck)
-                );
-                findPaths.add(new DataflowCallable(startEdge, endEdge, cfgCheck));**/
+    }
 
-                Future<List<Path>> ftr = es.submit(
-                        new DataflowCallable(startEdge, endEdge, cfgCheck)
-                );
-                list.add(ftr);
+    @Procedure
+    @Description("apoc.dataflow.rosDataflowStream(startEdges, endEdges, cfgCheck, {concurrency, profile}) - " +
+            "stream the dataflow paths of every startEdge x endEdge pair as soon as the pair is searched")
+    public Stream<DataflowPathResult> rosDataflowStream(@Name("startEdges") List<Relationship> startEdges,
+                                                        @Name("endEdges") List<Relationship> endEdges,
+                                                        @Name("cfgCheck") boolean cfgCheck,
+                                                        @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+
+        int concurrency = Util.toInteger(config.getOrDefault("concurrency",
+                Runtime.getRuntime().availableProcessors()));
+        DataflowStats.Profile profile = DataflowStats.start("apoc.dataflow.rosDataflowStream", config);
+        return toResults(DataflowStats.call(profile,
+                () -> pairSearch(startEdges, endEdges, cfgCheck, concurrency, false)));
+    }
 
+    @Procedure
+    @Description("apoc.dataflow.rosDataflowMulti(startEdges, endEdges, cfgCheck, {direction: 'forward', concurrency, profile}) - " +
+            "one search per start edge reporting every reachable end edge ('forward'), or one search per end edge " +
+            "reporting every start edge reaching it ('backward')")
+    public Stream<DataflowPathResult> rosDataflowMulti(@Name("startEdges") List<Relationship> startEdges,
+                                                       @Name("endEdges") List<Relationship> endEdges,
+                                                       @Name("cfgCheck") boolean cfgCheck,
+                                                       @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+
+        int concurrency = Util.toInteger(config.getOrDefault("concurrency",
+                Runtime.getRuntime().availableProcessors()));
+        String direction = config.getOrDefault("direction", "forward").toString();
+        boolean backward;
+        if (direction.equalsIgnoreCase("forward")) {
+            backward = false;
+        } else if (direction.equalsIgnoreCase("backward")) {
+            backward = true;
+        } else {
+            throw new IllegalArgumentException("Unknown direction '" + direction + "', expected 'forward' or 'backward'");
+        }
 
-                /**executorCompletionService.submit(
-                        new DataflowCallable(startEdge, endEdge, cfgCheck)
-                );**/
+        DataflowStats.Profile profile = DataflowStats.start("apoc.dataflow.rosDataflowMulti", config);
+        return toResults(DataflowStats.call(profile,
+                () -> multiTargetSearch(startEdges, endEdges, cfgCheck, backward, concurrency)));
+    }
 
-            }
+    // helper function: flatten a path into [startNodeId, relId1, relId2, ...]
+    static long[] toIds(Path path) {
+        long[] ids = new long[path.length() + 1];
+        ids[0] = path.startNode().getId();
+        int i = 1;
+        for (Relationship rel : path.relationships()) {
+            ids[i++] = rel.getId();
+        }
+        return ids;
+    }
 
+    // helper function: rebuild a path flattened by toIds within the given transaction
+    static Path fromIds(Transaction tx, long[] ids) {
+        PathImpl.Builder builder = new PathImpl.Builder(tx.getNodeById(ids[0]));
+        for (int i = 1; i < ids.length; i++) {
+            builder = builder.push(tx.getRelationshipById(ids[i]));
         }
+        return builder.build();
+    }
 
+    // helper function: paths of the startEdge x endEdge pair, empty if the pair is not a valid ROS query
+    private List<Path> pairPaths(Transaction tx, Relationship startEdge, Relationship endEdge, boolean cfgCheck) {
+        Relationship searchStartEdge = null;
+        Relationship searchEndEdge = null;
+        Node startNode = null;
+        Node endNode = null;
+        Relationship pubVar = null;
+        Relationship pubTarget = null;
+        DataflowHelper.DataflowType category = null;
+
+        if (startEdge.isType(DataflowHelper.RelTypes.pubTarget) &&
+                endEdge.isType(DataflowHelper.RelTypes.pubVar)) {
+            // MIDDLE
+            category = DataflowHelper.DataflowType.MIDDLE;
+            startNode = startEdge.getEndNode();
+            endNode = endEdge.getStartNode();
+            pubVar = endEdge;
+            pubTarget = startEdge;
+        } else if (startEdge.isType(DataflowHelper.RelTypes.varWrite) &&
+                endEdge.isType(DataflowHelper.RelTypes.pubVar)) {
+            // PREFIX
+            category = DataflowHelper.DataflowType.PREFIX;
+            searchStartEdge = startEdge;
+            endNode = endEdge.getStartNode();
+            pubVar = endEdge;
+        } else if (startEdge.isType(DataflowHelper.RelTypes.pubTarget) &&
+                (endEdge.isType(DataflowHelper.RelTypes.varInfFunc) ||
+                        endEdge.isType(DataflowHelper.RelTypes.varInfluence) )) {
+            // SUFFIX
+            category = DataflowHelper.DataflowType.SUFFIX;
+            startNode = startEdge.getEndNode();
+            pubTarget = startEdge;
+            searchEndEdge = endEdge;
+        }
 
-        while (!list.isEmpty()) {
-            Future<List<Path>> ftr = list.remove();
-            try {
-                final List<Path> result = ftr.get();
-                if ((result != null) && (!result.isEmpty())) {
-                    returnedPath.addAll(result);
-                }
-            } catch (InterruptedException e) {
-                // If an InterruptedException or ExecutionException is thrown, print the exception message
-                es.shutdown();
-                throw new RuntimeException("Interruption error executing in parallel: ", e);
-            } catch (ExecutionException e) {
-                es.shutdown();
-                throw new RuntimeException("Execution error executing in parallel: ", e);
-            }
+        return rosAllShortestMulti(tx, startNode, endNode, searchStartEdge, searchEndEdge, pubVar, pubTarget,
+                category, cfgCheck);
+    }
 
-            ftr = null;
-            Runtime.getRuntime().gc();
+    // State of the pair search of rosDataflow, the path tree doubles as the BFS queue
+    //      - once a path is found, only candidates with the same first retWrite whose call stack is not yet
+    //        covered are searched on, and no relationship accepted until then is entered again
+    //      - the forward multi-target search shares one state for all its targets and goes on with a copy
+    //        for each target once a path to it is found
+    private static final class PairSearch {
+        private final PathTree tree;
+        private final LongHashSet visitedRels;
+        private final LongHashSet visitedRel;
+        private final HashSet<RetWriteStack> retCovered;
+        private boolean found = false;
+        private RetWriteStack foundRetWrites = null;
+
+        private PairSearch() {
+            this.tree = new PathTree();
+            this.visitedRels = new LongHashSet();
+            this.visitedRel = new LongHashSet();
+            this.retCovered = new HashSet<>();
         }
 
-        es.shutdown();
-        try {
-            es.awaitTermination(10, TimeUnit.SECONDS);
-            es.shutdownNow();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Interruption error executing in parallel: ", e);
+        private PairSearch(PairSearch other) {
+            this.tree = other.tree.copy();
+            this.visitedRels = new LongHashSet(other.visitedRels);
+            this.visitedRel = new LongHashSet(other.visitedRel);
+            this.retCovered = new HashSet<>(other.retCovered);
+            this.found = other.found;
+            this.foundRetWrites = other.foundRetWrites;
         }
 
+        private void addFirst(Relationship rel) {
+            visitedRels.add(rel.getId());
+            tree.add(rel, PathTree.ROOT);
+        }
 
+        // check whether or not the candidate at entry cannot lead to another path
+        private boolean pruned(int cur) {
+            if (!found) {
+                return false;
+            }
+            RetWriteStack curRetWrites = tree.retWrites(cur);
+            return !RetWriteStack.sameFirst(curRetWrites, foundRetWrites) || retCovered.contains(curRetWrites);
+        }
+
+        private void found(int cur) {
+            found = true;
+            foundRetWrites = tree.retWrites(cur);
+            visitedRels.addAll(visitedRel);
+            addRetComp(retCovered, foundRetWrites);
+        }
 
+        private void expand(Transaction tx, int cur) {
+            Iterable<Relationship> nextRels = DataflowHelper.getNextRels(tx.getNodeById(tree.endNodeId(cur)));
+            for (Relationship nextRel : nextRels) {
+                if (!visitedRels.contains(nextRel.getId())) {
+                    tree.add(nextRel, cur);
+                }
+            }
+        }
+    }
 
+    // helper function: go on with the pair search from entry from, adding the paths ending at endId to returnedPath
+    //      - lastEdge is the pubVar or the suffix end edge appended to every path
+    private void searchPair(Transaction tx, PairSearch search, int from, long endId, Relationship lastEdge,
+                            Relationship pubTarget, boolean cfgCheck, List<Path> returnedPath) {
+        PathTree tree = search.tree;
+        for (int cur = from; cur < tree.size(); cur++) {
 
-        /**try {
+            if (search.pruned(cur)) {
+                continue;
+            }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }**/
+            // validate or get the corresponding CFG
+            if ((!cfgCheck) || getCFGPath(tx, tree, cur)) {
 
+                search.visitedRel.add(tree.relId(cur));
 
+                if (tree.endNodeId(cur) == endId) {
+                    Path path = pathTo(tx, tree, cur, lastEdge, pubTarget, cfgCheck);
+                    if (path != null) {
+                        returnedPath.add(path);
+                        search.found(cur);
+                        continue;
+                    }
+                }
 
-        return returnedPath;
+                search.expand(tx, cur);
+            }
+        }
+    }
 
+    // helper function: path of entry cur followed by lastEdge, null if a suffix end edge fails its CFG check
+    private Path pathTo(Transaction tx, PathTree tree, int cur, Relationship lastEdge, Relationship pubTarget,
+                        boolean cfgCheck) {
+        if (lastEdge == null) {
+            return tree.materialize(tx, cur, pubTarget).build();
+        }
+        if (lastEdge.isType(DataflowHelper.RelTypes.pubVar) || (!cfgCheck) ||
+                (acceptCFGNodes(tx, lastEdge, tree.pathLength(cur) + 1, tree.cfgNodes(cur)).length > 0)) {
+            return tree.materialize(tx, cur, pubTarget).push(lastEdge).build();
+        }
+        return null;
     }
 
-    public List<Path> rosAllShortestMulti(@Name("startNode") Node startNode,
+    public List<Path> rosAllShortestMulti(Transaction tx,
+                                          @Name("startNode") Node startNode,
                                                         @Name("endNode") Node endNode,
                                      @Name("startEdge") Relationship startEdge,
                                      @Name("endEdge") Relationship endEdge,
@@ -185,14 +495,9 @@ public class ROSFindPath {
                                      @Name("category") DataflowHelper.DataflowType category,
                                      @Name("cfgCheck") boolean cfgCheck) {
 
-        // path finding data structures
-        HashSet<Long> visitedRels = new HashSet<>();
-        HashSet<Long> visitedRel = new HashSet<>();
-        Queue<EdgeInfo> queueEdge = new LinkedList<>();
+        // path finding data structures (the path tree doubles as the BFS queue)
+        PairSearch search = new PairSearch();
         ArrayList<Path> returnedPath = new ArrayList<>();
-        EdgeInfo foundPath = null;
-        ArrayList<ArrayList<Long>> retCovered = new ArrayList<>();
-        int pathLen = -1;
 
         // path finding variables
         //DataflowHelper.DataflowType category = getCategory(startNode, endNode, startEdge, endEdge);
@@ -219,67 +524,15 @@ public class ROSFindPath {
         if (category != DataflowHelper.DataflowType.PREFIX) {
             Iterable<Relationship> nextRels = DataflowHelper.getNextRels(startNode);
             for (Relationship nextRel : nextRels) {
-                visitedRels.add(nextRel.getId());
-                queueEdge.add(new EdgeInfo(nextRel, null));
+                search.addFirst(nextRel);
             }
         } else {
-            visitedRels.add(startEdge.getId());
-            queueEdge.add(new EdgeInfo(startEdge, null));
+            search.addFirst(startEdge);
         }
 
 
-        while (!queueEdge.isEmpty()) {
-
-            EdgeInfo curEdge = queueEdge.remove();
-            Relationship curRel = curEdge.getCurRel();
-
-            if (foundPath != null) {
-                if ((!curEdge.compareRetNodes(foundPath))) {
-                    continue;
-                } else {
-                    if (retCovered.contains(curEdge.getRetWrites())) {
-                        continue;
-                    }
-                }
-            }
-
-            // validate or get the corresponding CFG
-            if ((!cfgCheck) || getCFGPath(curEdge)) {
-
-                visitedRel.add(curRel.getId());
-
-                if (curRel.getEndNode().getId() == end.getId()) {
-                    if (category == DataflowHelper.DataflowType.SUFFIX) {
-                        EdgeInfo vifEdge = new EdgeInfo(endEdge, curEdge);
-                        if ((!cfgCheck) || getCFGPath(vifEdge)) {
-                            returnedPath.add(recursiveConstructPath(vifEdge, pubTarget).build());
-                            foundPath = vifEdge;
-                            visitedRels.addAll(visitedRel);
-                            retCovered.addAll(curEdge.getRetComp());
-                            continue;
-                            //return List.of(constructPath(curEdge));
-                        }
-                    } else {
-                        PathImpl.Builder b = recursiveConstructPath(curEdge, pubTarget);
-                        b = (pubVar != null) ? b.push(pubVar) : b;
-                        returnedPath.add(b.build());
-                        foundPath = curEdge;
-                        visitedRels.addAll(visitedRel);
-                        retCovered.addAll(curEdge.getRetComp());
-                        continue;
-                        //return List.of(constructPath(curEdge));
-                    }
-                }
-
-                Iterable<Relationship> nextRels = DataflowHelper.getNextRels(curRel.getEndNode());
-                for (Relationship nextRel : nextRels) {
-                    if (!visitedRels.contains(nextRel)) {
-                        queueEdge.add(new EdgeInfo(nextRel, curEdge));
-                    }
-                }
-            }
-
-        }
+        Relationship lastEdge = (category == DataflowHelper.DataflowType.SUFFIX) ? endEdge : pubVar;
+        searchPair(tx, search, 0, end.getId(), lastEdge, pubTarget, cfgCheck, returnedPath);
 
         return returnedPath;
     }
@@ -292,14 +545,27 @@ public class ROSFindPath {
                                      @Name("endEdge") Relationship endEdge,
                                      @Name("cfgCheck") boolean cfgCheck) {
 
-        // path finding data structures
-        HashSet<Long> visitedRels = new HashSet<>();
-        HashSet<Long> visitedRel = new HashSet<>();
-        Queue<EdgeInfo> queueEdge = new LinkedList<>();
-        ArrayList<Path> returnedPath = new ArrayList<>();
-        EdgeInfo foundPath = null;
-        ArrayList<ArrayList<Long>> retCovered = new ArrayList<>();
-        int pathLen = -1;
+        AllShortestSearch search = allShortestSearch(startNode, endNode, startEdge, endEdge, cfgCheck, Map.of());
+        return (search == null) ? null : search.toList();
+    }
+
+    @Procedure
+    @Description("apoc.dataflow.rosAllShortestStream(startNode, endNode, startEdge, endEdge, cfgCheck, {limit, maxDepth, profile}) - " +
+            "stream the paths of apoc.dataflow.rosAllShortest as they are found")
+    public Stream<PathResultWithProfile> rosAllShortestStream(@Name("startNode") Node startNode,
+                                                   @Name("endNode") Node endNode,
+                                                   @Name("startEdge") Relationship startEdge,
+                                                   @Name("endEdge") Relationship endEdge,
+                                                   @Name("cfgCheck") boolean cfgCheck,
+                                                   @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        DataflowStats.Profile profile = DataflowStats.start("apoc.dataflow.rosAllShortestStream", config);
+        return LazyPathSearch.stream(DataflowStats.call(profile,
+                () -> allShortestSearch(startNode, endNode, startEdge, endEdge, cfgCheck, config)), profile, config);
+    }
+
+    // helper function: search of rosAllShortest, null if the arguments are not valid
+    private AllShortestSearch allShortestSearch(Node startNode, Node endNode, Relationship startEdge,
+                                                Relationship endEdge, boolean cfgCheck, Map<String, Object> config) {
 
         // path finding variables
         DataflowHelper.DataflowType category = getCategory(startNode, endNode, startEdge, endEdge);
@@ -308,89 +574,477 @@ public class ROSFindPath {
         // Check if path finding is necessary
         Node start = (category == DataflowHelper.DataflowType.PREFIX) ? startEdge.getEndNode() : startNode;
         Node end = (category == DataflowHelper.DataflowType.SUFFIX) ? endEdge.getStartNode() : endNode;
+        AllShortestSearch search = new AllShortestSearch(end, endEdge, category, cfgCheck, config);
         if (start.getId() == end.getId()) {
             // not necessary
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
                     new PathImpl.Builder(startEdge.getStartNode());
             builder = (startEdge != null) ? builder.push(startEdge) : builder;
             builder = (endEdge != null) ? builder.push(endEdge) : builder;
-            return List.of(builder.build());
+            search.emit(builder.build());
+            return search;
         }
 
         // Add first edges to queue before beginning search
         if (category != DataflowHelper.DataflowType.PREFIX) {
             Iterable<Relationship> nextRels = DataflowHelper.getNextRels(startNode);
             for (Relationship nextRel : nextRels) {
-                visitedRels.add(nextRel.getId());
-                queueEdge.add(new EdgeInfo(nextRel, null));
+                search.visitedRels.add(nextRel.getId());
+                search.queueEdge.add(new EdgeInfo(nextRel, null));
             }
         } else {
-            visitedRels.add(startEdge.getId());
-            queueEdge.add(new EdgeInfo(startEdge, null));
+            search.visitedRels.add(startEdge.getId());
+            search.queueEdge.add(new EdgeInfo(startEdge, null));
         }
 
+        return search;
+    }
+
+    // breadth first search of rosAllShortest, one queued edge per step
+    private class AllShortestSearch extends LazyPathSearch {
 
-        while (!queueEdge.isEmpty()) {
+        private final Node end;
+        private final Relationship endEdge;
+        private final DataflowHelper.DataflowType category;
+        private final boolean cfgCheck;
 
+        // path finding data structures
+        private final HashSet<Long> visitedRels = new HashSet<>();
+        private final HashSet<Long> visitedRel = new HashSet<>();
+        private final Queue<EdgeInfo> queueEdge =
+                budget.queue(edge -> SearchBudget.sizeOf(EdgeInfo.SHALLOW_SIZE, edge.getRetWrites().size()));
+        private final ArrayList<ArrayList<Long>> retCovered = new ArrayList<>();
+        private EdgeInfo foundPath = null;
+
+        private AllShortestSearch(Node end, Relationship endEdge, DataflowHelper.DataflowType category,
+                                  boolean cfgCheck, Map<String, Object> config) {
+            super(tx, config);
+            this.end = end;
+            this.endEdge = endEdge;
+            this.category = category;
+            this.cfgCheck = cfgCheck;
+        }
+
+        // redeclared in this package so rosAllShortest can emit the single edge paths it finds before searching
+        @Override
+        protected void emit(Path path) {
+            super.emit(path);
+        }
+
+        @Override
+        protected boolean step() {
+            if (queueEdge.isEmpty()) {
+                return false;
+            }
+
+            DataflowStats.queued(queueEdge.size());
             EdgeInfo curEdge = queueEdge.remove();
             Relationship curRel = curEdge.getCurRel();
 
+            if (curEdge.getPathLength() > maxDepth) {
+                // edges are queued breadth first, all remaining ones are at least as long
+                return false;
+            }
+
             if (foundPath != null) {
                 if ((!curEdge.compareRetNodes(foundPath))) {
-                    continue;
+                    return true;
                 } else {
                     if (retCovered.contains(curEdge.getRetWrites())) {
-                        continue;
+                        return true;
                     }
                 }
             }
 
-            // validate or get the corresponding CFG
-            if ((!cfgCheck) || getCFGPath(curEdge)) {
+            // validate or get the corresponding CFG, same pruning as the pair search of rosDataflow
+            if ((!cfgCheck) || getCFGPath(tx, curEdge)) {
 
-                visitedRels.add(curRel.getId());
+                visitedRel.add(curRel.getId());
 
                 if (curRel.getEndNode().getId() == end.getId()) {
                     if (category == DataflowHelper.DataflowType.SUFFIX) {
-                        curEdge = new EdgeInfo(endEdge, curEdge);
-                        if ((!cfgCheck) || getCFGPath(curEdge)) {
-                            returnedPath.add(constructPath(curEdge));
-                            foundPath = curEdge;
-                            visitedRels.addAll(visitedRel);
-                            retCovered.addAll(curEdge.getRetComp());
-                            //return List.of(constructPath(curEdge));
+                        EdgeInfo vifEdge = new EdgeInfo(endEdge, curEdge);
+                        if ((!cfgCheck) || getCFGPath(tx, vifEdge)) {
+                            emit(constructPath(vifEdge));
+                            found(vifEdge, curEdge);
+                            return true;
                         }
                     } else {
-                        returnedPath.add(constructPath(curEdge));
-                        foundPath = curEdge;
-                        visitedRels.addAll(visitedRel);
-                        retCovered.addAll(curEdge.getRetComp());
-                        //return List.of(constructPath(curEdge));
+                        emit(constructPath(curEdge));
+                        found(curEdge, curEdge);
+                        return true;
                     }
                 }
 
                 Iterable<Relationship> nextRels = DataflowHelper.getNextRels(curRel.getEndNode());
                 for (Relationship nextRel : nextRels) {
-                    if (!visitedRels.contains(nextRel)) {
+                    if (!visitedRels.contains(nextRel.getId())) {
                         queueEdge.add(new EdgeInfo(nextRel, curEdge));
                     }
                 }
             }
 
+            return true;
         }
 
-        return returnedPath;
+        // helper function: only paths with the call stack of the found path and not yet covered are searched on,
+        //      none of them through the relationships accepted so far
+        private void found(EdgeInfo path, EdgeInfo curEdge) {
+            foundPath = path;
+            int visitedBefore = visitedRels.size();
+            visitedRels.addAll(visitedRel);
+            visited(visitedRels.size() - visitedBefore);
+            retCovered.addAll(curEdge.getRetComp());
+        }
     }
 
-    private boolean getCFGPath(EdgeInfo curEdge) {
+    // helper function: category of a startEdge x endEdge pair, same rules as DataflowCallable
+    // return: MIDDLE / PREFIX / SUFFIX, or null if the pair is not a valid ROS query
+    private static DataflowHelper.DataflowType getPairCategory(Relationship startEdge, Relationship endEdge) {
+        if (startEdge.isType(DataflowHelper.RelTypes.pubTarget) &&
+                endEdge.isType(DataflowHelper.RelTypes.pubVar)) {
+            return DataflowHelper.DataflowType.MIDDLE;
+        } else if (startEdge.isType(DataflowHelper.RelTypes.varWrite) &&
+                endEdge.isType(DataflowHelper.RelTypes.pubVar)) {
+            return DataflowHelper.DataflowType.PREFIX;
+        } else if (startEdge.isType(DataflowHelper.RelTypes.pubTarget) &&
+                (endEdge.isType(DataflowHelper.RelTypes.varInfFunc) ||
+                        endEdge.isType(DataflowHelper.RelTypes.varInfluence))) {
+            return DataflowHelper.DataflowType.SUFFIX;
+        }
+        return null;
+    }
 
-        HashMap<List<Node>, Relationship> curCFG = DataflowHelper.getConnectionNodes(curEdge.getCurRel());
-        ArrayList<Node> prevCFG = curEdge.getPrevRelCFG();
+    // helper function: path made of the start edge directly followed by the end edge (no search necessary)
+    private static Path directPath(Relationship startEdge, Relationship endEdge) {
+        return new PathImpl.Builder(startEdge.getStartNode()).push(startEdge).push(endEdge).build();
+    }
+
+    // visited key of the backward multi-target search: a relationship together with the CFG nodes from which the
+    //      rest of the path passes the CFG checks, a relationship reached again with other CFG nodes can still
+    //      lead to paths the earlier visit could not
+    private static final class VisitKey {
+        private final long relId;
+        private final long[] cfgNodes;
+        private final int hash;
+
+        private VisitKey(long relId, long[] cfgNodes) {
+            this.relId = relId;
+            this.cfgNodes = cfgNodes.clone();
+            Arrays.sort(this.cfgNodes);
+            this.hash = 31 * Long.hashCode(relId) + Arrays.hashCode(this.cfgNodes);
+        }
+
+        private VisitKey(long relId, List<Node> cfgNodes) {
+            this(relId, cfgNodes.stream().mapToLong(Node::getId).toArray());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof VisitKey)) {
+                return false;
+            }
+            VisitKey other = (VisitKey) o;
+            return (relId == other.relId) && Arrays.equals(cfgNodes, other.cfgNodes);
+        }
+    }
+
+    // Forward multi-target search: one pair search from startEdge shared by every end edge
+    //      - until a path to an end edge is found, the pair searches of all end edges are the same, so they share
+    //        one path tree and its CFG checks
+    //      - from the first path to an end edge on, its pair search goes on with a copy of the shared state,
+    //        so every end edge gets the paths, retWrite pruning included, rosDataflow returns for the pair
+    public List<PairPaths> rosForwardMulti(Transaction tx, Relationship startEdge, List<Relationship> endEdges,
+                                           boolean cfgCheck) {
+
+        boolean isPrefix = startEdge.isType(DataflowHelper.RelTypes.varWrite);
+        Relationship pubTarget = (isPrefix) ? null : startEdge;
+        Node start = startEdge.getEndNode();
+
+        // targets: start node of the end edge -> end edges without a path so far
+        HashMap<Long, List<Relationship>> targets = new HashMap<>();
+        HashMap<Long, List<long[]>> foundPaths = new LinkedHashMap<>();
+        int numTargets = 0;
+        for (Relationship endEdge : endEdges) {
+            if (getPairCategory(startEdge, endEdge) == null) {
+                continue;
+            }
+            if (endEdge.getStartNode().getId() == start.getId()) {
+                foundPaths.computeIfAbsent(endEdge.getId(), k -> new ArrayList<>())
+                        .add(toIds(directPath(startEdge, endEdge)));
+                continue;
+            }
+            targets.computeIfAbsent(endEdge.getStartNode().getId(), k -> new ArrayList<>()).add(endEdge);
+            numTargets++;
+        }
+
+        PairSearch shared = new PairSearch();
+        if (isPrefix) {
+            shared.addFirst(startEdge);
+        } else {
+            for (Relationship nextRel : DataflowHelper.getNextRels(start)) {
+                shared.addFirst(nextRel);
+            }
+        }
+
+        // nothing was found in the shared search, so none of its candidates is pruned
+        for (int cur = 0; (cur < shared.tree.size()) && (numTargets > 0); cur++) {
+
+            // validate or get the corresponding CFG
+            if (cfgCheck && !getCFGPath(tx, shared.tree, cur)) {
+                continue;
+            }
+            shared.visitedRel.add(shared.tree.relId(cur));
+
+            List<Relationship> reached = targets.get(shared.tree.endNodeId(cur));
+            if (reached != null) {
+                Iterator<Relationship> it = reached.iterator();
+                while (it.hasNext()) {
+                    Relationship endEdge = it.next();
+                    Path path = pathTo(tx, shared.tree, cur, endEdge, pubTarget, cfgCheck);
+                    if (path == null) {
+                        continue;
+                    }
+
+                    // the pair search of endEdge does not expand cur and goes its own way from here
+                    List<Path> paths = new ArrayList<>();
+                    paths.add(path);
+                    PairSearch search = new PairSearch(shared);
+                    search.found(cur);
+                    searchPair(tx, search, cur + 1, shared.tree.endNodeId(cur), endEdge, pubTarget, cfgCheck, paths);
+
+                    List<long[]> pathIds = foundPaths.computeIfAbsent(endEdge.getId(), k -> new ArrayList<>());
+                    for (Path found : paths) {
+                        pathIds.add(toIds(found));
+                    }
+                    it.remove();
+                    numTargets--;
+                }
+            }
+
+            shared.expand(tx, cur);
+        }
+
+        List<PairPaths> result = new ArrayList<>(foundPaths.size());
+        for (Map.Entry<Long, List<long[]>> entry : foundPaths.entrySet()) {
+            result.add(new PairPaths(startEdge.getId(), entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    // Backward multi-target search: a single level-synchronous BFS against the dataflow direction from
+    // endEdge finds the start edges with a dataflow path to it, the pair search of rosDataflow then returns
+    // the paths of each of them, so the retWrite rules are the same as for the pair
+    //      - every candidate keeps the CFG nodes of its first edge from which the rest of the path passes the
+    //        CFG checks, a candidate without any is dropped
+    //      - a relationship expanded at an earlier level with the same CFG nodes is not expanded again
+    public List<PairPaths> rosBackwardMulti(Transaction tx, List<Relationship> startEdges, Relationship endEdge,
+                                            boolean cfgCheck) {
+
+        Node end = endEdge.getStartNode();
+        boolean isSuffix = !endEdge.isType(DataflowHelper.RelTypes.pubVar);
+
+        // sources: a prefix path starts with the varWrite start edge itself,
+        //          other paths start with any dataflow edge leaving the pubTarget end node
+        HashMap<Long, List<Relationship>> edgeSources = new HashMap<>();
+        HashMap<Long, List<Relationship>> nodeSources = new HashMap<>();
+        HashMap<Long, List<long[]>> foundPaths = new LinkedHashMap<>();
+        int numSources = 0;
+        for (Relationship startEdge : startEdges) {
+            DataflowHelper.DataflowType category = getPairCategory(startEdge, endEdge);
+            if (category == null) {
+                continue;
+            }
+            if (startEdge.getEndNode().getId() == end.getId()) {
+                foundPaths.computeIfAbsent(startEdge.getId(), k -> new ArrayList<>())
+                        .add(toIds(directPath(startEdge, endEdge)));
+                continue;
+            }
+            if (category == DataflowHelper.DataflowType.PREFIX) {
+                edgeSources.computeIfAbsent(startEdge.getId(), k -> new ArrayList<>()).add(startEdge);
+            } else {
+                nodeSources.computeIfAbsent(startEdge.getEndNode().getId(), k -> new ArrayList<>()).add(startEdge);
+            }
+            numSources++;
+        }
+
+        HashSet<VisitKey> visited = new HashSet<>();
+        LinkedHashMap<Long, Relationship> settledSources = new LinkedHashMap<>();
+        List<EdgeInfo> curLevel = new ArrayList<>();
+
+        // the parent pointer of a backward EdgeInfo is the edge that follows it in dataflow order,
+        //      a suffix end edge is checked like any other edge, so it becomes the root of every candidate
+        EdgeInfo root = null;
+        if (isSuffix) {
+            root = new EdgeInfo(endEdge, null);
+            root.updateCfgNodes((cfgCheck) ? backwardCFGNodes(tx, endEdge, null, false) : new ArrayList<>());
+        }
+        if (!cfgCheck || !isSuffix || !root.getCfgNodes().isEmpty()) {
+            for (Relationship prevRel : DataflowHelper.getPrevRels(end)) {
+                curLevel.add(new EdgeInfo(prevRel, root));
+            }
+        }
+
+        while (!curLevel.isEmpty() && (settledSources.size() < numSources)) {
+
+            List<EdgeInfo> nextLevel = new ArrayList<>();
+            HashSet<VisitKey> levelVisited = new HashSet<>();
+            LinkedHashMap<Long, Relationship> levelSettled = new LinkedHashMap<>();
+
+            for (EdgeInfo curEdge : curLevel) {
+                Relationship curRel = curEdge.getCurRel();
+                ArrayList<Node> nextCFG = (curEdge.getPrevEdge() == null) ? null : curEdge.getPrevEdge().getCfgNodes();
+
+                List<Relationship> sources = new ArrayList<>();
+                sources.addAll(edgeSources.getOrDefault(curRel.getId(), Collections.emptyList()));
+                sources.addAll(nodeSources.getOrDefault(curRel.getStartNode().getId(), Collections.emptyList()));
+
+                // curRel is the first edge of every path found here
+                boolean valid = !sources.isEmpty() &&
+                        (!cfgCheck || !backwardCFGNodes(tx, curRel, nextCFG, true).isEmpty());
+                for (Relationship startEdge : (valid) ? sources : Collections.<Relationship>emptyList()) {
+                    if (!settledSources.containsKey(startEdge.getId())) {
+                        levelSettled.put(startEdge.getId(), startEdge);
+                    }
+                }
+
+                // CFG nodes curRel may be entered with when it is not the first edge of the path
+                if (cfgCheck) {
+                    curEdge.updateCfgNodes(backwardCFGNodes(tx, curRel, nextCFG, false));
+                    if (curEdge.getCfgNodes().isEmpty()) {
+                        continue;
+                    }
+                } else {
+                    curEdge.updateCfgNodes(new ArrayList<>());
+                }
+
+                VisitKey key = new VisitKey(curRel.getId(), curEdge.getCfgNodes());
+                if (visited.contains(key)) {
+                    continue;
+                }
+                levelVisited.add(key);
 
-        ShortestPath shortestPath = new ShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+                for (Relationship prevRel : DataflowHelper.getPrevRels(curRel.getStartNode())) {
+                    if (cfgCheck || !visited.contains(new VisitKey(prevRel.getId(), NO_CFG_NODES))) {
+                        nextLevel.add(new EdgeInfo(prevRel, curEdge));
+                    }
+                }
+            }
+
+            visited.addAll(levelVisited);
+            settledSources.putAll(levelSettled);
+            curLevel = nextLevel;
+        }
+
+        for (Relationship startEdge : settledSources.values()) {
+            List<Path> paths = pairPaths(tx, startEdge, endEdge, cfgCheck);
+            if (!paths.isEmpty()) {
+                List<long[]> pathIds = foundPaths.computeIfAbsent(startEdge.getId(), k -> new ArrayList<>());
+                for (Path path : paths) {
+                    pathIds.add(toIds(path));
+                }
+            }
+        }
+
+        List<PairPaths> result = new ArrayList<>(foundPaths.size());
+        for (Map.Entry<Long, List<long[]>> entry : foundPaths.entrySet()) {
+            result.add(new PairPaths(entry.getKey(), endEdge.getId(), entry.getValue()));
+        }
+        return result;
+    }
+
+    // helper function: CFG nodes of rel from which the CFG checks of the rest of the path pass,
+    //      the same rules as getCFGPath(tx, EdgeInfo) applied backward
+    //      - nextCFG are the nodes computed for the edge following rel in dataflow order, null if rel is the last
+    //      - first edges of a path are accepted with their destination CFG nodes, other edges with their source ones
+    private ArrayList<Node> backwardCFGNodes(Transaction tx, Relationship rel, List<Node> nextCFG, boolean first) {
+        ArrayList<Node> acceptedCFGNode = new ArrayList<>();
+        DataflowStats.cfgCheck(() -> {
+            for (List<Node> endCFG : DataflowHelper.getConnectionNodes(db, tx, rel).keySet()) {
+                Node cfgNode = endCFG.get((first) ? 1 : 0);
+                if (nextCFG == null) {
+                    acceptedCFGNode.add(cfgNode);
+                    continue;
+                }
+
+                for (Node next : nextCFG) {
+                    try {
+                        if (CFGReachability.isReachable(db, tx, cfgNode, next)) {
+                            acceptedCFGNode.add(cfgNode);
+                            break;
+                        }
+                    } catch (Exception e) {
+                        continue;
+                    }
+                }
+            }
+            return !acceptedCFGNode.isEmpty();
+        });
+        return acceptedCFGNode;
+    }
+
+    private boolean getCFGPath(Transaction tx, PathTree tree, int entry) {
+        return DataflowStats.cfgCheck(() -> computeCFGPath(tx, tree, entry));
+    }
+
+    // helper function: validate the CFG of a path tree entry against the CFG nodes of its parent entry
+    // return: true if at least one CFG node of the entry is accepted
+    private boolean computeCFGPath(Transaction tx, PathTree tree, int entry) {
+        int parent = tree.parent(entry);
+        long[] accepted = acceptCFGNodes(tx, tx.getRelationshipById(tree.relId(entry)), tree.pathLength(entry),
+                (parent == PathTree.ROOT) ? null : tree.cfgNodes(parent));
+        tree.setCfgNodes(entry, accepted);
+        return accepted.length > 0;
+    }
+
+    // helper function: CFG nodes of rel reachable from the CFG nodes accepted for the previous edge
+    //      (same rules as getCFGPath(tx, EdgeInfo), with every accepted node listed once)
+    private long[] acceptCFGNodes(Transaction tx, Relationship rel, int pathLength, long[] prevCFG) {
+
+        HashMap<List<Node>, Relationship> curCFG = DataflowHelper.getConnectionNodes(db, tx, rel);
+        LongArrayList acceptedCFGNode = new LongArrayList();
+
+        for (List<Node> endCFG : curCFG.keySet()) {
+            if (pathLength == 1) {
+                acceptedCFGNode.add(endCFG.get(1).getId());
+                continue;
+            }
+
+            for (long startCFG : prevCFG) {
+                try {
+                    if (CFGReachability.isReachable(db, tx, tx.getNodeById(startCFG), endCFG.get(0))) {
+                        acceptedCFGNode.add(endCFG.get(0).getId());
+                        break;
+                    }
+                } catch (Exception e) {
+                    continue;
+                }
+            }
+        }
+
+        return acceptedCFGNode.toArray();
+    }
+
+    // helper function: mark every non empty prefix of the retWrite list as covered (EdgeInfo.getRetComp)
+    private static void addRetComp(Set<RetWriteStack> retCovered, RetWriteStack retWrites) {
+        for (RetWriteStack stack = retWrites; stack != null; stack = stack.prefix()) {
+            retCovered.add(stack);
+        }
+    }
+
+    private boolean getCFGPath(Transaction tx, EdgeInfo curEdge) {
+        return DataflowStats.cfgCheck(() -> computeCFGPath(tx, curEdge));
+    }
+
+    private boolean computeCFGPath(Transaction tx, EdgeInfo curEdge) {
+
+        HashMap<List<Node>, Relationship> curCFG = DataflowHelper.getConnectionNodes(db, tx, curEdge.getCurRel());
+        ArrayList<Node> prevCFG = curEdge.getPrevRelCFG();
 
         ArrayList<Node> acceptedCFGNode = new ArrayList<>();
 
@@ -402,8 +1056,7 @@ public class ROSFindPath {
 
             for (Node startCFG : prevCFG) {
                 try {
-                    Path cfgPath = shortestPath.findSinglePath(startCFG, endCFG.get(0));
-                    if (cfgPath != null) {
+                    if (CFGReachability.isReachable(db, tx, startCFG, endCFG.get(0))) {
                         acceptedCFGNode.add(endCFG.get(0));
                     }
                 } catch (Exception e) {
@@ -0,0 +1,80 @@
+package apoc.dataflow;
+
+// Persistent (shared tail) list of the retWrite relationship ids taken along a dataflow path
+//      - extending a path only allocates one cell, the prefix is shared with the parent path
+//      - the empty list is represented by null
+//      - equality and hash are structural, so covered call stacks can be kept in a hash set
+public final class RetWriteStack {
+
+    private final long relId;
+    private final RetWriteStack prefix;
+    private final long first;
+    private final int size;
+    private final int hash;
+
+    private RetWriteStack(long relId, RetWriteStack prefix) {
+        this.relId = relId;
+        this.prefix = prefix;
+        this.first = (prefix == null) ? relId : prefix.first;
+        this.size = (prefix == null) ? 1 : prefix.size + 1;
+        this.hash = 31 * ((prefix == null) ? 1 : prefix.hash) + Long.hashCode(relId);
+    }
+
+    public static RetWriteStack push(RetWriteStack stack, long relId) {
+        return new RetWriteStack(relId, stack);
+    }
+
+    // return: true if both lists are non empty and start with the same retWrite (EdgeInfo.compareRetNodes)
+    public static boolean sameFirst(RetWriteStack a, RetWriteStack b) {
+        return (a != null) && (b != null) && (a.first == b.first);
+    }
+
+    public long last() {
+        return relId;
+    }
+
+    public long first() {
+        return first;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // shorter list without the last retWrite (null if this was the only one)
+    public RetWriteStack prefix() {
+        return prefix;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RetWriteStack)) {
+            return false;
+        }
+
+        RetWriteStack a = this;
+        RetWriteStack b = (RetWriteStack) o;
+        if ((a.size != b.size) || (a.hash != b.hash)) {
+            return false;
+        }
+        while (a != null) {
+            if (a == b) {
+                return true;
+            }
+            if (a.relId != b.relId) {
+                return false;
+            }
+            a = a.prefix;
+            b = b.prefix;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,165 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import apoc.util.Util;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.kernel.impl.core.RelationshipEntity;
+import org.neo4j.memory.EmptyMemoryTracker;
+import org.neo4j.memory.HeapEstimator;
+import org.neo4j.memory.MemoryTracker;
+import org.neo4j.memory.ScopedMemoryTracker;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.ToLongFunction;
+
+import static org.neo4j.memory.HeapEstimator.shallowSizeOfInstance;
+
+// Heap accounting of a breadth first dataflow search, its frontier queue and visited sets
+//      - estimated sizes are reported to a ScopedMemoryTracker on the memory tracker of the transaction, so the
+//        search counts towards dbms.memory.transaction.max_size like the rest of the query and is released with it
+//      - {maxMemory: bytes} (default apoc.dataflow.search.max_memory, 0 = none) bounds a single search, once the
+//        search holds more it stops and returns the paths found so far, or fails with {onMaxMemory: 'fail'}
+public class SearchBudget implements AutoCloseable {
+
+    public static final long ARRAY_LIST_SIZE = shallowSizeOfInstance(java.util.ArrayList.class);
+    // a relationship in a HashSet: the entity and its hash map node
+    public static final long VISITED_ENTRY_SIZE = shallowSizeOfInstance(RelationshipEntity.class) + 32;
+    // a key in a primitive LongHashSet, including its free slots
+    public static final long VISITED_KEY_SIZE = 2 * Long.BYTES;
+
+    private final MemoryTracker tracker;
+    private final long maxBytes;
+    private final boolean fail;
+    private boolean exceeded = false;
+    private boolean closed = false;
+
+    private SearchBudget(MemoryTracker tracker, long maxBytes, boolean fail) {
+        this.tracker = tracker;
+        this.maxBytes = maxBytes;
+        this.fail = fail;
+    }
+
+    // budget of a search in tx, config {maxMemory, onMaxMemory: 'partial' | 'fail'}
+    public static SearchBudget of(Transaction tx, Map<String, Object> config) {
+        MemoryTracker transactionTracker = (tx instanceof InternalTransaction) ?
+                ((InternalTransaction) tx).kernelTransaction().memoryTracker() : EmptyMemoryTracker.INSTANCE;
+
+        Object maxMemory = (config == null) ? null : config.get("maxMemory");
+        long maxBytes = (maxMemory != null) ? Util.toLong(maxMemory) : defaultMaxMemory();
+
+        String onMaxMemory = (config == null) ? "partial" : config.getOrDefault("onMaxMemory", "partial").toString();
+        boolean fail;
+        if (onMaxMemory.equalsIgnoreCase("partial")) {
+            fail = false;
+        } else if (onMaxMemory.equalsIgnoreCase("fail")) {
+            fail = true;
+        } else {
+            throw new IllegalArgumentException("Unknown onMaxMemory '" + onMaxMemory + "', expected 'partial' or 'fail'");
+        }
+
+        return new SearchBudget(new ScopedMemoryTracker(transactionTracker), Math.max(0, maxBytes), fail);
+    }
+
+    // budget that neither tracks nor limits, for searches run outside a transaction
+    public static SearchBudget none() {
+        return new SearchBudget(EmptyMemoryTracker.INSTANCE, 0, false);
+    }
+
+    private static long defaultMaxMemory() {
+        ApocConfig apocConfig = ApocConfig.apocConfig();
+        if (apocConfig == null) {
+            return 0;
+        }
+        return Long.parseLong(apocConfig.getString(ApocConfig.APOC_DATAFLOW_SEARCH_MAX_MEMORY, "0").trim());
+    }
+
+    // estimated size of a candidate holding references relationships in an ArrayList
+    public static long sizeOf(long shallowSize, int references) {
+        return shallowSize + ARRAY_LIST_SIZE + HeapEstimator.sizeOfObjectArray(references);
+    }
+
+    public void allocate(long bytes) {
+        if (closed) {
+            return;
+        }
+        tracker.allocateHeap(bytes);
+        if ((maxBytes > 0) && (tracker.estimatedHeapMemory() > maxBytes)) {
+            exceeded = true;
+        }
+    }
+
+    public void release(long bytes) {
+        if (closed) {
+            return;
+        }
+        tracker.releaseHeap(bytes);
+    }
+
+    // true once the search went over its budget and has to stop, throws instead with {onMaxMemory: 'fail'}
+    public boolean isExceeded() {
+        if (exceeded && fail) {
+            throw new RuntimeException("Dataflow search exceeded its memory budget of " + maxBytes + " bytes " +
+                    "(maxMemory / apoc.dataflow.search.max_memory)");
+        }
+        return exceeded;
+    }
+
+    public long getUsedBytes() {
+        return tracker.estimatedHeapMemory();
+    }
+
+    // FIFO queue whose elements are accounted with their estimated size while queued
+    public <E> Queue<E> queue(ToLongFunction<E> size) {
+        return new AbstractQueue<>() {
+            private final ArrayDeque<E> elements = new ArrayDeque<>();
+
+            @Override
+            public boolean offer(E element) {
+                elements.add(element);
+                allocate(size.applyAsLong(element));
+                return true;
+            }
+
+            @Override
+            public E poll() {
+                E element = elements.poll();
+                if (element != null) {
+                    release(size.applyAsLong(element));
+                }
+                return element;
+            }
+
+            @Override
+            public E peek() {
+                return elements.peek();
+            }
+
+            @Override
+            public int size() {
+                return elements.size();
+            }
+
+            @Override
+            public Iterator<E> iterator() {
+                return elements.iterator();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (tracker instanceof ScopedMemoryTracker) {
+            ((ScopedMemoryTracker) tracker).close();
+        }
+    }
+
+}
@@ -74,7 +74,7 @@ public class ExportGraphStreamStrategy implements ExportArrowStreamStrategy<SubG
 
     @Override
     public ExecutorService getExecutorService() {
-        return pools.getDefaultExecutorService();
+        return pools.getIoExecutorService();
     }
 
     @Override
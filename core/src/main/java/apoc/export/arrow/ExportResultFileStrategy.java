@@ -83,7 +83,7 @@ public class ExportResultFileStrategy implements ExportArrowFileStrategy<Result>
 
     @Override
     public ExecutorService getExecutorService() {
-        return pools.getDefaultExecutorService();
+        return pools.getIoExecutorService();
     }
 
     @Override
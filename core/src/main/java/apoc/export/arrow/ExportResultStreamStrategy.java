@@ -55,7 +55,7 @@ public class ExportResultStreamStrategy implements ExportArrowStreamStrategy<Res
 
     @Override
     public ExecutorService getExecutorService() {
-        return pools.getDefaultExecutorService();
+        return pools.getIoExecutorService();
     }
 
     @Override
@@ -37,7 +37,7 @@ public class CsvEntityLoader {
 
     /**
      * Loads nodes from a CSV file with given labels to an online database, and fills the {@code idMapping},
-     * which will be used by the {@link #loadRelationships(Object, String, GraphDatabaseService, Map)}
+     * which will be used by the {@link #loadRelationships(Object, String, GraphDatabaseService, CsvIdMapping)}
      * method.
      *
      * @param fileName URI/Binary of the CSV file representing the node
@@ -47,7 +47,7 @@ public class CsvEntityLoader {
      * @throws IOException
      */
     public void loadNodes(final Object fileName, final List<String> labels, final GraphDatabaseService db,
-                          final Map<String, Map<String, Long>> idMapping) throws IOException {
+                          final CsvIdMapping idMapping) throws IOException {
         
         try (final CountingReader reader = FileUtils.readerFor(fileName, clc.getCompressionAlgo())) {
             final String header = readFirstLine(reader);
@@ -64,8 +64,7 @@ public class CsvEntityLoader {
             final Optional<String> idAttribute = idField.isPresent() ? Optional.of(idField.get().getName()) : Optional.empty();
             final String idSpace = idField.isPresent() ? idField.get().getIdSpace() : CsvLoaderConstants.DEFAULT_IDSPACE;
 
-            idMapping.putIfAbsent(idSpace, new HashMap<>());
-            final Map<String, Long> idspaceIdMapping = idMapping.get(idSpace);
+            final CsvIdMapping.IdSpace idspaceIdMapping = idMapping.idSpace(idSpace);
 
             final Map<String, Mapping> mapping = getMapping(fields);
 
@@ -93,7 +92,7 @@ public class CsvEntityLoader {
 
                     // if 'ignore duplicate nodes' is false, there is an id field and the mapping already has the current id,
                     // we either fail the loading process or skip it depending on the 'ignore duplicate nodes' setting
-                    if (idField.isPresent() && idspaceIdMapping.containsKey(nodeCsvId)) {
+                    if (idField.isPresent() && idspaceIdMapping.contains(nodeCsvId)) {
                         if (clc.getIgnoreDuplicateNodes()) {
                             return;
                         } else {
@@ -154,7 +153,7 @@ public class CsvEntityLoader {
     /**
      * Loads relationships from a CSV file with given relationship types to an online database,
      * using the {@code idMapping} created by the
-     * {@link #loadNodes(Object, List, GraphDatabaseService, Map)} method.
+     * {@link #loadNodes(Object, List, GraphDatabaseService, CsvIdMapping)} method.
      *
      * @param data URI / Binary of the CSV file representing the relationship
      * @param type relationship type to be applied to each relationships
@@ -167,7 +166,7 @@ public class CsvEntityLoader {
             final Object data, 
             final String type,
             final GraphDatabaseService db,
-            final Map<String, Map<String, Long>> idMapping) throws IOException {
+            final CsvIdMapping idMapping) throws IOException {
         
         try (final CountingReader reader = FileUtils.readerFor(data, clc.getCompressionAlgo())) {
             final String header = readFirstLine(reader);
@@ -186,6 +185,9 @@ public class CsvEntityLoader {
                     .filter(field -> !CsvLoaderConstants.END_ID_FIELD.equals(field.getType()))
                     .collect(Collectors.toList());
 
+            final CsvIdMapping.IdSpace startIdMapping = idMapping.idSpace(startIdField.getIdSpace());
+            final CsvIdMapping.IdSpace endIdMapping = idMapping.idSpace(endIdField.getIdSpace());
+
             final Map<String, Mapping> mapping = getMapping(fields);
 
             final CSVReader csv = new CSVReader(reader, clc.getDelimiter());
@@ -203,18 +205,18 @@ public class CsvEntityLoader {
                     );
 
                     final Object startId = result.map.get(CsvLoaderConstants.START_ID_ATTR);
-                    final Object startInternalId = idMapping.get(startIdField.getIdSpace()).get(startId);
-                    if (startInternalId == null) {
+                    final long startInternalId = startIdMapping.get(Objects.toString(startId, null));
+                    if (startInternalId == CsvIdMapping.NOT_FOUND) {
                         throw new IllegalStateException("Node for id space " + endIdField.getIdSpace() + " and id " + startId + " not found");
                     }
-                    final Node source = btx.getTransaction().getNodeById((long) startInternalId);
+                    final Node source = btx.getTransaction().getNodeById(startInternalId);
 
                     final Object endId = result.map.get(CsvLoaderConstants.END_ID_ATTR);
-                    final Object endInternalId = idMapping.get(endIdField.getIdSpace()).get(endId);
-                    if (endInternalId == null) {
+                    final long endInternalId = endIdMapping.get(Objects.toString(endId, null));
+                    if (endInternalId == CsvIdMapping.NOT_FOUND) {
                         throw new IllegalStateException("Node for id space " + endIdField.getIdSpace() + " and id " + endId + " not found");
                     }
-                    final Node target = btx.getTransaction().getNodeById((long) endInternalId);
+                    final Node target = btx.getTransaction().getNodeById(endInternalId);
 
                     final String currentType;
                     final Object overridingType = result.map.get(CsvLoaderConstants.TYPE_ATTR);
@@ -0,0 +1,739 @@
+package apoc.export.csv;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Mapping between the CSV ids of the imported nodes and their internal node ids, one per id space, without boxed
+ * keys or values: ids that are plain integers are kept as primitive longs, any other id as its UTF-8 bytes, interned
+ * in paged byte arrays. Once the mappings estimate more than {@code maxMemory} bytes, their entries are sorted and
+ * spilled to memory-mapped run files, which are binary searched after the entries still in memory, newest run first.
+ * A run at least half the size of the run before it is merged into that one, so an id space keeps a logarithmic number
+ * of runs. The budget includes the two long arrays a spill sorts the entries in, but not the old table a hash map
+ * briefly keeps next to the new one while it grows.
+ */
+public class CsvIdMapping implements AutoCloseable {
+
+    public static final long NOT_FOUND = -1;
+
+    // estimated bytes of a primitive long to long hash map entry, at a load factor of 0.5
+    static final long LONG_ENTRY_SIZE = 4 * Long.BYTES;
+    // a run file stays below the 2GB a single mapped buffer can address
+    static final long MAX_RUN_BYTES = 1L << 30;
+    // smaller budgets would spill every few entries
+    static final long MIN_MAX_MEMORY = 1L << 20;
+
+    private final long maxMemory;
+    private final Path directory;
+    private final Map<String, IdSpace> idSpaces = new HashMap<>();
+    private final List<Path> runFiles = new ArrayList<>();
+
+    /**
+     * A mapping kept in memory
+     */
+    public CsvIdMapping() {
+        this(0, null);
+    }
+
+    /**
+     * @param maxMemory estimated bytes kept in memory before the entries are spilled to run files, 0 for no limit,
+     *                  raised to {@link #MIN_MAX_MEMORY}
+     * @param directory directory of the run files, null for the temp directory
+     */
+    public CsvIdMapping(long maxMemory, String directory) {
+        this.maxMemory = maxMemory <= 0 ? 0 : Math.max(maxMemory, MIN_MAX_MEMORY);
+        this.directory = Paths.get(directory == null ? System.getProperty("java.io.tmpdir") : directory);
+    }
+
+    public IdSpace idSpace(String name) {
+        return idSpaces.computeIfAbsent(name, key -> new IdSpace());
+    }
+
+    /**
+     * @return the estimated heap held by the entries that were not spilled
+     */
+    public long estimatedMemory() {
+        long bytes = 0;
+        for (IdSpace idSpace : idSpaces.values()) {
+            bytes += idSpace.estimatedMemory();
+        }
+        return bytes;
+    }
+
+    public int getRunFiles() {
+        return runFiles.size();
+    }
+
+    private void spillIfNeeded() {
+        if (maxMemory <= 0) {
+            return;
+        }
+        long bytes = 0;
+        for (IdSpace idSpace : idSpaces.values()) {
+            bytes += idSpace.estimatedMemory() + idSpace.spillMemory();
+        }
+        if (bytes <= maxMemory) {
+            return;
+        }
+        try {
+            for (IdSpace idSpace : idSpaces.values()) {
+                idSpace.spill();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill the CSV id mapping to " + directory, e);
+        }
+    }
+
+    /**
+     * Deletes the run files. Their buffers stay mapped until they are garbage collected.
+     */
+    @Override
+    public void close() {
+        for (Path runFile : runFiles) {
+            delete(runFile);
+        }
+        runFiles.clear();
+        idSpaces.clear();
+    }
+
+    private static void delete(Path runFile) {
+        try {
+            Files.deleteIfExists(runFile);
+        } catch (IOException e) {
+            runFile.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * CSV ids of a single id space
+     */
+    public class IdSpace {
+        private LongLongHashMap longIds = new LongLongHashMap();
+        private ByteKeyMap byteIds = new ByteKeyMap();
+        private final List<LongRun> longRuns = new ArrayList<>();
+        private final List<ByteRun> byteRuns = new ArrayList<>();
+
+        /**
+         * @return the node id of csvId, {@link #NOT_FOUND} if it was not imported
+         */
+        public long get(String csvId) {
+            if (csvId == null) {
+                return NOT_FOUND;
+            }
+            if (isLongId(csvId)) {
+                long key = Long.parseLong(csvId);
+                long nodeId = longIds.getIfAbsent(key, NOT_FOUND);
+                for (int i = longRuns.size() - 1; nodeId == NOT_FOUND && i >= 0; i--) {
+                    nodeId = longRuns.get(i).get(key);
+                }
+                return nodeId;
+            }
+            byte[] key = csvId.getBytes(UTF_8);
+            long nodeId = byteIds.get(key);
+            for (int i = byteRuns.size() - 1; nodeId == NOT_FOUND && i >= 0; i--) {
+                nodeId = byteRuns.get(i).get(key);
+            }
+            return nodeId;
+        }
+
+        public boolean contains(String csvId) {
+            return get(csvId) != NOT_FOUND;
+        }
+
+        /**
+         * Map csvId to nodeId, a null csvId is not mapped
+         */
+        public void put(String csvId, long nodeId) {
+            if (csvId == null) {
+                return;
+            }
+            if (isLongId(csvId)) {
+                longIds.put(Long.parseLong(csvId), nodeId);
+            } else {
+                byteIds.put(csvId.getBytes(UTF_8), nodeId);
+            }
+            spillIfNeeded();
+        }
+
+        long estimatedMemory() {
+            return longIds.size() * LONG_ENTRY_SIZE + byteIds.estimatedMemory();
+        }
+
+        // the key and value arrays a spill sorts the entries in
+        long spillMemory() {
+            return 2L * Long.BYTES * (longIds.size() + byteIds.size());
+        }
+
+        private void spill() throws IOException {
+            if (!longIds.isEmpty()) {
+                long[] keys = longIds.keySet().toArray();
+                long[] values = new long[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    values[i] = longIds.get(keys[i]);
+                }
+                sort(keys, values, 0, keys.length, Long::compare);
+                longIds = new LongLongHashMap();
+                longRuns.addAll(LongRun.write(CsvIdMapping.this::newRunFile, keys, values));
+                for (int last = longRuns.size() - 1;
+                     last > 0 && canMerge(longRuns.get(last - 1).size(), longRuns.get(last).size()); last--) {
+                    LongRun newer = longRuns.remove(last);
+                    LongRun older = longRuns.remove(last - 1);
+                    longRuns.add(LongRun.merge(CsvIdMapping.this::newRunFile, older, newer));
+                    deleteRunFile(older.file);
+                    deleteRunFile(newer.file);
+                }
+            }
+            if (byteIds.size() > 0) {
+                byteRuns.addAll(byteIds.writeRuns(CsvIdMapping.this::newRunFile));
+                byteIds = new ByteKeyMap();
+                for (int last = byteRuns.size() - 1;
+                     last > 0 && canMerge(byteRuns.get(last - 1).size(), byteRuns.get(last).size()); last--) {
+                    ByteRun newer = byteRuns.remove(last);
+                    ByteRun older = byteRuns.remove(last - 1);
+                    byteRuns.add(ByteRun.merge(CsvIdMapping.this::newRunFile, older, newer));
+                    deleteRunFile(older.file);
+                    deleteRunFile(newer.file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the newer run is at least half the size of the older one, and both fit into a single run file
+     */
+    static boolean canMerge(long olderBytes, long newerBytes) {
+        return newerBytes * 2 >= olderBytes && olderBytes + newerBytes <= MAX_RUN_BYTES;
+    }
+
+    private Path newRunFile() throws IOException {
+        Path runFile = Files.createTempFile(directory, "apoc-import-ids", ".run");
+        runFiles.add(runFile);
+        return runFile;
+    }
+
+    // the buffer of a merged run stays mapped until it is garbage collected
+    private void deleteRunFile(Path runFile) {
+        runFiles.remove(runFile);
+        delete(runFile);
+    }
+
+    /**
+     * @return whether csvId is the canonical string of a long, so that it can be mapped by its value
+     */
+    static boolean isLongId(String csvId) {
+        int length = csvId.length();
+        int start = (length > 0 && csvId.charAt(0) == '-') ? 1 : 0;
+        int digits = length - start;
+        if (digits == 0 || digits > 19) {
+            return false;
+        }
+        // leading zeros and "-0" would not survive the round trip
+        if (csvId.charAt(start) == '0' && (digits > 1 || start == 1)) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = csvId.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (digits == 19) {
+            try {
+                Long.parseLong(csvId);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    interface RunFiles {
+        Path next() throws IOException;
+    }
+
+    interface Order {
+        int compare(long a, long b);
+    }
+
+    /**
+     * Sort keys[from, to) by order, moving values along
+     */
+    static void sort(long[] keys, long[] values, int from, int to, Order order) {
+        while (to - from > 16) {
+            long pivot = keys[from + (to - from) / 2];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (order.compare(keys[i], pivot) < 0) i++;
+                while (order.compare(keys[j], pivot) > 0) j--;
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            // recurse into the smaller part, so the depth stays logarithmic
+            if (j + 1 - from < to - i) {
+                sort(keys, values, from, j + 1, order);
+                from = i;
+            } else {
+                sort(keys, values, i, to, order);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && order.compare(keys[j - 1], keys[j]) > 0; j--) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private static MappedByteBuffer map(Path runFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(runFile, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Spilled integer ids, fixed size records of key and node id sorted by key
+     */
+    static class LongRun {
+        private static final int RECORD_SIZE = 2 * Long.BYTES;
+
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final int count;
+
+        private LongRun(Path file) throws IOException {
+            this.file = file;
+            this.buffer = map(file);
+            this.count = buffer.capacity() / RECORD_SIZE;
+        }
+
+        long size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Write the sorted keys and values into run files of at most MAX_RUN_BYTES each
+         */
+        static List<LongRun> write(RunFiles runFiles, long[] keys, long[] values) throws IOException {
+            List<LongRun> runs = new ArrayList<>();
+            int perRun = (int) (MAX_RUN_BYTES / RECORD_SIZE);
+            for (int from = 0; from < keys.length; from += perRun) {
+                Path runFile = runFiles.next();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile)))) {
+                    for (int i = from; i < Math.min(keys.length, from + perRun); i++) {
+                        out.writeLong(keys[i]);
+                        out.writeLong(values[i]);
+                    }
+                }
+                runs.add(new LongRun(runFile));
+            }
+            return runs;
+        }
+
+        /**
+         * Write the records of both runs into a single run file, a key in both keeps the node id of the newer run
+         */
+        static LongRun merge(RunFiles runFiles, LongRun older, LongRun newer) throws IOException {
+            Path runFile = runFiles.next();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile)))) {
+                int i = 0, j = 0;
+                while (i < older.count || j < newer.count) {
+                    long olderKey = i < older.count ? older.keyAt(i) : Long.MAX_VALUE;
+                    long newerKey = j < newer.count ? newer.keyAt(j) : Long.MAX_VALUE;
+                    if (j == newer.count || (i < older.count && olderKey < newerKey)) {
+                        out.writeLong(olderKey);
+                        out.writeLong(older.valueAt(i++));
+                    } else {
+                        if (i < older.count && olderKey == newerKey) {
+                            i++;
+                        }
+                        out.writeLong(newerKey);
+                        out.writeLong(newer.valueAt(j++));
+                    }
+                }
+            }
+            return new LongRun(runFile);
+        }
+
+        private long keyAt(int index) {
+            return buffer.getLong(index * RECORD_SIZE);
+        }
+
+        private long valueAt(int index) {
+            return buffer.getLong(index * RECORD_SIZE + Long.BYTES);
+        }
+
+        long get(long key) {
+            int low = 0, high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midKey = keyAt(mid);
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return valueAt(mid);
+                }
+            }
+            return NOT_FOUND;
+        }
+    }
+
+    /**
+     * Spilled string ids, records of the varint length, the key bytes and the node id sorted by key bytes. Every
+     * SPARSE-th record start is kept in memory, a lookup binary searches those and scans the records after it.
+     */
+    static class ByteRun {
+        static final int SPARSE = 32;
+
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final int[] sparse;
+
+        ByteRun(Path file, int[] sparse) throws IOException {
+            this.file = file;
+            this.buffer = map(file);
+            this.sparse = sparse;
+        }
+
+        long size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Write the records of both runs into a single run file, a key in both keeps the node id of the newer run
+         */
+        static ByteRun merge(RunFiles runFiles, ByteRun older, ByteRun newer) throws IOException {
+            Path runFile = runFiles.next();
+            List<Integer> sparse = new ArrayList<>();
+            int position = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile)))) {
+                int olderPosition = 0, newerPosition = 0;
+                for (int inRun = 0; olderPosition < older.size() || newerPosition < newer.size(); inRun++) {
+                    int compared = olderPosition == older.size() ? 1
+                            : newerPosition == newer.size() ? -1
+                            : compare(older, olderPosition, newer, newerPosition);
+                    if (inRun % SPARSE == 0) {
+                        sparse.add(position);
+                    }
+                    if (compared < 0) {
+                        position += older.copyRecord(olderPosition, out);
+                        olderPosition = older.recordEnd(olderPosition);
+                    } else {
+                        if (compared == 0) {
+                            olderPosition = older.recordEnd(olderPosition);
+                        }
+                        position += newer.copyRecord(newerPosition, out);
+                        newerPosition = newer.recordEnd(newerPosition);
+                    }
+                }
+            }
+            return new ByteRun(runFile, sparse.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private int recordEnd(int position) {
+            int length = readVarint(buffer, position);
+            return position + varintSize(length) + length + Long.BYTES;
+        }
+
+        // write the record at position to out, returns its size
+        private int copyRecord(int position, DataOutputStream out) throws IOException {
+            ByteBuffer record = buffer.duplicate();
+            record.limit(recordEnd(position)).position(position);
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            out.write(bytes);
+            return bytes.length;
+        }
+
+        private static int compare(ByteRun run1, int position1, ByteRun run2, int position2) {
+            int length1 = readVarint(run1.buffer, position1);
+            int start1 = position1 + varintSize(length1);
+            int length2 = readVarint(run2.buffer, position2);
+            int start2 = position2 + varintSize(length2);
+            for (int i = 0; i < Math.min(length1, length2); i++) {
+                int compared = Integer.compare(run1.buffer.get(start1 + i) & 0xFF, run2.buffer.get(start2 + i) & 0xFF);
+                if (compared != 0) {
+                    return compared;
+                }
+            }
+            return Integer.compare(length1, length2);
+        }
+
+        long get(byte[] key) {
+            // last sparse record <= key
+            int low = 0, high = sparse.length - 1, start = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (compareAt(sparse[mid], key) <= 0) {
+                    start = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (start < 0) {
+                return NOT_FOUND;
+            }
+            int position = sparse[start];
+            for (int i = 0; i < SPARSE && position < buffer.capacity(); i++) {
+                int compared = compareAt(position, key);
+                int length = readVarint(buffer, position);
+                int keyStart = position + varintSize(length);
+                if (compared == 0) {
+                    return buffer.getLong(keyStart + length);
+                }
+                if (compared > 0) {
+                    return NOT_FOUND;
+                }
+                position = keyStart + length + Long.BYTES;
+            }
+            return NOT_FOUND;
+        }
+
+        private int compareAt(int position, byte[] key) {
+            int length = readVarint(buffer, position);
+            int keyStart = position + varintSize(length);
+            for (int i = 0; i < Math.min(length, key.length); i++) {
+                int compared = Integer.compare(buffer.get(keyStart + i) & 0xFF, key[i] & 0xFF);
+                if (compared != 0) {
+                    return compared;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+    }
+
+    /**
+     * Open addressing hash map of interned byte keys to long values. The keys are appended to paged byte arrays as
+     * their varint length and bytes, the table holds their address + 1 (0 for a free slot) next to the value.
+     */
+    static class ByteKeyMap {
+        static final int PAGE_BITS = 20;
+        static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+        private final List<byte[]> pages = new ArrayList<>();
+        private int pagePosition = PAGE_SIZE;
+        private long[] addresses = new long[16];
+        private long[] values = new long[16];
+        private int size = 0;
+        private long keyBytes = 0;
+
+        int size() {
+            return size;
+        }
+
+        // the appended keys and the table, the unused rest of the last page is not counted
+        long estimatedMemory() {
+            return keyBytes + 2L * addresses.length * Long.BYTES;
+        }
+
+        long get(byte[] key) {
+            int mask = addresses.length - 1;
+            for (int slot = hash(key) & mask; addresses[slot] != 0; slot = (slot + 1) & mask) {
+                if (equalsAt(addresses[slot] - 1, key)) {
+                    return values[slot];
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        void put(byte[] key, long value) {
+            int mask = addresses.length - 1;
+            int slot = hash(key) & mask;
+            for (; addresses[slot] != 0; slot = (slot + 1) & mask) {
+                if (equalsAt(addresses[slot] - 1, key)) {
+                    values[slot] = value;
+                    return;
+                }
+            }
+            addresses[slot] = append(key) + 1;
+            values[slot] = value;
+            if (++size * 2 > addresses.length) {
+                grow();
+            }
+        }
+
+        private long append(byte[] key) {
+            int recordSize = varintSize(key.length) + key.length;
+            if (pagePosition + recordSize > PAGE_SIZE) {
+                // keys larger than a page get a page of their own
+                pages.add(new byte[Math.max(PAGE_SIZE, recordSize)]);
+                pagePosition = 0;
+            }
+            byte[] page = pages.get(pages.size() - 1);
+            long address = ((long) (pages.size() - 1) << PAGE_BITS) | pagePosition;
+            int position = writeVarint(page, pagePosition, key.length);
+            System.arraycopy(key, 0, page, position, key.length);
+            keyBytes += recordSize;
+            pagePosition = (page.length > PAGE_SIZE) ? PAGE_SIZE : position + key.length;
+            return address;
+        }
+
+        private void grow() {
+            long[] oldAddresses = addresses;
+            long[] oldValues = values;
+            addresses = new long[oldAddresses.length * 2];
+            values = new long[oldValues.length * 2];
+            int mask = addresses.length - 1;
+            for (int i = 0; i < oldAddresses.length; i++) {
+                if (oldAddresses[i] == 0) {
+                    continue;
+                }
+                int slot = hash(keyAt(oldAddresses[i] - 1)) & mask;
+                while (addresses[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                addresses[slot] = oldAddresses[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        /**
+         * Write the entries sorted by key bytes into run files of at most MAX_RUN_BYTES each
+         */
+        List<ByteRun> writeRuns(RunFiles runFiles) throws IOException {
+            long[] sortedAddresses = new long[size];
+            long[] sortedValues = new long[size];
+            for (int i = 0, next = 0; i < addresses.length; i++) {
+                if (addresses[i] != 0) {
+                    sortedAddresses[next] = addresses[i] - 1;
+                    sortedValues[next++] = values[i];
+                }
+            }
+            sort(sortedAddresses, sortedValues, 0, size, this::compare);
+
+            List<ByteRun> runs = new ArrayList<>();
+            int next = 0;
+            while (next < size) {
+                Path runFile = runFiles.next();
+                List<Integer> sparse = new ArrayList<>();
+                int position = 0;
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile)))) {
+                    for (int inRun = 0; next < size; next++, inRun++) {
+                        byte[] key = keyAt(sortedAddresses[next]);
+                        int recordSize = varintSize(key.length) + key.length + Long.BYTES;
+                        if (inRun > 0 && position + recordSize > MAX_RUN_BYTES) {
+                            break;
+                        }
+                        if (inRun % ByteRun.SPARSE == 0) {
+                            sparse.add(position);
+                        }
+                        byte[] length = new byte[varintSize(key.length)];
+                        writeVarint(length, 0, key.length);
+                        out.write(length);
+                        out.write(key);
+                        out.writeLong(sortedValues[next]);
+                        position += recordSize;
+                    }
+                }
+                runs.add(new ByteRun(runFile, sparse.stream().mapToInt(Integer::intValue).toArray()));
+            }
+            return runs;
+        }
+
+        private byte[] keyAt(long address) {
+            byte[] page = pages.get((int) (address >>> PAGE_BITS));
+            int position = (int) (address & (PAGE_SIZE - 1));
+            int length = readVarint(page, position);
+            int start = position + varintSize(length);
+            return Arrays.copyOfRange(page, start, start + length);
+        }
+
+        private boolean equalsAt(long address, byte[] key) {
+            byte[] page = pages.get((int) (address >>> PAGE_BITS));
+            int position = (int) (address & (PAGE_SIZE - 1));
+            int length = readVarint(page, position);
+            if (length != key.length) {
+                return false;
+            }
+            int start = position + varintSize(length);
+            return Arrays.equals(page, start, start + length, key, 0, key.length);
+        }
+
+        private int compare(long address1, long address2) {
+            byte[] page1 = pages.get((int) (address1 >>> PAGE_BITS));
+            int position1 = (int) (address1 & (PAGE_SIZE - 1));
+            int length1 = readVarint(page1, position1);
+            int start1 = position1 + varintSize(length1);
+            byte[] page2 = pages.get((int) (address2 >>> PAGE_BITS));
+            int position2 = (int) (address2 & (PAGE_SIZE - 1));
+            int length2 = readVarint(page2, position2);
+            int start2 = position2 + varintSize(length2);
+            return Arrays.compareUnsigned(page1, start1, start1 + length1, page2, start2, start2 + length2);
+        }
+
+        private static int hash(byte[] key) {
+            int hash = Arrays.hashCode(key) * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    // write value as 7 bits per byte, low bits first, returns the position after it
+    static int writeVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    static int readVarint(byte[] bytes, int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[position++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    static int readVarint(MappedByteBuffer buffer, int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ public class CsvLoaderConfig extends CompressionConfig {
     private static final String IGNORE_DUPLICATE_NODES = "ignoreDuplicateNodes";
     private static final String IGNORE_BLANK_STRING = "ignoreBlankString";
     private static final String IGNORE_EMPTY_CELL_ARRAY = "ignoreEmptyCellArray";
+    private static final String ID_MAPPING_MAX_MEMORY = "idMappingMaxMemory";
+    private static final String ID_MAPPING_DIRECTORY = "idMappingDirectory";
 
     private static char DELIMITER_DEFAULT = ',';
     private static char ARRAY_DELIMITER_DEFAULT = ';';
@@ -33,6 +35,7 @@ public class CsvLoaderConfig extends CompressionConfig {
     private static boolean IGNORE_DUPLICATE_NODES_DEFAULT = false;
     private static boolean IGNORE_BLANK_STRING_DEFAULT = false;
     private static boolean IGNORE_EMPTY_CELL_ARRAY_DEFAULT = false;
+    private static long ID_MAPPING_MAX_MEMORY_DEFAULT = 0;
 
     private final char delimiter;
     private final char arrayDelimiter;
@@ -43,6 +46,8 @@ public class CsvLoaderConfig extends CompressionConfig {
     private final boolean ignoreDuplicateNodes;
     private final boolean ignoreBlankString;
     private final boolean ignoreEmptyCellArray;
+    private final long idMappingMaxMemory;
+    private final String idMappingDirectory;
 
     private CsvLoaderConfig(Builder builder) {
         super(Map.of(COMPRESSION, builder.compressionAlgo, CHARSET, builder.charset));
@@ -55,6 +60,8 @@ public class CsvLoaderConfig extends CompressionConfig {
         this.ignoreDuplicateNodes = builder.ignoreDuplicateNodes;
         this.ignoreBlankString = builder.ignoreBlankString;
         this.ignoreEmptyCellArray = builder.ignoreEmptyCellArray;
+        this.idMappingMaxMemory = builder.idMappingMaxMemory;
+        this.idMappingDirectory = builder.idMappingDirectory;
     }
 
     public char getDelimiter() {
@@ -91,6 +98,14 @@ public class CsvLoaderConfig extends CompressionConfig {
         return ignoreEmptyCellArray;
     }
 
+    public long getIdMappingMaxMemory() {
+        return idMappingMaxMemory;
+    }
+
+    public String getIdMappingDirectory() {
+        return idMappingDirectory;
+    }
+
     /**
      * Creates builder to build {@link CsvLoaderConfig}.
      *
@@ -127,6 +142,8 @@ public class CsvLoaderConfig extends CompressionConfig {
         if (config.get(IGNORE_DUPLICATE_NODES) != null) builder.ignoreDuplicateNodes((boolean) config.get(IGNORE_DUPLICATE_NODES));
         if (config.get(IGNORE_BLANK_STRING) != null) builder.ignoreBlankString((boolean) config.get(IGNORE_BLANK_STRING));
         if (config.get(IGNORE_EMPTY_CELL_ARRAY) != null) builder.ignoreEmptyCellArray((boolean) config.get(IGNORE_EMPTY_CELL_ARRAY));
+        if (config.get(ID_MAPPING_MAX_MEMORY) != null) builder.idMappingMaxMemory(Util.toLong(config.get(ID_MAPPING_MAX_MEMORY)));
+        if (config.get(ID_MAPPING_DIRECTORY) != null) builder.idMappingDirectory((String) config.get(ID_MAPPING_DIRECTORY));
         builder.binary((String) config.getOrDefault(COMPRESSION, CompressionAlgo.NONE.name()));
         builder.charset((String) config.getOrDefault(CHARSET, UTF_8.name()));
         
@@ -146,6 +163,8 @@ public class CsvLoaderConfig extends CompressionConfig {
         private boolean ignoreDuplicateNodes = IGNORE_DUPLICATE_NODES_DEFAULT;
         private boolean ignoreBlankString = IGNORE_BLANK_STRING_DEFAULT;
         private boolean ignoreEmptyCellArray = IGNORE_EMPTY_CELL_ARRAY_DEFAULT;
+        private long idMappingMaxMemory = ID_MAPPING_MAX_MEMORY_DEFAULT;
+        private String idMappingDirectory = null;
         private String compressionAlgo = null;
         private String charset = UTF_8.name();
 
@@ -207,6 +226,16 @@ public class CsvLoaderConfig extends CompressionConfig {
             return this;
         }
 
+        public Builder idMappingMaxMemory(long idMappingMaxMemory) {
+            this.idMappingMaxMemory = idMappingMaxMemory;
+            return this;
+        }
+
+        public Builder idMappingDirectory(String idMappingDirectory) {
+            this.idMappingDirectory = idMappingDirectory;
+            return this;
+        }
+
         public CsvLoaderConfig build() {
             return new CsvLoaderConfig(this);
         }
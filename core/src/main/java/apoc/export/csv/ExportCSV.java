@@ -106,7 +106,7 @@ public class ExportCSV {
                 .createFileManager(fileName, exportConfig.isBulkImport(), exportConfig);
 
         if (exportConfig.streamStatements()) {
-            return ExportUtils.getProgressInfoStream(db, pools.getDefaultExecutorService(), terminationGuard, format, exportConfig, reporter, cypherFileManager,
+            return ExportUtils.getProgressInfoStream(db, pools.getIoExecutorService(), terminationGuard, format, exportConfig, reporter, cypherFileManager,
                     (reporterWithConsumer) -> dump(data, exportConfig, reporterWithConsumer, cypherFileManager, exporter));
         } else {
             dump(data, exportConfig, reporter, cypherFileManager, exporter);
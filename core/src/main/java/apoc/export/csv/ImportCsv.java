@@ -8,7 +8,6 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -50,17 +49,18 @@ public class ImportCsv {
                     final ProgressReporter reporter = new ProgressReporter(null, null, new ProgressInfo(file, source, "csv"));
                     final CsvEntityLoader loader = new CsvEntityLoader(clc, reporter, log);
 
-                    final Map<String, Map<String, Long>> idMapping = new HashMap<>();
-                    for (Map<String, Object> node : nodes) {
-                        final Object data = node.getOrDefault("fileName", node.get("data"));
-                        final List<String> labels = (List<String>) node.get("labels");
-                        loader.loadNodes(data, labels, db, idMapping);
-                    }
+                    try (CsvIdMapping idMapping = new CsvIdMapping(clc.getIdMappingMaxMemory(), clc.getIdMappingDirectory())) {
+                        for (Map<String, Object> node : nodes) {
+                            final Object data = node.getOrDefault("fileName", node.get("data"));
+                            final List<String> labels = (List<String>) node.get("labels");
+                            loader.loadNodes(data, labels, db, idMapping);
+                        }
 
-                    for (Map<String, Object> relationship : relationships) {
-                        final Object fileName = relationship.getOrDefault("fileName", relationship.get("data"));
-                        final String type = (String) relationship.get("type");
-                        loader.loadRelationships(fileName, type, db, idMapping);
+                        for (Map<String, Object> relationship : relationships) {
+                            final Object fileName = relationship.getOrDefault("fileName", relationship.get("data"));
+                            final String type = (String) relationship.get("type");
+                            loader.loadRelationships(fileName, type, db, idMapping);
+                        }
                     }
 
                     return reporter.getTotal();
@@ -127,7 +127,7 @@ public class ExportCypher {
             final BlockingQueue<DataProgressInfo> queue = new ArrayBlockingQueue<>(1000);
             ProgressReporter reporterWithConsumer = reporter.withConsumer(
                     (pi) -> QueueUtil.put(queue, pi == ProgressInfo.EMPTY ? DataProgressInfo.EMPTY : new DataProgressInfo(pi).enrich(cypherFileManager),timeout));
-            Util.inTxFuture(null, pools.getDefaultExecutorService(), db,
+            Util.inTxFuture(null, pools.getIoExecutorService(), db,
                     txInThread -> { doExport(graph, c, onlySchema, reporterWithConsumer, cypherFileManager); return true; },
                     0, _ignored -> {}, _ignored -> QueueUtil.put(queue, DataProgressInfo.EMPTY, timeout));
             QueueBasedSpliterator<DataProgressInfo> spliterator = new QueueBasedSpliterator<>(queue, DataProgressInfo.EMPTY, terminationGuard, Integer.MAX_VALUE);
@@ -124,7 +124,7 @@ public class ExportGraphML {
         ExportFileManager cypherFileManager = FileManagerFactory.createFileManager(fileName, false, exportConfig);
         final PrintWriter graphMl = cypherFileManager.getPrintWriter(format);
         if (exportConfig.streamStatements()) {
-            return ExportUtils.getProgressInfoStream(db, pools.getDefaultExecutorService() ,terminationGuard, format, exportConfig, reporter, cypherFileManager,
+            return ExportUtils.getProgressInfoStream(db, pools.getIoExecutorService() ,terminationGuard, format, exportConfig, reporter, cypherFileManager,
                     (reporterWithConsumer) -> {
                         try {
                             exporter.write(graph, graphMl, reporterWithConsumer, exportConfig);
@@ -2,16 +2,22 @@ package apoc.path;
 
 import apoc.algo.CFGShortestPath;
 import apoc.algo.CFGTraversalBackwardShortestPath;
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.SearchBudget;
+import apoc.result.PathResultWithProfile;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
 import org.neo4j.procedure.UserFunction;
 import apoc.path.CFGValidationHelper.DataflowType;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 public class BackwardDataflowPath {
 
@@ -77,7 +83,7 @@ public class BackwardDataflowPath {
                 if (!visitedEdge.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        endCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        endCFGs = CFGValidationHelper.getConnectionNodes(db, tx, dataflowRel, candidatePath,
                                 false, true);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, endCFGs, true);
                     }
@@ -86,7 +92,7 @@ public class BackwardDataflowPath {
             }
         } else {
             if (cfgCheck) {
-                endCFGs = CFGValidationHelper.getConnectionNodes(endEdge, curPath,
+                endCFGs = CFGValidationHelper.getConnectionNodes(db, tx, endEdge, curPath,
                         false, true);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, endCFGs, true);
             }
@@ -143,17 +149,35 @@ public class BackwardDataflowPath {
                                      @Name("startEdge") Relationship startEdge, @Name("endEdge") Relationship endEdge,
                                      @Name("cfgCheck") boolean cfgCheck) {
 
+        AllBackwardPathsSearch search = allBackwardPathsSearch(startNode, endNode, startEdge, endEdge, cfgCheck,
+                Map.of());
+        return (search == null) ? null : search.toList();
+
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.path.allBackwardDataflowPathsStream(startNode, endNode, startEdge, endEdge, cfgCheck, [config]) - streams the paths of apoc.path.allBackwardDataflowPaths as they are found, config {limit: n, maxDepth: n, profile: false}")
+    public Stream<PathResultWithProfile> allBackwardDataflowPathsStream(@Name("startNode") Node startNode,
+                                                             @Name("endNode") Node endNode,
+                                                             @Name("startEdge") Relationship startEdge,
+                                                             @Name("endEdge") Relationship endEdge,
+                                                             @Name("cfgCheck") boolean cfgCheck,
+                                                             @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        DataflowStats.Profile profile = DataflowStats.start("apoc.path.allBackwardDataflowPathsStream", config);
+        return LazyPathSearch.stream(DataflowStats.call(profile,
+                () -> allBackwardPathsSearch(startNode, endNode, startEdge, endEdge, cfgCheck, config)), profile,
+                config);
+    }
+
+    // helper function: search of allBackwardDataflowPaths, null if the arguments are not valid
+    private AllBackwardPathsSearch allBackwardPathsSearch(Node startNode, Node endNode, Relationship startEdge,
+                                                          Relationship endEdge, boolean cfgCheck,
+                                                          Map<String, Object> config) {
+
         Node start;
         Node end;
         DataflowType category;  // indicating what type of dataflow path we are working with
 
-        // define needed variables
-        HashSet<Relationship> visitedEdges = new HashSet<Relationship>();
-        Queue<CandidatePath> queuePath = new LinkedList<>();
-        CandidatePath curPath = null;
-
-        List<CandidatePath> returnCandidates = new ArrayList<CandidatePath>();
-
         if ((startNode != null) && (endNode != null)) {         // dataflow in middle components
             start = startNode;
             end = endNode;
@@ -162,8 +186,6 @@ public class BackwardDataflowPath {
             start = startNode;
             end = endEdge.getStartNode();
             category = DataflowType.SUFFIX;
-            curPath = new CandidatePath(endEdge);
-            queuePath.add(curPath);
         } else if ((startEdge != null) && (endNode != null)) {  // prefix
             start = startEdge.getEndNode();
             end = endNode;
@@ -172,8 +194,7 @@ public class BackwardDataflowPath {
             return null;
         }
 
-        Iterable<Relationship> dataflowRels;
-        HashMap<List<Node>, Relationship> endCFGs;
+        AllBackwardPathsSearch search = new AllBackwardPathsSearch(start, startEdge, category, cfgCheck, config);
 
         // check if we reach end node
         if (end.equals(start)) {
@@ -181,54 +202,84 @@ public class BackwardDataflowPath {
                     new PathImpl.Builder(startEdge.getStartNode());
             builder = (startEdge != null) ? builder.push(startEdge) : builder;
             builder = (endEdge != null) ? builder.push(endEdge) : builder;
-            return List.of(builder.build());
+            search.emit(builder.build());
+            return search;
         }
 
-        // if it is not prefix, because we already have a starting edge for prefix, no need to look for the first
-        if (category != DataflowType.SUFFIX) {
-            dataflowRels = CFGValidationHelper.getPrevRels(endNode, false);
+        HashMap<List<Node>, Relationship> endCFGs;
 
-            // add the relationships connected to start node
-            for (Relationship dataflowRel : dataflowRels) {
-                if (!visitedEdges.contains(dataflowRel)) {
-                    CandidatePath candidatePath = new CandidatePath(dataflowRel);
-                    if (cfgCheck) {
-                        endCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
-                                false, true);
-                        CFGValidationHelper.addCFGToCandidatePath(candidatePath, endCFGs, true);
-                    }
-                    queuePath.add(candidatePath);
+        // if it is not suffix, because we already have an end edge for suffix, no need to look for the first
+        if (category != DataflowType.SUFFIX) {
+            // add the relationships connected to end node
+            for (Relationship dataflowRel : CFGValidationHelper.getPrevRels(endNode, false)) {
+                CandidatePath candidatePath = new CandidatePath(dataflowRel);
+                if (cfgCheck) {
+                    endCFGs = CFGValidationHelper.getConnectionNodes(db, tx, dataflowRel, candidatePath,
+                            false, true);
+                    CFGValidationHelper.addCFGToCandidatePath(candidatePath, endCFGs, true);
                 }
+                search.queuePath.add(candidatePath);
             }
         } else {
+            CandidatePath curPath = new CandidatePath(endEdge);
             if (cfgCheck) {
-                endCFGs = CFGValidationHelper.getConnectionNodes(endEdge, curPath,
+                endCFGs = CFGValidationHelper.getConnectionNodes(db, tx, endEdge, curPath,
                         false, true);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, endCFGs, true);
             }
+            search.queuePath.add(curPath);
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-        int pathLen = -1;
-        boolean foundPath = false;
+        return search;
+
+    }
+
+    // breadth first backward search of all shortest dataflow paths, one queued candidate per step
+    private class AllBackwardPathsSearch extends LazyPathSearch {
+
+        private final Node start;
+        private final Relationship startEdge;
+        private final DataflowType category;
+        private final boolean cfgCheck;
+
+        private final Queue<CandidatePath> queuePath =
+                budget.queue(path -> SearchBudget.sizeOf(CandidatePath.SHALLOW_SIZE, path.getPathSize()));
+        private final HashSet<Relationship> visitedEdges = new HashSet<Relationship>();
 
         // keep track of visited relationships at current length
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
+        private HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
+        private int pathLen = -1;
+        private boolean foundPath = false;
+
+        private AllBackwardPathsSearch(Node start, Relationship startEdge, DataflowType category, boolean cfgCheck,
+                                       Map<String, Object> config) {
+            super(tx, config);
+            this.start = start;
+            this.startEdge = startEdge;
+            this.category = category;
+            this.cfgCheck = cfgCheck;
+        }
 
-        while (!queuePath.isEmpty()) {
+        @Override
+        protected boolean step() {
+            if (queuePath.isEmpty()) {
+                return false;
+            }
 
-            curPath = queuePath.poll();
+            DataflowStats.queued(queuePath.size());
+            CandidatePath curPath = queuePath.poll();
             int curLen = curPath.getPathSize();
 
-            if (foundPath && curLen > pathLen) {
+            if ((foundPath && curLen > pathLen) || (curLen > maxDepth)) {
                 // if path has been found and current path is longer than found path, can break
-                break;
+                return false;
             }
 
             if (curLen > pathLen) {
                 // add all relationships found at previous path length to visitedRels
+                int visitedBefore = visitedEdges.size();
                 visitedEdges.addAll(visitedEdge);
+                visited(visitedEdges.size() - visitedBefore);
                 visitedEdge = new HashSet<Relationship>();
             }
             pathLen = curLen;
@@ -244,44 +295,35 @@ public class BackwardDataflowPath {
                     if (category == DataflowType.PREFIX) {
                         CandidatePath varPath = new CandidatePath(curPath, startEdge);
                         if ((!cfgCheck) || (backwardGetCFGPath(varPath))) {
-                            // build path, and return (exit)
                             foundPath = true;
-                            returnCandidates.add(varPath);
+                            emit(varPath.backwardBuildPath());
                         }
                     } else {
-                        // build path, and return (exit)
                         foundPath = true;
-                        returnCandidates.add(curPath);
+                        emit(curPath.backwardBuildPath());
                     }
                 }
 
-                dataflowRels = CFGValidationHelper.getPrevRels(curPath.getStartNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
+                for (Relationship dataflowRel : CFGValidationHelper.getPrevRels(curPath.getStartNode(), false)) {
                     if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
+                        queuePath.add(new CandidatePath(curPath, dataflowRel));
                     }
                 }
 
             }
 
+            return true;
         }
+    }
 
-        List<Path> returnPaths = new ArrayList<Path>();
-        for (CandidatePath returnCandidate : returnCandidates) {
-            if (returnCandidate.getPathSize() > 0) {
-                returnPaths.add(returnCandidate.backwardBuildPath());
-            }
-        }
-
-        return returnPaths;
-
+    public boolean backwardGetCFGPath(CandidatePath candidatePath) {
+        return DataflowStats.cfgCheck(() -> computeBackwardCFGPath(candidatePath));
     }
 
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
-    public boolean backwardGetCFGPath(CandidatePath candidatePath) {
+    private boolean computeBackwardCFGPath(CandidatePath candidatePath) {
 
         if (candidatePath.getPathSize() < 2) {
             return true;
@@ -291,7 +333,7 @@ public class BackwardDataflowPath {
         Relationship curRel = candidatePath.getLastRel();
 
         // obtain cfg nodes and relationships associated with r1 and r2
-        HashMap<List<Node>, Relationship> startCFGs = CFGValidationHelper.getConnectionNodes(curRel,
+        HashMap<List<Node>, Relationship> startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, curRel,
                 candidatePath, true, true);
         HashSet<Node> endCFGs = candidatePath.validCFGs;
 
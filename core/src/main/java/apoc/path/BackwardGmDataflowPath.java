@@ -10,6 +10,7 @@ import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.UserFunction;
+import apoc.dataflow.DataflowStats;
 import apoc.path.CFGValidationHelper.DataflowType;
 import apoc.path.CFGValidationHelper.RelTypes;
 
@@ -248,7 +249,7 @@ public class BackwardGmDataflowPath {
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category != DataflowType.SUFFIX) ?
                     CFGValidationHelper.getParWriteConnectionNodes(end, curPath, false) :
-                    CFGValidationHelper.getConnectionNodes(endEdge, curPath,
+                    CFGValidationHelper.getConnectionNodes(db, tx, endEdge, curPath,
                             false, false);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, true);
         }
@@ -355,10 +356,14 @@ public class BackwardGmDataflowPath {
     }
 
 
+    public boolean backwardGmGetCFGPath(CandidatePath candidatePath, boolean isStartPW, boolean isEndPW) {
+        return DataflowStats.cfgCheck(() -> computeBackwardGmCFGPath(candidatePath, isStartPW, isEndPW));
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
-    public boolean backwardGmGetCFGPath(CandidatePath candidatePath, boolean isStartPW,
+    private boolean computeBackwardGmCFGPath(CandidatePath candidatePath, boolean isStartPW,
                                 boolean isEndPW) {
 
         // obtain cfg nodes and relationships associated with r1
@@ -383,7 +388,7 @@ public class BackwardGmDataflowPath {
 
         HashMap<List<Node>, Relationship> startCFGs = (isStartPW) ?
                 CFGValidationHelper.getParWriteConnectionNodes(targetNode, candidatePath, true) :
-                CFGValidationHelper.getConnectionNodes(curRel, candidatePath, true, false);
+                CFGValidationHelper.getConnectionNodes(db, tx, curRel, candidatePath, true, false);
 
         CFGShortestPath shortestPath = new CFGShortestPath(
                 new BasicEvaluationContext(tx, db),
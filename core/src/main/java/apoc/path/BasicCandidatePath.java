@@ -1,10 +1,12 @@
 package apoc.path;
 
+import apoc.dataflow.DataflowStats;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.memory.HeapEstimator;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -12,6 +14,8 @@ import java.util.List;
 
 public class BasicCandidatePath {
 
+    public static final long SHALLOW_SIZE = HeapEstimator.shallowSizeOfInstance(BasicCandidatePath.class);
+
     public int pathIndex;
     public ArrayList<Relationship> path;
     public HashSet<Node> validCFGs;
@@ -22,6 +26,7 @@ public class BasicCandidatePath {
 
     // constructor for single edge
     public BasicCandidatePath(Relationship startEdge, int pathIndex) {
+        DataflowStats.candidate();
         this.path = new ArrayList<>(List.of(startEdge));
         this.validCFGs = new HashSet<>();
         this.pathIndex = pathIndex;
@@ -32,6 +37,7 @@ public class BasicCandidatePath {
 
     // constructor for appending to old path
     public BasicCandidatePath(BasicCandidatePath oldPath, Relationship curEdge, int pathIndex) {
+        DataflowStats.candidate();
         this.path = new ArrayList<>(oldPath.getPath());
         this.path.add(curEdge);
         this.validCFGs = new HashSet<>(oldPath.getValidCFGs());
@@ -0,0 +1,309 @@
+package apoc.path;
+
+import apoc.algo.CFGShortestPath;
+import apoc.path.CFGValidationHelper.DataflowType;
+import apoc.path.CFGValidationHelper.RelTypes;
+import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.*;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.UserFunction;
+
+import java.util.*;
+
+// Dataflow search expanding from both ends at once (in the style of CFGShortestPath's DirectionData)
+//      - the forward side keeps, per reached edge, the connections whose source CFG is reachable from the prefix
+//      - the backward side keeps, per reached edge, the connections from which the suffix validates
+//      - two halves meeting at a variable are accepted if the CFG of the prefix reaches a feasible connection
+//        of the suffix, and if the unmatched calls of the prefix are returned to by the unmatched returns of
+//        the suffix
+public class BidirectionalDataflowPath {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    // an edge reached by one side of the search, linked to the previous (forward) or next (backward) edge
+    private static class Entry {
+        private final Relationship rel;                         // null for the start / end node itself
+        private final Node node;                                // variable at which the other side joins
+        private final Entry link;
+        private final int depth;
+        private final HashMap<List<Node>, Relationship> cfgs;   // accepted connections of rel
+        private final Entry openCall;                           // innermost unmatched parWrite / retWrite
+
+        private Entry(Node node) {
+            this.rel = null;
+            this.node = node;
+            this.link = null;
+            this.depth = 0;
+            this.cfgs = new HashMap<>();
+            this.openCall = null;
+        }
+
+        private Entry(Relationship rel, Node node, Entry link, HashMap<List<Node>, Relationship> cfgs,
+                      RelationshipType opening, RelationshipType closing) {
+            this.rel = rel;
+            this.node = node;
+            this.link = link;
+            this.depth = (link == null) ? 1 : link.depth + 1;
+            this.cfgs = cfgs;
+
+            if (rel.isType(opening)) {
+                this.openCall = this;
+            } else if (rel.isType(closing)) {
+                this.openCall = outerCall((link == null) ? null : link.openCall);
+            } else {
+                this.openCall = (link == null) ? null : link.openCall;
+            }
+        }
+    }
+
+    // one side of the search
+    private class Frontier {
+        private final boolean isForward;
+        private final HashSet<Relationship> visitedEdge = new HashSet<>();
+        private final HashMap<Node, List<Entry>> reached = new HashMap<>();
+        private List<Entry> level = new ArrayList<>();
+
+        private Frontier(boolean isForward) {
+            this.isForward = isForward;
+        }
+
+        private void seed(Entry root) {
+            add(root);
+            level.add(root);
+        }
+
+        private void add(Entry entry) {
+            if (entry.rel != null) {
+                visitedEdge.add(entry.rel);
+            }
+            reached.computeIfAbsent(entry.node, n -> new ArrayList<>()).add(entry);
+        }
+
+        private Iterable<Relationship> nextRels(Entry entry) {
+            return (isForward) ? CFGValidationHelper.getNextRels(entry.node, false) :
+                    CFGValidationHelper.getPrevRels(entry.node, false);
+        }
+
+        // extend entry by rel, return: the new entry or null if it fails the CFG check
+        private Entry extend(Entry entry, Relationship rel, boolean cfgCheck) {
+            HashMap<List<Node>, Relationship> cfgs = (cfgCheck) ?
+                    CFGValidationHelper.getConnectionNodes(db, tx, rel, null, false, false) :
+                    new HashMap<>();
+
+            // the first edge of either side is always accepted, the join checks it against the other side
+            if (cfgCheck && (entry.rel != null)) {
+                cfgs = (isForward) ? acceptForward(entry, rel, cfgs) : acceptBackward(entry, rel, cfgs);
+                if (cfgs.isEmpty()) {
+                    return null;
+                }
+            }
+
+            return (isForward) ?
+                    new Entry(rel, rel.getEndNode(), entry, cfgs, RelTypes.parWrite, RelTypes.retWrite) :
+                    new Entry(rel, rel.getStartNode(), entry, cfgs, RelTypes.retWrite, RelTypes.parWrite);
+        }
+    }
+
+    @UserFunction
+    @Description("apoc.path.bidirectionalDataflowPath(startNode, endNode, startEdge, endEdge, cfgCheck) - finds a dataflow path expanding from both ends")
+    public Path bidirectionalDataflowPath(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
+                                          @Name("startEdge") Relationship startEdge,
+                                          @Name("endEdge") Relationship endEdge,
+                                          @Name("cfgCheck") boolean cfgCheck) {
+
+        Node start;
+        Node end;
+        DataflowType category;
+
+        if ((startNode != null) && (endNode != null)) {         // dataflow in middle components
+            start = startNode;
+            end = endNode;
+            category = DataflowType.INTRA;
+        } else if ((startNode != null) && (endEdge != null)) {  // suffix
+            start = startNode;
+            end = endEdge.getStartNode();
+            category = DataflowType.SUFFIX;
+        } else if ((startEdge != null) && (endNode != null)) {  // prefix
+            start = startEdge.getEndNode();
+            end = endNode;
+            category = DataflowType.PREFIX;
+        } else {                                                // not valid
+            return null;
+        }
+
+        if (start.equals(end)) {
+            PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode) :
+                    new PathImpl.Builder(startEdge.getStartNode());
+            builder = (startEdge != null) ? builder.push(startEdge) : builder;
+            builder = (endEdge != null) ? builder.push(endEdge) : builder;
+            return builder.build();
+        }
+
+        // the given start / end edges are the roots of their side
+        Frontier forward = new Frontier(true);
+        Frontier backward = new Frontier(false);
+        Entry startRoot = new Entry(start);
+        Entry endRoot = new Entry(end);
+        forward.seed((category == DataflowType.PREFIX) ? forward.extend(startRoot, startEdge, cfgCheck) : startRoot);
+        backward.seed((category == DataflowType.SUFFIX) ? backward.extend(endRoot, endEdge, cfgCheck) : endRoot);
+
+        Entry[] best = null;
+
+        // always expand the smaller level, finish it and keep the shortest join found in it
+        while ((best == null) && !forward.level.isEmpty() && !backward.level.isEmpty()) {
+            Frontier side = (forward.level.size() <= backward.level.size()) ? forward : backward;
+            Frontier other = (side == forward) ? backward : forward;
+            List<Entry> nextLevel = new ArrayList<>();
+
+            for (Entry entry : side.level) {
+                for (Relationship rel : side.nextRels(entry)) {
+                    if (side.visitedEdge.contains(rel)) {
+                        continue;
+                    }
+
+                    Entry next = side.extend(entry, rel, cfgCheck);
+                    if (next == null) {
+                        continue;
+                    }
+                    side.add(next);
+                    nextLevel.add(next);
+
+                    for (Entry otherEntry : other.reached.getOrDefault(next.node, List.of())) {
+                        Entry f = (side == forward) ? next : otherEntry;
+                        Entry b = (side == forward) ? otherEntry : next;
+                        if (((best == null) || (f.depth + b.depth < best[0].depth + best[1].depth)) &&
+                                ((!cfgCheck) || join(f, b))) {
+                            best = new Entry[] {f, b};
+                        }
+                    }
+                }
+            }
+
+            side.level = nextLevel;
+        }
+
+        return (best == null) ? null : buildPath(best[0], best[1], start);
+
+    }
+
+    // helper function: accept the connections of rel whose source CFG is reachable from the prefix
+    private HashMap<List<Node>, Relationship> acceptForward(Entry prev, Relationship rel,
+                                                            HashMap<List<Node>, Relationship> cfgs) {
+        CFGShortestPath shortestPath = cfgShortestPath();
+        HashMap<List<Node>, Relationship> accepted = new HashMap<>();
+
+        for (Map.Entry<List<Node>, Relationship> cfg : cfgs.entrySet()) {
+            for (List<Node> prevCFG : prev.cfgs.keySet()) {
+                if (shortestPath.findSinglePath(prevCFG.get(1), cfg.getKey().get(0), rel) != null) {
+                    accepted.put(cfg.getKey(), cfg.getValue());
+                    break;
+                }
+            }
+        }
+
+        return accepted;
+    }
+
+    // helper function: accept the connections of rel from which the suffix starting with next validates
+    private HashMap<List<Node>, Relationship> acceptBackward(Entry next, Relationship rel,
+                                                             HashMap<List<Node>, Relationship> cfgs) {
+        CFGShortestPath shortestPath = cfgShortestPath();
+        HashMap<List<Node>, Relationship> accepted = new HashMap<>();
+
+        for (Map.Entry<List<Node>, Relationship> cfg : cfgs.entrySet()) {
+            for (List<Node> nextCFG : next.cfgs.keySet()) {
+                if (shortestPath.findSinglePath(cfg.getKey().get(1), nextCFG.get(0), next.rel) != null) {
+                    accepted.put(cfg.getKey(), cfg.getValue());
+                    break;
+                }
+            }
+        }
+
+        return accepted;
+    }
+
+    // helper function: check the CFG and the call / return nesting where prefix f meets suffix b
+    private boolean join(Entry f, Entry b) {
+
+        // a side without edges puts no constraint on the other one
+        if ((f.rel != null) && (b.rel != null) && acceptForward(f, b.rel, b.cfgs).isEmpty()) {
+            return false;
+        }
+
+        // calls entered by the prefix have to be left by the returns of the suffix, innermost first
+        Entry call = f.openCall;
+        Entry ret = b.openCall;
+        while ((call != null) && (ret != null)) {
+            if (!returnsTo(call, ret)) {
+                return false;
+            }
+            call = outerCall(call);
+            ret = outerCall(ret);
+        }
+
+        return true;
+    }
+
+    // helper function: pop the innermost unmatched call / return
+    private static Entry outerCall(Entry openCall) {
+        return ((openCall == null) || (openCall.link == null)) ? null : openCall.link.openCall;
+    }
+
+    // helper function: whether a cfgReturn edge of ret leads back to the invoking block of a cfgInvoke edge of call,
+    //      edges without CFG connections cannot be compared and are accepted
+    private static boolean returnsTo(Entry call, Entry ret) {
+        boolean hasInvoke = false;
+        boolean hasReturn = false;
+
+        for (Relationship invokeEdge : call.cfgs.values()) {
+            if (invokeEdge == null) {
+                continue;
+            }
+            hasInvoke = true;
+            for (Relationship returnEdge : ret.cfgs.values()) {
+                if (returnEdge == null) {
+                    continue;
+                }
+                hasReturn = true;
+                if (returnEdge.getEndNode().equals(invokeEdge.getStartNode())) {
+                    return true;
+                }
+            }
+        }
+
+        return !(hasInvoke && hasReturn);
+    }
+
+    private CFGShortestPath cfgShortestPath() {
+        return new CFGShortestPath(
+                new BasicEvaluationContext(tx, db),
+                (int) Integer.MAX_VALUE,
+                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+    }
+
+    // helper function: prefix edges of f (reversed parent chain) followed by the suffix edges of b
+    private static Path buildPath(Entry f, Entry b, Node start) {
+        ArrayList<Relationship> rels = new ArrayList<>();
+        for (Entry entry = f; (entry != null) && (entry.rel != null); entry = entry.link) {
+            rels.add(entry.rel);
+        }
+        Collections.reverse(rels);
+        for (Entry entry = b; (entry != null) && (entry.rel != null); entry = entry.link) {
+            rels.add(entry.rel);
+        }
+
+        PathImpl.Builder builder = new PathImpl.Builder(rels.isEmpty() ? start : rels.get(0).getStartNode());
+        for (Relationship rel : rels) {
+            builder = builder.push(rel);
+        }
+        return builder.build();
+    }
+
+}
@@ -1,7 +1,14 @@
 package apoc.path;
 
 import apoc.algo.CFGShortestPath;
+import apoc.cfgPath.RelAutomaton;
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.SearchBudget;
+import apoc.dataflow.PathResultCache;
+import apoc.result.PathResultWithProfile;
 import apoc.util.Util;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.*;
@@ -9,10 +16,13 @@ import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
 import org.neo4j.procedure.UserFunction;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 public class CFGPath {
 
@@ -25,6 +35,28 @@ public class CFGPath {
     @UserFunction
     @Description("apoc.path.cfgValidatedPath(start, [settings])")
     public List<Path> cfgValidatedPath(@Name("start") Object start, @Name("config") Map<String,Object> config) {
+        return DataflowStats.profiled("apoc.path.cfgValidatedPath", config,
+                () -> PathResultCache.getPaths(db, tx, "apoc.path.cfgValidatedPath", start, config,
+                        () -> findCFGValidatedPath(start, config)));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.path.cfgValidatedPathStream(start, [settings]) - streams the paths of apoc.path.cfgValidatedPath as they are found, settings also take {limit: n, maxDepth: n, profile: false}")
+    public Stream<PathResultWithProfile> cfgValidatedPathStream(@Name("start") Object start,
+                                                     @Name(value = "config", defaultValue = "{}") Map<String,Object> config) {
+        DataflowStats.Profile profile = DataflowStats.start("apoc.path.cfgValidatedPathStream", config);
+        return LazyPathSearch.stream(DataflowStats.call(profile, () -> cfgValidatedSearch(start, config)), profile,
+                config);
+    }
+
+    // helper function: parse the settings and run the search (uncached)
+    private List<Path> findCFGValidatedPath(Object start, Map<String,Object> config) {
+        PathSearch search = cfgValidatedSearch(start, config);
+        return (search == null) ? null : search.toList();
+    }
+
+    // helper function: parse the settings into a search, null if start is not valid
+    private PathSearch cfgValidatedSearch(Object start, Map<String,Object> config) {
 
         // configuration graph variables
         Node startNode = null;
@@ -51,34 +83,36 @@ public class CFGPath {
         List<Map<String, Object>> cfgConfigurationList =
                 (List<Map<String,Object>>) config.getOrDefault("cfgConfiguration", null);
         HashMap<String, CFGSetting> cfgConfig = parseCFGConfiguration(cfgConfigurationList);
-        RelExtension extension = new RelExtension(relSequence, repeat);
+        RelAutomaton automaton = RelAutomaton.compile(relSequence, repeat, false);
         HashSet<Label> acceptedNodes = filterNodes((String) config.getOrDefault("nodeFilter", null));
 
-        return findPath(startNode, endNode, startEdge, endEdge, cfgConfig, extension, allShortestPath, cfgCheck,
-                acceptedNodes);
+        return pathSearch(startNode, endNode, startEdge, endEdge, cfgConfig, automaton, allShortestPath, cfgCheck,
+                acceptedNodes, config);
 
     }
 
     // helper function: find path
     public List<Path> findPath(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
-                               HashMap<String, CFGSetting> cfgConfig, RelExtension extension,
+                               HashMap<String, CFGSetting> cfgConfig, RelAutomaton automaton,
                                boolean allShortestPath, boolean cfgCheck, HashSet<Label> acceptedNodes) {
+        PathSearch search = pathSearch(startNode, endNode, startEdge, endEdge, cfgConfig, automaton,
+                allShortestPath, cfgCheck, acceptedNodes, Map.of());
+        return (search == null) ? null : search.toList();
+    }
+
+    // helper function: search of findPath with its first candidates queued, null if there is no start
+    private PathSearch pathSearch(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
+                                  HashMap<String, CFGSetting> cfgConfig, RelAutomaton automaton,
+                                  boolean allShortestPath, boolean cfgCheck, HashSet<Label> acceptedNodes,
+                                  Map<String, Object> config) {
 
-        List<BasicCandidatePath> returnPaths = new ArrayList<>();
-        HashSet<Relationship> visitedEdges = new HashSet<>();
-        Queue<BasicCandidatePath> queuePath = new LinkedList<>();
         Node start = startNode;
         Node end = endNode;
-        ArrayList<ArrayList<RelationshipType>> curType;
         Iterable<Relationship> nextRels;
         BasicCandidatePath curPath;
 
         if (startEdge != null) {
             start = startEdge.getEndNode();
-            curPath = new BasicCandidatePath(startEdge, -1);
-            if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig);}
-            queuePath.add(curPath);
-            if (allShortestPath) {visitedEdges.add(startEdge);}
         }
 
         if (endEdge != null) {
@@ -89,123 +123,159 @@ public class CFGPath {
             return null;
         }
 
+        PathSearch search = new PathSearch(end, endEdge, cfgConfig, automaton, allShortestPath, cfgCheck,
+                acceptedNodes, config);
+
+        if (startEdge != null) {
+            curPath = new BasicCandidatePath(startEdge, automaton.start());
+            if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig);}
+            search.queuePath.add(curPath);
+            if (allShortestPath) {search.visitedEdges.add(automaton.key(startEdge, automaton.start()));}
+        }
 
         // We only have the starting node
         if (startEdge == null) {
 
-            // use relationship sequence 0
-            curType = extension.constructTypes(0);
-            int y = 0;
-
-            // For each possible sequences, find next possible candidates
-            for (ArrayList<RelationshipType> curT : curType) {
-                nextRels = start.getRelationships(Direction.OUTGOING,
-                        curT.toArray(RelationshipType[]::new));
-                for (Relationship nextRel : nextRels) {
-                    if ((acceptedNodes != null) &&
-                            (!acceptedNodes.contains(nextRel.getEndNode().getLabels().iterator().next()))) {
-                        continue;
-                    }
-
-                    // only create path if we are looking for all path or it is not in visited edges
-                    if ((!allShortestPath) || (!visitedEdges.contains(nextRel))) {
-                        curPath = new BasicCandidatePath(nextRel, y);
-                        if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig);}
-                        queuePath.add(curPath);
-                    }
+            // use the types leaving the start state of the pattern
+            RelationshipType[] firstTypes = automaton.nextTypes(automaton.start());
+            nextRels = (firstTypes.length == 0) ? List.of() :
+                    DataflowStats.expanded(start.getRelationships(Direction.OUTGOING, firstTypes));
+            for (Relationship nextRel : nextRels) {
+                if ((acceptedNodes != null) &&
+                        (!acceptedNodes.contains(nextRel.getEndNode().getLabels().iterator().next()))) {
+                    continue;
+                }
 
+                // only create path if we are looking for all path or it is not in visited edges
+                int state = automaton.step(automaton.start(), nextRel.getType());
+                if ((!allShortestPath) || (!search.visitedEdges.contains(automaton.key(nextRel, state)))) {
+                    curPath = new BasicCandidatePath(nextRel, state);
+                    if (cfgCheck) {updateFirstCFGNodes(curPath, cfgConfig);}
+                    search.queuePath.add(curPath);
                 }
-                y += 1;
+
             }
 
 
         }
 
-        List<Relationship> cfgPath = null;
-        BasicCandidatePath foundCandidatePath = null;
-        ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
+        return search;
+    }
 
-        while (!queuePath.isEmpty()) {
-            curPath = queuePath.remove();
+    // breadth first search of findPath, one queued candidate per step
+    private class PathSearch extends LazyPathSearch {
+
+        private final Node end;
+        private final Relationship endEdge;
+        private final HashMap<String, CFGSetting> cfgConfig;
+        private final RelAutomaton automaton;
+        private final boolean allShortestPath;
+        private final boolean cfgCheck;
+        private final HashSet<Label> acceptedNodes;
+
+        private final MutableLongSet visitedEdges = new LongHashSet();   // (edge, automaton state) pairs
+        private final Queue<BasicCandidatePath> queuePath =
+                budget.queue(path -> SearchBudget.sizeOf(BasicCandidatePath.SHALLOW_SIZE, path.getPathSize()));
+        private final ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
+        private BasicCandidatePath foundCandidatePath = null;
+
+        private PathSearch(Node end, Relationship endEdge, HashMap<String, CFGSetting> cfgConfig,
+                           RelAutomaton automaton, boolean allShortestPath, boolean cfgCheck,
+                           HashSet<Label> acceptedNodes, Map<String, Object> config) {
+            super(tx, config);
+            this.end = end;
+            this.endEdge = endEdge;
+            this.cfgConfig = cfgConfig;
+            this.automaton = automaton;
+            this.allShortestPath = allShortestPath;
+            this.cfgCheck = cfgCheck;
+            this.acceptedNodes = acceptedNodes;
+        }
+
+        @Override
+        protected boolean step() {
+            if (queuePath.isEmpty()) {
+                return false;
+            }
+
+            DataflowStats.queued(queuePath.size());
+            BasicCandidatePath curPath = queuePath.remove();
+
+            if (curPath.getPathSize() > maxDepth) {
+                // candidates are queued breadth first, all remaining ones are at least as long
+                return false;
+            }
 
             if ((allShortestPath) && (foundCandidatePath != null)) {
                 if ((!curPath.compareRetNodes(foundCandidatePath))) {
-                    continue;
+                    return true;
                 } else {
                     if (retCovered.contains(curPath.retRel)) {
-                        continue;
+                        return true;
                     }
                 }
             }
 
             // Make sure it passes the CFG test before proceeding to look further
             if ((!cfgCheck) || getCFGPath(curPath, cfgConfig)) {
-                if (allShortestPath) {visitedEdges.add(curPath.getLastEdge()); }
+                if ((allShortestPath) && (visitedEdges.add(automaton.key(curPath.getLastEdge(), curPath.getPathIndex())))) {
+                    budget.allocate(SearchBudget.VISITED_KEY_SIZE);
+                }
 
                 // Only record to valid path if it is consider end index
-                if ((extension.isEndIndex(curPath.getPathIndex())) &&
+                if ((automaton.isAccepting(curPath.getPathIndex())) &&
                         ((end == null) || (curPath.getLastEdge().getEndNode().equals(end)))) {
                     if (endEdge != null) {
                         BasicCandidatePath tempPath = new BasicCandidatePath(curPath, endEdge, curPath.pathIndex);
                         if ((!cfgCheck) || getCFGPath(tempPath, cfgConfig)) {
-                            returnPaths.add(tempPath);
+                            emit(tempPath.buildPath());
                             if (allShortestPath) {
                                 foundCandidatePath = curPath;
                                 retCovered.addAll(tempPath.getRetComp());
-                                continue;
+                                return true;
                             }
                         }
                     } else {
-                        returnPaths.add(curPath);
+                        emit(curPath.buildPath());
                         if (allShortestPath) {
                             foundCandidatePath = curPath;
                             retCovered.addAll(curPath.getRetComp());
-                            continue;
+                            return true;
                         }
                     }
                 }
 
-                int index = extension.nextIndex(curPath.getLastEdge().getType(), curPath.getPathIndex());
-                if (index <= extension.lastIndex) {
-                    curType = extension.constructTypes(index);
-                    int i = 0;
-                    for (ArrayList<RelationshipType> curT : curType) {
-                        nextRels = curPath.getLastEdge().getEndNode().getRelationships(Direction.OUTGOING,
-                                curT.toArray(RelationshipType[]::new));
-                        for (Relationship nextRel : nextRels) {
-                            if ((acceptedNodes != null) &&
-                                    (!acceptedNodes.contains(nextRel.getEndNode().getLabels().iterator().next()))) {
-                                continue;
-                            }
+                // the automaton state decides which types may follow
+                RelationshipType[] nextTypes = automaton.nextTypes(curPath.getPathIndex());
+                if (nextTypes.length > 0) {
+                    Iterable<Relationship> nextRels = DataflowStats.expanded(
+                            curPath.getLastEdge().getEndNode().getRelationships(Direction.OUTGOING, nextTypes));
+                    for (Relationship nextRel : nextRels) {
+                        if ((acceptedNodes != null) &&
+                                (!acceptedNodes.contains(nextRel.getEndNode().getLabels().iterator().next()))) {
+                            continue;
+                        }
 
-                            boolean addPath = ((!allShortestPath) && (!curPath.getPath().contains(nextRel))) ||
-                                    (!visitedEdges.contains(nextRel));
+                        int state = automaton.step(curPath.getPathIndex(), nextRel.getType());
+                        boolean addPath = ((!allShortestPath) && (!curPath.getPath().contains(nextRel))) ||
+                                (!visitedEdges.contains(automaton.key(nextRel, state)));
 
-                            if (addPath) {
-                                BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
-                                        index+i);
-                                queuePath.add(newCandidatePath);
-                            }
+                        if (addPath) {
+                            BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel, state);
+                            queuePath.add(newCandidatePath);
                         }
-                        i += 1;
                     }
 
                 }
 
             }
 
+            return true;
         }
-
-        ArrayList<Path> paths = new ArrayList<>();
-        for (BasicCandidatePath path : returnPaths) {
-            paths.add(path.buildPath());
-        }
-
-        return paths;
     }
 
     private void updateFirstCFGNodes(BasicCandidatePath path, HashMap<String, CFGSetting> config) {
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(path.getLastEdge(), config);
+        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(db, tx, path.getLastEdge(), config);
         HashSet<Node> endNodes = new HashSet<>();
         for (List<Node> endCFG : endCFGs) {
             endNodes.add(endCFG.get(1));
@@ -234,6 +304,10 @@ public class CFGPath {
     }
 
     public boolean getCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config) {
+        return DataflowStats.cfgCheck(() -> computeCFGPath(path, config));
+    }
+
+    private boolean computeCFGPath(BasicCandidatePath path, HashMap<String, CFGSetting> config) {
         if (path.getPathSize() < 2) {
             return true;
         }
@@ -248,7 +322,7 @@ public class CFGPath {
                 (int) Integer.MAX_VALUE,
                 CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
 
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(nextEdge, config);
+        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(db, tx, nextEdge, config);
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
 
         for (Node startCFG : startCFGs) {
@@ -442,7 +516,7 @@ public class CFGPath {
 
         // obtain cfg nodes and relationships associated with r1 and r2
         HashSet<Node> startCFGs = candidatePath.validCFGs;
-        HashMap<List<Node>, Relationship> endCFGs = CFGValidationHelper.getConnectionNodes(nextRel,
+        HashMap<List<Node>, Relationship> endCFGs = CFGValidationHelper.getConnectionNodes(db, tx, nextRel,
                 candidatePath, false, false);
 
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
@@ -1,11 +1,13 @@
 package apoc.path;
 import org.checkerframework.checker.units.qual.N;
-import org.neo4j.graphalgo.BasicEvaluationContext;
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.graphalgo.PathFinder;
+import apoc.dataflow.CFGReachability;
+import apoc.dataflow.ConnectionNodeCache;
+import apoc.dataflow.DataflowSnapshot;
+import apoc.dataflow.DataflowSnapshots;
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.FunctionIndex;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
-import org.neo4j.procedure.Context;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -13,12 +15,6 @@ import java.util.stream.StreamSupport;
 
 public class CFGValidationHelper {
 
-    @Context
-    public static GraphDatabaseService db;
-
-    @Context
-    public static Transaction tx;
-
 
     // define used relationship types
     public enum RelTypes implements RelationshipType
@@ -46,7 +42,8 @@ public class CFGValidationHelper {
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashSet<List<Node>> getConnectionNodesAll(Relationship edge,
+    public static HashSet<List<Node>> getConnectionNodesAll(GraphDatabaseService db, Transaction tx,
+                                                            Relationship edge,
                                                             HashMap<String,
                                                                     CFGPath.CFGSetting> cfgConfig) {
 
@@ -98,16 +95,10 @@ public class CFGValidationHelper {
 
         // check for shortest path
         if (length < 0) {
-            PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                    new BasicEvaluationContext(tx, db),
-                    buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
-            );
-
             HashSet<List<Node>> tempSets = new HashSet<>();
             for (List<Node> relatedNode : relatedNodes) {
                 for (Relationship dstEdge : dstEdges) {
-                    Path path = algo.findSinglePath(relatedNode.get(1), dstEdge.getEndNode());
-                    if (path != null) {
+                    if (CFGReachability.isReachable(db, tx, relatedNode.get(1), dstEdge.getEndNode())) {
                         tempSets.add(List.of(relatedNode.get(0), dstEdge.getEndNode()));
                     }
                 }
@@ -133,8 +124,22 @@ public class CFGValidationHelper {
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashMap<List<Node>, Relationship> getConnectionNodes(Relationship r, CandidatePath candidatePath,
+    public static HashMap<List<Node>, Relationship> getConnectionNodes(GraphDatabaseService db, Transaction tx,
+                                                         Relationship r, CandidatePath candidatePath,
                                                          boolean isFirst, boolean isReverse) {
+        return ConnectionNodeCache.getConnectionNodes(db, tx, ConnectionNodeCache.Namespace.PATH, r,
+                rel -> computeConnectionNodes(db, tx, rel));
+    }
+
+    private static HashMap<List<Node>, Relationship> computeConnectionNodes(GraphDatabaseService db, Transaction tx,
+                                                                            Relationship r) {
+
+        // varWrite / parWrite / retWrite connections come from the CSR snapshot if one is loaded
+        DataflowSnapshot snapshot = DataflowSnapshots.current(db, tx);
+        HashMap<List<Node>, Relationship> snapshotNodes = (snapshot == null) ? null : snapshot.connectionNodes(tx, r);
+        if (snapshotNodes != null) {
+            return snapshotNodes;
+        }
 
         //ArrayList<Node> cfgNodes = new ArrayList<>();
         HashMap<List<Node>, Relationship> cfgNodes = new HashMap<>();   // HashSet<[srcNode, dstNode]> (need dstNode to update CFG)
@@ -188,6 +193,7 @@ public class CFGValidationHelper {
                     RelTypes.pubTargetDestination);
         }
 
+        boolean indexed = FunctionIndex.isCurrent(db);
         for (Relationship srcCFG : srcCFGs) {
             for (Relationship dstCFG : dstCFGs) {
 
@@ -213,7 +219,7 @@ public class CFGValidationHelper {
                     if (r.isType(RelTypes.parWrite) && r.getStartNode().hasLabel(NodeLabel.cReturn)) {
                         ArrayList<Relationship> tempList = new ArrayList<>();
                         for (Relationship nextRel : nextCFGRels) {
-                            if (nextRel.hasProperty("cfgReturn") && nextRel.getProperty("cfgReturn").equals("1")) {
+                            if (FunctionIndex.isReturn(nextRel, indexed)) {
                                 nextCFGRelsIt = nextRel.getEndNode().getRelationships(Direction.OUTGOING,
                                         RelTypes.nextCFGBlock);
                                 for (Relationship nextCFGItem : nextCFGRelsIt) {
@@ -227,12 +233,10 @@ public class CFGValidationHelper {
                     for (Relationship nextCFGRel : nextCFGRels) {
                         if (dstCFG.getEndNode().equals(nextCFGRel.getEndNode())) {
                             if (r.isType(RelTypes.parWrite) || (r.isType(RelTypes.call))) {
-                                addNode = (nextCFGRel.hasProperty("cfgInvoke") &&
-                                        nextCFGRel.getProperty("cfgInvoke").equals("1"));
+                                addNode = FunctionIndex.isInvoke(nextCFGRel, indexed);
                                 nextCFGBlockEdge = nextCFGRel;
                             } else {
-                                addNode = (nextCFGRel.hasProperty("cfgReturn") &&
-                                        nextCFGRel.getProperty("cfgReturn").equals("1"));
+                                addNode = FunctionIndex.isReturn(nextCFGRel, indexed);
                                 nextCFGBlockEdge = nextCFGRel;
                             }
 
@@ -244,12 +248,7 @@ public class CFGValidationHelper {
 
 
                 }  else if (r.isType(RelTypes.varInfFunc) || r.isType(RelTypes.varInfluence)) {
-                    PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                            new BasicEvaluationContext(tx, db),
-                            buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
-                    );
-                    Path vifCFG = algo.findSinglePath(srcCFG.getEndNode(), dstCFG.getEndNode());
-                    addNode = (vifCFG != null);
+                    addNode = CFGReachability.isReachable(db, tx, srcCFG.getEndNode(), dstCFG.getEndNode());
                 }
 
                 if (addNode) {
@@ -338,9 +337,10 @@ public class CFGValidationHelper {
     // return: a list of these outgoing dataflow edge
     public static Iterable<Relationship> getNextRels(Node current, boolean isPrefix) {
         if (isPrefix) {
-            return current.getRelationships(Direction.OUTGOING, RelTypes.varWrite);
+            return DataflowStats.expanded(current.getRelationships(Direction.OUTGOING, RelTypes.varWrite));
         } else {
-            return current.getRelationships(Direction.OUTGOING, RelTypes.varWrite, RelTypes.parWrite, RelTypes.retWrite);
+            return DataflowStats.expanded(current.getRelationships(Direction.OUTGOING, RelTypes.varWrite,
+                    RelTypes.parWrite, RelTypes.retWrite));
         }
     }
 
@@ -348,9 +348,10 @@ public class CFGValidationHelper {
     // return: a list of these incoming dataflow edge
     public static Iterable<Relationship> getPrevRels(Node current, boolean isPrefix) {
         if (isPrefix) {
-            return current.getRelationships(Direction.INCOMING, RelTypes.varWrite);
+            return DataflowStats.expanded(current.getRelationships(Direction.INCOMING, RelTypes.varWrite));
         } else {
-            return current.getRelationships(Direction.INCOMING, RelTypes.varWrite, RelTypes.parWrite, RelTypes.retWrite);
+            return DataflowStats.expanded(current.getRelationships(Direction.INCOMING, RelTypes.varWrite,
+                    RelTypes.parWrite, RelTypes.retWrite));
         }
     }
 
@@ -1,9 +1,11 @@
 package apoc.path;
 
+import apoc.dataflow.DataflowStats;
 import org.apache.commons.math3.geometry.spherical.twod.Edge;
 import org.checkerframework.checker.units.qual.C;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.memory.HeapEstimator;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -15,6 +17,8 @@ import org.neo4j.graphdb.*;
 
 public class CandidatePath {
 
+    public static final long SHALLOW_SIZE = HeapEstimator.shallowSizeOfInstance(CandidatePath.class);
+
     public ArrayList<Relationship> partialResult;
     public HashSet<Node> validCFGs;
     public int pathSize;
@@ -44,6 +48,7 @@ public class CandidatePath {
 
     // constructor for a single edge
     public CandidatePath(Relationship startEdge) {
+        DataflowStats.candidate();
         this.partialResult = new ArrayList(List.of(startEdge));
         this.validCFGs = new HashSet<Node>();
         this.pathSize = 1;
@@ -58,6 +63,7 @@ public class CandidatePath {
 
     // constructor for a single edge
     public CandidatePath(Relationship startEdge, int patternIndex) {
+        DataflowStats.candidate();
         this.partialResult = new ArrayList(List.of(startEdge));
         this.validCFGs = new HashSet<Node>();
         this.pathSize = 1;
@@ -73,6 +79,7 @@ public class CandidatePath {
 
     // constructor to create new path from old path plus a single edge
     public CandidatePath(CandidatePath oldPath, Relationship newEdge, int patternIndex) {
+        DataflowStats.candidate();
         this.partialResult = new ArrayList(oldPath.partialResult);
         this.partialResult.add(newEdge);
         this.validCFGs = oldPath.validCFGs;
@@ -96,6 +103,7 @@ public class CandidatePath {
 
     // constructor to create new path from old path plus a single edge
     public CandidatePath(CandidatePath oldPath, Relationship newEdge) {
+        DataflowStats.candidate();
         this.partialResult = new ArrayList(oldPath.partialResult);
         this.partialResult.add(newEdge);
         this.validCFGs = oldPath.validCFGs;
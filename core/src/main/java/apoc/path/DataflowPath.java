@@ -4,11 +4,16 @@ import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.*;
+import apoc.Pools;
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.SearchBudget;
 import apoc.path.CFGValidationHelper.DataflowType;
 import apoc.algo.CFGTraversalShortestPath;
 import apoc.algo.CFGShortestPath;
+import apoc.result.PathResultWithProfile;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 public class DataflowPath {
 
@@ -18,6 +23,9 @@ public class DataflowPath {
     @Context
     public Transaction tx;
 
+    @Context
+    public Pools pools;
+
     @UserFunction
     @Description("apoc.path.dataflowPath(startNode, endNode, startEdge, endEdge, cfgCheck) - finds a dataflow path using forward propagation")
     public Path dataflowPath(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
@@ -73,7 +81,7 @@ public class DataflowPath {
                 if (!visitedEdge.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        startCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, dataflowRel, candidatePath,
                                 true, false);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
                     }
@@ -82,7 +90,7 @@ public class DataflowPath {
             }
         } else {
             if (cfgCheck) {
-                startCFGs = CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, startEdge, curPath,
                         true, false);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, startCFGs, false);
             }
@@ -135,22 +143,39 @@ public class DataflowPath {
     }
 
     @UserFunction
-    @Description("apoc.path.allDataflowPaths(startNode, endNode, startEdge, endEdge, cfgCheck) - finds all shortest dataflow paths using forward propagation")
+    @Description("apoc.path.allDataflowPaths(startNode, endNode, startEdge, endEdge, cfgCheck, [config]) - finds all shortest dataflow paths using forward propagation, config {parallelism: n} runs the CFG checks of each level on n threads")
     public List<Path> allDataflowPaths(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
                                  @Name("startEdge") Relationship startEdge, @Name("endEdge") Relationship endEdge,
-                                 @Name("cfgCheck") boolean cfgCheck) {
+                                 @Name("cfgCheck") boolean cfgCheck,
+                                 @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+
+        return DataflowStats.profiled("apoc.path.allDataflowPaths", config, () -> {
+            AllPathsSearch search = allPathsSearch(startNode, endNode, startEdge, endEdge, cfgCheck, config);
+            return (search == null) ? null : search.toList();
+        });
+
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.path.allDataflowPathsStream(startNode, endNode, startEdge, endEdge, cfgCheck, [config]) - streams the paths of apoc.path.allDataflowPaths as they are found, config {limit: n, maxDepth: n, parallelism: n, profile: false}")
+    public Stream<PathResultWithProfile> allDataflowPathsStream(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
+                                                     @Name("startEdge") Relationship startEdge,
+                                                     @Name("endEdge") Relationship endEdge,
+                                                     @Name("cfgCheck") boolean cfgCheck,
+                                                     @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        DataflowStats.Profile profile = DataflowStats.start("apoc.path.allDataflowPathsStream", config);
+        return LazyPathSearch.stream(DataflowStats.call(profile,
+                () -> allPathsSearch(startNode, endNode, startEdge, endEdge, cfgCheck, config)), profile, config);
+    }
+
+    // helper function: search of allDataflowPaths, null if the arguments are not valid
+    private AllPathsSearch allPathsSearch(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
+                                          boolean cfgCheck, Map<String, Object> config) {
 
         Node start;
         Node end;
         DataflowType category;  // indicating what type of dataflow path we are working with
 
-        // define needed variables
-        HashSet<Relationship> visitedEdges = new HashSet<Relationship>();
-        Queue<CandidatePath> queuePath = new LinkedList<>();
-        CandidatePath curPath = null;
-
-        List<CandidatePath> returnCandidates = new ArrayList<CandidatePath>();
-
         if ((startNode != null) && (endNode != null)) {         // dataflow in middle components
             start = startNode;
             end = endNode;
@@ -163,74 +188,110 @@ public class DataflowPath {
             start = startEdge.getEndNode();
             end = endNode;
             category = DataflowType.PREFIX;
-            curPath = new CandidatePath(startEdge);
-            queuePath.add(curPath);
         } else {                                                // not valid
             return null;
         }
 
-        Iterable<Relationship> dataflowRels;
-        HashMap<List<Node>, Relationship> startCFGs;
+        AllPathsSearch search = new AllPathsSearch(end, endEdge, category, cfgCheck, config);
 
         if (start.equals(end)) {
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
                     new PathImpl.Builder(startEdge.getStartNode());
             builder = (startEdge != null) ? builder.push(startEdge) : builder;
             builder = (endEdge != null) ? builder.push(endEdge) : builder;
-            return List.of(builder.build());
+            search.emit(builder.build());
+            return search;
         }
 
+        HashMap<List<Node>, Relationship> startCFGs;
+
         // if it is not prefix, because we already have a starting edge for prefix, no need to look for the first
         if (category != DataflowType.PREFIX) {
-            dataflowRels = CFGValidationHelper.getNextRels(startNode, false);
-
             // add the relationships connected to start node
-            for (Relationship dataflowRel : dataflowRels) {
-                if (!visitedEdges.contains(dataflowRel)) {
-                    CandidatePath candidatePath = new CandidatePath(dataflowRel);
-                    if (cfgCheck) {
-                        startCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
-                                true, false);
-                        CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
-                    }
-                    queuePath.add(candidatePath);
+            for (Relationship dataflowRel : CFGValidationHelper.getNextRels(startNode, false)) {
+                CandidatePath candidatePath = new CandidatePath(dataflowRel);
+                if (cfgCheck) {
+                    startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, dataflowRel, candidatePath,
+                            true, false);
+                    CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
                 }
+                search.queuePath.add(candidatePath);
             }
         } else {
+            CandidatePath curPath = new CandidatePath(startEdge);
             if (cfgCheck) {
-                startCFGs = CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, startEdge, curPath,
                         true, false);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, startCFGs, false);
             }
+            search.queuePath.add(curPath);
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-        int pathLen = -1;
-        boolean foundPath = false;
+        return search;
+
+    }
+
+    // breadth first search of all shortest dataflow paths, one queued candidate per step
+    private class AllPathsSearch extends LazyPathSearch {
+
+        private final Node end;
+        private final Relationship endEdge;
+        private final DataflowType category;
+        private final boolean cfgCheck;
+
+        private final Queue<CandidatePath> queuePath =
+                budget.queue(path -> SearchBudget.sizeOf(CandidatePath.SHALLOW_SIZE, path.getPathSize()));
+        private final HashSet<Relationship> visitedEdges = new HashSet<Relationship>();
 
         // keep track of visited relationships at current length
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
+        private HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
+        private int pathLen = -1;
+        private boolean foundPath = false;
+
+        // CFG checks of the current level computed by the worker threads, if any
+        private final FrontierExecutor<CandidatePath> frontier;
+        private IdentityHashMap<CandidatePath, long[]> checkedLevel = null;
+
+        private AllPathsSearch(Node end, Relationship endEdge, DataflowType category, boolean cfgCheck,
+                               Map<String, Object> config) {
+            super(tx, config);
+            this.end = end;
+            this.endEdge = endEdge;
+            this.category = category;
+            this.cfgCheck = cfgCheck;
+            this.frontier = new FrontierExecutor<>(pools, db, config, CandidatePath::getPathSize);
+        }
 
-        while (!queuePath.isEmpty()) {
+        @Override
+        protected boolean step() {
+            if (queuePath.isEmpty()) {
+                return false;
+            }
 
-            curPath = queuePath.poll();
+            DataflowStats.queued(queuePath.size());
+            CandidatePath curPath = queuePath.poll();
             int curLen = curPath.getPathSize();
 
-            if (foundPath && curLen > pathLen) {
+            if ((foundPath && curLen > pathLen) || (curLen > maxDepth)) {
                 // if path has been found and current path is longer than found path, can break
-                break;
+                return false;
             }
 
             if (curLen > pathLen) {
                 // add all relationships found at previous path length to visitedRels
+                int visitedBefore = visitedEdges.size();
                 visitedEdges.addAll(visitedEdge);
+                visited(visitedEdges.size() - visitedBefore);
                 visitedEdge = new HashSet<Relationship>();
+
+                if (cfgCheck && frontier.isParallel()) {
+                    checkedLevel = checkLevel(frontier, curPath, queuePath);
+                }
             }
             pathLen = curLen;
 
             // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (getCFGPath(curPath))) {
+            if ((!cfgCheck) || (getCFGPath(curPath, checkedLevel))) {
 
                 visitedEdge.add(curPath.getLastRel());
 
@@ -240,38 +301,25 @@ public class DataflowPath {
                     if (category == DataflowType.SUFFIX) {
                         CandidatePath vifPath = new CandidatePath(curPath, endEdge);
                         if ((!cfgCheck) || (getCFGPath(vifPath))) {
-                            // build path, and return (exit)
                             foundPath = true;
-                            returnCandidates.add(vifPath);
+                            emit(vifPath.buildPath());
                         }
                     } else {
-                        // build path, and return (exit)
                         foundPath = true;
-                        returnCandidates.add(curPath);
+                        emit(curPath.buildPath());
                     }
                 }
 
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
+                for (Relationship dataflowRel : CFGValidationHelper.getNextRels(curPath.getEndNode(), false)) {
                     if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
+                        queuePath.add(new CandidatePath(curPath, dataflowRel));
                     }
                 }
 
             }
 
+            return true;
         }
-
-        List<Path> returnPaths = new ArrayList<Path>();
-        for (CandidatePath returnCandidate : returnCandidates) {
-            if (returnCandidate.getPathSize() > 0) {
-                returnPaths.add(returnCandidate.buildPath());
-            }
-        }
-
-        return returnPaths;
-
     }
 
     @UserFunction
@@ -335,7 +383,7 @@ public class DataflowPath {
                 if (!visitedEdge.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        startCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, dataflowRel, candidatePath,
                                 true, false);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
                     }
@@ -344,7 +392,7 @@ public class DataflowPath {
             }
         } else {
             if (cfgCheck) {
-                startCFGs = CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                startCFGs = CFGValidationHelper.getConnectionNodes(db, tx, startEdge, curPath,
                         true, false);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, startCFGs, false);
             }
@@ -424,22 +472,56 @@ public class DataflowPath {
     }
 
 
+    public boolean getCFGPath(CandidatePath candidatePath) {
+        return DataflowStats.cfgCheck(() -> computeCFGPath(candidatePath));
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
-    public boolean getCFGPath(CandidatePath candidatePath) {
+    private boolean computeCFGPath(CandidatePath candidatePath) {
 
         if (candidatePath.getPathSize() < 2) {
             return true;
         }
 
-        Relationship curRel = candidatePath.getSecondLastRel();
-        Relationship nextRel = candidatePath.getLastRel();
+        HashSet<Node> acceptedCFGEnd = acceptedCFGs(db, tx, candidatePath.validCFGs,
+                candidatePath.getLastRel());
 
-        // obtain cfg nodes and relationships associated with r1 and r2
-        HashSet<Node> startCFGs = candidatePath.validCFGs;
-        HashMap<List<Node>, Relationship> endCFGs = CFGValidationHelper.getConnectionNodes(nextRel,
-                candidatePath, false, false);
+        candidatePath.updateCFG(acceptedCFGEnd);
+
+        return !acceptedCFGEnd.isEmpty();
+
+    }
+
+    // helper function: getCFGPath, taking the result from checkedLevel if the workers already checked the path
+    private boolean getCFGPath(CandidatePath candidatePath, IdentityHashMap<CandidatePath, long[]> checkedLevel) {
+        long[] acceptedIds = (checkedLevel == null) ? null : checkedLevel.get(candidatePath);
+        if (acceptedIds == null) {
+            return getCFGPath(candidatePath);
+        }
+
+        candidatePath.updateCFG(FrontierExecutor.toNodes(tx, acceptedIds, 0));
+        return acceptedIds.length > 0;
+    }
+
+    // helper function: run the CFG checks of the level starting with curPath on the worker threads
+    private IdentityHashMap<CandidatePath, long[]> checkLevel(FrontierExecutor<CandidatePath> frontier,
+                                                              CandidatePath curPath,
+                                                              Queue<CandidatePath> queuePath) {
+        return frontier.checkLevel(curPath, queuePath,
+                path -> (path.getPathSize() < 2) ? null : FrontierExecutor.toIds(path.validCFGs, path.getLastRel()),
+                (workerTx, ids) -> FrontierExecutor.toIds(acceptedCFGs(db, workerTx,
+                        FrontierExecutor.toNodes(workerTx, ids, 1), workerTx.getRelationshipById(ids[0]))));
+    }
+
+    // helper function: end CFG nodes of nextRel whose start CFG node is reachable from one of startCFGs
+    static HashSet<Node> acceptedCFGs(GraphDatabaseService db, Transaction tx, Set<Node> startCFGs,
+                                              Relationship nextRel) {
+
+        // obtain cfg nodes and relationships associated with nextRel
+        HashMap<List<Node>, Relationship> endCFGs = CFGValidationHelper.getConnectionNodes(db, tx, nextRel,
+                null, false, false);
 
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
 
@@ -458,9 +540,7 @@ public class DataflowPath {
             }
         }
 
-        candidatePath.updateCFG(acceptedCFGEnd);
-
-        return !acceptedCFGEnd.isEmpty();
+        return acceptedCFGEnd;
 
     }
 
@@ -0,0 +1,146 @@
+package apoc.path;
+
+import apoc.Pools;
+import apoc.dataflow.DataflowStats;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// Level-synchronous CFG checks for the breadth first dataflow searches (enabled by {parallelism: n}, n > 1)
+//      - when the search reaches a new path length, the CFG checks of the whole level are split into n contiguous
+//        chunks and run on the cpu executor, each chunk in its own read transaction
+//      - entities are bound to the transaction that loaded them, so only ids are passed to and from the workers
+//      - the search still consumes the level in queue order and only picks up the precomputed result of each
+//        path, so visited edges, found paths and their order are the same as in the sequential search
+//      - workers see the last committed state of the store, not the uncommitted changes of the caller
+public class FrontierExecutor<P> {
+
+    // below this level size the transaction setup of the workers costs more than the checks save
+    public static final int MIN_PARALLEL_LEVEL = 16;
+
+    private final Pools pools;
+    private final GraphDatabaseService db;
+    private final int parallelism;
+    private final ToIntFunction<P> pathSize;
+
+    public FrontierExecutor(Pools pools, GraphDatabaseService db, Map<String, Object> config, ToIntFunction<P> pathSize) {
+        this.pools = pools;
+        this.db = db;
+        this.parallelism = (config == null) ? 1 :
+                Math.max(1, Util.toLong(config.getOrDefault("parallelism", 1)).intValue());
+        this.pathSize = pathSize;
+    }
+
+    public boolean isParallel() {
+        return (parallelism > 1) && (pools != null);
+    }
+
+    // run the CFG checks of the level starting with first and continuing at the head of queue
+    //      - toInput: ids of a path the check needs, null if the path needs no check
+    //      - check: accepted CFG node ids of one input, evaluated in the transaction of a worker
+    // returns: accepted CFG node ids per checked path, null if the level is too small to be split
+    public IdentityHashMap<P, long[]> checkLevel(P first, Collection<P> queue, Function<P, long[]> toInput,
+                                                 BiFunction<Transaction, long[], long[]> check) {
+        int size = pathSize.applyAsInt(first);
+        List<P> level = new ArrayList<>();
+        List<long[]> inputs = new ArrayList<>();
+
+        Iterator<P> iterator = queue.iterator();
+        P path = first;
+        while (path != null) {
+            long[] input = toInput.apply(path);
+            if (input != null) {
+                level.add(path);
+                inputs.add(input);
+            }
+            path = iterator.hasNext() ? iterator.next() : null;
+            if ((path != null) && (pathSize.applyAsInt(path) != size)) {
+                break;
+            }
+        }
+
+        if (!isParallel() || (inputs.size() < MIN_PARALLEL_LEVEL)) {
+            return null;
+        }
+
+        List<long[]> results = map(inputs, check);
+        IdentityHashMap<P, long[]> checked = new IdentityHashMap<>(level.size());
+        for (int i = 0; i < level.size(); i++) {
+            checked.put(level.get(i), results.get(i));
+        }
+        return checked;
+    }
+
+    // helper function: run check on contiguous chunks of inputs, results are in input order
+    private List<long[]> map(List<long[]> inputs, BiFunction<Transaction, long[], long[]> check) {
+        int chunks = Math.min(parallelism, inputs.size());
+        int chunkSize = (inputs.size() + chunks - 1) / chunks;
+        List<Future<List<long[]>>> futures = new ArrayList<>(chunks);
+        DataflowStats.Profile profile = DataflowStats.current();     // workers report to the profile of the search
+
+        for (int from = 0; from < inputs.size(); from += chunkSize) {
+            List<long[]> chunk = inputs.subList(from, Math.min(from + chunkSize, inputs.size()));
+            futures.add(Util.inTxFuture(pools.getCpuExecutorService(), db, workerTx -> DataflowStats.call(profile, () -> {
+                List<long[]> chunkResults = new ArrayList<>(chunk.size());
+                for (long[] input : chunk) {
+                    long started = System.nanoTime();
+                    chunkResults.add(check.apply(workerTx, input));
+                    DataflowStats.cfgChecked(System.nanoTime() - started);
+                }
+                return chunkResults;
+            })));
+        }
+
+        List<long[]> results = new ArrayList<>(inputs.size());
+        try {
+            for (Future<List<long[]>> future : futures) {
+                results.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interruption error executing in parallel: ", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Execution error executing in parallel: ", e);
+        }
+        return results;
+    }
+
+    // helper function: ids of rels followed by the ids of nodes
+    public static long[] toIds(Collection<Node> nodes, Relationship... rels) {
+        long[] ids = new long[rels.length + nodes.size()];
+        int i = 0;
+        for (Relationship rel : rels) {
+            ids[i++] = rel.getId();
+        }
+        for (Node node : nodes) {
+            ids[i++] = node.getId();
+        }
+        return ids;
+    }
+
+    // helper function: ids of nodes
+    public static long[] toIds(Collection<Node> nodes) {
+        return toIds(nodes, new Relationship[0]);
+    }
+
+    // helper function: rebind node ids to tx, starting at ids[from]
+    public static HashSet<Node> toNodes(Transaction tx, long[] ids, int from) {
+        HashSet<Node> nodes = new HashSet<>();
+        for (int i = from; i < ids.length; i++) {
+            nodes.add(tx.getNodeById(ids[i]));
+        }
+        return nodes;
+    }
+
+}
@@ -1,6 +1,9 @@
 package apoc.path;
 
 import apoc.algo.CFGShortestPath;
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.SearchBudget;
+import apoc.result.PathResultWithProfile;
 import org.checkerframework.checker.units.qual.C;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.GraphAlgoFactory;
@@ -12,6 +15,7 @@ import apoc.path.CFGValidationHelper.DataflowType;
 import apoc.path.CFGValidationHelper.RelTypes;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 
 public class GmDataflowPath {
@@ -115,7 +119,7 @@ public class GmDataflowPath {
         // Adding first CFGs to Candidate path
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category == DataflowType.PREFIX) ?
-                    CFGValidationHelper.getConnectionNodes(startEdge, curPath, true, false) :
+                    CFGValidationHelper.getConnectionNodes(db, tx, startEdge, curPath, true, false) :
                     CFGValidationHelper.getParWriteConnectionNodes(start, curPath, true);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, false);
         }
@@ -206,18 +210,35 @@ public class GmDataflowPath {
                                @Name("endEdge") Relationship endEdge,
                                @Name("cfgCheck") boolean cfgCheck) {
 
+        AllGmPathsSearch search = allGmPathsSearch(startNode, endNode, startEdge, endEdge, cfgCheck, Map.of());
+        return (search == null) ? null : search.toList();
+
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.path.allGmDataflowPathsStream(startNode, endNode, startEdge, endEdge, cfgCheck, [config]) - streams the paths of apoc.path.allGmDataflowPaths as they are found, config {limit: n, maxDepth: n, profile: false}")
+    public Stream<PathResultWithProfile> allGmDataflowPathsStream(@Name("startNode") Node startNode,
+                                                       @Name("endNode") Node endNode,
+                                                       @Name("startEdge") Relationship startEdge,
+                                                       @Name("endEdge") Relationship endEdge,
+                                                       @Name("cfgCheck") boolean cfgCheck,
+                                                       @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        DataflowStats.Profile profile = DataflowStats.start("apoc.path.allGmDataflowPathsStream", config);
+        return LazyPathSearch.stream(DataflowStats.call(profile,
+                () -> allGmPathsSearch(startNode, endNode, startEdge, endEdge, cfgCheck, config)), profile, config);
+    }
+
+    // helper function: search of allGmDataflowPaths, null if the arguments are not valid
+    private AllGmPathsSearch allGmPathsSearch(Node startNode, Node endNode, Relationship startEdge,
+                                              Relationship endEdge, boolean cfgCheck, Map<String, Object> config) {
+
         Node start;
         Node end;
         DataflowType category;
-        Iterable<Relationship> dataflowRels;
-
-        // define needed variables
-        List<CandidatePath> returnCandidates = new ArrayList<CandidatePath>();
-        HashSet<Relationship> visitedEdges = new HashSet<Relationship>();
-        Queue<CandidatePath> queuePath = new LinkedList<>();
 
         // add first edge to path
-        CandidatePath curPath = new CandidatePath();
+        CandidatePath curPath;
+        CandidatePath prefixPath = null;
 
         if ((startEdge != null) && (endNode != null)) {         // prefix
             category = DataflowType.PREFIX;
@@ -225,7 +246,7 @@ public class GmDataflowPath {
             end = endNode;
 
             curPath = new CandidatePath(startEdge);
-            queuePath.add(curPath);
+            prefixPath = curPath;
         } else if ((startNode != null) && (endNode != null)) {      // intra
             category = DataflowType.INTRA;
             start = startNode;
@@ -242,6 +263,11 @@ public class GmDataflowPath {
             return null;
         }
 
+        AllGmPathsSearch search = new AllGmPathsSearch(end, endEdge, category, cfgCheck, config);
+        if (prefixPath != null) {
+            search.queuePath.add(prefixPath);
+        }
+
         // PREFIX - startEdge to (endNode -pwSource)
         // INTRA - (startNode pwDestination) to (endNode - pwSource)
         // SUFFIX - (startNode pwDestination) to endEdge
@@ -249,7 +275,7 @@ public class GmDataflowPath {
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category != DataflowType.PREFIX) ?
                     CFGValidationHelper.getParWriteConnectionNodes(start, curPath, true) :
-                    CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                    CFGValidationHelper.getConnectionNodes(db, tx, startEdge, curPath,
                             true, false);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, false);
         }
@@ -266,41 +292,69 @@ public class GmDataflowPath {
                         new PathImpl.Builder(start);
                 builder = (startEdge != null) ? builder.push(startEdge) : builder;
                 builder = (endEdge != null) ? builder.push(endEdge) : builder;
-                return List.of(builder.build());
+                search.emit(builder.build());
+                search.queuePath.clear();
+                return search;
             }
         }
 
-
         if (category != DataflowType.PREFIX) {
-            dataflowRels = CFGValidationHelper.getNextRels(start, false);
-            for (Relationship dataflowRel : dataflowRels) {
-                if (!visitedEdges.contains(dataflowRel)) {
-                    CandidatePath candPath = new CandidatePath(curPath, dataflowRel);
-                    queuePath.add(candPath);
-                }
+            for (Relationship dataflowRel : CFGValidationHelper.getNextRels(start, false)) {
+                search.queuePath.add(new CandidatePath(curPath, dataflowRel));
             }
         }
 
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-        int pathLen = -1;
-        boolean foundPath = false;
+        return search;
 
+    }
 
-        while (!queuePath.isEmpty()) {
+    // breadth first search of all shortest gm dataflow paths, one queued candidate per step
+    private class AllGmPathsSearch extends LazyPathSearch {
+
+        private final Node end;
+        private final Relationship endEdge;
+        private final DataflowType category;
+        private final boolean cfgCheck;
+
+        private final Queue<CandidatePath> queuePath =
+                budget.queue(path -> SearchBudget.sizeOf(CandidatePath.SHALLOW_SIZE, path.getPathSize()));
+        private final HashSet<Relationship> visitedEdges = new HashSet<Relationship>();
+
+        private HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
+        private int pathLen = -1;
+        private boolean foundPath = false;
+
+        private AllGmPathsSearch(Node end, Relationship endEdge, DataflowType category, boolean cfgCheck,
+                                 Map<String, Object> config) {
+            super(tx, config);
+            this.end = end;
+            this.endEdge = endEdge;
+            this.category = category;
+            this.cfgCheck = cfgCheck;
+        }
+
+        @Override
+        protected boolean step() {
+            if (queuePath.isEmpty()) {
+                return false;
+            }
 
             // get the last path
-            curPath = queuePath.poll();
+            DataflowStats.queued(queuePath.size());
+            CandidatePath curPath = queuePath.poll();
 
             int curLen = curPath.getPathSize();
 
-            if (foundPath && curLen > pathLen) {
+            if ((foundPath && curLen > pathLen) || (curLen > maxDepth)) {
                 // if path has been found and current path is longer than found path, can break
-                break;
+                return false;
             }
 
             if (curLen > pathLen) {
                 // add all relationships found at previous path length to visitedRels
+                int visitedBefore = visitedEdges.size();
                 visitedEdges.addAll(visitedEdge);
+                visited(visitedEdges.size() - visitedBefore);
                 visitedEdge = new HashSet<Relationship>();
             }
             pathLen = curLen;
@@ -324,38 +378,31 @@ public class GmDataflowPath {
 
                         if ((!cfgCheck) || (gmGetCFGPath(returnPath, isStartPW, isEndPW, null))) {
                             foundPath = true;
-                            returnCandidates.add(returnPath);
+                            emitCandidate(returnPath);
                         }
                     } else {
                         foundPath = true;
-                        returnCandidates.add(curPath);
+                        emitCandidate(curPath);
                     }
 
-
                 }
 
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
+                for (Relationship dataflowRel : CFGValidationHelper.getNextRels(curPath.getEndNode(), false)) {
                     if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
+                        queuePath.add(new CandidatePath(curPath, dataflowRel));
                     }
                 }
 
             }
 
+            return true;
         }
 
-        List<Path> returnPaths = new ArrayList<Path>();
-        for (CandidatePath returnCandidate : returnCandidates) {
-            if (returnCandidate.getPathSize() > 0) {
-                returnPaths.add(returnCandidate.buildPath());
+        private void emitCandidate(CandidatePath candidatePath) {
+            if (candidatePath.getPathSize() > 0) {
+                emit(candidatePath.buildPath());
             }
         }
-
-
-        return returnPaths;
-
     }
 
     @UserFunction
@@ -411,7 +458,7 @@ public class GmDataflowPath {
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category != DataflowType.PREFIX) ?
                     CFGValidationHelper.getStartEndNodes(start, startType, true) :
-                    CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                    CFGValidationHelper.getConnectionNodes(db, tx, startEdge, curPath,
                             true, false);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, false);
         }
@@ -525,10 +572,14 @@ public class GmDataflowPath {
     }
 
 
+    public boolean gmGetCFGPath(CandidatePath candidatePath, boolean isStartPW, boolean isEndPW, String endType) {
+        return DataflowStats.cfgCheck(() -> computeGmCFGPath(candidatePath, isStartPW, isEndPW, endType));
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
-    public boolean gmGetCFGPath(CandidatePath candidatePath, boolean isStartPW,
+    private boolean computeGmCFGPath(CandidatePath candidatePath, boolean isStartPW,
                               boolean isEndPW, String endType) {
 
         // obtain cfg nodes and relationships associated with r1
@@ -550,7 +601,7 @@ public class GmDataflowPath {
 
         HashMap<List<Node>, Relationship> endCFGs = (isEndPW) ?
                 CFGValidationHelper.getStartEndNodes(targetNode, endType, false) :
-                CFGValidationHelper.getConnectionNodes(nextRel, candidatePath, false, false);
+                CFGValidationHelper.getConnectionNodes(db, tx, nextRel, candidatePath, false, false);
 
         CFGShortestPath shortestPath = new CFGShortestPath(
                 new BasicEvaluationContext(tx, db),
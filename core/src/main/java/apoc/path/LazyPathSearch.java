@@ -0,0 +1,116 @@
+package apoc.path;
+
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.SearchBudget;
+import apoc.result.PathResultWithProfile;
+import apoc.util.Util;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Pull based driver of the breadth first path searches returning all paths
+//      - a search handles one queued candidate per step and emits the paths it finds on the way, the functions
+//        drain it into a list, the streaming procedures only step as far as the consumer pulls
+//      - config {limit: n} stops after n paths, {maxDepth: n} does not expand candidates longer than n relationships
+//      - with {profile: true} every row carries the metrics of the search so far (DataflowStats)
+//      - queue and visited sets are accounted in a SearchBudget, {maxMemory: bytes} stops the search with the paths
+//        found so far once it holds more, {onMaxMemory: 'fail'} fails the call instead
+public abstract class LazyPathSearch implements Iterator<Path> {
+
+    private final ArrayDeque<Path> found = new ArrayDeque<>();
+    private boolean exhausted = false;
+    private DataflowStats.Profile profile = null;
+
+    protected final int maxDepth;
+    protected final SearchBudget budget;
+
+    protected LazyPathSearch(Transaction tx, Map<String, Object> config) {
+        this.maxDepth = maxDepth(config);
+        this.budget = SearchBudget.of(tx, config);
+    }
+
+    // handle the next queued candidate, false once the search is exhausted
+    protected abstract boolean step();
+
+    protected void emit(Path path) {
+        found.add(path);
+    }
+
+    // account entries added to a visited set of relationships
+    protected void visited(int entries) {
+        budget.allocate(entries * SearchBudget.VISITED_ENTRY_SIZE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return DataflowStats.call(profile, () -> {
+            while (found.isEmpty() && !exhausted) {
+                boolean done = true;
+                try {
+                    done = !step() || budget.isExceeded();
+                } finally {
+                    // the budget is given back as soon as the search ends, exhausted, over budget or failed
+                    if (done) {
+                        exhausted = true;
+                        budget.close();
+                    }
+                }
+            }
+            return !found.isEmpty();
+        });
+    }
+
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return found.poll();
+    }
+
+    public List<Path> toList() {
+        List<Path> paths = new ArrayList<>();
+        forEachRemaining(paths::add);
+        return paths;
+    }
+
+    public static int maxDepth(Map<String, Object> config) {
+        if (config == null || config.get("maxDepth") == null) {
+            return Integer.MAX_VALUE;
+        }
+        return Util.toLong(config.get("maxDepth")).intValue();
+    }
+
+    // stream of the paths of search, at most config.limit of them, profile is finished once the stream is closed
+    public static Stream<PathResultWithProfile> stream(LazyPathSearch search, DataflowStats.Profile profile,
+                                                       Map<String, Object> config) {
+        if (search == null) {
+            DataflowStats.finish(profile);
+            return Stream.empty();
+        }
+
+        search.profile = profile;
+        Stream<PathResultWithProfile> paths = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(search, Spliterator.ORDERED), false)
+                .map(path -> new PathResultWithProfile(path, DataflowStats.snapshot(profile)))
+                .onClose(() -> {
+                    search.budget.close();
+                    DataflowStats.finish(profile);
+                });
+        if (config != null && config.get("limit") != null) {
+            paths = paths.limit(Math.max(0, Util.toLong(config.get("limit"))));
+        }
+        return paths;
+    }
+
+}
@@ -0,0 +1,344 @@
+package apoc.path;
+
+import apoc.dataflow.DataflowStats;
+import apoc.dataflow.FunctionSummaryCache;
+import apoc.dataflow.FunctionSummaryCache.Flow;
+import apoc.dataflow.FunctionSummaryCache.Key;
+import apoc.dataflow.FunctionSummaryCache.Summaries;
+import apoc.dataflow.FunctionSummaryCache.Summary;
+import apoc.path.CFGValidationHelper.DataflowType;
+import apoc.path.CFGValidationHelper.RelTypes;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.*;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.UserFunction;
+
+import java.util.*;
+
+// Summary based (IFDS style) dataflow search
+//      - a function is summarized once per parameter variable and entry CFG blocks: the shortest CFG feasible flow
+//        from the parameter to every retWrite leaving the function and to every variable reached inside it
+//      - a parWrite is crossed by composing the summary of the callee: only retWrites whose destination CFG block
+//        is the invoking block of the parWrite are followed, so calls and returns always match
+//      - summaries of nested calls are composed the same way and shared across calls (FunctionSummaryCache), so
+//        repeated searches through the same functions do not walk into them again
+//      - recursive calls of a function being summarized are skipped, such summaries are kept for one call only
+public class SummaryDataflowPath {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    // a variable reached by the search, with the accepted CFG nodes after the relationships leading to it
+    private static class Step {
+        private final Node node;
+        private final Set<Node> cfgs;       // null for the start node: the first edge is always accepted
+        private final Step parent;
+        private final long[] segment;       // relationships added by this step (a parWrite, callee flow, retWrite)
+        private final int length;
+        private final long order;
+        private final boolean exit;         // ends with a retWrite leaving the summarized function
+        private final boolean inside;       // lies inside a summarized callee, not expanded any further
+
+        private Step(Node node, Set<Node> cfgs, Step parent, long[] segment, long order, boolean exit,
+                     boolean inside) {
+            this.node = node;
+            this.cfgs = cfgs;
+            this.parent = parent;
+            this.segment = segment;
+            this.length = ((parent == null) ? 0 : parent.length) + segment.length;
+            this.order = order;
+            this.exit = exit;
+            this.inside = inside;
+        }
+
+        private long lastRelId() {
+            return (segment.length == 0) ? -1 : segment[segment.length - 1];
+        }
+
+        private long[] relIds() {
+            long[] relIds = new long[length];
+            int end = length;
+            for (Step step = this; step != null; step = step.parent) {
+                end -= step.segment.length;
+                System.arraycopy(step.segment, 0, relIds, end, step.segment.length);
+            }
+            return relIds;
+        }
+    }
+
+    // one shortest first search, either the top level query (target != null) or the summary of a function
+    private class Search {
+        private final PriorityQueue<Step> queue = new PriorityQueue<>(
+                Comparator.comparingInt((Step step) -> step.length).thenComparingLong(step -> step.order));
+        private final MutableLongSet visitedEdge = new LongHashSet();
+        private final Node target;
+        private final Summary summary;
+        private long order = 0;
+
+        private Search(Node target, Summary summary) {
+            this.target = target;
+            this.summary = summary;
+        }
+
+        private void push(Node node, Set<Node> cfgs, Step parent, long[] segment, boolean exit, boolean inside) {
+            DataflowStats.candidate();
+            queue.add(new Step(node, cfgs, parent, segment, order++, exit, inside));
+        }
+
+        // helper function: add the steps following step
+        private void expand(Step step) {
+            for (Relationship rel : CFGValidationHelper.getNextRels(step.node, false)) {
+                if (visitedEdge.contains(rel.getId())) {
+                    continue;
+                }
+
+                Set<Node> cfgs = accept(step.cfgs, rel);
+                if (cfgs == null) {
+                    continue;
+                }
+
+                if (rel.isType(RelTypes.parWrite)) {
+                    enter(step, rel, cfgs);
+                } else if (rel.isType(RelTypes.retWrite) && (summary != null)) {
+                    push(rel.getEndNode(), cfgs, step, new long[] {rel.getId()}, true, false);
+                } else {
+                    push(rel.getEndNode(), cfgs, step, new long[] {rel.getId()}, false, false);
+                }
+            }
+        }
+
+        // helper function: cross parWrite through the summary of the callee
+        private void enter(Step step, Relationship parWrite, Set<Node> entryCFGs) {
+            Summary callee = summarize(parWrite.getEndNode(), entryCFGs);
+            if (callee == null) {
+                // recursive call of a function being summarized
+                if (summary != null) {
+                    summary.complete = false;
+                }
+                return;
+            }
+            if ((summary != null) && !callee.complete) {
+                summary.complete = false;
+            }
+
+            // returns to the invoking block of this call only
+            Set<Node> callBlocks = (cfgCheck) ? sourceCFGs(parWrite) : null;
+            for (Flow exit : callee.exits) {
+                Set<Node> cfgs = new HashSet<>();
+                for (long cfgId : exit.cfgIds) {
+                    Node cfg = tx.getNodeById(cfgId);
+                    if (callBlocks == null || callBlocks.contains(cfg)) {
+                        cfgs.add(cfg);
+                    }
+                }
+                if (cfgCheck && cfgs.isEmpty()) {
+                    continue;
+                }
+                Relationship retWrite = tx.getRelationshipById(exit.relIds[exit.relIds.length - 1]);
+                push(retWrite.getEndNode(), cfgs, step, concat(parWrite.getId(), exit.relIds), false, false);
+            }
+
+            // variables inside the callee, the top level search only needs its target
+            if (summary != null) {
+                for (long nodeId : callee.reached.keySet().toSortedArray()) {
+                    Flow flow = callee.reached.get(nodeId);
+                    push(tx.getNodeById(nodeId), toNodes(flow.cfgIds), step, concat(parWrite.getId(), flow.relIds),
+                            false, true);
+                }
+            } else if (callee.reached.containsKey(target.getId())) {
+                Flow flow = callee.reached.get(target.getId());
+                push(target, toNodes(flow.cfgIds), step, concat(parWrite.getId(), flow.relIds), false, true);
+            }
+        }
+    }
+
+    private boolean cfgCheck;
+    private Summaries summaries;
+    private final HashSet<Key> inProgress = new HashSet<>();
+
+    @UserFunction
+    @Description("apoc.path.summaryDataflowPath(startNode, endNode, startEdge, endEdge, cfgCheck) - finds a dataflow path crossing function calls through reusable function summaries")
+    public Path summaryDataflowPath(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
+                                   @Name("startEdge") Relationship startEdge, @Name("endEdge") Relationship endEdge,
+                                   @Name("cfgCheck") boolean cfgCheck) {
+
+        Node start;
+        Node end;
+        DataflowType category;
+
+        if ((startNode != null) && (endNode != null)) {         // dataflow in middle components
+            start = startNode;
+            end = endNode;
+            category = DataflowType.INTRA;
+        } else if ((startNode != null) && (endEdge != null)) {  // suffix
+            start = startNode;
+            end = endEdge.getStartNode();
+            category = DataflowType.SUFFIX;
+        } else if ((startEdge != null) && (endNode != null)) {  // prefix
+            start = startEdge.getEndNode();
+            end = endNode;
+            category = DataflowType.PREFIX;
+        } else {                                                // not valid
+            return null;
+        }
+
+        if (start.equals(end)) {
+            PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode) :
+                    new PathImpl.Builder(startEdge.getStartNode());
+            builder = (startEdge != null) ? builder.push(startEdge) : builder;
+            builder = (endEdge != null) ? builder.push(endEdge) : builder;
+            return builder.build();
+        }
+
+        this.cfgCheck = cfgCheck;
+        this.summaries = FunctionSummaryCache.forCall(db, tx);
+
+        Search search = new Search(end, null);
+        if (category == DataflowType.PREFIX) {
+            Set<Node> cfgs = accept(null, startEdge);
+            search.visitedEdge.add(startEdge.getId());
+            search.push(start, cfgs, null, new long[] {startEdge.getId()}, false, false);
+        } else {
+            search.push(start, null, null, new long[0], false, false);
+        }
+
+        while (!search.queue.isEmpty()) {
+            Step step = search.queue.poll();
+
+            if (!step.inside && (step.segment.length > 0) && (step.parent != null) &&
+                    !search.visitedEdge.add(step.lastRelId())) {
+                continue;
+            }
+
+            if (step.node.equals(end)) {
+                if (category != DataflowType.SUFFIX) {
+                    return buildPath(startNode, startEdge, step, null);
+                } else if (accept(step.cfgs, endEdge) != null) {
+                    return buildPath(startNode, startEdge, step, endEdge);
+                }
+            }
+
+            if (!step.inside) {
+                search.expand(step);
+            }
+        }
+
+        return null;
+
+    }
+
+    // helper function: summary of the function entered at parameter, null if it is being summarized
+    private Summary summarize(Node parameter, Set<Node> entryCFGs) {
+        Key key = new Key(parameter.getId(), toIds(entryCFGs), cfgCheck);
+        Summary summary = summaries.get(key);
+        if (summary != null) {
+            return summary;
+        }
+        if (!inProgress.add(key)) {
+            return null;
+        }
+
+        summary = new Summary();
+        Search search = new Search(null, summary);
+        search.push(parameter, entryCFGs, null, new long[0], false, false);
+
+        while (!search.queue.isEmpty()) {
+            Step step = search.queue.poll();
+
+            if (!step.inside && (step.segment.length > 0) && !search.visitedEdge.add(step.lastRelId())) {
+                continue;
+            }
+
+            Flow flow = new Flow(step.relIds(), toIds(step.cfgs));
+            if (step.exit) {
+                summary.exits.add(flow);
+                continue;
+            }
+            if (!summary.reached.containsKey(step.node.getId())) {
+                summary.reached.put(step.node.getId(), flow);
+            }
+
+            if (!step.inside) {
+                search.expand(step);
+            }
+        }
+
+        inProgress.remove(key);
+        summaries.put(key, summary);
+        return summary;
+    }
+
+    // helper function: accepted CFG nodes after rel, null if rel fails the CFG check
+    private Set<Node> accept(Set<Node> cfgs, Relationship rel) {
+        if (!cfgCheck) {
+            return Set.of();
+        }
+
+        Set<Node> accepted;
+        if (cfgs == null) {
+            accepted = new HashSet<>();
+            for (List<Node> cfg : CFGValidationHelper.getConnectionNodes(db, tx, rel, null, true, false).keySet()) {
+                accepted.add(cfg.get(1));
+            }
+        } else {
+            accepted = DataflowPath.acceptedCFGs(db, tx, cfgs, rel);
+        }
+        return (accepted.isEmpty()) ? null : accepted;
+    }
+
+    // helper function: CFG blocks a relationship is written in (the invoking block of a parWrite)
+    private Set<Node> sourceCFGs(Relationship rel) {
+        Set<Node> sources = new HashSet<>();
+        for (List<Node> cfg : CFGValidationHelper.getConnectionNodes(db, tx, rel, null, false, false).keySet()) {
+            sources.add(cfg.get(0));
+        }
+        return sources;
+    }
+
+    private Set<Node> toNodes(long[] ids) {
+        Set<Node> nodes = new HashSet<>();
+        for (long id : ids) {
+            nodes.add(tx.getNodeById(id));
+        }
+        return nodes;
+    }
+
+    private static long[] toIds(Set<Node> nodes) {
+        if (nodes == null) {
+            return new long[0];
+        }
+        long[] ids = new long[nodes.size()];
+        int i = 0;
+        for (Node node : nodes) {
+            ids[i++] = node.getId();
+        }
+        return ids;
+    }
+
+    private static long[] concat(long first, long[] rest) {
+        long[] ids = new long[rest.length + 1];
+        ids[0] = first;
+        System.arraycopy(rest, 0, ids, 1, rest.length);
+        return ids;
+    }
+
+    // helper function: path of the relationships leading to step, ending with endEdge if given
+    private Path buildPath(Node startNode, Relationship startEdge, Step step, Relationship endEdge) {
+        PathImpl.Builder builder = new PathImpl.Builder((startEdge != null) ? startEdge.getStartNode() : startNode);
+        for (long relId : step.relIds()) {
+            builder = builder.push(tx.getRelationshipById(relId));
+        }
+        if (endEdge != null) {
+            builder = builder.push(endEdge);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,110 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+
+import java.util.Map;
+
+/**
+ * Batch size of an apoc.periodic.iterate run with <code>adaptive: {targetMillis, minBatch, maxBatch, maxMemory}</code>.
+ * Every finished batch resizes the next ones: a failed batch halves the size, a retried one shrinks it by a quarter,
+ * a batch whose transaction held more than maxMemory bytes shrinks it in proportion, otherwise the size is scaled
+ * towards targetMillis per batch, by at most a factor of 2 per batch.
+ */
+public class AdaptiveBatchSize {
+
+    public static final long DEFAULT_TARGET_MILLIS = 1000;
+    public static final int DEFAULT_MIN_BATCH = 100;
+    public static final int DEFAULT_MAX_BATCH = 100_000;
+
+    private static final double MAX_GROWTH = 2.0;
+    private static final double MIN_GROWTH = 0.5;
+
+    private final long targetMillis;
+    private final int minBatch;
+    private final int maxBatch;
+    private final long maxMemory;
+
+    private int batchSize;
+    private int smallest;
+    private int largest;
+    private long resized = 0;
+
+    public AdaptiveBatchSize(int batchSize, long targetMillis, int minBatch, int maxBatch, long maxMemory) {
+        if (targetMillis < 1) {
+            throw new IllegalArgumentException("adaptive.targetMillis parameter must be > 0");
+        }
+        if (minBatch < 1 || maxBatch < minBatch) {
+            throw new IllegalArgumentException("adaptive.minBatch parameter must be > 0 and <= adaptive.maxBatch");
+        }
+        this.targetMillis = targetMillis;
+        this.minBatch = minBatch;
+        this.maxBatch = maxBatch;
+        this.maxMemory = maxMemory;
+        this.batchSize = clamp(batchSize);
+        this.smallest = this.batchSize;
+        this.largest = this.batchSize;
+    }
+
+    /**
+     * @return the adaptive batch size configured by <code>config.adaptive</code>, null for a fixed batch size
+     */
+    public static AdaptiveBatchSize fromConfig(Map<String, Object> config, int batchSize) {
+        Object adaptive = config.get("adaptive");
+        if (adaptive == null || Boolean.FALSE.equals(adaptive)) {
+            return null;
+        }
+        Map<String, Object> settings = (adaptive instanceof Map) ? (Map<String, Object>) adaptive : Map.of();
+        long targetMillis = Util.toLong(settings.getOrDefault("targetMillis", DEFAULT_TARGET_MILLIS));
+        int minBatch = Util.toInteger(settings.getOrDefault("minBatch", Math.min(DEFAULT_MIN_BATCH, batchSize)));
+        int maxBatch = Util.toInteger(settings.getOrDefault("maxBatch", Math.max(DEFAULT_MAX_BATCH, batchSize)));
+        long maxMemory = Util.toLong(settings.getOrDefault("maxMemory", 0));
+        return new AdaptiveBatchSize(batchSize, targetMillis, minBatch, maxBatch, maxMemory);
+    }
+
+    public synchronized int next() {
+        return batchSize;
+    }
+
+    /**
+     * Resize after a finished batch.
+     * @param size rows of the batch
+     * @param millis time from the start of its first attempt until it committed or failed
+     * @param retries attempts that had to be retried
+     * @param failed whether the batch failed for good
+     * @param transactionMemory heap held by its transaction before the commit, 0 if unknown
+     */
+    public synchronized void record(int size, long millis, long retries, boolean failed, long transactionMemory) {
+        double next;
+        if (failed) {
+            next = size * MIN_GROWTH;
+        } else if (retries > 0) {
+            next = size * 0.75;
+        } else if (maxMemory > 0 && transactionMemory > maxMemory) {
+            next = size * ((double) maxMemory / transactionMemory);
+        } else {
+            double growth = (double) targetMillis / Math.max(1, millis);
+            next = size * Math.max(MIN_GROWTH, Math.min(MAX_GROWTH, growth));
+            if (maxMemory > 0 && transactionMemory > 0) {
+                // do not grow past the rows that fit into maxMemory
+                next = Math.min(next, size * ((double) maxMemory / transactionMemory));
+            }
+        }
+
+        int resizedTo = clamp((long) next);
+        if (resizedTo != batchSize) {
+            resized++;
+        }
+        batchSize = resizedTo;
+        smallest = Math.min(smallest, batchSize);
+        largest = Math.max(largest, batchSize);
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        return Util.map("targetMillis", targetMillis, "minBatch", minBatch, "maxBatch", maxBatch,
+                "smallest", smallest, "largest", largest, "last", batchSize, "resized", resized);
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minBatch, Math.min(maxBatch, size));
+    }
+}
@@ -26,6 +26,8 @@ public class BatchAndTotalCollector {
     private Map<String, Long> batchErrors = new HashMap<>();
     private Map<String, List<Map<String, Object>>> failedParamsMap = new ConcurrentHashMap<>();
     private final boolean wasTerminated;
+    private AdaptiveBatchSize adaptive;
+    private AtomicLong peakTransactionMemory = new AtomicLong();
 
     private AtomicLong nodesCreated = new AtomicLong();
     private AtomicLong nodesDeleted = new AtomicLong();
@@ -51,9 +53,37 @@ public class BatchAndTotalCollector {
         updateStatistics.put("labelsAdded", labelsAdded.get());
         updateStatistics.put("labelsRemoved", labelsRemoved.get());
 
-        return new BatchAndTotalResult(batches.get(), count.get(), timeTaken, successes, failedOps.get(),
-                failedBatches.get(), retried.get(), operationErrors, batchErrors, wasTerminated,
+        BatchAndTotalResult result = new BatchAndTotalResult(batches.get(), count.get(), timeTaken, successes,
+                failedOps.get(), failedBatches.get(), retried.get(), operationErrors, batchErrors, wasTerminated,
                 failedParamsMap, updateStatistics);
+        if (adaptive != null) {
+            Map<String, Object> sizes = adaptive.toMap();
+            sizes.put("peakTransactionMemory", peakTransactionMemory.get());
+            result.batch.put("adaptive", sizes);
+        }
+        return result;
+    }
+
+    /**
+     * Snapshot of a running iteration, with <code>batch.running: true</code> and the committed rows per second
+     * so far in <code>operations.rowsPerSecond</code>. The error maps are copied as the batches keep adding to them.
+     */
+    public BatchAndTotalResult getProgress() {
+        BatchAndTotalResult result = getResult();
+        result.batch.put("errors", new HashMap<>(batchErrors));
+        result.operations.put("errors", new HashMap<>(operationErrors));
+        result.batch.put("running", true);
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        result.operations.put("rowsPerSecond", successes * 1000 / elapsedMillis);
+        return result;
+    }
+
+    public void setAdaptive(AdaptiveBatchSize adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public void recordTransactionMemory(long bytes) {
+        peakTransactionMemory.accumulateAndGet(bytes, Math::max);
     }
 
     public long getBatches() {
@@ -0,0 +1,358 @@
+package apoc.periodic;
+
+import apoc.ApocConfig;
+import apoc.SystemLabels;
+import apoc.SystemPropertyKeys;
+import apoc.util.Util;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterators;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Checkpoint of an apoc.periodic.iterate run with <code>jobId</code>, stored in the system database next to the
+ * triggers and custom procedures. It holds the statements and config of the job and the offset: the number of
+ * leading rows of the data-driven statement whose batches all committed. apoc.periodic.resume skips that many rows,
+ * so the data-driven statement has to return its rows in a stable order.
+ * Resuming is at-least-once: batches after the offset may have committed already (parallel runs) and run again, so
+ * the operation statement has to be idempotent. A failed batch holds the offset at its first row, so it is retried.
+ * The stored counters add up all runs of the job.
+ * Only the config keys needed to resume are stored, their values have to be plain strings, numbers, booleans, lists
+ * or maps. A run claims the checkpoint in the system database transaction that creates or loads it and releases it
+ * when it stops, so a job runs at most once at a time. A claim of a run that is not running on this server any more,
+ * e.g. one from before a restart, is taken over.
+ */
+public class IterateCheckpoint {
+
+    public static final long DEFAULT_CHECKPOINT_MILLIS = 10_000;
+
+    // the config keys a resumed run reads, the others only apply to the call that passed them
+    static final List<String> RESUME_KEYS = List.of("batchSize", "iterateList", "parallel", "params",
+            "concurrency", "retries", "failedParams", "adaptive", "partitionBy", "batchMode", "planner",
+            "checkpointMillis");
+
+    // prefix of the claims of the runs of this server, and those of them still running
+    private static final String INSTANCE = UUID.randomUUID().toString();
+    private static final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    private final String databaseName;
+    private final String jobId;
+    private final String runner;
+    private final long intervalMillis;
+    private final long resumedAt;
+    // counters stored by the earlier runs of the job
+    private final Map<String, Object> restored;
+    private final CheckpointInfo info;
+    private long lastSaved = System.currentTimeMillis();
+
+    private IterateCheckpoint(String databaseName, String jobId, String runner, long intervalMillis, long resumedAt,
+                              Map<String, Object> restored, CheckpointInfo info) {
+        this.databaseName = databaseName;
+        this.jobId = jobId;
+        this.runner = runner;
+        this.intervalMillis = intervalMillis;
+        this.resumedAt = resumedAt;
+        this.restored = (restored == null) ? Map.of() : restored;
+        this.info = info;
+    }
+
+    public static class CheckpointInfo {
+        public final String jobId;
+        public final String cypherIterate;
+        public final String cypherAction;
+        public final Map<String, Object> config;
+        public final long offset;
+        public final Map<String, Object> progress;
+        public final long lastUpdated;
+
+        public CheckpointInfo(String jobId, String cypherIterate, String cypherAction, Map<String, Object> config,
+                              long offset, Map<String, Object> progress, long lastUpdated) {
+            this.jobId = jobId;
+            this.cypherIterate = cypherIterate;
+            this.cypherAction = cypherAction;
+            this.config = config;
+            this.offset = offset;
+            this.progress = progress;
+            this.lastUpdated = lastUpdated;
+        }
+    }
+
+    /**
+     * Record a new job at offset 0 and claim it, fails if the job already has a checkpoint or the config cannot be
+     * stored.
+     */
+    public static IterateCheckpoint start(String databaseName, String jobId, String cypherIterate, String cypherAction,
+                                          Map<String, Object> config) {
+        long intervalMillis = checkpointMillis(config);
+        String stored = Util.toJson(resumeConfig(jobId, config));
+        String runner = newRunner();
+        try {
+            withSystemDb(tx -> {
+                if (find(tx, databaseName, jobId).hasNext()) {
+                    throw new IllegalArgumentException("Periodic iterate job '" + jobId + "' already has a checkpoint, " +
+                            "continue it with apoc.periodic.resume or drop it with apoc.periodic.removeCheckpoint");
+                }
+                Node node = tx.createNode(SystemLabels.ApocPeriodicCheckpoint);
+                node.setProperty(SystemPropertyKeys.database.name(), databaseName);
+                node.setProperty(SystemPropertyKeys.name.name(), jobId);
+                node.setProperty(SystemPropertyKeys.statement.name(), cypherIterate);
+                node.setProperty(SystemPropertyKeys.action.name(), cypherAction);
+                node.setProperty(SystemPropertyKeys.config.name(), stored);
+                node.setProperty(SystemPropertyKeys.offset.name(), 0L);
+                node.setProperty(SystemPropertyKeys.data.name(), Util.toJson(Map.of()));
+                node.setProperty(SystemPropertyKeys.lastUpdated.name(), System.currentTimeMillis());
+                node.setProperty(SystemPropertyKeys.runner.name(), runner);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            running.remove(runner);
+            throw e;
+        }
+        return new IterateCheckpoint(databaseName, jobId, runner, intervalMillis, 0, Map.of(), null);
+    }
+
+    /**
+     * Claim a stored job to continue it from its offset, fails if it has no checkpoint or another run of it is
+     * running. The config of the run is the stored one with the overrides.
+     */
+    public static IterateCheckpoint resume(String databaseName, String jobId, Map<String, Object> overrides) {
+        String runner = newRunner();
+        CheckpointInfo info;
+        try {
+            info = withSystemDb(tx -> {
+                Node node = Iterators.singleOrNull(find(tx, databaseName, jobId));
+                if (node == null) {
+                    throw new IllegalArgumentException("No checkpoint of periodic iterate job '" + jobId + "'");
+                }
+                tx.acquireWriteLock(node);
+                String claimed = (String) node.getProperty(SystemPropertyKeys.runner.name(), null);
+                if (claimed != null && running.contains(claimed)) {
+                    throw new IllegalStateException("Periodic iterate job '" + jobId + "' is already running");
+                }
+                node.setProperty(SystemPropertyKeys.runner.name(), runner);
+                return toInfo(node);
+            });
+        } catch (RuntimeException e) {
+            running.remove(runner);
+            throw e;
+        }
+
+        Map<String, Object> config = new HashMap<>(info.config);
+        config.putAll(overrides);
+        config.put("jobId", jobId);
+        CheckpointInfo resumed = new CheckpointInfo(info.jobId, info.cypherIterate, info.cypherAction, config,
+                info.offset, info.progress, info.lastUpdated);
+        long intervalMillis;
+        try {
+            intervalMillis = checkpointMillis(config);
+        } catch (RuntimeException e) {
+            release(databaseName, jobId, runner);
+            throw e;
+        }
+        return new IterateCheckpoint(databaseName, jobId, runner, intervalMillis, info.offset, info.progress, resumed);
+    }
+
+    private static String newRunner() {
+        String runner = INSTANCE + ":" + UUID.randomUUID();
+        running.add(runner);
+        return runner;
+    }
+
+    /**
+     * @return the config keys of config a resumed run reads
+     */
+    static Map<String, Object> resumeConfig(String jobId, Map<String, Object> config) {
+        Map<String, Object> stored = new HashMap<>();
+        for (String key : RESUME_KEYS) {
+            if (config.containsKey(key)) {
+                checkStorable(jobId, key, config.get(key));
+                stored.put(key, config.get(key));
+            }
+        }
+        return stored;
+    }
+
+    private static void checkStorable(String jobId, String key, Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Number) {
+            return;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                checkStorable(jobId, key + "." + entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                checkStorable(jobId, key, item);
+            }
+            return;
+        }
+        if (value.getClass().isArray() && !(value instanceof byte[])) {
+            for (int i = 0; i < Array.getLength(value); i++) {
+                checkStorable(jobId, key, Array.get(value, i));
+            }
+            return;
+        }
+        throw new IllegalArgumentException("Periodic iterate job '" + jobId + "' cannot store the config value " +
+                key + " of type " + value.getClass().getSimpleName() + " in its checkpoint, only strings, numbers, " +
+                "booleans, lists and maps can be resumed, e.g. pass ids instead of nodes or relationships");
+    }
+
+    /**
+     * @return the interval between checkpoints of <code>config.checkpointMillis</code>
+     */
+    static long checkpointMillis(Map<String, Object> config) {
+        long millis = Util.toLong(config.getOrDefault("checkpointMillis", DEFAULT_CHECKPOINT_MILLIS));
+        if (millis < 1) {
+            throw new IllegalArgumentException("checkpointMillis parameter must be > 0");
+        }
+        return millis;
+    }
+
+    public static CheckpointInfo load(String databaseName, String jobId) {
+        return withSystemDb(tx -> {
+            Node node = Iterators.singleOrNull(find(tx, databaseName, jobId));
+            return (node == null) ? null : toInfo(node);
+        });
+    }
+
+    public static List<CheckpointInfo> list(String databaseName) {
+        return withSystemDb(tx -> Iterators.stream(tx.findNodes(SystemLabels.ApocPeriodicCheckpoint,
+                        SystemPropertyKeys.database.name(), databaseName))
+                .map(IterateCheckpoint::toInfo)
+                .collect(Collectors.toList()));
+    }
+
+    public static CheckpointInfo remove(String databaseName, String jobId) {
+        return withSystemDb(tx -> {
+            Node node = Iterators.singleOrNull(find(tx, databaseName, jobId));
+            if (node == null) {
+                return null;
+            }
+            CheckpointInfo info = toInfo(node);
+            node.delete();
+            return info;
+        });
+    }
+
+    /**
+     * @return the first row to read, rows before it were processed by an earlier run of the job
+     */
+    public long getResumedAt() {
+        return resumedAt;
+    }
+
+    /**
+     * Skip the rows processed by an earlier run of the job, stops early if the rows run out
+     */
+    public long skip(Iterator<?> rows) {
+        long skipped = 0;
+        while (skipped < resumedAt && rows.hasNext()) {
+            rows.next();
+            skipped++;
+        }
+        return skipped;
+    }
+
+    public boolean isDue() {
+        return System.currentTimeMillis() - lastSaved >= intervalMillis;
+    }
+
+    /**
+     * Store the offset and the counters of this run added to those of the earlier runs
+     */
+    public void save(long offset, BatchAndTotalResult progress) {
+        Map<String, Object> counters = Util.map("batches", restored("batches") + progress.batches,
+                "total", restored("total") + progress.total,
+                "committedOperations", restored("committedOperations") + progress.committedOperations,
+                "failedOperations", restored("failedOperations") + progress.failedOperations,
+                "failedBatches", restored("failedBatches") + progress.failedBatches,
+                "retries", restored("retries") + progress.retries);
+        withSystemDb(tx -> {
+            Iterators.asList(find(tx, databaseName, jobId)).forEach(node -> {
+                node.setProperty(SystemPropertyKeys.offset.name(), offset);
+                node.setProperty(SystemPropertyKeys.data.name(), Util.toJson(counters));
+                node.setProperty(SystemPropertyKeys.lastUpdated.name(), System.currentTimeMillis());
+            });
+            return null;
+        });
+        lastSaved = System.currentTimeMillis();
+    }
+
+    private long restored(String counter) {
+        return Util.toLong(restored.getOrDefault(counter, 0L));
+    }
+
+    /**
+     * @return the job as resumed, with the stored config and the overrides, null for a new job
+     */
+    public CheckpointInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Drop the checkpoint of a job that committed all its rows
+     */
+    public void complete() {
+        remove(databaseName, jobId);
+        running.remove(runner);
+    }
+
+    /**
+     * Release the claim of this run on the checkpoint, so that the job can be resumed, a no-op once released
+     */
+    public void release() {
+        release(databaseName, jobId, runner);
+    }
+
+    private static void release(String databaseName, String jobId, String runner) {
+        if (!running.remove(runner)) {
+            return;
+        }
+        withSystemDb(tx -> {
+            Iterators.asList(find(tx, databaseName, jobId)).forEach(node -> {
+                if (runner.equals(node.getProperty(SystemPropertyKeys.runner.name(), null))) {
+                    node.removeProperty(SystemPropertyKeys.runner.name());
+                }
+            });
+            return null;
+        });
+    }
+
+    private static Iterator<Node> find(Transaction tx, String databaseName, String jobId) {
+        return tx.findNodes(SystemLabels.ApocPeriodicCheckpoint,
+                SystemPropertyKeys.database.name(), databaseName,
+                SystemPropertyKeys.name.name(), jobId);
+    }
+
+    private static CheckpointInfo toInfo(Node node) {
+        return new CheckpointInfo(
+                (String) node.getProperty(SystemPropertyKeys.name.name()),
+                (String) node.getProperty(SystemPropertyKeys.statement.name()),
+                (String) node.getProperty(SystemPropertyKeys.action.name()),
+                Util.fromJson((String) node.getProperty(SystemPropertyKeys.config.name()), Map.class),
+                ((Number) node.getProperty(SystemPropertyKeys.offset.name())).longValue(),
+                Util.fromJson((String) node.getProperty(SystemPropertyKeys.data.name()), Map.class),
+                ((Number) node.getProperty(SystemPropertyKeys.lastUpdated.name())).longValue());
+    }
+
+    private static <T> T withSystemDb(Function<Transaction, T> action) {
+        try (Transaction tx = ApocConfig.apocConfig().getSystemDb().beginTx()) {
+            T result = action.apply(tx);
+            tx.commit();
+            return result;
+        }
+    }
+}
@@ -36,6 +36,7 @@ public class Periodic {
     public static final Pattern RUNTIME_PATTERN = Pattern.compile("\\bruntime\\s*=", Pattern.CASE_INSENSITIVE);
     public static final Pattern CYPHER_PREFIX_PATTERN = Pattern.compile("^\\s*\\bcypher\\b", Pattern.CASE_INSENSITIVE);
     public static final String CYPHER_RUNTIME_SLOTTED = " runtime=slotted ";
+    public static final long DEFAULT_PROGRESS_MILLIS = 1000;
     final static Pattern LIMIT_PATTERN = Pattern.compile("\\slimit\\s", Pattern.CASE_INSENSITIVE);
 
     @Context public GraphDatabaseService db;
@@ -249,11 +250,44 @@ public class Periodic {
      * @param cypherAction
      */
     @Procedure(mode = Mode.WRITE)
-    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
+    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0,adaptive:null,partitionBy:null,progress:false,jobId:null}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows, with progress:true also a row per second while running")
     public Stream<BatchAndTotalResult> iterate(
             @Name("cypherIterate") String cypherIterate,
             @Name("cypherAction") String cypherAction,
             @Name("config") Map<String,Object> config) {
+        return iterate(cypherIterate, cypherAction, config, null);
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.periodic.resume('jobId', {config}) YIELD batches, total - continue the apoc.periodic.iterate run with the given jobId from its last checkpoint, skipping the rows it already processed. The config overrides the one the job was started with")
+    public Stream<BatchAndTotalResult> resume(
+            @Name("jobId") String jobId,
+            @Name(value = "config", defaultValue = "{}") Map<String,Object> config) {
+        // the run holds the claim on the checkpoint until it stops, or until it fails to start
+        IterateCheckpoint checkpoint = IterateCheckpoint.resume(db.databaseName(), jobId, config);
+        try {
+            IterateCheckpoint.CheckpointInfo resumed = checkpoint.getInfo();
+            return iterate(resumed.cypherIterate, resumed.cypherAction, resumed.config, checkpoint);
+        } catch (RuntimeException e) {
+            checkpoint.release();
+            throw e;
+        }
+    }
+
+    @Procedure
+    @Description("apoc.periodic.checkpoints() - list the checkpoints of the apoc.periodic.iterate jobs of this database that did not finish")
+    public Stream<IterateCheckpoint.CheckpointInfo> checkpoints() {
+        return IterateCheckpoint.list(db.databaseName()).stream();
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.periodic.removeCheckpoint('jobId') - drop the checkpoint of an apoc.periodic.iterate job, so that it can't be resumed")
+    public Stream<IterateCheckpoint.CheckpointInfo> removeCheckpoint(@Name("jobId") String jobId) {
+        return Stream.ofNullable(IterateCheckpoint.remove(db.databaseName(), jobId));
+    }
+
+    private Stream<BatchAndTotalResult> iterate(String cypherIterate, String cypherAction, Map<String,Object> config,
+                                                IterateCheckpoint resumed) {
         validateQuery(cypherIterate);
 
         long batchSize = Util.toLong(config.getOrDefault("batchSize", 10000));
@@ -267,11 +301,20 @@ public class Periodic {
         boolean parallel = Util.toBoolean(config.getOrDefault("parallel", false));
         long retries = Util.toLong(config.getOrDefault("retries", 0)); // todo sleep/delay or push to end of batch to try again or immediate ?
         int failedParams = Util.toInteger(config.getOrDefault("failedParams", -1));
+        AdaptiveBatchSize adaptive = AdaptiveBatchSize.fromConfig(config, (int) batchSize);
+        String partitionBy = (String) config.get("partitionBy");
 
         BatchMode batchMode = BatchMode.fromConfig(config);
         Map<String,Object> params = (Map<String, Object>) config.getOrDefault("params", Collections.emptyMap());
 
-        try (Result result = tx.execute(slottedRuntime(cypherIterate),params)) {
+        long progressMillis = progressMillis(config);
+
+        Result result = tx.execute(slottedRuntime(cypherIterate),params);
+        IterateCheckpoint started = null;
+        try {
+            if (partitionBy != null && !result.columns().contains(partitionBy)) {
+                throw new IllegalArgumentException("partitionBy parameter must be one of the columns " + result.columns() + " of the first statement");
+            }
             Pair<String,Boolean> prepared = PeriodicUtils.prepareInnerStatement(cypherAction, batchMode, result.columns(), "_batch");
             String innerStatement = applyPlanner(prepared.first(), Planner.valueOf((String) config.getOrDefault("planner", Planner.DEFAULT.name())));
             boolean iterateList = prepared.other();
@@ -279,16 +322,52 @@ public class Periodic {
             if (log.isDebugEnabled()) {
             	log.debug("Starting periodic iterate from `%s` operation using iteration `%s` in separate thread with id: `%s`", cypherIterate,cypherAction, periodicId);
             }
-            return PeriodicUtils.iterateAndExecuteBatchedInSeparateThread(
-                    db, terminationGuard, log, pools,
-                    (int)batchSize, parallel, iterateList, retries, result,
-                    (tx, p) -> {
-                        final Result r = tx.execute(innerStatement, merge(params, p));
-                        Iterators.count(r); // XXX: consume all results
-                        return r.getQueryStatistics();
-                    },
-                    concurrency, failedParams, periodicId);
+            String jobId = (String) config.get("jobId");
+            IterateCheckpoint checkpoint = resumed;
+            if (checkpoint == null && jobId != null) {
+                checkpoint = IterateCheckpoint.start(db.databaseName(), jobId, cypherIterate, cypherAction, config);
+                started = checkpoint;
+            }
+            BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer = (tx, p) -> {
+                final Result r = tx.execute(innerStatement, merge(params, p));
+                Iterators.count(r); // XXX: consume all results
+                return r.getQueryStatistics();
+            };
+            if (progressMillis > 0) {
+                // the rows are read while the progress stream is consumed, the result is closed with the stream
+                return PeriodicUtils.iterateAndStreamProgress(
+                        db, terminationGuard, log, pools,
+                        (int)batchSize, adaptive, partitionBy, parallel, iterateList, retries, result, consumer,
+                        concurrency, failedParams, periodicId, checkpoint, progressMillis, result::close);
+            }
+            try (result) {
+                return PeriodicUtils.iterateAndExecuteBatchedInSeparateThread(
+                        db, terminationGuard, log, pools,
+                        (int)batchSize, adaptive, partitionBy, parallel, iterateList, retries, result, consumer,
+                        concurrency, failedParams, periodicId, checkpoint);
+            }
+        } catch (RuntimeException e) {
+            result.close();
+            if (started != null) {
+                started.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the interval of the progress rows of <code>config.progress</code>, true for every second, 0 for none
+     */
+    static long progressMillis(Map<String,Object> config) {
+        Object progress = config.get("progress");
+        if (progress == null || Boolean.FALSE.equals(progress)) {
+            return 0;
+        }
+        long millis = Boolean.TRUE.equals(progress) ? DEFAULT_PROGRESS_MILLIS : Util.toLong(progress);
+        if (millis < 1) {
+            throw new IllegalArgumentException("progress parameter must be true or an interval in milliseconds > 0");
         }
+        return millis;
     }
 
     static String slottedRuntime(String cypherIterate) {
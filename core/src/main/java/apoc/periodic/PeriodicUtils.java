@@ -2,26 +2,37 @@ package apoc.periodic;
 
 import apoc.Pools;
 import apoc.util.Util;
+import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.QueryStatistics;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.TerminationGuard;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class PeriodicUtils {
 
@@ -59,62 +70,457 @@ public class PeriodicUtils {
             int batchsize, boolean parallel, boolean iterateList, long retries,
             Iterator<Map<String, Object>> iterator, BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
             int concurrency, int failedParams, String periodicId) {
+        return iterateAndExecuteBatchedInSeparateThread(db, terminationGuard, log, pools, batchsize, null, null,
+                parallel, iterateList, retries, iterator, consumer, concurrency, failedParams, periodicId, null);
+    }
+
+    /**
+     * @param adaptive resizes the batches after each finished one, null to run all batches with batchsize
+     * @param partitionBy column whose value routes each row to one of concurrency lanes, rows with the same value
+     *                    always land in the same lane and a lane runs one batch at a time, null to cut the batches
+     *                    in arrival order
+     * @param checkpoint stores the offset of the rows processed so far every now and then, skips the rows of an
+     *                   earlier run when it was resumed, null for none
+     */
+    public static Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(
+            GraphDatabaseService db, TerminationGuard terminationGuard, Log log, Pools pools,
+            int batchsize, AdaptiveBatchSize adaptive, String partitionBy, boolean parallel, boolean iterateList,
+            long retries, Iterator<Map<String, Object>> iterator,
+            BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
+            int concurrency, int failedParams, String periodicId, IterateCheckpoint checkpoint) {
+        Iteration iteration = new Iteration(db, terminationGuard, log, pools, batchsize, adaptive, partitionBy,
+                parallel, iterateList, retries, iterator, consumer, concurrency, failedParams, periodicId, checkpoint);
+        while (iteration.run(Long.MAX_VALUE)) {
+            // submits until all rows are read
+        }
+        return Stream.of(iteration.finish());
+    }
+
+    /**
+     * Same as iterateAndExecuteBatchedInSeparateThread, but runs while the stream is consumed: every progressMillis
+     * it yields the progress so far, the last row is the final result. Closing the stream early stops submitting
+     * batches and waits for the running ones, onClose runs after that.
+     */
+    public static Stream<BatchAndTotalResult> iterateAndStreamProgress(
+            GraphDatabaseService db, TerminationGuard terminationGuard, Log log, Pools pools,
+            int batchsize, AdaptiveBatchSize adaptive, String partitionBy, boolean parallel, boolean iterateList,
+            long retries, Iterator<Map<String, Object>> iterator,
+            BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
+            int concurrency, int failedParams, String periodicId, IterateCheckpoint checkpoint,
+            long progressMillis, Runnable onClose) {
+        Iteration iteration = new Iteration(db, terminationGuard, log, pools, batchsize, adaptive, partitionBy,
+                parallel, iterateList, retries, iterator, consumer, concurrency, failedParams, periodicId, checkpoint);
+        long progressNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, progressMillis));
+
+        Iterator<BatchAndTotalResult> rows = new Iterator<>() {
+            private boolean running = true;
+            private boolean finished = false;
+
+            @Override
+            public boolean hasNext() {
+                return !finished;
+            }
+
+            @Override
+            public BatchAndTotalResult next() {
+                if (finished) {
+                    throw new NoSuchElementException();
+                }
+                if (running) {
+                    running = iteration.run(System.nanoTime() + progressNanos);
+                    if (running) {
+                        return iteration.progress();
+                    }
+                }
+                finished = true;
+                return iteration.finish();
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        iteration.finish();
+                    } finally {
+                        onClose.run();
+                    }
+                });
+    }
+
+    /**
+     * @return the lane of a partitionBy value, nodes and relationships by their id
+     */
+    public static int partition(Object value, int lanes) {
+        long key = (value instanceof Entity) ? ((Entity) value).getId() : Objects.hashCode(value);
+        return Math.floorMod(Long.hashCode(key * 0x9E3779B97F4A7C15L), lanes);
+    }
+
+    /**
+     * One apoc.periodic.iterate run: reads the rows, submits them in batches and aggregates the finished batches.
+     * Running batches are bounded by permits released when a batch completes, the reader blocks on them (waking
+     * up to check for termination) instead of polling. Finished futures are aggregated and dropped as the run goes,
+     * so only the running ones are kept.
+     * With a checkpoint, the offset stored is the first row of the oldest unfinished or failed batch (or of the rows
+     * still waiting in a lane), every row before it is in a committed batch. Batches after it may have committed as
+     * well, a resumed run processes their rows again (at-least-once).
+     */
+    private static class Iteration {
+        // how long a blocked reader waits before checking for termination or the progress deadline again
+        private static final long WAIT_MILLIS = 100;
+        // full batches a lane holds while its previous batch runs, before the reader waits for that lane
+        private static final int QUEUED_BATCHES_PER_LANE = 2;
+
+        private final GraphDatabaseService db;
+        private final TerminationGuard terminationGuard;
+        private final Log log;
+        private final ExecutorService pool;
+        private final int batchsize;
+        private final AdaptiveBatchSize adaptive;
+        private final String partitionBy;
+        private final boolean iterateList;
+        private final long retries;
+        private final Iterator<Map<String, Object>> iterator;
+        private final BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer;
+        private final String periodicId;
+        private final BatchAndTotalCollector collector;
+        // running batches and their first row
+        private final Map<Future<Long>, Long> futures = new LinkedHashMap<>();
+        private final TreeSet<Long> pending = new TreeSet<>();
+        private final IterateCheckpoint checkpoint;
+        private long read;
+        // first row of the oldest failed batch, kept as the checkpoint offset so that a resumed run retries it
+        private long firstFailed = Long.MAX_VALUE;
+
+        // running batches in arrival order mode, one permit per lane in partitioned mode
+        private final Semaphore permits;
+        private final Semaphore[] lanePermits;
+        private final List<List<Map<String,Object>>> lanes;
+        private final long[] laneFirst;
+        private final List<ArrayDeque<LaneBatch>> queued;
+        private int queuedBatches = 0;
+
+        private boolean submittedAny = false;
+        private BatchAndTotalResult result = null;
+
+        Iteration(GraphDatabaseService db, TerminationGuard terminationGuard, Log log, Pools pools,
+                  int batchsize, AdaptiveBatchSize adaptive, String partitionBy, boolean parallel, boolean iterateList,
+                  long retries, Iterator<Map<String, Object>> iterator,
+                  BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
+                  int concurrency, int failedParams, String periodicId, IterateCheckpoint checkpoint) {
+            this.db = db;
+            this.terminationGuard = terminationGuard;
+            this.log = log;
+            this.pool = parallel ? pools.getDefaultExecutorService() : pools.getSingleExecutorService();
+            this.batchsize = batchsize;
+            this.adaptive = adaptive;
+            this.partitionBy = parallel ? partitionBy : null;
+            this.iterateList = iterateList;
+            this.retries = retries;
+            this.iterator = iterator;
+            this.consumer = consumer;
+            this.periodicId = periodicId;
+            this.collector = new BatchAndTotalCollector(terminationGuard, failedParams);
+            this.collector.setAdaptive(adaptive);
+            this.checkpoint = checkpoint;
+            this.read = (checkpoint == null) ? 0 : checkpoint.skip(iterator);
+
+            // without parallel, concurrency batches are read ahead of the single thread running them, an adaptive
+            // run only takes a batch once the previous one finished, so that it is sized by it
+            this.permits = new Semaphore((!parallel && adaptive != null) ? 1 : concurrency);
+            if (this.partitionBy != null) {
+                this.lanePermits = new Semaphore[concurrency];
+                this.lanes = new ArrayList<>(concurrency);
+                this.laneFirst = new long[concurrency];
+                this.queued = new ArrayList<>(concurrency);
+                for (int lane = 0; lane < concurrency; lane++) {
+                    lanePermits[lane] = new Semaphore(1);
+                    lanes.add(new ArrayList<>());
+                    queued.add(new ArrayDeque<>());
+                }
+            } else {
+                this.lanePermits = null;
+                this.lanes = null;
+                this.laneFirst = null;
+                this.queued = null;
+            }
+        }
+
+        /**
+         * Submit batches until all rows are read, the transaction was terminated or deadlineNanos passed.
+         * @return true if there are rows left to submit
+         */
+        boolean run(long deadlineNanos) {
+            return (partitionBy == null) ? runInArrivalOrder(deadlineNanos) : runPartitioned(deadlineNanos);
+        }
+
+        private boolean runInArrivalOrder(long deadlineNanos) {
+            // an empty iteration still runs one (empty) batch
+            while (!submittedAny || iterator.hasNext()) {
+                if (Util.transactionIsTerminated(terminationGuard)) return false;
+                if (System.nanoTime() > deadlineNanos) return true;
+                if (!acquire(permits)) continue;
+
+                int size = (adaptive == null) ? batchsize : adaptive.next();
+                if (log.isDebugEnabled()) log.debug("Execute, in periodic iteration with id %s, no %d batch size ", periodicId, size);
+                long first = read;
+                List<Map<String,Object>> batch = Util.take(iterator, size);
+                read += batch.size();
+                submit(batch, permits, first);
+                if (log.isDebugEnabled()) {
+                    log.debug("Processed in periodic iteration with id %s, %d iterations of %d total", periodicId, size, collector.getCount());
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Route every row to the lane of its partitionBy value and queue a lane's rows once they fill a batch.
+         * A lane only runs one batch at a time, so rows with the same value never run in concurrent transactions.
+         * A lane whose previous batch is still running holds up to QUEUED_BATCHES_PER_LANE full batches, the reader
+         * keeps reading into the other lanes meanwhile and only waits for a lane that holds more; queued batches
+         * are submitted as soon as their lane is free.
+         */
+        private boolean runPartitioned(long deadlineNanos) {
+            while (iterator.hasNext()) {
+                if (Util.transactionIsTerminated(terminationGuard)) return false;
+                if (System.nanoTime() > deadlineNanos) return true;
+
+                Map<String,Object> row = iterator.next();
+                int lane = partition(row.get(partitionBy), lanes.size());
+                List<Map<String,Object>> rows = lanes.get(lane);
+                if (rows.isEmpty()) laneFirst[lane] = read;
+                rows.add(row);
+                read++;
+
+                int size = (adaptive == null) ? batchsize : adaptive.next();
+                if (rows.size() >= size) {
+                    queue(lane);
+                    while (queued.get(lane).size() > QUEUED_BATCHES_PER_LANE) {
+                        if (Util.transactionIsTerminated(terminationGuard)) return false;
+                        if (acquire(lanePermits[lane])) submitQueued(lane);
+                        submitReady();
+                    }
+                }
+                if (queuedBatches > 0) submitReady();
+            }
+
+            // the last, partial batch of each lane
+            for (int lane = 0; lane < lanes.size(); lane++) {
+                if (!lanes.get(lane).isEmpty()) queue(lane);
+            }
+            while (queuedBatches > 0) {
+                if (Util.transactionIsTerminated(terminationGuard)) return false;
+                if (System.nanoTime() > deadlineNanos) return true;
+                submitReady();
+                for (int lane = 0; lane < lanes.size() && queuedBatches > 0; lane++) {
+                    if (!queued.get(lane).isEmpty()) {
+                        if (acquire(lanePermits[lane])) submitQueued(lane);
+                        break;
+                    }
+                }
+            }
+            return false;
+        }
 
-        ExecutorService pool = parallel ? pools.getDefaultExecutorService() : pools.getSingleExecutorService();
-        List<Future<Long>> futures = new ArrayList<>(concurrency);
-        BatchAndTotalCollector collector = new BatchAndTotalCollector(terminationGuard, failedParams);
-        AtomicInteger activeFutures = new AtomicInteger(0);
+        // helper function: move the rows of a lane to its queue of batches
+        private void queue(int lane) {
+            queued.get(lane).add(new LaneBatch(lanes.get(lane), laneFirst[lane]));
+            queuedBatches++;
+            lanes.set(lane, new ArrayList<>());
+        }
 
-        do {
-            if (Util.transactionIsTerminated(terminationGuard)) break;
+        // submit the oldest queued batch of a lane, its permit is already taken
+        private void submitQueued(int lane) {
+            // drained while the batch is still queued, so that a checkpoint saved meanwhile keeps its rows
+            drainFinished();
+            LaneBatch batch = queued.get(lane).poll();
+            queuedBatches--;
+            if (log.isDebugEnabled()) log.debug("Execute, in periodic iteration with id %s, lane %d batch size %d", periodicId, lane, batch.rows.size());
+            submit(batch.rows, lanePermits[lane], batch.first);
+        }
 
-            if (activeFutures.get() < concurrency || !parallel) {
-                // we have capacity, add a new Future to the list
-                activeFutures.incrementAndGet();
+        // submit the oldest queued batch of every lane that is not running one
+        private void submitReady() {
+            for (int lane = 0; lane < queued.size(); lane++) {
+                if (!queued.get(lane).isEmpty() && lanePermits[lane].tryAcquire()) {
+                    submitQueued(lane);
+                }
+            }
+        }
+
+        // wait a bit for a permit, draining the batches that finished meanwhile
+        private boolean acquire(Semaphore semaphore) {
+            try {
+                boolean acquired = semaphore.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                drainFinished();
+                return acquired;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a batch of periodic iteration " + periodicId, e);
+            }
+        }
 
-                if (log.isDebugEnabled()) log.debug("Execute, in periodic iteration with id %s, no %d batch size ", periodicId, batchsize);
-                List<Map<String,Object>> batch = Util.take(iterator, batchsize);
-                final long currentBatchSize = batch.size();
-                Periodic.ExecuteBatch executeBatch =
-                        iterateList ?
-                                new Periodic.ListExecuteBatch(terminationGuard, collector, batch, consumer) :
-                                new Periodic.OneByOneExecuteBatch(terminationGuard, collector, batch, consumer);
+        private void submit(List<Map<String,Object>> batch, Semaphore permit, long first) {
+            final long currentBatchSize = batch.size();
+            Periodic.ExecuteBatch executeBatch =
+                    iterateList ?
+                            new Periodic.ListExecuteBatch(terminationGuard, collector, batch, consumer) :
+                            new Periodic.OneByOneExecuteBatch(terminationGuard, collector, batch, consumer);
+            MeasuredBatch measured = (adaptive == null) ? null : new MeasuredBatch(executeBatch);
 
-                futures.add(Util.inTxFuture(log,
+            try {
+                futures.put(Util.inTxFuture(log,
                         pool,
                         db,
-                        executeBatch,
+                        (measured == null) ? executeBatch : measured,
                         retries,
-                        retryCount -> collector.incrementRetried(),
+                        retryCount -> {
+                            collector.incrementRetried();
+                            if (measured != null) measured.retries++;
+                        },
                         onComplete -> {
+                            if (measured != null) {
+                                collector.recordTransactionMemory(measured.transactionMemory);
+                                adaptive.record((int) currentBatchSize, measured.elapsedMillis(), measured.retries,
+                                        !measured.applied, measured.transactionMemory);
+                            }
                             collector.incrementBatches();
                             executeBatch.release();
-                            activeFutures.decrementAndGet();
-                        }));
-                collector.incrementCount(currentBatchSize);
-                if (log.isDebugEnabled()) {
-                    log.debug("Processed in periodic iteration with id %s, %d iterations of %d total", periodicId, batchsize, collector.getCount());
+                            permit.release();
+                        }), first);
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+            pending.add(first);
+            collector.incrementCount(currentBatchSize);
+            submittedAny = true;
+        }
+
+        // aggregate and drop the futures of the finished batches, store a checkpoint when it is due
+        private void drainFinished() {
+            futures.entrySet().removeIf(entry -> {
+                Future<Long> future = entry.getKey();
+                if (!future.isDone()) return false;
+                int failed = collector.getFailedBatches().get();
+                collector.incrementSuccesses(
+                        Util.getFuture(future, collector.getBatchErrors(), collector.getFailedBatches(), 0L));
+                finished(entry.getValue(), collector.getFailedBatches().get() > failed);
+                return true;
+            });
+            if (checkpoint != null && checkpoint.isDue()) {
+                checkpoint.save(offset(), collector.getProgress());
+            }
+        }
+
+        private void finished(long first, boolean failed) {
+            pending.remove(first);
+            if (failed) firstFailed = Math.min(firstFailed, first);
+        }
+
+        // rows before the offset are all in committed batches
+        private long offset() {
+            long offset = pending.isEmpty() ? read : Math.min(read, pending.first());
+            offset = Math.min(offset, firstFailed);
+            if (lanes != null) {
+                for (int lane = 0; lane < lanes.size(); lane++) {
+                    if (!lanes.get(lane).isEmpty()) offset = Math.min(offset, laneFirst[lane]);
+                    if (!queued.get(lane).isEmpty()) offset = Math.min(offset, queued.get(lane).peek().first);
                 }
-            } else {
-                // we can't block until the counter decrease as we might miss a cancellation, so
-                // let this thread be preempted for a bit before we check for cancellation or
-                // capacity.
-                LockSupport.parkNanos(1000);
             }
-        } while (iterator.hasNext());
+            return offset;
+        }
+
+        BatchAndTotalResult progress() {
+            drainFinished();
+            return collector.getProgress();
+        }
 
-        boolean wasTerminated = Util.transactionIsTerminated(terminationGuard);
-        ToLongFunction<Future<Long>> toLongFunction = wasTerminated ?
-                f -> Util.getFutureOrCancel(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L) :
-                f -> Util.getFuture(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L);
-        collector.incrementSuccesses(futures.stream().mapToLong(toLongFunction).sum());
+        /**
+         * Wait for the running batches (cancel them if the transaction was terminated) and return the result,
+         * only the first call does so.
+         */
+        BatchAndTotalResult finish() {
+            if (result != null) {
+                return result;
+            }
+            boolean wasTerminated = Util.transactionIsTerminated(terminationGuard);
+            ToLongFunction<Future<Long>> toLongFunction = wasTerminated ?
+                    f -> Util.getFutureOrCancel(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L) :
+                    f -> Util.getFuture(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L);
+            futures.forEach((future, first) -> {
+                int failed = collector.getFailedBatches().get();
+                collector.incrementSuccesses(toLongFunction.applyAsLong(future));
+                // a cancelled batch did not commit, its rows are run again on resume
+                if (!future.isCancelled()) finished(first, collector.getFailedBatches().get() > failed);
+            });
+            futures.clear();
+
+            if (checkpoint != null) {
+                if (wasTerminated || iterator.hasNext() || offset() < read) {
+                    try {
+                        checkpoint.save(offset(), collector.getProgress());
+                    } finally {
+                        checkpoint.release();
+                    }
+                } else {
+                    checkpoint.complete();
+                }
+            }
+
+            Util.logErrors("Error during iterate.commit:", collector.getBatchErrors(), log);
+            Util.logErrors("Error during iterate.execute:", collector.getOperationErrors(), log);
+            if (log.isDebugEnabled()) {
+                log.debug("Terminated periodic iteration with id %s with %d executions", periodicId, collector.getCount());
+            }
+            result = collector.getResult();
+            return result;
+        }
+    }
+
+    /**
+     * Rows of a partitioned lane waiting for the previous batch of the lane to finish.
+     */
+    private static class LaneBatch {
+        private final List<Map<String, Object>> rows;
+        private final long first;
+
+        LaneBatch(List<Map<String, Object>> rows, long first) {
+            this.rows = rows;
+            this.first = first;
+        }
+    }
+
+    /**
+     * A batch timed from the start of its first attempt, with the heap its transaction held before the commit,
+     * for the adaptive batch size. All attempts of a batch run on the same thread.
+     */
+    private static class MeasuredBatch implements Function<Transaction, Long> {
+        private final Periodic.ExecuteBatch executeBatch;
+        private long started = 0;
+        private long retries = 0;
+        private long transactionMemory = 0;
+        private boolean applied = false;
+
+        MeasuredBatch(Periodic.ExecuteBatch executeBatch) {
+            this.executeBatch = executeBatch;
+        }
+
+        @Override
+        public Long apply(Transaction txInThread) {
+            if (started == 0) started = System.nanoTime();
+            applied = false;
+            Long committed = executeBatch.apply(txInThread);
+            if (txInThread instanceof InternalTransaction) {
+                transactionMemory = ((InternalTransaction) txInThread).kernelTransaction().memoryTracker().estimatedHeapMemory();
+            }
+            applied = true;
+            return committed;
+        }
 
-        Util.logErrors("Error during iterate.commit:", collector.getBatchErrors(), log);
-        Util.logErrors("Error during iterate.execute:", collector.getOperationErrors(), log);
-        if (log.isDebugEnabled()) {
-            log.debug("Terminated periodic iteration with id %s with %d executions", periodicId, collector.getCount());
+        long elapsedMillis() {
+            return (started == 0) ? 0 : (System.nanoTime() - started) / 1_000_000;
         }
-        return Stream.of(collector.getResult());
     }
 }
 
@@ -0,0 +1,51 @@
+package apoc.pools;
+
+import apoc.Pools;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Procedure;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+public class PoolsInfo {
+
+    @Context
+    public Pools pools;
+
+    public static class ExecutorInfo {
+        public String name;
+        public String rejectionPolicy;
+        public long corePoolSize;
+        public long maximumPoolSize;
+        public long poolSize;
+        public long activeCount;
+        public long queueDepth;
+        public long queueRemainingCapacity;
+        public long completedTaskCount;
+        public long rejectedCount;
+
+        public ExecutorInfo(String name, ThreadPoolExecutor executor, String rejectionPolicy, long rejectedCount) {
+            this.name = name;
+            this.rejectionPolicy = rejectionPolicy;
+            this.corePoolSize = executor.getCorePoolSize();
+            this.maximumPoolSize = executor.getMaximumPoolSize();
+            this.poolSize = executor.getPoolSize();
+            this.activeCount = executor.getActiveCount();
+            this.queueDepth = executor.getQueue().size();
+            this.queueRemainingCapacity = executor.getQueue().remainingCapacity();
+            this.completedTaskCount = executor.getCompletedTaskCount();
+            this.rejectedCount = rejectedCount;
+        }
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.pools.info() - size, active threads, queue depth and rejected tasks of every APOC executor")
+    public Stream<ExecutorInfo> info() {
+        return pools.getExecutors().entrySet().stream()
+                .map(e -> new ExecutorInfo(e.getKey(), e.getValue(),
+                        pools.getRejectionPolicy(e.getKey()), pools.getRejectedCount(e.getKey())));
+    }
+
+}
@@ -0,0 +1,15 @@
+package apoc.result;
+
+import org.neo4j.graphdb.Path;
+
+import java.util.Map;
+
+
+public class PathResultWithProfile extends PathResult {
+    public Map<String, Object> profile;
+
+    public PathResultWithProfile(Path path, Map<String, Object> profile) {
+        super(path);
+        this.profile = profile;
+    }
+}
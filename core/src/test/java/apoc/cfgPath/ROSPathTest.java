@@ -0,0 +1,74 @@
+package apoc.cfgPath;
+
+import apoc.dataflow.DataflowGraphGenerator;
+import apoc.util.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ROSPathTest {
+
+    // the dataflow relationships followed by the apoc.dataflow / apoc.path searches
+    private static final String DATAFLOW_REL_SEQ = "varWrite|parWrite|retWrite+";
+
+    private static final String ROS_FIND_PATHS =
+            "MATCH ()-[s]->() WHERE id(s) = $startEdge MATCH ()-[e]->() WHERE id(e) = $endEdge " +
+            "UNWIND apoc.cfgPath.rosFindPaths(s, {endE: e, relSeq: $relSeq, shortest: $shortest, " +
+            "parallelism: $parallelism}) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    private static DataflowGraphGenerator graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class);
+        graph = new DataflowGraphGenerator(true, 2, 5, 2, false).generate(db);
+    }
+
+    // helper function: paths returned as relationship id lists, in a stable order
+    private static List<String> paths(String query, Map<String, Object> params) {
+        return TestUtil.<List<Long>>firstColumn(db, query, params).stream()
+                .map(Object::toString)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    // helper function: parameters of a search from the entry to the exit edge of component c
+    private static Map<String, Object> component(int c, boolean shortest) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("startEdge", graph.getStartEdgeIds()[c]);
+        params.put("endEdge", graph.getEndEdgeIds()[c]);
+        params.put("relSeq", DATAFLOW_REL_SEQ);
+        params.put("shortest", shortest);
+        params.put("parallelism", 1);
+        return params;
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        for (int c = 0; c < graph.getStartEdgeIds().length; c++) {
+            for (boolean shortest : new boolean[] {true, false}) {
+                Map<String, Object> params = component(c, shortest);
+                List<String> sequential = paths(ROS_FIND_PATHS, params);
+                assertFalse(sequential.isEmpty());
+
+                params.put("parallelism", 4);
+                assertEquals(sequential, paths(ROS_FIND_PATHS, params));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package apoc.cfgPath;
+
+import apoc.dataflow.DataflowGraphGenerator;
+import apoc.util.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RelAutomatonTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "varWrite|parWrite|retWrite+",
+            "varWrite+,parWrite",
+            "varWrite*,parWrite,varWrite*,parWrite",
+            "varWrite|parWrite*,retWrite+,retWrite",
+            "varWrite*,parWrite,varWrite|parWrite*,retWrite+,varWrite*");
+
+    private static final List<RelationshipType> TYPES = List.of(RelationshipType.withName("varWrite"),
+            RelationshipType.withName("parWrite"), RelationshipType.withName("retWrite"),
+            RelationshipType.withName("pubVar"));
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    private static DataflowGraphGenerator graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class);
+        graph = new DataflowGraphGenerator(true, 1, 5, 2, false).generate(db);
+    }
+
+    // helper function: whether the RelExtension rules of the original search accept the sequence of types,
+    //      every branch is the index of the group that matched the last edge (-1 before the first edge)
+    private static boolean extensionAccepts(RelExtension extension, List<RelationshipType> types) {
+        Set<Integer> branches = Set.of(-1);
+        RelationshipType lastType = null;
+        for (RelationshipType type : types) {
+            Set<Integer> next = new HashSet<>();
+            for (int branch : branches) {
+                int index = (branch == -1) ? 0 : extension.nextIndex(lastType, branch);
+                if (index > extension.lastIndex) {
+                    continue;
+                }
+                List<ArrayList<RelationshipType>> groups = extension.constructTypes(index);
+                for (int i = 0; i < groups.size(); i++) {
+                    if (groups.get(i).contains(type)) {
+                        next.add(index + i);
+                    }
+                }
+            }
+            branches = next;
+            lastType = type;
+        }
+        return !types.isEmpty() && branches.stream().anyMatch(extension::isEndIndex);
+    }
+
+    private static boolean automatonAccepts(RelAutomaton automaton, List<RelationshipType> types) {
+        int state = automaton.start();
+        for (RelationshipType type : types) {
+            state = automaton.step(state, type);
+            if (state == RelAutomaton.DEAD) {
+                return false;
+            }
+        }
+        return automaton.isAccepting(state);
+    }
+
+    // helper function: every sequence of TYPES of length 1 to maxLength
+    private static List<List<RelationshipType>> sequences(int maxLength) {
+        List<List<RelationshipType>> sequences = new ArrayList<>();
+        List<List<RelationshipType>> level = List.of(List.of());
+        for (int length = 1; length <= maxLength; length++) {
+            List<List<RelationshipType>> next = new ArrayList<>();
+            for (List<RelationshipType> prefix : level) {
+                for (RelationshipType type : TYPES) {
+                    List<RelationshipType> sequence = new ArrayList<>(prefix);
+                    sequence.add(type);
+                    next.add(sequence);
+                }
+            }
+            sequences.addAll(next);
+            level = next;
+        }
+        return sequences;
+    }
+
+    @Test
+    public void testAutomatonAcceptsSameSequencesAsExtension() {
+        List<List<RelationshipType>> sequences = sequences(6);
+        for (String pattern : PATTERNS) {
+            RelExtension extension = new RelExtension(pattern, false, false);
+            RelAutomaton automaton = RelAutomaton.compile(pattern, false, false);
+            for (List<RelationshipType> sequence : sequences) {
+                assertEquals(pattern + " " + sequence, extensionAccepts(extension, sequence),
+                        automatonAccepts(automaton, sequence));
+            }
+        }
+    }
+
+    @Test
+    public void testSearchMatchesExtensionOnGraph() {
+        // every relationship unique dataflow path leaving the entry variable of the component
+        List<Map<String, Object>> allPaths = new ArrayList<>();
+        TestUtil.testResult(db, "MATCH p = (s)-[:varWrite|parWrite|retWrite*]->() WHERE id(s) = $start " +
+                        "RETURN [r IN relationships(p) | id(r)] AS ids, [r IN relationships(p) | type(r)] AS types",
+                Map.of("start", graph.getStartNodeIds()[0]), (result) -> result.forEachRemaining(allPaths::add));
+        assertFalse(allPaths.isEmpty());
+
+        for (String pattern : PATTERNS) {
+            RelExtension extension = new RelExtension(pattern, false, false);
+            Set<String> expected = new TreeSet<>();
+            for (Map<String, Object> path : allPaths) {
+                List<RelationshipType> types = ((List<String>) path.get("types")).stream()
+                        .map(RelationshipType::withName)
+                        .collect(Collectors.toList());
+                if (extensionAccepts(extension, types)) {
+                    expected.add(path.get("ids").toString());
+                }
+            }
+
+            Set<String> found = new TreeSet<>();
+            TestUtil.testResult(db, "MATCH (s) WHERE id(s) = $start " +
+                            "UNWIND apoc.cfgPath.rosFindPaths(s, {relSeq: $relSeq, cfg: false, cache: false}) AS path " +
+                            "RETURN [r IN relationships(path) | id(r)] AS ids",
+                    Map.of("start", graph.getStartNodeIds()[0], "relSeq", pattern),
+                    (result) -> result.forEachRemaining(row -> found.add(row.get("ids").toString())));
+
+            assertEquals(pattern, expected, found);
+        }
+    }
+
+}
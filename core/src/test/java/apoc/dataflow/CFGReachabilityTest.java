@@ -0,0 +1,70 @@
+package apoc.dataflow;
+
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CFGReachabilityTest {
+
+    private static final String ALL_PAIRS =
+            "MATCH (a:cCFGBlock), (b:cCFGBlock) WITH a, b ORDER BY id(a), id(b) " +
+            "RETURN apoc.dataflow.cfgReachable(a, b) AS reachable";
+
+    private static final String REACHABLE =
+            "MATCH (a:cCFGBlock {id: $from}), (b:cCFGBlock {id: $to}) RETURN apoc.dataflow.cfgReachable(a, b) AS reachable";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, CFGReachability.class);
+        new DataflowGraphGenerator(false, 2, 5, 2, true).generate(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.executeTransactionally("CALL apoc.dataflow.dropReachabilityIndex()");
+    }
+
+    @Test
+    public void testIndexMatchesTraversal() {
+        List<Boolean> traversal = TestUtil.firstColumn(db, ALL_PAIRS);
+
+        TestUtil.testCall(db, "CALL apoc.dataflow.buildReachabilityIndex()", (row) -> {
+            assertEquals(true, row.get("exists"));
+            assertEquals(false, row.get("stale"));
+        });
+        List<Boolean> indexed = TestUtil.firstColumn(db, ALL_PAIRS);
+
+        assertEquals(traversal, indexed);
+        assertTrue(traversal.contains(true));
+        assertTrue(traversal.contains(false));
+    }
+
+    @Test
+    public void testStaleIndexFallsBackToTraversal() {
+        Map<String, Object> params = Map.of("from", "c0.f2;;:4", "to", "c1.f0;;:0");
+        TestUtil.testCall(db, "CALL apoc.dataflow.buildReachabilityIndex()", (row) -> {});
+        assertFalse(TestUtil.singleResultFirstColumn(db, REACHABLE, params));
+
+        db.executeTransactionally("MATCH (a:cCFGBlock {id: $from}), (b:cCFGBlock {id: $to}) " +
+                "CREATE (a)-[:nextCFGBlock]->(b)", params);
+
+        TestUtil.testCall(db, "CALL apoc.dataflow.reachabilityIndexInfo()",
+                (row) -> assertEquals(true, row.get("stale")));
+        assertTrue(TestUtil.singleResultFirstColumn(db, REACHABLE, params));
+    }
+
+}
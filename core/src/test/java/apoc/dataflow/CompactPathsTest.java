@@ -0,0 +1,105 @@
+package apoc.dataflow;
+
+import apoc.path.DataflowPath;
+import apoc.util.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactPathsTest {
+
+    // every path of both components, with their start node, node and relationship ids next to the compact form
+    private static final String COMPACT =
+            "MATCH (s) WHERE id(s) IN $startNodes MATCH (e) WHERE id(e) IN $endNodes " +
+            "UNWIND apoc.path.allDataflowPaths(s, e, null, null, true) AS path " +
+            "WITH collect(path) AS paths " +
+            "RETURN {starts: [p IN paths | id(startNode(p))], rels: [p IN paths | [r IN relationships(p) | id(r)]], " +
+            "nodes: [p IN paths | [n IN nodes(p) | id(n)]], compact: apoc.dataflow.compactPaths(paths, $config)}";
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    private static DataflowGraphGenerator graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, CompactPaths.class, DataflowPath.class);
+        graph = new DataflowGraphGenerator(false, 2, 5, 2, false).generate(db);
+    }
+
+    private static Map<String, Object> compact(Map<String, Object> config) {
+        return TestUtil.singleResultFirstColumn(db, COMPACT, Map.of(
+                "startNodes", List.of(graph.getStartNodeIds()[0], graph.getStartNodeIds()[1]),
+                "endNodes", List.of(graph.getEndNodeIds()[0], graph.getEndNodeIds()[1]),
+                "config", config));
+    }
+
+    @Test
+    public void testTreeEncodesEveryPath() {
+        Map<String, Object> row = compact(Map.of());
+        List<Long> starts = (List<Long>) row.get("starts");
+        List<List<Long>> rels = (List<List<Long>>) row.get("rels");
+        assertTrue(rels.size() >= 2);
+
+        Map<String, Object> compact = (Map<String, Object>) row.get("compact");
+        Map<String, List<Long>> tree = (Map<String, List<Long>>) compact.get("tree");
+        List<Long> ends = (List<Long>) compact.get("paths");
+        assertEquals((long) rels.size(), compact.get("pathCount"));
+        assertEquals(rels.size(), ends.size());
+
+        // every path is the entry it ends at followed up to its root, the root holds the start node
+        int relsInPaths = 0;
+        for (int i = 0; i < ends.size(); i++) {
+            List<Long> path = new ArrayList<>();
+            int entry = ends.get(i).intValue();
+            while (tree.get("parent").get(entry) != CompactPaths.ROOT) {
+                path.add(tree.get("rel").get(entry));
+                entry = tree.get("parent").get(entry).intValue();
+            }
+            Collections.reverse(path);
+            assertEquals(rels.get(i), path);
+            assertEquals(starts.get(i), tree.get("node").get(entry));
+            assertEquals(-1L, (long) tree.get("rel").get(entry));
+            relsInPaths += path.size();
+        }
+
+        // the paths of a component share their start node and prefix
+        assertTrue(tree.get("node").size() < relsInPaths + ends.size());
+        Set<Long> nodeIds = new HashSet<>();
+        ((List<List<Long>>) row.get("nodes")).forEach(nodeIds::addAll);
+        Set<Long> relIds = new HashSet<>();
+        rels.forEach(relIds::addAll);
+        assertEquals(nodeIds.size(), ((List<?>) compact.get("nodes")).size());
+        assertEquals(relIds.size(), ((List<?>) compact.get("relationships")).size());
+    }
+
+    @Test
+    public void testIdsEncoding() {
+        Map<String, Object> row = compact(Map.of("encoding", "ids", "entities", false));
+        Map<String, Object> compact = (Map<String, Object>) row.get("compact");
+        assertEquals(row.get("starts"), compact.get("starts"));
+        assertEquals(row.get("rels"), compact.get("paths"));
+        assertFalse(compact.containsKey("nodes"));
+        assertFalse(compact.containsKey("relationships"));
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testUnknownEncoding() {
+        compact(Map.of("encoding", "bitmap"));
+    }
+
+}
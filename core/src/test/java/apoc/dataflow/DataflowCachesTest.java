@@ -0,0 +1,128 @@
+package apoc.dataflow;
+
+import apoc.ApocSettings;
+import apoc.cfgPath.ROSPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DataflowCachesTest {
+
+    private static final String ROS_DATAFLOW =
+            "MATCH ()-[s:pubTarget]->() WITH collect(s) AS starts " +
+            "MATCH ()-[e:pubVar]->() WITH starts, collect(e) AS ends " +
+            "UNWIND apoc.dataflow.rosDataflow(starts, ends, true, 2) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    private static final String ROS_FIND_PATHS =
+            "MATCH ()-[s:pubTarget]->(:cVariable {name: 'c0.f0.v0'}) MATCH ()-[e:pubVar]->() WHERE startNode(e).name = 'c0.f0.v4' " +
+            "UNWIND apoc.cfgPath.rosFindPaths(s, {endE: e, shortest: true, relSeq: 'varWrite|parWrite|retWrite+', cache: $cache}) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule()
+            .withSetting(ApocSettings.apoc_dataflow_connection__cache_size, 10000L)
+            .withSetting(ApocSettings.apoc_dataflow_path__cache_size, 10000L);
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSFindPath.class, ROSPath.class, DataflowCaches.class);
+        new DataflowGraphGenerator(true, 2, 5, 2, false).generate(db);
+    }
+
+    private List<String> paths(String query) {
+        return paths(query, Map.of());
+    }
+
+    private List<String> paths(String query, Map<String, Object> params) {
+        return TestUtil.<List<Long>>firstColumn(db, query, params).stream()
+                .map(Object::toString)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Object> pathCacheInfo() {
+        return TestUtil.singleResultFirstColumn(db, "CALL apoc.dataflow.pathCacheInfo() YIELD value RETURN value");
+    }
+
+    private Map<String, Object> connectionCacheInfo() {
+        return TestUtil.singleResultFirstColumn(db, "CALL apoc.dataflow.connectionCacheInfo() YIELD value RETURN value");
+    }
+
+    @Test
+    public void testConnectionCacheIsReused() {
+        List<String> first = paths(ROS_DATAFLOW);
+        assertFalse(first.isEmpty());
+
+        Map<String, Object> info = connectionCacheInfo();
+        assertEquals(true, info.get("enabled"));
+        assertTrue((long) info.get("size") > 0);
+        assertTrue((long) info.get("misses") > 0);
+        long hits = (long) info.get("hits");
+
+        assertEquals(first, paths(ROS_DATAFLOW));
+        assertTrue((long) connectionCacheInfo().get("hits") > hits);
+    }
+
+    @Test
+    public void testConnectionCacheInvalidatedByCfgChange() {
+        List<String> before = paths(ROS_DATAFLOW);
+        long generation = (long) connectionCacheInfo().get("generation");
+
+        db.executeTransactionally("MATCH (a:cCFGBlock {id: 'c0.f0;;:4'}), (b:cCFGBlock {id: 'c1.f0;;:0'}) " +
+                "CREATE (a)-[:nextCFGBlock]->(b)");
+
+        Map<String, Object> info = connectionCacheInfo();
+        assertTrue((long) info.get("generation") > generation);
+        assertEquals(0L, info.get("size"));
+        assertEquals(before, paths(ROS_DATAFLOW));
+    }
+
+    @Test
+    public void testClearConnectionCache() {
+        paths(ROS_DATAFLOW);
+        TestUtil.testCall(db, "CALL apoc.dataflow.clearConnectionCache()",
+                (row) -> assertEquals(0L, ((Map) row.get("value")).get("size")));
+    }
+
+    @Test
+    public void testPathCacheIsReused() {
+        List<String> first = paths(ROS_FIND_PATHS, Map.of("cache", true));
+        assertFalse(first.isEmpty());
+        assertEquals(1L, pathCacheInfo().get("misses"));
+
+        assertEquals(first, paths(ROS_FIND_PATHS, Map.of("cache", true)));
+        assertEquals(1L, pathCacheInfo().get("hits"));
+
+        // opting out neither reads nor fills the cache
+        assertEquals(first, paths(ROS_FIND_PATHS, Map.of("cache", false)));
+        Map<String, Object> info = pathCacheInfo();
+        assertEquals(1L, info.get("hits"));
+        assertEquals(1L, info.get("misses"));
+    }
+
+    @Test
+    public void testPathCacheDroppedByCommit() {
+        List<String> before = paths(ROS_FIND_PATHS, Map.of("cache", true));
+        assertTrue((long) pathCacheInfo().get("size") > 0);
+
+        db.executeTransactionally("CREATE (:cVariable {name: 'unrelated'})");
+
+        assertEquals(before, paths(ROS_FIND_PATHS, Map.of("cache", true)));
+        Map<String, Object> info = pathCacheInfo();
+        assertEquals(0L, info.get("hits"));
+        assertEquals(2L, info.get("misses"));
+    }
+
+}
@@ -0,0 +1,230 @@
+package apoc.dataflow;
+
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+// Generates a synthetic CFG / dataflow graph in the shape produced by the fact extractor
+//      - every component is a chain of FUNCTIONS functions, f(j) calling f(j + 1) in its middle block
+//      - every function has cfgDepth CFG blocks and one variable written per block
+//      - fanOut > 1 adds alternative CFG branches and side variables, giving several shortest dataflow paths
+//      - recursion makes the innermost function call itself
+//      - ROS components are entered through a pubTarget edge from a topic and leave through a pubVar edge to
+//        the topic of the next component, plain components are called from a driver block (parWrite / retWrite)
+public class DataflowGraphGenerator {
+
+    public static final int FUNCTIONS = 3;
+
+    public static final Label CFG_BLOCK = Label.label("cCFGBlock");
+    public static final Label VARIABLE = Label.label("cVariable");
+    public static final Label RETURN = Label.label("cReturn");
+    public static final Label TOPIC = Label.label("rosTopic");
+
+    private static final RelationshipType NEXT_CFG_BLOCK = RelationshipType.withName("nextCFGBlock");
+
+    private final boolean ros;
+    private final int components;
+    private final int cfgDepth;
+    private final int fanOut;
+    private final boolean recursion;
+
+    // ids of the generated entry / exit points, one per component
+    private final LongArrayList startEdgeIds = new LongArrayList();
+    private final LongArrayList endEdgeIds = new LongArrayList();
+    private final LongArrayList startNodeIds = new LongArrayList();
+    private final LongArrayList endNodeIds = new LongArrayList();
+
+    // a generated function: CFG blocks and the variable written in each block
+    private static class Function {
+        private final Node[] blocks;
+        private final Node[] variables;
+
+        private Function(Node[] blocks, Node[] variables) {
+            this.blocks = blocks;
+            this.variables = variables;
+        }
+
+        private Node entry() {
+            return blocks[0];
+        }
+
+        private Node exit() {
+            return blocks[blocks.length - 1];
+        }
+
+        private Node parameter() {
+            return variables[0];
+        }
+
+        private Node returnValue() {
+            return variables[variables.length - 1];
+        }
+    }
+
+    public DataflowGraphGenerator(boolean ros, int components, int cfgDepth, int fanOut, boolean recursion) {
+        if (cfgDepth < 3) {
+            throw new IllegalArgumentException("cfgDepth must be at least 3, was " + cfgDepth);
+        }
+        if (components < 1 || fanOut < 1) {
+            throw new IllegalArgumentException("components and fanOut must be positive");
+        }
+        this.ros = ros;
+        this.components = components;
+        this.cfgDepth = cfgDepth;
+        this.fanOut = fanOut;
+        this.recursion = recursion;
+    }
+
+    // create the graph, one transaction per component
+    public DataflowGraphGenerator generate(GraphDatabaseService db) {
+        long[] topicIds = new long[components + 1];
+        try (Transaction tx = db.beginTx()) {
+            for (int c = 0; c <= components; c++) {
+                Node topic = tx.createNode(TOPIC);
+                topic.setProperty("name", "/topic" + c);
+                topicIds[c] = topic.getId();
+            }
+            tx.commit();
+        }
+
+        for (int c = 0; c < components; c++) {
+            try (Transaction tx = db.beginTx()) {
+                generateComponent(tx, c, tx.getNodeById(topicIds[c]), tx.getNodeById(topicIds[c + 1]));
+                tx.commit();
+            }
+        }
+
+        return this;
+    }
+
+    private void generateComponent(Transaction tx, int component, Node inTopic, Node outTopic) {
+        Function[] functions = new Function[FUNCTIONS];
+        for (int f = 0; f < FUNCTIONS; f++) {
+            functions[f] = createFunction(tx, "c" + component + ".f" + f, f < FUNCTIONS - 1 || recursion);
+        }
+
+        // call chain f(0) -> f(1) -> ... and optionally f(n - 1) -> f(n - 1)
+        for (int f = 0; f < FUNCTIONS - 1; f++) {
+            call(functions[f], functions[f + 1]);
+        }
+        if (recursion) {
+            call(functions[FUNCTIONS - 1], functions[FUNCTIONS - 1]);
+        }
+
+        Function top = functions[0];
+        Relationship startEdge;
+        Relationship endEdge;
+
+        if (ros) {
+            // callback subscribed to inTopic, publishing its result on outTopic
+            startEdge = connect(inTopic, top.parameter(), "pubTarget", top.entry(), top.entry());
+            endEdge = connect(top.returnValue(), outTopic, "pubVar", top.exit(), top.exit());
+        } else {
+            // driver block calling the top function and reading back its result
+            Node call = createBlock(tx, "c" + component + ".main", 0);
+            Node argument = tx.createNode(VARIABLE);
+            Node result = tx.createNode(VARIABLE);
+            call.createRelationshipTo(top.entry(), NEXT_CFG_BLOCK).setProperty("cfgInvoke", "1");
+            top.exit().createRelationshipTo(call, NEXT_CFG_BLOCK).setProperty("cfgReturn", "1");
+
+            startEdge = connect(argument, top.parameter(), "parWrite", call, top.entry());
+            endEdge = connect(top.returnValue(), result, "retWrite", top.exit(), call);
+        }
+
+        startEdgeIds.add(startEdge.getId());
+        endEdgeIds.add(endEdge.getId());
+        startNodeIds.add(top.parameter().getId());
+        endNodeIds.add(top.returnValue().getId());
+    }
+
+    // helper function: straight line of blocks with fanOut - 1 alternative branches between neighbours,
+    //      the variable of block i is written from the variable of block i - 1, except around the call site
+    private Function createFunction(Transaction tx, String name, boolean hasCallSite) {
+        Node[] blocks = new Node[cfgDepth];
+        Node[] variables = new Node[cfgDepth];
+        int callSite = callSite();
+
+        for (int i = 0; i < cfgDepth; i++) {
+            blocks[i] = createBlock(tx, name, i);
+            variables[i] = tx.createNode((i == cfgDepth - 1) ? RETURN : VARIABLE);
+            variables[i].setProperty("name", name + ".v" + i);
+        }
+
+        for (int i = 0; i < cfgDepth - 1; i++) {
+            blocks[i].createRelationshipTo(blocks[i + 1], NEXT_CFG_BLOCK);
+
+            // the value at the call site only reaches the next block through the callee
+            if (!(hasCallSite && i == callSite)) {
+                connect(variables[i], variables[i + 1], "varWrite", blocks[i + 1], blocks[i + 1]);
+            }
+
+            for (int k = 1; k < fanOut; k++) {
+                Node branch = createBlock(tx, name + ".b" + i, k);
+                blocks[i].createRelationshipTo(branch, NEXT_CFG_BLOCK);
+                branch.createRelationshipTo(blocks[i + 1], NEXT_CFG_BLOCK);
+
+                // side variable written in the branch, feeding the variable after next
+                if (i + 2 < cfgDepth && !(hasCallSite && (i == callSite || i + 1 == callSite))) {
+                    Node side = tx.createNode(VARIABLE);
+                    side.setProperty("name", name + ".s" + i + "_" + k);
+                    connect(variables[i], side, "varWrite", branch, branch);
+                    connect(side, variables[i + 2], "varWrite", blocks[i + 2], blocks[i + 2]);
+                }
+            }
+        }
+
+        return new Function(blocks, variables);
+    }
+
+    // helper function: link the call site of caller to callee (parWrite into the parameter, retWrite back),
+    //      the cfgReturn edge leads back to the invoking block like in extracted CFGs
+    private void call(Function caller, Function callee) {
+        int callSite = callSite();
+        Node callBlock = caller.blocks[callSite];
+
+        callBlock.createRelationshipTo(callee.entry(), NEXT_CFG_BLOCK).setProperty("cfgInvoke", "1");
+        callee.exit().createRelationshipTo(callBlock, NEXT_CFG_BLOCK).setProperty("cfgReturn", "1");
+
+        connect(caller.variables[callSite], callee.parameter(), "parWrite", callBlock, callee.entry());
+        connect(callee.returnValue(), caller.variables[callSite + 1], "retWrite", callee.exit(), callBlock);
+    }
+
+    private int callSite() {
+        return (cfgDepth - 1) / 2;
+    }
+
+    private static Node createBlock(Transaction tx, String function, int index) {
+        Node block = tx.createNode(CFG_BLOCK);
+        block.setProperty("id", function + ";;:" + index);
+        return block;
+    }
+
+    // helper function: dataflow relationship with its <type>Source / <type>Destination CFG edges
+    private static Relationship connect(Node src, Node dst, String type, Node srcCFG, Node dstCFG) {
+        Relationship rel = src.createRelationshipTo(dst, RelationshipType.withName(type));
+        src.createRelationshipTo(srcCFG, RelationshipType.withName(type + "Source"));
+        dst.createRelationshipTo(dstCFG, RelationshipType.withName(type + "Destination"));
+        return rel;
+    }
+
+    public long[] getStartEdgeIds() {
+        return startEdgeIds.toArray();
+    }
+
+    public long[] getEndEdgeIds() {
+        return endEdgeIds.toArray();
+    }
+
+    public long[] getStartNodeIds() {
+        return startNodeIds.toArray();
+    }
+
+    public long[] getEndNodeIds() {
+        return endNodeIds.toArray();
+    }
+
+}
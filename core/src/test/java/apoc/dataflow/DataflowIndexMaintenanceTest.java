@@ -0,0 +1,85 @@
+package apoc.dataflow;
+
+import apoc.ApocSettings;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataflowIndexMaintenanceTest {
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule()
+            .withSetting(ApocSettings.apoc_dataflow_connection__cache_size, 10000L)
+            .withSetting(ApocSettings.apoc_dataflow_index__maintenance_enabled, true);
+
+    private long influenceId;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowCaches.class);
+
+        // a -> b and c -> d are not connected, so the varInfluence edge from a block of a to one of d has no connection
+        influenceId = TestUtil.singleResultFirstColumn(db,
+                "CREATE (a:cCFGBlock {id: 'a'})-[:nextCFGBlock]->(:cCFGBlock {id: 'b'}), " +
+                "(:cCFGBlock {id: 'c'})-[:nextCFGBlock]->(d:cCFGBlock {id: 'd'}), " +
+                "(a)<-[:varInfluenceSource]-(v1:cVariable)-[r:varInfluence]->(v2:cVariable)-[:varInfluenceDestination]->(d) " +
+                "RETURN id(r)");
+        awaitMaintenance();
+    }
+
+    // helper function: wait until the committed changes were applied to the caches
+    private void awaitMaintenance() {
+        while (DataflowIndexMaintenance.isPending(db.databaseName())) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // helper function: number of connections of the varInfluence edge, read in a new transaction
+    private int connections() {
+        try (Transaction tx = db.beginTx()) {
+            Relationship influence = tx.getRelationshipById(influenceId);
+            int size = DataflowHelper.getConnectionNodes(db, tx, influence).size();
+            tx.commit();
+            return size;
+        }
+    }
+
+    private Map<String, Object> connectionCacheInfo() {
+        return TestUtil.singleResultFirstColumn(db, "CALL apoc.dataflow.connectionCacheInfo() YIELD value RETURN value");
+    }
+
+    @Test
+    public void testDistantCfgEdgeInvalidatesConnections() {
+        assertEquals(0, connections());
+        assertEquals(0, connections());
+        assertTrue((long) connectionCacheInfo().get("hits") > 0);
+
+        // the new edge touches neither block of the varInfluence edge, but connects them
+        db.executeTransactionally("MATCH (b:cCFGBlock {id: 'b'}), (c:cCFGBlock {id: 'c'}) CREATE (b)-[:nextCFGBlock]->(c)");
+        awaitMaintenance();
+        assertEquals(1, connections());
+
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'b'})-[r:nextCFGBlock]->(:cCFGBlock {id: 'c'}) DELETE r");
+        awaitMaintenance();
+        assertEquals(0, connections());
+
+        TestUtil.testCall(db, "CALL apoc.dataflow.indexMaintenanceInfo() YIELD value RETURN value",
+                (row) -> assertEquals(2L, ((Map) row.get("value")).get("connectionCacheClears")));
+    }
+
+}
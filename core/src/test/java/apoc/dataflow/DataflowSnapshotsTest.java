@@ -0,0 +1,104 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.path.DataflowPath;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DataflowSnapshotsTest {
+
+    private static final String ROS_DATAFLOW =
+            "MATCH ()-[s:pubTarget]->() WITH collect(s) AS starts " +
+            "MATCH ()-[e:pubVar]->() WITH starts, collect(e) AS ends " +
+            "UNWIND apoc.dataflow.rosDataflow(starts, ends, true, 2) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    private static final String ROS_FIND_PATHS =
+            "MATCH ()-[s]->() WHERE id(s) IN $startEdges " +
+            "UNWIND apoc.cfgPath.rosFindPaths(s, {relSeq: 'varWrite|parWrite|retWrite+', cache: false}) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    private static final String ALL_DATAFLOW_PATHS =
+            "MATCH (s) WHERE id(s) IN $startNodes MATCH (e) WHERE id(e) IN $endNodes " +
+            "UNWIND apoc.path.allDataflowPaths(s, e, null, null, true, {parallelism: 1}) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    private DataflowGraphGenerator graph;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowSnapshots.class, ROSFindPath.class, ROSPath.class, DataflowPath.class);
+        graph = new DataflowGraphGenerator(true, 2, 5, 2, false).generate(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.executeTransactionally("CALL apoc.dataflow.dropSnapshot()");
+    }
+
+    // helper function: the results of every search, each as relationship id lists in a stable order
+    private List<List<String>> searches() {
+        Map<String, Object> params = Map.of(
+                "startEdges", List.of(graph.getStartEdgeIds()[0], graph.getStartEdgeIds()[1]),
+                "startNodes", List.of(graph.getStartNodeIds()[0], graph.getStartNodeIds()[1]),
+                "endNodes", List.of(graph.getEndNodeIds()[0], graph.getEndNodeIds()[1]));
+
+        List<List<String>> results = new ArrayList<>();
+        for (String query : List.of(ROS_DATAFLOW, ROS_FIND_PATHS, ALL_DATAFLOW_PATHS)) {
+            results.add(TestUtil.<List<Long>>firstColumn(db, query, params).stream()
+                    .map(Object::toString)
+                    .sorted()
+                    .collect(Collectors.toList()));
+        }
+        return results;
+    }
+
+    private Map<String, Object> snapshotInfo(String procedure) {
+        return TestUtil.singleResultFirstColumn(db, "CALL apoc.dataflow." + procedure + "() YIELD exists, stale " +
+                "RETURN {exists: exists, stale: stale}");
+    }
+
+    @Test
+    public void testSnapshotMatchesLiveTraversal() {
+        List<List<String>> live = searches();
+        live.forEach(result -> assertFalse(result.isEmpty()));
+
+        assertEquals(Map.of("exists", true, "stale", false), snapshotInfo("loadSnapshot"));
+        assertEquals(live, searches());
+        assertEquals(Map.of("exists", true, "stale", false), snapshotInfo("snapshotInfo"));
+    }
+
+    @Test
+    public void testStaleSnapshotIsIgnored() {
+        db.executeTransactionally("CALL apoc.dataflow.loadSnapshot()");
+
+        // the only CFG path of component 0 into its last block is cut, the snapshot still has it
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'c0.f0;;:3'})-[r:nextCFGBlock]->() DELETE r");
+        assertEquals(Map.of("exists", true, "stale", true), snapshotInfo("snapshotInfo"));
+        List<List<String>> withStaleSnapshot = searches();
+
+        db.executeTransactionally("CALL apoc.dataflow.dropSnapshot()");
+        assertEquals(searches(), withStaleSnapshot);
+
+        // a reloaded snapshot sees the change as well
+        db.executeTransactionally("CALL apoc.dataflow.loadSnapshot()");
+        assertEquals(withStaleSnapshot, searches());
+    }
+
+}
@@ -0,0 +1,107 @@
+package apoc.dataflow;
+
+import apoc.path.DataflowPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DataflowStatsTest {
+
+    private static final String COMPONENT = "MATCH (s) WHERE id(s) = $startNode MATCH (e) WHERE id(e) = $endNode ";
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    private static DataflowGraphGenerator graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowStats.class, DataflowPath.class);
+        graph = new DataflowGraphGenerator(false, 1, 5, 2, false).generate(db);
+    }
+
+    @Before
+    public void resetStats() {
+        db.executeTransactionally("CALL apoc.dataflow.resetStats()");
+    }
+
+    private Map<String, Object> params(Map<String, Object> config) {
+        return Map.of("startNode", graph.getStartNodeIds()[0], "endNode", graph.getEndNodeIds()[0], "config", config);
+    }
+
+    // helper function: rows of apoc.dataflow.stats() by "name metric"
+    private Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new HashMap<>();
+        TestUtil.testResult(db, "CALL apoc.dataflow.stats()", (result) -> result.forEachRemaining(row ->
+                stats.put(row.get("name") + " " + row.get("metric"), row)));
+        return stats;
+    }
+
+    @Test
+    public void testUnprofiledCallsAreNotRecorded() {
+        TestUtil.testResult(db, COMPONENT + "CALL apoc.path.allDataflowPathsStream(s, e, null, null, true, $config) " +
+                "YIELD profile RETURN profile", params(Map.of()), (result) -> {
+            assertTrue(result.hasNext());
+            result.forEachRemaining(row -> assertNull(row.get("profile")));
+        });
+        assertTrue(stats().isEmpty());
+    }
+
+    @Test
+    public void testStreamProfile() {
+        List<Map<String, Object>> profiles = new ArrayList<>();
+        TestUtil.testResult(db, COMPONENT + "CALL apoc.path.allDataflowPathsStream(s, e, null, null, true, $config) " +
+                "YIELD profile RETURN profile", params(Map.of("profile", true)),
+                (result) -> result.forEachRemaining(row -> profiles.add((Map<String, Object>) row.get("profile"))));
+        assertFalse(profiles.isEmpty());
+
+        Map<String, Object> last = profiles.get(profiles.size() - 1);
+        assertEquals("apoc.path.allDataflowPathsStream", last.get("name"));
+        assertTrue((long) last.get("edgesExpanded") > 0);
+        assertTrue((long) last.get("candidates") > 0);
+        assertTrue((long) last.get("cfgChecks") > 0);
+
+        // counters only grow while the stream is consumed
+        for (int i = 1; i < profiles.size(); i++) {
+            assertTrue((long) profiles.get(i).get("edgesExpanded") >= (long) profiles.get(i - 1).get("edgesExpanded"));
+        }
+
+        Map<String, Map<String, Object>> stats = stats();
+        Map<String, Object> edges = stats.get("apoc.path.allDataflowPathsStream edgesExpanded");
+        assertEquals(1L, edges.get("calls"));
+        assertTrue((long) edges.get("total") >= (long) last.get("edgesExpanded"));
+    }
+
+    @Test
+    public void testFunctionAndParallelProfile() {
+        for (int parallelism : new int[] {1, 4}) {
+            TestUtil.testCall(db, COMPONENT + "RETURN size(apoc.path.allDataflowPaths(s, e, null, null, true, $config)) AS paths",
+                    params(Map.of("profile", true, "parallelism", parallelism)),
+                    (row) -> assertTrue((long) row.get("paths") > 0));
+        }
+
+        // the worker threads of the parallel call report to its profile as well
+        Map<String, Map<String, Object>> stats = stats();
+        Map<String, Object> checks = stats.get("apoc.path.allDataflowPaths cfgChecks");
+        assertEquals(2L, checks.get("calls"));
+        assertTrue((long) checks.get("min") > 0);
+
+        TestUtil.testResult(db, "CALL apoc.dataflow.resetStats()", (result) -> assertTrue(result.hasNext()));
+        assertTrue(stats().isEmpty());
+    }
+
+}
@@ -0,0 +1,101 @@
+package apoc.dataflow;
+
+import apoc.path.GmDataflowPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DataflowSummaryEdgesTest {
+
+    private static final String MATERIALIZE =
+            "CALL apoc.dataflow.materializeSummaryEdges({batchSize: 1, incremental: $incremental}) " +
+            "YIELD skipped RETURN sum(skipped) AS skipped";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    private DataflowGraphGenerator graph;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowSummaryEdges.class, GmDataflowPath.class);
+        graph = new DataflowGraphGenerator(false, 2, 5, 1, false).generate(db);
+
+        // the parameter of every top function is a component entry, its return value a component exit
+        db.executeTransactionally("MATCH (v) WHERE id(v) IN $entries CREATE (:cVariable {name: 'caller'})-[:compCall]->(v)",
+                Map.of("entries", List.of(graph.getStartNodeIds()[0], graph.getStartNodeIds()[1])));
+        db.executeTransactionally("MATCH (v) WHERE id(v) IN $exits CREATE (v)-[:compReturn]->(:cVariable {name: 'callee'})",
+                Map.of("exits", List.of(graph.getEndNodeIds()[0], graph.getEndNodeIds()[1])));
+    }
+
+    private long materialize(boolean incremental) {
+        return TestUtil.singleResultFirstColumn(db, MATERIALIZE, Map.of("incremental", incremental));
+    }
+
+    // helper function: the summary edges of every entry / exit pair equal the direct searches between them
+    private void assertSummaryMatchesSearch() {
+        for (long entry : graph.getStartNodeIds()) {
+            for (long exit : graph.getEndNodeIds()) {
+                TestUtil.testCall(db, "MATCH (s) WHERE id(s) = $entry MATCH (e) WHERE id(e) = $exit " +
+                                "RETURN exists((s)-[:varWrite|parWrite|retWrite*]->(e)) AS reachable, " +
+                                "apoc.path.gmDataflowPath(s, e, null, null, true) IS NOT NULL AS validated, " +
+                                "exists((s)-[:dataflowNCFG]->(e)) AS ncfg, exists((s)-[:dataflowOTF]->(e)) AS otf",
+                        Map.of("entry", entry, "exit", exit), (row) -> {
+                            assertEquals(row.get("reachable"), row.get("ncfg"));
+                            assertEquals(row.get("validated"), row.get("otf"));
+                        });
+            }
+        }
+    }
+
+    @Test
+    public void testSummaryEdgesMatchSearch() {
+        assertEquals(0L, materialize(false));
+        assertSummaryMatchesSearch();
+        TestUtil.testCall(db, "MATCH ()-[r:dataflowNCFG]->() RETURN count(r) AS ncfg",
+                (row) -> assertEquals(2L, row.get("ncfg")));
+
+        // nothing changed, every entry is skipped (the compReturn targets are entries without dataflow edges)
+        assertEquals(4L, materialize(true));
+    }
+
+    @Test
+    public void testIncrementalSeesRedirectedCfgEdges() {
+        materialize(false);
+
+        // swap the targets of two nextCFGBlock edges, the degree of every block stays the same
+        db.executeTransactionally("MATCH (a0:cCFGBlock {id: 'c0.f0;;:3'})-[r0:nextCFGBlock]->(b0:cCFGBlock {id: 'c0.f0;;:4'}), " +
+                "(a1:cCFGBlock {id: 'c1.f0;;:3'})-[r1:nextCFGBlock]->(b1:cCFGBlock {id: 'c1.f0;;:4'}) " +
+                "DELETE r0, r1 CREATE (a0)-[:nextCFGBlock]->(b1), (a1)-[:nextCFGBlock]->(b0)");
+
+        // any nextCFGBlock change recomputes every entry
+        assertEquals(0L, materialize(true));
+        assertSummaryMatchesSearch();
+        assertEquals(4L, materialize(true));
+    }
+
+    @Test
+    public void testIncrementalSeesDistantCfgChanges() {
+        materialize(false);
+
+        // blocks no dataflow edge connects to, the CFG checks may still walk through such blocks
+        db.executeTransactionally("CREATE (:cCFGBlock {id: 'c9.f0;;:0'})-[:nextCFGBlock]->(:cCFGBlock {id: 'c9.f0;;:1'})");
+        assertEquals(0L, materialize(true));
+        assertEquals(4L, materialize(true));
+
+        // a call flag changed on an edge between two such blocks
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'c9.f0;;:0'})-[r:nextCFGBlock]->() SET r.cfgInvoke = '1'");
+        assertEquals(0L, materialize(true));
+        assertSummaryMatchesSearch();
+        assertEquals(4L, materialize(true));
+    }
+
+}
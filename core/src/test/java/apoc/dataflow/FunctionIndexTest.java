@@ -0,0 +1,150 @@
+package apoc.dataflow;
+
+import apoc.ApocSettings;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FunctionIndexTest {
+
+    private static final Label BLOCK = Label.label("cCFGBlock");
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule()
+            .withSetting(ApocSettings.apoc_dataflow_index__maintenance_enabled, true);
+
+    @Rule
+    public DbmsRule plainDb = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        index(db);
+        index(plainDb);
+    }
+
+    private static void index(GraphDatabaseService db) throws Exception {
+        TestUtil.registerProcedure(db, FunctionIndex.class);
+        db.executeTransactionally("CREATE (:cCFGBlock {id: 'main;;:0'})-[:nextCFGBlock {cfgInvoke: '1'}]->" +
+                "(:cCFGBlock {id: 'f;;:0'})-[:nextCFGBlock]->(:cCFGBlock {id: 'f;;:1'})");
+        TestUtil.testCall(db, "CALL apoc.dataflow.indexFunctions()", (row) -> {
+            assertEquals(3L, row.get("blocks"));
+            assertEquals(2L, row.get("functions"));
+            assertEquals(1L, row.get("calls"));
+        });
+    }
+
+    // helper function: call kind of the edge leaving block, as seen by the searches of the maintained database
+    private int callKind(String block) {
+        assertTrue(FunctionIndex.isCurrent(db));
+        try (Transaction tx = db.beginTx()) {
+            Relationship rel = nextCFGBlock(tx, block);
+            int kind = FunctionIndex.callKind(rel, true);
+            assertEquals(kind, FunctionIndex.callKind(rel, false));
+            assertEquals(kind, ((Number) rel.getProperty(FunctionIndex.CALL_KIND_PROPERTY)).intValue());
+            tx.commit();
+            return kind;
+        }
+    }
+
+    private boolean sameFunction(String block1, String block2) {
+        assertTrue(FunctionIndex.isCurrent(db));
+        try (Transaction tx = db.beginTx()) {
+            Node node1 = tx.findNode(BLOCK, "id", block1);
+            Node node2 = tx.findNode(BLOCK, "id", block2);
+            boolean same = FunctionIndex.sameFunction(node1, node2, true);
+            tx.commit();
+            return same;
+        }
+    }
+
+    private static Relationship nextCFGBlock(Transaction tx, String block) {
+        return tx.findNode(BLOCK, "id", block).getSingleRelationship(
+                DataflowHelper.RelTypes.nextCFGBlock, Direction.OUTGOING);
+    }
+
+    @Test
+    public void testCallKindFollowsFlags() {
+        assertEquals(FunctionIndex.INVOKE, callKind("main;;:0"));
+        assertEquals(FunctionIndex.NO_CALL, callKind("f;;:0"));
+
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'main;;:0'})-[r:nextCFGBlock]->() " +
+                "REMOVE r.cfgInvoke SET r.cfgReturn = '1'");
+        assertEquals(FunctionIndex.RETURN, callKind("main;;:0"));
+
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'main;;:0'})-[r:nextCFGBlock]->() SET r.cfgReturn = '0'");
+        assertEquals(FunctionIndex.NO_CALL, callKind("main;;:0"));
+
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'f;;:0'})-[r:nextCFGBlock]->() SET r.cfgInvoke = '1'");
+        assertEquals(FunctionIndex.INVOKE, callKind("f;;:0"));
+    }
+
+    @Test
+    public void testFunctionIdFollowsBlockIds() {
+        assertTrue(sameFunction("f;;:0", "f;;:1"));
+        assertFalse(sameFunction("main;;:0", "f;;:0"));
+
+        // the renamed block leaves function f for main
+        db.executeTransactionally("MATCH (b:cCFGBlock {id: 'f;;:1'}) SET b.id = 'main;;:1'");
+        assertFalse(sameFunction("f;;:0", "main;;:1"));
+        assertTrue(sameFunction("main;;:0", "main;;:1"));
+        TestUtil.testCall(db, "MATCH (b:cCFGBlock {id: 'main;;:1'}) RETURN b.cfgFunctionId AS functionId",
+                (row) -> assertNull(row.get("functionId")));
+
+        // the untouched blocks keep their index
+        TestUtil.testCall(db, "MATCH (b:cCFGBlock) WHERE b.cfgFunctionId IS NOT NULL RETURN count(b) AS indexed",
+                (row) -> assertEquals(2L, row.get("indexed")));
+    }
+
+    @Test
+    public void testCallKindKeepsBothFlags() {
+        db.executeTransactionally("MATCH (:cCFGBlock {id: 'main;;:0'})-[r:nextCFGBlock]->() SET r.cfgReturn = '1'");
+        assertEquals(FunctionIndex.INVOKE | FunctionIndex.RETURN, callKind("main;;:0"));
+
+        try (Transaction tx = db.beginTx()) {
+            Relationship rel = nextCFGBlock(tx, "main;;:0");
+            assertTrue(FunctionIndex.isInvoke(rel, true));
+            assertTrue(FunctionIndex.isReturn(rel, true));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void testStaleIndexIsNotUsed() {
+        assertTrue(FunctionIndex.isCurrent(plainDb));
+
+        // without index maintenance, the stored values are left behind by the next commit
+        plainDb.executeTransactionally("MATCH (:cCFGBlock {id: 'main;;:0'})-[r:nextCFGBlock]->() " +
+                "REMOVE r.cfgInvoke SET r.cfgReturn = '1'");
+        plainDb.executeTransactionally("MATCH (b:cCFGBlock {id: 'f;;:1'}) SET b.id = 'main;;:1'");
+        assertFalse(FunctionIndex.isCurrent(plainDb));
+
+        try (Transaction tx = plainDb.beginTx()) {
+            Relationship rel = nextCFGBlock(tx, "main;;:0");
+            assertEquals(FunctionIndex.INVOKE, ((Number) rel.getProperty(FunctionIndex.CALL_KIND_PROPERTY)).intValue());
+            assertEquals(FunctionIndex.RETURN, FunctionIndex.callKind(rel, FunctionIndex.isCurrent(plainDb)));
+
+            Node block = tx.findNode(BLOCK, "id", "main;;:1");
+            assertFalse(FunctionIndex.sameFunction(tx.findNode(BLOCK, "id", "f;;:0"), block,
+                    FunctionIndex.isCurrent(plainDb)));
+            tx.commit();
+        }
+
+        TestUtil.testCall(plainDb, "CALL apoc.dataflow.indexFunctions()", (row) -> assertEquals(1L, row.get("calls")));
+        assertTrue(FunctionIndex.isCurrent(plainDb));
+    }
+
+}
@@ -0,0 +1,88 @@
+package apoc.dataflow;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterables;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PathTreeTest {
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    @Test
+    public void testTreeMatchesEdgeInfo() {
+        db.executeTransactionally("CREATE (t:rosTopic)-[:pubTarget]->(a:cVariable)-[:varWrite]->(b:cVariable)" +
+                "-[:retWrite]->(c:cVariable)-[:varWrite]->(d:cVariable), (b)-[:retWrite]->(e:cVariable)");
+
+        try (Transaction tx = db.beginTx()) {
+            Map<String, Object> row = tx.execute("MATCH (t)-[pt:pubTarget]->(a)-[r1:varWrite]->(b)-[r2:retWrite]->(c)" +
+                    "-[r3:varWrite]->(d), (b)-[r4:retWrite]->(e) RETURN pt, r1, r2, r3, r4").next();
+            Relationship pubTarget = (Relationship) row.get("pt");
+            Relationship r1 = (Relationship) row.get("r1");
+            Relationship r2 = (Relationship) row.get("r2");
+            Relationship r3 = (Relationship) row.get("r3");
+            Relationship r4 = (Relationship) row.get("r4");
+
+            // capacity 1 makes every add after the first grow the arrays
+            PathTree tree = new PathTree(1);
+            int e1 = tree.add(r1, PathTree.ROOT);
+            int e2 = tree.add(r2, e1);
+            int e3 = tree.add(r3, e2);
+            int e4 = tree.add(r4, e1);
+            EdgeInfo edge3 = new EdgeInfo(r3, new EdgeInfo(r2, new EdgeInfo(r1, null)));
+            EdgeInfo edge4 = new EdgeInfo(r4, new EdgeInfo(r1, null));
+
+            assertEquals(4, tree.size());
+            assertEquals(edge3.getPathLength(), tree.pathLength(e3));
+            assertEquals(e2, tree.parent(e3));
+            assertEquals(r3.getEndNode().getId(), tree.endNodeId(e3));
+            assertArrayEquals(new long[] {r1.getId(), r2.getId(), r3.getId()}, tree.relIds(e3));
+
+            // retWrite stacks hold the same ids as the EdgeInfo lists and share the tail of their parent
+            assertNull(tree.retWrites(e1));
+            assertEquals(List.of(r2.getId()), edge3.getRetWrites());
+            assertEquals(1, tree.retWrites(e3).size());
+            assertEquals(r2.getId(), tree.retWrites(e3).last());
+            assertTrue(tree.retWrites(e3) == tree.retWrites(e2));
+            assertFalse(tree.retWrites(e3).equals(tree.retWrites(e4)));
+            assertEquals(edge3.compareRetNodes(edge4), RetWriteStack.sameFirst(tree.retWrites(e3), tree.retWrites(e4)));
+
+            Path path = tree.build(tx, e3, null);
+            assertEquals(List.of(r1, r2, r3), Iterables.asList(path.relationships()));
+            Path withPubTarget = tree.build(tx, e3, pubTarget);
+            assertEquals(pubTarget.getStartNode(), withPubTarget.startNode());
+            assertEquals(List.of(pubTarget, r1, r2, r3), Iterables.asList(withPubTarget.relationships()));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void testCfgNodes() {
+        db.executeTransactionally("CREATE (:cVariable)-[:varWrite]->(:cVariable)");
+        try (Transaction tx = db.beginTx()) {
+            Relationship rel = Iterables.first(tx.getAllRelationships());
+            PathTree tree = new PathTree();
+            int entry = tree.add(rel, PathTree.ROOT);
+            assertEquals(0, tree.cfgNodes(entry).length);
+
+            tree.setCfgNodes(entry, new long[] {4L, 2L});
+            assertArrayEquals(new long[] {4L, 2L}, tree.cfgNodes(entry));
+            tx.commit();
+        }
+    }
+
+}
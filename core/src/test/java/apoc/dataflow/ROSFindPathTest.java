@@ -0,0 +1,128 @@
+package apoc.dataflow;
+
+import apoc.util.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ROSFindPathTest {
+
+    private static final String EDGES =
+            "MATCH ()-[s:pubTarget]->() WITH collect(s) AS starts " +
+            "MATCH ()-[e:pubVar]->() WITH starts, collect(e) AS ends ";
+
+    private static final String ROS_DATAFLOW = EDGES +
+            "UNWIND apoc.dataflow.rosDataflow(starts, ends, $cfgCheck, $threads) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    private static final String ROS_DATAFLOW_STREAM = EDGES +
+            "CALL apoc.dataflow.rosDataflowStream(starts, ends, $cfgCheck, {concurrency: $threads}) YIELD path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    private static final String ROS_DATAFLOW_MULTI = EDGES +
+            "CALL apoc.dataflow.rosDataflowMulti(starts, ends, $cfgCheck, {direction: $direction}) YIELD path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    // paths of every pair searched on its own, in start edge major pair order
+    private static final String PAIRWISE = EDGES +
+            "UNWIND starts AS s UNWIND ends AS e " +
+            "UNWIND apoc.dataflow.rosDataflow([s], [e], $cfgCheck, 1) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    // paths of every pair from rosDataflow without its pubTarget and pubVar, next to those of rosAllShortest
+    private static final String PAIR_SEARCHES = EDGES +
+            "UNWIND starts AS s UNWIND ends AS e " +
+            "RETURN [p IN apoc.dataflow.rosDataflow([s], [e], $cfgCheck, 1) | [r IN relationships(p)[1..-1] | id(r)]] AS pairPaths, " +
+            "[p IN apoc.dataflow.rosAllShortest(endNode(s), startNode(e), null, null, $cfgCheck) | [r IN relationships(p) | id(r)]] AS allShortest";
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSFindPath.class);
+        new DataflowGraphGenerator(true, 3, 5, 2, false).generate(db);
+    }
+
+    // helper function: paths returned as relationship id lists, in a stable order
+    static List<String> paths(String query, Map<String, Object> params) {
+        return TestUtil.<List<Long>>firstColumn(db, query, params).stream()
+                .map(Object::toString)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        for (boolean cfgCheck : new boolean[] {false, true}) {
+            List<String> sequential = paths(ROS_DATAFLOW, Map.of("cfgCheck", cfgCheck, "threads", 1));
+            assertFalse(sequential.isEmpty());
+            assertEquals(sequential, paths(ROS_DATAFLOW, Map.of("cfgCheck", cfgCheck, "threads", 4)));
+        }
+    }
+
+    @Test
+    public void testFunctionKeepsPairOrder() {
+        for (boolean cfgCheck : new boolean[] {false, true}) {
+            List<List<Long>> pairwise = TestUtil.firstColumn(db, PAIRWISE, Map.of("cfgCheck", cfgCheck));
+            assertFalse(pairwise.isEmpty());
+            for (int threads : new int[] {1, 4}) {
+                assertEquals(pairwise, TestUtil.firstColumn(db, ROS_DATAFLOW, Map.of("cfgCheck", cfgCheck, "threads", threads)));
+            }
+        }
+    }
+
+    @Test
+    public void testAllShortestMatchesPairSearch() {
+        for (boolean cfgCheck : new boolean[] {false, true}) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            TestUtil.testResult(db, PAIR_SEARCHES, Map.of("cfgCheck", cfgCheck), result -> result.forEachRemaining(rows::add));
+            assertTrue(rows.stream().anyMatch(row -> !((List<?>) row.get("pairPaths")).isEmpty()));
+            for (Map<String, Object> row : rows) {
+                assertEquals(sorted((List<List<Long>>) row.get("pairPaths")), sorted((List<List<Long>>) row.get("allShortest")));
+            }
+        }
+    }
+
+    private static List<String> sorted(List<List<Long>> paths) {
+        return paths.stream().map(Object::toString).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testStreamMatchesFunction() {
+        for (boolean cfgCheck : new boolean[] {false, true}) {
+            Map<String, Object> params = Map.of("cfgCheck", cfgCheck, "threads", 2);
+            assertEquals(paths(ROS_DATAFLOW, params), paths(ROS_DATAFLOW_STREAM, params));
+        }
+    }
+
+    @Test
+    public void testForwardMultiMatchesPairwise() {
+        for (boolean cfgCheck : new boolean[] {false, true}) {
+            List<String> pairwise = paths(PAIRWISE, Map.of("cfgCheck", cfgCheck));
+            assertFalse(pairwise.isEmpty());
+            assertEquals(pairwise, paths(ROS_DATAFLOW_MULTI, Map.of("cfgCheck", cfgCheck, "direction", "forward")));
+        }
+    }
+
+    @Test
+    public void testBackwardMultiMatchesPairwise() {
+        for (boolean cfgCheck : new boolean[] {false, true}) {
+            List<String> pairwise = paths(PAIRWISE, Map.of("cfgCheck", cfgCheck));
+            assertFalse(pairwise.isEmpty());
+            assertEquals(pairwise, paths(ROS_DATAFLOW_MULTI, Map.of("cfgCheck", cfgCheck, "direction", "backward")));
+        }
+    }
+
+}
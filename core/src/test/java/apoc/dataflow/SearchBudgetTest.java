@@ -0,0 +1,116 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.path.DataflowPath;
+import apoc.util.TestUtil;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchBudgetTest {
+
+    private static final String ALL_DATAFLOW_PATHS_STREAM =
+            "MATCH (s) WHERE id(s) = $startNode MATCH (e) WHERE id(e) = $endNode " +
+            "CALL apoc.path.allDataflowPathsStream(s, e, null, null, true, $config) YIELD path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    private static final String ROS_FIND_PATHS =
+            "MATCH ()-[s]->() WHERE id(s) = $startEdge " +
+            "UNWIND apoc.cfgPath.rosFindPaths(s, $config) AS path " +
+            "RETURN [r IN relationships(path) | id(r)] AS rels";
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    private static DataflowGraphGenerator graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowPath.class, ROSPath.class);
+        graph = new DataflowGraphGenerator(true, 1, 5, 2, false).generate(db);
+    }
+
+    private static Map<String, Object> params(Map<String, Object> config) {
+        return Map.of("startNode", graph.getStartNodeIds()[0], "endNode", graph.getEndNodeIds()[0],
+                "startEdge", graph.getStartEdgeIds()[0], "config", config);
+    }
+
+    private static List<String> paths(String query, Map<String, Object> config) {
+        return TestUtil.<List<Long>>firstColumn(db, query, params(config)).stream()
+                .map(Object::toString)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    // helper function: the query fails with the message of an exceeded budget
+    private static void assertBudgetExceeded(String query, Map<String, Object> config) {
+        try {
+            paths(query, config);
+            fail("Expected the search to exceed its memory budget");
+        } catch (QueryExecutionException e) {
+            Throwable cause = ExceptionUtils.getRootCause(e);
+            assertTrue(cause.getMessage(), cause.getMessage().contains("exceeded its memory budget of 1 bytes"));
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        try (SearchBudget budget = SearchBudget.of(null, Map.of("maxMemory", 100))) {
+            budget.allocate(60);
+            assertFalse(budget.isExceeded());
+            budget.allocate(60);
+            assertTrue(budget.isExceeded());
+            assertEquals(120, budget.getUsedBytes());
+        }
+
+        try (SearchBudget budget = SearchBudget.of(null, Map.of("maxMemory", 100, "onMaxMemory", "fail"))) {
+            budget.allocate(101);
+            budget.isExceeded();
+            fail("Expected the budget to fail the search");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("exceeded its memory budget of 100 bytes"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOnMaxMemory() {
+        SearchBudget.of(null, Map.of("onMaxMemory", "spill"));
+    }
+
+    @Test
+    public void testOnMaxMemoryFail() {
+        assertFalse(paths(ALL_DATAFLOW_PATHS_STREAM, Map.of()).isEmpty());
+        assertBudgetExceeded(ALL_DATAFLOW_PATHS_STREAM, Map.of("maxMemory", 1, "onMaxMemory", "fail"));
+
+        String relSeq = "varWrite|parWrite|retWrite+";
+        assertFalse(paths(ROS_FIND_PATHS, Map.of("relSeq", relSeq)).isEmpty());
+        assertBudgetExceeded(ROS_FIND_PATHS, Map.of("relSeq", relSeq, "maxMemory", 1, "onMaxMemory", "fail"));
+    }
+
+    @Test
+    public void testOnMaxMemoryPartial() {
+        List<String> all = paths(ALL_DATAFLOW_PATHS_STREAM, Map.of());
+
+        // the first queued candidate is over budget, the search stops before reaching the end node
+        List<String> partial = paths(ALL_DATAFLOW_PATHS_STREAM, Map.of("maxMemory", 1));
+        assertTrue(partial.size() < all.size());
+        assertTrue(all.containsAll(partial));
+
+        // a budget the search stays within changes nothing
+        assertEquals(all, paths(ALL_DATAFLOW_PATHS_STREAM, Map.of("maxMemory", 1L << 30, "onMaxMemory", "fail")));
+    }
+
+}
@@ -0,0 +1,149 @@
+package apoc.export.csv;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvIdMappingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLongAndStringIds() {
+        try (CsvIdMapping mapping = new CsvIdMapping()) {
+            CsvIdMapping.IdSpace ids = mapping.idSpace("Person");
+            ids.put("1", 10);
+            ids.put("-42", 11);
+            ids.put("007", 12);
+            ids.put("alice", 13);
+            ids.put("ünïcödé", 14);
+
+            assertEquals(10, ids.get("1"));
+            assertEquals(11, ids.get("-42"));
+            // leading zeros are a different id than their value
+            assertEquals(12, ids.get("007"));
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get("7"));
+            assertEquals(13, ids.get("alice"));
+            assertEquals(14, ids.get("ünïcödé"));
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get("bob"));
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get(null));
+
+            // id spaces are separate
+            assertFalse(mapping.idSpace("Company").contains("1"));
+        }
+    }
+
+    @Test
+    public void testIsLongId() {
+        assertTrue(CsvIdMapping.isLongId("0"));
+        assertTrue(CsvIdMapping.isLongId("-1"));
+        assertTrue(CsvIdMapping.isLongId(String.valueOf(Long.MAX_VALUE)));
+        assertTrue(CsvIdMapping.isLongId(String.valueOf(Long.MIN_VALUE)));
+        assertFalse(CsvIdMapping.isLongId(""));
+        assertFalse(CsvIdMapping.isLongId("-"));
+        assertFalse(CsvIdMapping.isLongId("-0"));
+        assertFalse(CsvIdMapping.isLongId("01"));
+        assertFalse(CsvIdMapping.isLongId("+1"));
+        assertFalse(CsvIdMapping.isLongId("1a"));
+        assertFalse(CsvIdMapping.isLongId("9223372036854775808"));
+    }
+
+    @Test
+    public void testSpillToRunFiles() {
+        File directory = folder.getRoot();
+        int count = 100_000;
+        try (CsvIdMapping mapping = new CsvIdMapping(CsvIdMapping.MIN_MAX_MEMORY, directory.getAbsolutePath())) {
+            CsvIdMapping.IdSpace ids = mapping.idSpace("Person");
+            int spills = 0;
+            for (int i = 0; i < count; i++) {
+                long before = mapping.estimatedMemory();
+                ids.put(String.valueOf(i * 7), i);
+                ids.put("person-" + i, count + i);
+                if (mapping.estimatedMemory() < before) {
+                    spills++;
+                }
+            }
+            assertTrue(mapping.getRunFiles() > 1);
+            assertTrue(mapping.estimatedMemory() <= CsvIdMapping.MIN_MAX_MEMORY);
+            // the runs are merged, instead of one run of each kind per spill
+            assertTrue(mapping.getRunFiles() < spills);
+
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, ids.get(String.valueOf(i * 7)));
+                assertEquals(count + i, ids.get("person-" + i));
+            }
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get("3"));
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get("person-" + count));
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get("a"));
+            assertEquals(CsvIdMapping.NOT_FOUND, ids.get("zzz"));
+        }
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testNewestRunWins() {
+        int count = 50_000;
+        try (CsvIdMapping mapping = new CsvIdMapping(CsvIdMapping.MIN_MAX_MEMORY, folder.getRoot().getAbsolutePath())) {
+            CsvIdMapping.IdSpace ids = mapping.idSpace("Person");
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < count; i++) {
+                    ids.put(String.valueOf(i), round * count + i);
+                    ids.put("person-" + i, round * count + i);
+                }
+            }
+            assertTrue(mapping.getRunFiles() > 1);
+            for (int i = 0; i < count; i++) {
+                assertEquals(2 * count + i, ids.get(String.valueOf(i)));
+                assertEquals(2 * count + i, ids.get("person-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testMinimumMaxMemory() {
+        try (CsvIdMapping mapping = new CsvIdMapping(1, folder.getRoot().getAbsolutePath())) {
+            CsvIdMapping.IdSpace ids = mapping.idSpace("Person");
+            for (int i = 0; i < 1000; i++) {
+                ids.put(String.valueOf(i), i);
+            }
+            assertEquals(0, mapping.getRunFiles());
+            assertEquals(999, ids.get("999"));
+        }
+    }
+
+    @Test
+    public void testKeysLargerThanAPage() {
+        String large = "x".repeat(CsvIdMapping.ByteKeyMap.PAGE_SIZE + 10);
+        try (CsvIdMapping mapping = new CsvIdMapping()) {
+            CsvIdMapping.IdSpace ids = mapping.idSpace("Person");
+            ids.put("before", 1);
+            ids.put(large, 2);
+            ids.put("after", 3);
+            assertEquals(1, ids.get("before"));
+            assertEquals(2, ids.get(large));
+            assertEquals(3, ids.get("after"));
+        }
+    }
+
+    @Test
+    public void testSort() {
+        long[] keys = new long[1000];
+        long[] values = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (i * 7919L) % 1000;
+            values[i] = keys[i] * 2;
+        }
+        CsvIdMapping.sort(keys, values, 0, keys.length, Long::compare);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, keys[i]);
+            assertEquals(2L * i, values[i]);
+        }
+    }
+}
@@ -24,6 +24,13 @@ import org.neo4j.values.storable.Values;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -35,6 +42,7 @@ import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -47,6 +55,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.neo4j.configuration.GraphDatabaseSettings.TransactionStateMemoryAllocation.OFF_HEAP;
 import static org.neo4j.configuration.SettingValueParsers.BYTES;
 import static org.junit.Assert.fail;
@@ -618,6 +627,50 @@ public class ImportCsvTest {
         Assert.assertEquals("John Jane", TestUtil.singleResultFirstColumn(db, "MATCH (p1:Person)-[:KNOWS]->(p2:Person) RETURN p1.name + ' ' + p2.name AS pair ORDER BY pair"));
     }
 
+    @Test
+    public void testRelationshipWithIdMappingSpilledToDisk() throws Exception {
+        // enough integer ids to exceed the minimum budget of the id mapping, a budget of one byte is raised to it
+        int persons = 50_000;
+        StringBuilder nodes = new StringBuilder(":ID(Person)|name:STRING\n");
+        for (int i = 0; i < persons; i++) {
+            nodes.append(i).append("|p").append(i).append('\n');
+        }
+        CsvTestUtil.saveCsvFile("id-spilled-persons", nodes.toString());
+        CsvTestUtil.saveCsvFile("id-spilled-knows", ":START_ID(Person)|:END_ID(Person)\n0|" + (persons - 1) + "\n");
+
+        Path runDirectory = Files.createTempDirectory("apoc-import-ids");
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            runDirectory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            TestUtil.testCall(
+                    db,
+                    "CALL apoc.import.csv([{fileName: $nodeFile, labels: ['Person']}], [{fileName: $relFile, type: 'KNOWS'}], $config)",
+                    map(
+                            "nodeFile", "file:/id-spilled-persons.csv",
+                            "relFile", "file:/id-spilled-knows.csv",
+                            "config", map("delimiter", '|', "idMappingMaxMemory", 1L,
+                                    "idMappingDirectory", runDirectory.toString())
+                    ),
+                    (r) -> {
+                        assertEquals((long) persons, r.get("nodes"));
+                        assertEquals(1L, r.get("relationships"));
+                    }
+            );
+
+            // run files were written during the import and deleted after it
+            WatchKey key = watcher.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(key);
+            assertTrue(key.pollEvents().stream().anyMatch(event -> event.context().toString().endsWith(".run")));
+            try (Stream<Path> files = Files.list(runDirectory)) {
+                assertEquals(0L, files.count());
+            }
+        } finally {
+            FileUtils.deleteDirectory(runDirectory.toFile());
+            Files.deleteIfExists(Paths.get(BASE_URL_FILES, "id-spilled-persons.csv"));
+            Files.deleteIfExists(Paths.get(BASE_URL_FILES, "id-spilled-knows.csv"));
+        }
+        Assert.assertEquals("p0 p" + (persons - 1), TestUtil.singleResultFirstColumn(db, "MATCH (p1:Person)-[:KNOWS]->(p2:Person) RETURN p1.name + ' ' + p2.name AS pair ORDER BY pair"));
+    }
+
     @Test
     public void testRelationshipWithCustomIdNames() {
         TestUtil.testCall(
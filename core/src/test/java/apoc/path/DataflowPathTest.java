@@ -0,0 +1,131 @@
+package apoc.path;
+
+import apoc.dataflow.DataflowGraphGenerator;
+import apoc.util.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DataflowPathTest {
+
+    private static final String COMPONENT =
+            "MATCH (s) WHERE id(s) = $startNode MATCH (e) WHERE id(e) = $endNode " +
+            "MATCH ()-[se]->() WHERE id(se) = $startEdge ";
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule();
+
+    private static DataflowGraphGenerator graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowPath.class, BidirectionalDataflowPath.class, SummaryDataflowPath.class,
+                GmDataflowPath.class, BackwardDataflowPath.class);
+        graph = new DataflowGraphGenerator(false, 2, 5, 2, false).generate(db);
+    }
+
+    // helper function: parameters of the searches within component c
+    private static Map<String, Object> component(int c, boolean cfgCheck) {
+        return Map.of("startNode", graph.getStartNodeIds()[c], "endNode", graph.getEndNodeIds()[c],
+                "startEdge", graph.getStartEdgeIds()[c], "cfgCheck", cfgCheck);
+    }
+
+    // helper function: paths returned as relationship id lists, in a stable order
+    private static List<String> paths(String query, Map<String, Object> params) {
+        return TestUtil.<List<Long>>firstColumn(db, query, params).stream()
+                .map(Object::toString)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testBidirectionalMatchesForward() {
+        for (int c = 0; c < graph.getStartNodeIds().length; c++) {
+            for (boolean cfgCheck : new boolean[] {false, true}) {
+                TestUtil.testCall(db, COMPONENT +
+                        "RETURN length(apoc.path.dataflowPath(s, e, null, null, $cfgCheck)) AS forward, " +
+                        "length(apoc.path.bidirectionalDataflowPath(s, e, null, null, $cfgCheck)) AS bidirectional, " +
+                        "length(apoc.path.dataflowPath(null, e, se, null, $cfgCheck)) AS forwardPrefix, " +
+                        "length(apoc.path.bidirectionalDataflowPath(null, e, se, null, $cfgCheck)) AS bidirectionalPrefix",
+                        component(c, cfgCheck), (row) -> {
+                            assertNotNull(row.get("forward"));
+                            assertEquals(row.get("forward"), row.get("bidirectional"));
+                            assertEquals(row.get("forwardPrefix"), row.get("bidirectionalPrefix"));
+                        });
+            }
+        }
+    }
+
+    @Test
+    public void testParallelAllDataflowPaths() {
+        String query = COMPONENT + "UNWIND apoc.path.allDataflowPaths(s, e, null, null, $cfgCheck, {parallelism: $parallelism}) AS path " +
+                "RETURN [r IN relationships(path) | id(r)] AS rels";
+        for (int c = 0; c < graph.getStartNodeIds().length; c++) {
+            for (boolean cfgCheck : new boolean[] {false, true}) {
+                Map<String, Object> params = new HashMap<>(component(c, cfgCheck));
+                params.put("parallelism", 1);
+                List<String> sequential = paths(query, params);
+                assertFalse(sequential.isEmpty());
+
+                params.put("parallelism", 4);
+                assertEquals(sequential, paths(query, params));
+            }
+        }
+    }
+
+    @Test
+    public void testSummaryMatchesForward() {
+        for (int c = 0; c < graph.getStartNodeIds().length; c++) {
+            for (boolean cfgCheck : new boolean[] {false, true}) {
+                TestUtil.testCall(db, COMPONENT +
+                        "RETURN length(apoc.path.dataflowPath(s, e, null, null, $cfgCheck)) AS forward, " +
+                        "length(apoc.path.summaryDataflowPath(s, e, null, null, $cfgCheck)) AS summary, " +
+                        "length(apoc.path.dataflowPath(null, e, se, null, $cfgCheck)) AS forwardPrefix, " +
+                        "length(apoc.path.summaryDataflowPath(null, e, se, null, $cfgCheck)) AS summaryPrefix",
+                        component(c, cfgCheck), (row) -> {
+                            assertNotNull(row.get("forward"));
+                            assertEquals(row.get("forward"), row.get("summary"));
+                            assertEquals(row.get("forwardPrefix"), row.get("summaryPrefix"));
+                        });
+            }
+        }
+    }
+
+    @Test
+    public void testStreamMatchesFunction() {
+        for (String name : List.of("allDataflowPaths", "allGmDataflowPaths", "allBackwardDataflowPaths")) {
+            String function = COMPONENT + "UNWIND apoc.path." + name + "(s, e, null, null, $cfgCheck) AS path " +
+                    "RETURN [r IN relationships(path) | id(r)] AS rels";
+            String stream = COMPONENT + "CALL apoc.path." + name + "Stream(s, e, null, null, $cfgCheck, $config) " +
+                    "YIELD path RETURN [r IN relationships(path) | id(r)] AS rels";
+            for (int c = 0; c < graph.getStartNodeIds().length; c++) {
+                for (boolean cfgCheck : new boolean[] {false, true}) {
+                    Map<String, Object> params = new HashMap<>(component(c, cfgCheck));
+                    params.put("config", Map.of());
+                    List<String> all = paths(function, params);
+                    assertFalse(name, all.isEmpty());
+                    assertEquals(name, all, paths(stream, params));
+
+                    // the stream stops after limit paths, each of them also returned by the function
+                    params.put("config", Map.of("limit", 1));
+                    List<String> limited = paths(stream, params);
+                    assertEquals(name, 1, limited.size());
+                    assertTrue(name, all.containsAll(limited));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package apoc.periodic;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static apoc.util.Util.map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void fixedBatchSizeWithoutAdaptiveConfig() {
+        assertNull(AdaptiveBatchSize.fromConfig(map("batchSize", 100), 100));
+        assertNull(AdaptiveBatchSize.fromConfig(map("adaptive", false), 100));
+    }
+
+    @Test
+    public void defaultsAroundTheBatchSize() {
+        AdaptiveBatchSize adaptive = AdaptiveBatchSize.fromConfig(map("adaptive", true), 50);
+        Map<String, Object> sizes = adaptive.toMap();
+        assertEquals(50, adaptive.next());
+        assertEquals(50, sizes.get("minBatch"));
+        assertEquals(AdaptiveBatchSize.DEFAULT_MAX_BATCH, sizes.get("maxBatch"));
+        assertEquals(AdaptiveBatchSize.DEFAULT_TARGET_MILLIS, sizes.get("targetMillis"));
+    }
+
+    @Test
+    public void growsFastBatchesAtMostTwofold() {
+        AdaptiveBatchSize adaptive = new AdaptiveBatchSize(100, 1000, 10, 10_000, 0);
+        adaptive.record(100, 10, 0, false, 0);
+        assertEquals(200, adaptive.next());
+        adaptive.record(200, 500, 0, false, 0);
+        assertEquals(400, adaptive.next());
+    }
+
+    @Test
+    public void shrinksSlowBatchesAtMostByHalf() {
+        AdaptiveBatchSize adaptive = new AdaptiveBatchSize(1000, 1000, 10, 10_000, 0);
+        adaptive.record(1000, 1250, 0, false, 0);
+        assertEquals(800, adaptive.next());
+        adaptive.record(800, 60_000, 0, false, 0);
+        assertEquals(400, adaptive.next());
+    }
+
+    @Test
+    public void shrinksOnRetriesAndFailures() {
+        AdaptiveBatchSize adaptive = new AdaptiveBatchSize(1000, 1000, 10, 10_000, 0);
+        adaptive.record(1000, 1, 2, false, 0);
+        assertEquals(750, adaptive.next());
+        adaptive.record(750, 1, 0, true, 0);
+        assertEquals(375, adaptive.next());
+    }
+
+    @Test
+    public void shrinksToTheMemoryLimit() {
+        AdaptiveBatchSize adaptive = new AdaptiveBatchSize(1000, 1000, 10, 10_000, 1_000_000);
+        adaptive.record(1000, 1, 0, false, 4_000_000);
+        assertEquals(250, adaptive.next());
+        // fast, but would not fit in maxMemory when doubled
+        adaptive.record(250, 1, 0, false, 800_000);
+        assertEquals(312, adaptive.next());
+    }
+
+    @Test
+    public void staysWithinMinAndMaxBatch() {
+        AdaptiveBatchSize adaptive = new AdaptiveBatchSize(100, 1000, 60, 150, 0);
+        adaptive.record(100, 1, 0, false, 0);
+        assertEquals(150, adaptive.next());
+        adaptive.record(150, 1, 0, true, 0);
+        adaptive.record(75, 1, 0, true, 0);
+        assertEquals(60, adaptive.next());
+
+        Map<String, Object> sizes = adaptive.toMap();
+        assertEquals(60, sizes.get("smallest"));
+        assertEquals(150, sizes.get("largest"));
+        assertEquals(60, sizes.get("last"));
+        assertEquals(3L, sizes.get("resized"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minBatchAboveMaxBatch() {
+        AdaptiveBatchSize.fromConfig(map("adaptive", map("minBatch", 100, "maxBatch", 10)), 50);
+    }
+}
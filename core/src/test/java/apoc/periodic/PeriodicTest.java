@@ -2,6 +2,8 @@ package apoc.periodic;
 
 import apoc.util.MapUtil;
 import apoc.util.TestUtil;
+import apoc.util.Utils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -17,14 +19,20 @@ import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.kernel.api.KernelTransactionHandle;
 import org.neo4j.kernel.impl.api.KernelTransactions;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.UserFunction;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -51,9 +59,33 @@ public class PeriodicTest {
     @Rule
     public DbmsRule db = new ImpermanentDbmsRule();
 
+    /**
+     * Latches the operation statements of a test wait on, to order batches without relying on timing.
+     */
+    public static class Latches {
+        static final Map<String, CountDownLatch> latches = new ConcurrentHashMap<>();
+
+        @UserFunction("test.latch.countDown")
+        public long countDown(@Name("name") String name) {
+            CountDownLatch latch = latches.get(name);
+            latch.countDown();
+            return latch.getCount();
+        }
+
+        @UserFunction("test.latch.await")
+        public boolean await(@Name("name") String name, @Name("timeoutMillis") long timeoutMillis) {
+            try {
+                return latches.get(name).await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
     @Before
     public void initDb() throws Exception {
-        TestUtil.registerProcedure(db, Periodic.class);
+        TestUtil.registerProcedure(db, Periodic.class, Utils.class, Latches.class);
         db.executeTransactionally("call apoc.periodic.list() yield name call apoc.periodic.cancel(name) yield name as name2 return count(*)");
     }
 
@@ -279,6 +311,300 @@ public class PeriodicTest {
         );
     }
 
+    @Test
+    public void testIterateAdaptive() throws Exception {
+        db.executeTransactionally("UNWIND range(1,1000) AS x CREATE (:Person{name:'Person_'+x})");
+
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', 'SET p.lastname =p.name REMOVE p.name', {batchSize:10, adaptive:{targetMillis:60000, minBatch:10, maxBatch:160}})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1000L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+
+            // fast batches double in size up to maxBatch: 10, 20, 40, 80, 160, 160, ...
+            Map<String, Object> adaptive = (Map<String, Object>) ((Map<String, Object>) row.get("batch")).get("adaptive");
+            assertEquals(10, adaptive.get("smallest"));
+            assertEquals(160, adaptive.get("largest"));
+            assertEquals(10L, row.get("batches"));
+        });
+
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(1000L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testIteratePartitioned() throws Exception {
+        db.executeTransactionally("UNWIND range(1,10) AS x CREATE (:Hub{id:x})");
+        db.executeTransactionally("UNWIND range(1,1000) AS x CREATE (:Person{id:x, hub:x % 10 + 1})");
+
+        // every batch merges into hubs, rows of the same hub always run in the same lane
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) match (h:Hub {id:p.hub}) return p, h', " +
+                "'MERGE (p)-[:MEMBER]->(h) SET h.members = coalesce(h.members, 0) + 1', " +
+                "{batchSize:10, parallel:true, concurrency:4, partitionBy:'h'})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1000L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+            assertEquals(0L, row.get("retries"));
+        });
+
+        testCall(db,
+                "MATCH (h:Hub) return sum(h.members) as members, count(h) as hubs",
+                row -> {
+                    assertEquals(1000L, row.get("members"));
+                    assertEquals(10L, row.get("hubs"));
+                }
+        );
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testIteratePartitionedByUnknownColumn() throws Exception {
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,10) AS x RETURN x', 'RETURN $x', " +
+                "{parallel:true, partitionBy:'y'})", row -> fail("should have failed"));
+    }
+
+    @Test
+    public void testIteratePartitionedKeepsReadingPastSlowLane() throws Exception {
+        int slowLane = PeriodicUtils.partition("slow", 4);
+        List<String> fastKeys = LongStream.range(0, 20).mapToObj(i -> "k" + i)
+                .filter(key -> PeriodicUtils.partition(key, 4) != slowLane)
+                .collect(toList());
+
+        // three batches of the slow key are read before the rows of the other lanes
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int x = 0; x < 230; x++) {
+            rows.add(map("x", x, "k", (x < 30) ? "slow" : fastKeys.get(x % fastKeys.size())));
+        }
+
+        // the slow lane waits until the rows of the other lanes ran, it is only released if they were read meanwhile
+        Latches.latches.put("fast", new CountDownLatch(200));
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND $rows AS row RETURN row.x AS x, row.k AS k', " +
+                "'WITH CASE WHEN $k = \\'slow\\' THEN test.latch.await(\\'fast\\', 10000) " +
+                "ELSE test.latch.countDown(\\'fast\\') >= 0 END AS released CREATE (:Row {x: $x, k: $k, released: released})', " +
+                "{batchSize:10, parallel:true, concurrency:4, partitionBy:'k', params: {rows: $rows}})",
+                map("rows", rows), result -> assertEquals(230L, Iterators.single(result).get("total")));
+
+        testCall(db, "MATCH (r:Row) RETURN count(r) AS rows, count(CASE WHEN r.released THEN 1 END) AS released",
+                row -> {
+                    assertEquals(230L, row.get("rows"));
+                    assertEquals(230L, row.get("released"));
+                });
+    }
+
+    @Test
+    public void testIterateProgress() throws Exception {
+        // the batches wait until the first progress row was read, so that row is taken while they run
+        Latches.latches.put("progress", new CountDownLatch(1));
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,1000) AS x RETURN x', " +
+                "'WITH test.latch.await(\\'progress\\', 10000) AS released CREATE (:Progress {id:$x, released: released})', " +
+                "{batchSize:10, progress:20})", result -> {
+            Map<String, Object> first = result.next();
+            assertEquals(true, ((Map<String, Object>) first.get("batch")).get("running"));
+            assertEquals(0L, first.get("committedOperations"));
+            Latches.latches.get("progress").countDown();
+
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            Map<String, Object> last = rows.get(rows.size() - 1);
+            assertEquals(100L, last.get("batches"));
+            assertEquals(1000L, last.get("total"));
+            assertEquals(1000L, last.get("committedOperations"));
+            assertFalse(((Map<String, Object>) last.get("batch")).containsKey("running"));
+
+            // only the final row is taken after the iteration finished
+            long committed = 0;
+            for (Map<String, Object> row : rows.subList(0, rows.size() - 1)) {
+                assertEquals(true, ((Map<String, Object>) row.get("batch")).get("running"));
+                assertNotNull(((Map<String, Object>) row.get("operations")).get("rowsPerSecond"));
+                long rowCommitted = (long) row.get("committedOperations");
+                assertTrue(rowCommitted >= committed);
+                committed = rowCommitted;
+            }
+        });
+        testCall(db, "MATCH (p:Progress) RETURN count(p) AS count, count(CASE WHEN p.released THEN 1 END) AS released",
+                row -> {
+                    assertEquals(1000L, row.get("count"));
+                    assertEquals(1000L, row.get("released"));
+                });
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testIterateProgressWithInvalidInterval() throws Exception {
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,10) AS x RETURN x', 'RETURN $x', {progress:0})",
+                row -> fail("should have failed"));
+    }
+
+    @Test
+    public void testIterateResumeFromCheckpoint() throws Exception {
+        // the first run stops with the stream of its progress rows, leaving a checkpoint
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,1000) AS x RETURN x ORDER BY x', " +
+                "'CALL apoc.util.sleep(20) CREATE (:Resumed {id:$x})', " +
+                "{batchSize:10, progress:10, jobId:'resumed', checkpointMillis:1}) YIELD batches RETURN batches LIMIT 1",
+                result -> assertEquals(1, Iterators.count(result)));
+
+        long offset = TestUtil.singleResultFirstColumn(db, "CALL apoc.periodic.checkpoints() YIELD jobId, offset " +
+                "WHERE jobId = 'resumed' RETURN offset");
+        assertTrue(offset > 0 && offset < 1000);
+        testCall(db, "MATCH (r:Resumed) RETURN count(r) AS count", row -> assertEquals(offset, row.get("count")));
+
+        testCall(db, "CALL apoc.periodic.resume('resumed')", row -> {
+            assertEquals(1000L - offset, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+        });
+
+        testCall(db, "MATCH (r:Resumed) RETURN count(r) AS count, count(distinct r.id) AS ids", row -> {
+            assertEquals(1000L, row.get("count"));
+            assertEquals(1000L, row.get("ids"));
+        });
+        testResult(db, "CALL apoc.periodic.checkpoints()", result -> assertFalse(result.hasNext()));
+    }
+
+    @Test
+    public void testIterateResumeParallelRun() throws Exception {
+        // the first parallel run stops with the stream of its progress rows, batches after the offset may have committed
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,1000) AS x RETURN x ORDER BY x', " +
+                "'CALL apoc.util.sleep(20) MERGE (:Resumed {id:$x})', " +
+                "{batchSize:10, parallel:true, concurrency:4, progress:10, jobId:'parallel', checkpointMillis:1}) " +
+                "YIELD batches RETURN batches LIMIT 1",
+                result -> assertEquals(1, Iterators.count(result)));
+
+        Map<String, Object> first = TestUtil.singleResultFirstColumn(db, "CALL apoc.periodic.checkpoints() " +
+                "YIELD jobId, offset, progress WHERE jobId = 'parallel' RETURN {offset: offset, total: progress.total}");
+        long offset = (long) first.get("offset");
+        assertTrue(offset > 0 && offset < 1000);
+        testCall(db, "MATCH (r:Resumed) RETURN count(r) AS count", row -> assertTrue((long) row.get("count") >= offset));
+
+        // a resumed run that stops early again adds its counters to those of the first run
+        testResult(db, "CALL apoc.periodic.resume('parallel', {progress:10}) YIELD batches RETURN batches LIMIT 1",
+                result -> assertEquals(1, Iterators.count(result)));
+        long total = TestUtil.singleResultFirstColumn(db, "CALL apoc.periodic.checkpoints() " +
+                "YIELD jobId, progress WHERE jobId = 'parallel' RETURN progress.total");
+        assertTrue(total > (long) first.get("total"));
+
+        testCall(db, "CALL apoc.periodic.resume('parallel', {progress:false})", row -> assertEquals(0L, row.get("failedBatches")));
+
+        // rows of batches run twice are merged again, each row is there once
+        testCall(db, "MATCH (r:Resumed) RETURN count(r) AS count, count(distinct r.id) AS ids", row -> {
+            assertEquals(1000L, row.get("count"));
+            assertEquals(1000L, row.get("ids"));
+        });
+        testResult(db, "CALL apoc.periodic.checkpoints()", result -> assertFalse(result.hasNext()));
+    }
+
+    @Test
+    public void testIterateResumeRetriesFailedBatch() throws Exception {
+        db.executeTransactionally("CREATE (:Fail)");
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS x RETURN x ORDER BY x', " +
+                "'CALL apoc.util.validate($x = 55 AND exists { MATCH (:Fail) }, \\'failing\\', []) MERGE (:Retried {id:$x})', " +
+                "{batchSize:10, jobId:'failing'})", row -> assertEquals(1L, row.get("failedBatches")));
+
+        // the failed batch holds the offset at its first row
+        testCall(db, "CALL apoc.periodic.checkpoints() YIELD jobId, offset WHERE jobId = 'failing' RETURN offset",
+                row -> assertEquals(50L, row.get("offset")));
+        testCall(db, "MATCH (r:Retried) RETURN count(r) AS count", row -> assertEquals(90L, row.get("count")));
+
+        db.executeTransactionally("MATCH (f:Fail) DELETE f");
+        testCall(db, "CALL apoc.periodic.resume('failing')", row -> {
+            assertEquals(50L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+        });
+        testCall(db, "MATCH (r:Retried) RETURN count(r) AS count", row -> assertEquals(100L, row.get("count")));
+        testResult(db, "CALL apoc.periodic.checkpoints()", result -> assertFalse(result.hasNext()));
+    }
+
+    @Test
+    public void testIterateWithExistingCheckpoint() throws Exception {
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS x RETURN x', 'CALL apoc.util.sleep(20) RETURN $x', " +
+                "{batchSize:1, progress:10, jobId:'existing'}) YIELD batches RETURN batches LIMIT 1",
+                result -> assertEquals(1, Iterators.count(result)));
+
+        try {
+            testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS x RETURN x', 'RETURN $x', {jobId:'existing'})",
+                    row -> fail("should have failed"));
+            fail("should have failed");
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage().contains("already has a checkpoint"));
+        }
+
+        testCall(db, "CALL apoc.periodic.removeCheckpoint('existing')", row -> assertEquals("existing", row.get("jobId")));
+        testResult(db, "CALL apoc.periodic.checkpoints()", result -> assertFalse(result.hasNext()));
+    }
+
+    @Test
+    public void testIterateCheckpointStoresResumeConfigOnly() throws Exception {
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,$last) AS x RETURN x ORDER BY x', " +
+                "'CALL apoc.util.sleep(20) MERGE (:Resumed {id:$x})', " +
+                "{batchSize:10, progress:10, jobId:'stored', checkpointMillis:1, params:{last:100}, unknown:'ignored'}) " +
+                "YIELD batches RETURN batches LIMIT 1",
+                result -> assertEquals(1, Iterators.count(result)));
+
+        testCall(db, "CALL apoc.periodic.checkpoints() YIELD jobId, config WHERE jobId = 'stored' RETURN config", row -> {
+            Map<String, Object> config = (Map<String, Object>) row.get("config");
+            assertEquals(map("batchSize", 10L, "checkpointMillis", 1L, "params", map("last", 100L)), config);
+        });
+
+        testCall(db, "CALL apoc.periodic.resume('stored')", row -> assertEquals(0L, row.get("failedBatches")));
+        testCall(db, "MATCH (r:Resumed) RETURN count(r) AS count", row -> assertEquals(100L, row.get("count")));
+    }
+
+    @Test
+    public void testIterateCheckpointRejectsEntityParams() throws Exception {
+        db.executeTransactionally("CREATE (:Owner)");
+        try {
+            testCall(db, "MATCH (o:Owner) CALL apoc.periodic.iterate('UNWIND range(1,10) AS x RETURN x', " +
+                    "'MATCH (o) WHERE o = $owner RETURN $x', {jobId:'entity', params:{owner:o}}) YIELD batches RETURN batches",
+                    row -> fail("should have failed"));
+            fail("should have failed");
+        } catch (QueryExecutionException e) {
+            String message = ExceptionUtils.getRootCause(e).getMessage();
+            assertTrue(message, message.contains("cannot store the config value params.owner"));
+        }
+        testResult(db, "CALL apoc.periodic.checkpoints()", result -> assertFalse(result.hasNext()));
+    }
+
+    @Test
+    public void testResumeRunningJobFails() throws Exception {
+        try (Transaction tx = db.beginTx()) {
+            // the first run holds its claim while its progress rows are read
+            Result running = tx.execute("CALL apoc.periodic.iterate('UNWIND range(1,1000) AS x RETURN x ORDER BY x', " +
+                    "'CALL apoc.util.sleep(20) RETURN $x', {batchSize:10, progress:10, jobId:'claimed', checkpointMillis:1}) " +
+                    "YIELD batches RETURN batches");
+            assertTrue(running.hasNext());
+            running.next();
+
+            try {
+                testCall(db, "CALL apoc.periodic.resume('claimed')", row -> fail("should have failed"));
+                fail("should have failed");
+            } catch (QueryExecutionException e) {
+                String message = ExceptionUtils.getRootCause(e).getMessage();
+                assertTrue(message, message.contains("is already running"));
+            }
+            running.close();
+            tx.commit();
+        }
+
+        // closing the stream stopped the run and released the claim
+        testCall(db, "CALL apoc.periodic.resume('claimed', {progress:false})", row -> assertEquals(0L, row.get("failedBatches")));
+        testResult(db, "CALL apoc.periodic.checkpoints()", result -> assertFalse(result.hasNext()));
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testResumeWithoutCheckpoint() throws Exception {
+        testCall(db, "CALL apoc.periodic.resume('unknown')", row -> fail("should have failed"));
+    }
+
+    @Test
+    public void testIterateManyBatches() throws Exception {
+        // far more batches than running ones, the finished ones are aggregated as the iteration goes
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,100000) AS x RETURN x', 'RETURN $x', " +
+                "{batchSize:1, parallel:true, concurrency:4})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(100000L, row.get("batches"));
+            assertEquals(100000L, row.get("total"));
+            assertEquals(100000L, row.get("committedOperations"));
+            assertEquals(0L, row.get("failedBatches"));
+        });
+    }
+
     @Test
     public void testIterateWithQueryPlanner() throws Exception {
         db.executeTransactionally("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})");
@@ -67,4 +67,26 @@ public class PeriodicUtilsTest {
         assertEquals("UNWIND $_batch AS batch WITH batch.x AS x SET x:Actor", prepared.first());
     }
 
+    @Test
+    public void partitionIsStableAndWithinTheLanes() {
+        for (long key = 0; key < 1000; key++) {
+            int lane = PeriodicUtils.partition(key, 7);
+            assertTrue(lane >= 0 && lane < 7);
+            assertEquals(lane, PeriodicUtils.partition(key, 7));
+        }
+        assertEquals(PeriodicUtils.partition("hub", 7), PeriodicUtils.partition(new String("hub"), 7));
+        assertTrue(PeriodicUtils.partition(null, 7) >= 0);
+    }
+
+    @Test
+    public void partitionSpreadsKeysOverAllLanes() {
+        int[] rows = new int[8];
+        for (long key = 0; key < 8000; key++) {
+            rows[PeriodicUtils.partition(key, 8)]++;
+        }
+        for (int lane = 0; lane < 8; lane++) {
+            assertTrue("lane " + lane + " got " + rows[lane] + " rows", rows[lane] > 500);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package apoc.pools;
+
+import apoc.ApocSettings;
+import apoc.util.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class PoolsInfoTest {
+
+    @ClassRule
+    public static DbmsRule db = new ImpermanentDbmsRule()
+            .withSetting(ApocSettings.apoc_jobs_pool_num_threads, 6L)
+            .withSetting(ApocSettings.apoc_jobs_cpu_num_threads, 3L)
+            .withSetting(ApocSettings.apoc_jobs_io_queue_size, 7L)
+            .withSetting(ApocSettings.apoc_jobs_io_rejection_policy, "abort");
+
+    @BeforeClass
+    public static void setUp() {
+        TestUtil.registerProcedure(db, PoolsInfo.class);
+    }
+
+    @Test
+    public void shouldListEveryExecutor() {
+        Map<String, Map<String, Object>> executors = info();
+        assertEquals(List.of("single", "default", "cpu", "io", "scheduled"), List.copyOf(executors.keySet()));
+    }
+
+    @Test
+    public void shouldSizeExecutorsFromConfig() {
+        Map<String, Map<String, Object>> executors = info();
+
+        assertEquals(6L, executors.get("default").get("maximumPoolSize"));
+        assertEquals(3L, executors.get("default").get("corePoolSize"));
+        assertEquals(3L, executors.get("cpu").get("maximumPoolSize"));
+        assertEquals("caller_runs", executors.get("cpu").get("rejectionPolicy"));
+        assertEquals(7L, executors.get("io").get("queueRemainingCapacity"));
+        assertEquals("abort", executors.get("io").get("rejectionPolicy"));
+        assertEquals(0L, executors.get("io").get("rejectedCount"));
+    }
+
+    private Map<String, Map<String, Object>> info() {
+        Map<String, Map<String, Object>> executors = new LinkedHashMap<>();
+        TestUtil.testResult(db, "CALL apoc.pools.info()",
+                result -> result.forEachRemaining(row -> executors.put((String) row.get("name"), row)));
+        return executors;
+    }
+
+}